@@ -1,55 +1,170 @@
 package com.example.chatapp.activities;
 
+import android.content.Intent;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+import android.net.Uri;
 import android.os.Bundle;
-import android.util.Base64;
+import android.provider.MediaStore;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
 import android.view.View;
+import android.widget.Toast;
 
 import androidx.activity.EdgeToEdge;
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
+import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.graphics.Insets;
 import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowInsetsCompat;
+import androidx.lifecycle.Lifecycle;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.chatapp.R;
 import com.example.chatapp.adapters.ChatAdapter;
+import com.example.chatapp.adapters.SearchResultsAdapter;
+import com.example.chatapp.database.MessageStore;
+import com.example.chatapp.database.UserStore;
 import com.example.chatapp.databinding.ActivityChatBinding;
+import com.example.chatapp.firebase.HistoryPager;
+import com.example.chatapp.firebase.OutboundMessageQueue;
+import com.example.chatapp.firebase.PeerPresence;
+import com.example.chatapp.firebase.Presence;
+import com.example.chatapp.firebase.ReceiptTracker;
+import com.example.chatapp.listeners.SearchResultListener;
 import com.example.chatapp.models.ChatMessage;
+import com.example.chatapp.models.Group;
 import com.example.chatapp.models.User;
+import com.example.chatapp.repository.Callback;
+import com.example.chatapp.repository.Change;
+import com.example.chatapp.repository.ChatRepository;
+import com.example.chatapp.repository.PresenceRepository;
+import com.example.chatapp.repository.Registration;
+import com.example.chatapp.repository.Repositories;
+import com.example.chatapp.utilities.AttachmentLoader;
+import com.example.chatapp.utilities.Base64Codec;
 import com.example.chatapp.utilities.Constants;
+import com.example.chatapp.utilities.Conversations;
+import com.example.chatapp.utilities.ImageEncoder;
+import com.example.chatapp.utilities.MessageFormatter;
+import com.example.chatapp.utilities.Metrics;
+import com.example.chatapp.utilities.MetricsOverlay;
 import com.example.chatapp.utilities.PreferenceManager;
-import com.google.firebase.firestore.DocumentChange;
-import com.google.firebase.firestore.EventListener;
-import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.QuerySnapshot;
+import com.example.chatapp.utilities.SortedMessageList;
 
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Date;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Locale;
 import java.util.Objects;
+import java.util.Set;
 /**
  * ChatActivity handles the messaging functionality in the chat application.
  * It manages sending and receiving messages between the user and a receiver,
  * and displays them in a RecyclerView using a ChatAdapter.
+ * <p>
+ * Opened with a {@link Group} instead of a receiver, it shows a group conversation.
+ * Groups skip the per-peer features: presence would mean watching every member, and
+ * receipts would put every member's marks on the one group document.
  */
-public class ChatActivity extends AppCompatActivity {
+public class ChatActivity extends AppCompatActivity implements SearchResultListener {
+
+    /**
+     * Number of messages per page, both for the live page and for history pages.
+     */
+    private static final int PAGE_SIZE = 50;
+
+    /**
+     * Maximum number of history pages kept in memory besides the live page.
+     */
+    private static final int HISTORY_WINDOW_PAGES = 4;
+
+    /**
+     * How close (in rows) the user must scroll to the end of the loaded history
+     * before the next page is requested.
+     */
+    private static final int PREFETCH_DISTANCE = 10;
+
+    /**
+     * Maximum number of messages listed for a search.
+     */
+    private static final int SEARCH_LIMIT = 50;
+
+    /**
+     * Pause in typing after which the search box is queried.
+     */
+    private static final long SEARCH_DELAY_MS = 150;
+
+    /**
+     * Widths, in pixels, of an image message's inline thumbnail and of its full image.
+     */
+    private static final int[] IMAGE_WIDTHS = {32, 1280};
+
+    /**
+     * Size limits of the encoded thumbnail, which travels inside the message document,
+     * and of the full image.
+     */
+    private static final int[] IMAGE_MAX_BYTES = {1024, 400 * 1024};
+
+    private static final Metrics.Histogram SNAPSHOT_TO_UI = Metrics.histogram("chat.snapshot_to_ui");
+    private static final Metrics.Counter SNAPSHOTS = Metrics.counter("chat.snapshots");
 
     private ActivityChatBinding binding;
     private User receiverUser;
 
-    private List<ChatMessage> chatMessages;
+    private Group group;
+
+    private SortedMessageList chatMessages;
 
     private ChatAdapter chatAdapter;
     private PreferenceManager preferenceManager;
+    private MetricsOverlay metricsOverlay;
+
+    private ChatRepository chatRepository;
+
+    private HistoryPager historyPager;
+
+    private MessageStore messageStore;
+
+    private String conversationId;
+
+    private Registration messageListener;
+
+    /**
+     * Whether the next confirmed snapshot may move the sync watermark. A listener limited
+     * to the newest page misses late commits with older timestamps, so it only sets the
+     * watermark once, from its first confirmed snapshot; a listener following the
+     * watermark sees every commit and moves it with each one.
+     */
+    private boolean watermarkMovable;
+
+    private boolean pageListener;
 
-    private FirebaseFirestore database;
+    /**
+     * Ids of the messages delivered by the listener. A late commit can be older than the
+     * anchor and turn up in a history page as well; dropping that page must keep it.
+     */
+    private final Set<String> liveMessageIds = new HashSet<>();
+
+    private OutboundMessageQueue outboundQueue;
+
+    private SearchResultsAdapter searchResultsAdapter;
+
+    private Presence presence;
+
+    private PeerPresence peerPresence;
+
+    private ReceiptTracker receiptTracker;
+
+    private int searchGeneration;
+    /**
+     * Message of a search result from the inbox to scroll to, once the pager is anchored.
+     */
+    private ChatMessage pendingJump;
     /**
      * Called when the activity is starting. Initializes the activity's UI
      * and sets up event listeners and Firebase listeners.
@@ -70,115 +185,427 @@ public class ChatActivity extends AppCompatActivity {
 
 
     }
+
+    /**
+     * Marks the user online while the conversation is visible.
+     */
+    @Override
+    protected void onStart() {
+        super.onStart();
+        presence.acquire();
+        metricsOverlay = MetricsOverlay.attach(this);
+    }
+
+    /**
+     * Acknowledges the messages on screen, which may have arrived while the
+     * conversation was in the background.
+     */
+    @Override
+    protected void onResume() {
+        super.onResume();
+        markVisibleRead();
+    }
+
+    /**
+     * Clears the typing state and lets presence lapse when the conversation is hidden.
+     */
+    @Override
+    protected void onStop() {
+        super.onStop();
+        presence.stopTyping();
+        presence.release();
+        if (metricsOverlay != null) {
+            metricsOverlay.detach();
+            metricsOverlay = null;
+        }
+    }
+
+    /**
+     * Detaches the message and presence listeners and hands any queued messages to
+     * the chat repository when the activity is destroyed.
+     */
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (messageListener != null) {
+            messageListener.remove();
+        }
+        outboundQueue.close();
+        if (peerPresence != null) {
+            peerPresence.stop();
+        }
+        if (receiptTracker != null) {
+            receiptTracker.stop();
+        }
+    }
     /**
      * Initializes necessary components for the activity such as preferences,
-     * the adapter for chat messages, and the Firebase Firestore instance.
+     * the adapter for chat messages, and the repositories it talks to.
      */
 
     private void init() {
         preferenceManager = new PreferenceManager(getApplicationContext());
-        chatMessages = new ArrayList<>();
-        chatAdapter = new ChatAdapter(
-                chatMessages,
-                getBitmapFromEncodedString(receiverUser.image),
-                preferenceManager.getString(Constants.KEY_USER_ID)
-        );
+        chatMessages = new SortedMessageList(preferenceManager.getString(Constants.KEY_USER_ID));
+        chatAdapter = group != null ? new ChatAdapter(group) : new ChatAdapter(receiverUser);
 
         binding.chatRecyclerView.setAdapter(chatAdapter);
-        database = FirebaseFirestore.getInstance();
+        messageStore = MessageStore.getInstance(getApplicationContext());
+        conversationId = group != null
+                ? group.id
+                : Conversations.getConversationId(preferenceManager.getString(Constants.KEY_USER_ID), receiverUser.id);
+        chatRepository = Repositories.getChatRepository();
+        historyPager = new HistoryPager(chatRepository, messageStore, conversationId,
+                PAGE_SIZE, HISTORY_WINDOW_PAGES,
+                new HistoryPager.Callback() {
+                    @Override
+                    public void onPageLoaded(List<ChatMessage> messages) {
+                        if (chatMessages.merge(messages)) {
+                            chatAdapter.submitList(chatMessages.snapshot());
+                        }
+                    }
+
+                    @Override
+                    public void onPageDropped(List<ChatMessage> messages) {
+                        List<ChatMessage> dropped = new ArrayList<>(messages.size());
+                        for (ChatMessage chatMessage : messages) {
+                            if (!liveMessageIds.contains(chatMessage.id)) {
+                                dropped.add(chatMessage);
+                            }
+                        }
+                        if (chatMessages.remove(dropped)) {
+                            chatAdapter.submitList(chatMessages.snapshot());
+                        }
+                    }
+                });
+        binding.chatRecyclerView.addOnScrollListener(historyScrollListener);
+        searchResultsAdapter = new SearchResultsAdapter(this);
+        binding.searchRecyclerView.setAdapter(searchResultsAdapter);
+        presence = Presence.getInstance(getApplicationContext());
+        if (group != null) {
+            loadMembers();
+        } else {
+            PresenceRepository presenceRepository = Repositories.getPresenceRepository();
+            peerPresence = new PeerPresence(presenceRepository, receiverUser.id, conversationId,
+                    this::showPresence);
+            peerPresence.start();
+            receiptTracker = new ReceiptTracker(presenceRepository, conversationId,
+                    preferenceManager.getString(Constants.KEY_USER_ID), receiverUser.id, chatAdapter::setReceipts);
+            receiptTracker.start();
+        }
+        User currentUser = new User();
+        currentUser.id = preferenceManager.getString(Constants.KEY_USER_ID);
+        currentUser.firstName = preferenceManager.getString(Constants.KEY_FIRST_NAME);
+        currentUser.imageVersion = preferenceManager.getString(Constants.KEY_IMAGE_VERSION);
+        // A null receiver makes the queue update the group's summary instead of two inboxes.
+        outboundQueue = new OutboundMessageQueue(chatRepository, conversationId, currentUser, receiverUser,
+                new OutboundMessageQueue.Listener() {
+                    @Override
+                    public void onSent(List<ChatMessage> messages) {
+                        if (chatMessages.confirm(messages)) {
+                            chatAdapter.submitList(chatMessages.snapshot());
+                        }
+                    }
+
+                    @Override
+                    public void onFailed(List<ChatMessage> messages) {
+                        if (chatMessages.fail(messages)) {
+                            chatAdapter.submitList(chatMessages.snapshot());
+                        }
+                    }
+                });
     }
+
     /**
-     * Sends a new message to the Firestore database and clears the input field.
+     * Reads the members of the group from the local user directory on the store's thread
+     * and hands them to the adapter, which then shows their avatars and names.
      */
+    private void loadMembers() {
+        UserStore userStore = UserStore.getInstance(getApplicationContext());
+        userStore.getExecutor().execute(() -> {
+            List<User> members = userStore.get(group.members);
+            runOnUiThread(() -> {
+                if (!isDestroyed()) {
+                    chatAdapter.setSenders(members);
+                }
+            });
+        });
+    }
 
-    private void sendMessages() {
-        HashMap<String, Object> message = new HashMap<>();
-        message.put(Constants.KEY_SENDER_ID,preferenceManager.getString(Constants.KEY_USER_ID));
-        message.put(Constants.KEY_RECEIVER_ID, receiverUser.id);
+    /**
+     * Requests older history when the user nears the top of the list, and reloads
+     * dropped newer pages when the user scrolls back down towards the live page.
+     */
+    private final RecyclerView.OnScrollListener historyScrollListener = new RecyclerView.OnScrollListener() {
+        @Override
+        public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+            LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+            if (layoutManager == null) {
+                return;
+            }
+            markVisibleRead();
+            if (dy < 0 && layoutManager.findFirstVisibleItemPosition() <= PREFETCH_DISTANCE) {
+                historyPager.loadOlder();
+            } else if (dy > 0 && historyPager.hasGapToLive()) {
+                int boundary = chatMessages.indexOf(historyPager.getNewestHistoryMessage());
+                if (layoutManager.findLastVisibleItemPosition() >= boundary - PREFETCH_DISTANCE) {
+                    historyPager.loadNewer();
+                }
+            }
+        }
+    };
+    /**
+     * Acknowledges everything up to the newest message of the other participant on
+     * screen as read. The mark is that message's own timestamp, stamped by the other
+     * participant's clock like the messages it is compared with, never one of this user's
+     * messages, whose clock may run ahead. Called on every scroll and layout; the tracker
+     * only writes when the mark moves forward, and at most once per flush interval.
+     */
+    private void markVisibleRead() {
+        if (receiptTracker == null || !getLifecycle().getCurrentState().isAtLeast(Lifecycle.State.RESUMED)) {
+            return;
+        }
+        LinearLayoutManager layoutManager = (LinearLayoutManager) binding.chatRecyclerView.getLayoutManager();
+        List<ChatMessage> messages = chatAdapter.getCurrentList();
+        if (layoutManager == null) {
+            return;
+        }
+        int last = layoutManager.findLastVisibleItemPosition();
+        if (last == RecyclerView.NO_POSITION) {
+            return;
+        }
+        for (int i = Math.min(last, messages.size() - 1); i >= 0; i--) {
+            ChatMessage chatMessage = messages.get(i);
+            if (receiverUser.id.equals(chatMessage.senderId)) {
+                receiptTracker.markRead(chatMessage.timestamp);
+                return;
+            }
+        }
+    }
 
-        message.put(Constants.KEY_MESSAGE, binding.inputMessage.getText().toString());
-        message.put(Constants.KEY_TIMESTAMP, new Date());
+    /**
+     * Queues a new message for sending, shows it immediately as pending and clears
+     * the input field. The listener's echo of the message carries the same id and is
+     * skipped by the ordered list.
+     */
 
-        database.collection(Constants.KEY_COLLECTION_CHAT).add(message);
+    private void sendMessages() {
+        String text = binding.inputMessage.getText().toString();
+        if (text.trim().isEmpty()) {
+            return;
+        }
+        ChatMessage chatMessage = outboundQueue.enqueue(text);
         binding.inputMessage.setText(null);
+        presence.stopTyping();
+        showSent(chatMessage);
+    }
 
+    /**
+     * Handles the picked image. It is encoded in the background as an inline thumbnail
+     * and a full image; the message goes out with the thumbnail and any text in the input
+     * field as its caption, while the full image is uploaded separately.
+     */
+    private final ActivityResultLauncher<Intent> pickImage = registerForActivityResult(
+            new ActivityResultContracts.StartActivityForResult(),
+            result -> {
+                if (result.getResultCode() == RESULT_OK && result.getData() != null) {
+                    Uri imageUri = result.getData().getData();
+                    ImageEncoder.encodeAsync(getContentResolver(), imageUri, IMAGE_WIDTHS, IMAGE_MAX_BYTES,
+                            new ImageEncoder.Callback() {
+                                @Override
+                                public void onEncoded(Bitmap preview, byte[][] images) {
+                                    sendImage(preview, images);
+                                }
+
+                                @Override
+                                public void onError() {
+                                    Toast.makeText(getApplicationContext(), "Unable to load image",
+                                            Toast.LENGTH_SHORT).show();
+                                }
+                            });
+                }
+            }
+    );
 
+    private void sendImage(Bitmap preview, byte[][] images) {
+        if (isFinishing() || isDestroyed()) {
+            return;
+        }
+        String caption = binding.inputMessage.getText().toString().trim();
+        ChatMessage chatMessage = outboundQueue.enqueueImage(caption, Base64Codec.encode(images[0]),
+                preview.getWidth(), preview.getHeight());
+        AttachmentLoader.getInstance(this).upload(chatMessage.blobId, images[1]);
+        binding.inputMessage.setText(null);
+        presence.stopTyping();
+        showSent(chatMessage);
+    }
 
+    /**
+     * Shows a message just queued for sending and scrolls to it, unless older history
+     * is being viewed.
+     */
+    private void showSent(ChatMessage chatMessage) {
+        if (chatMessages.add(chatMessage)) {
+            int size = chatMessages.size();
+            binding.chatRecyclerView.setVisibility(View.VISIBLE);
+            chatAdapter.submitList(chatMessages.snapshot(), () -> {
+                if (!historyPager.hasGapToLive()) {
+                    binding.chatRecyclerView.smoothScrollToPosition(size - 1);
+                }
+            });
+        }
     }
 
     /**
-     * Sets up listeners to retrieve messages sent or received by the user
-     * from the Firestore database.
+     * Renders the newest page from the local {@link MessageStore}, then sets up a single
+     * listener on the conversation's message collection. When the conversation was synced
+     * before, the listener only asks for messages the server committed since the sync
+     * watermark; otherwise it is limited to the newest page. Older pages are loaded on
+     * demand by the {@link HistoryPager}. Stored rows of a conversation that was never
+     * synced are not shown, since nothing says they are contiguous; the pager is then
+     * anchored on the listener's first page. Once it is anchored, the conversation
+     * scrolls to the message named by the intent, if it was opened from a search.
+     * Messages still stored in the legacy flat collection are copied over once per device.
      */
 
     private void ListenMessage() {
-        database.collection(Constants.KEY_COLLECTION_CHAT)
-                .whereEqualTo(Constants.KEY_SENDER_ID,
-                        preferenceManager.getString(Constants.KEY_USER_ID))
-                .whereEqualTo(Constants.KEY_RECEIVER_ID,receiverUser.id)
-                .addSnapshotListener(eventListener);
-
-
-        database.collection(Constants.KEY_COLLECTION_CHAT)
-                .whereEqualTo(Constants.KEY_SENDER_ID,
-                        receiverUser.id)
-                .whereEqualTo(Constants.KEY_RECEIVER_ID,
-                        preferenceManager.getString(Constants.KEY_USER_ID))
-                .addSnapshotListener(eventListener);
-
+        String jumpToId = getIntent().getStringExtra(Constants.KEY_MESSAGE_ID);
+        messageStore.getExecutor().execute(() -> {
+            List<ChatMessage> cached = messageStore.getLatest(conversationId, PAGE_SIZE);
+            long syncedUpTo = messageStore.getSyncedUpTo(conversationId);
+            ChatMessage jumpTarget = jumpToId != null ? messageStore.getMessage(conversationId, jumpToId) : null;
+            runOnUiThread(() -> {
+                if (isDestroyed()) {
+                    return;
+                }
+                pendingJump = jumpTarget;
+                if (syncedUpTo > 0 && !cached.isEmpty()) {
+                    historyPager.setAnchor(cached.get(0));
+                    chatMessages.merge(cached);
+                    chatAdapter.submitList(chatMessages.snapshot());
+                    binding.chatRecyclerView.setVisibility(View.VISIBLE);
+                    runPendingJump();
+                }
+                watermarkMovable = true;
+                pageListener = syncedUpTo == 0;
+                messageListener = chatRepository.listenMessages(conversationId, syncedUpTo, PAGE_SIZE,
+                        messageEventListener);
+            });
+        });
+
+        if (group == null) {
+            migrateLegacyMessages();
+        }
     }
 
     /**
-     * Event listener to handle changes in the chat messages collection.
-     * Adds new messages to the list, sorts them by timestamp, and updates
-     * the RecyclerView.
+     * Copies the messages of the legacy flat collection into the conversation, unless
+     * this device already did. Copied messages arrive through the message listener.
      */
-    private final EventListener<QuerySnapshot> eventListener = ((value, error) -> {
-        if (error != null) {
-
+    private void migrateLegacyMessages() {
+        String migratedKey = Constants.KEY_LEGACY_MIGRATED_PREFIX + conversationId;
+        if (preferenceManager.getBoolean(migratedKey)) {
             return;
         }
-        if (value != null) {
-            int count = chatMessages.size();
-            for (DocumentChange documentChange : value.getDocumentChanges()) {
-                if (documentChange.getType() == DocumentChange.Type.ADDED) {
-                    ChatMessage chatMessage = new ChatMessage();
-                    chatMessage.senderId = documentChange.getDocument().getString(Constants.KEY_SENDER_ID);
-                    chatMessage.receiverId = documentChange.getDocument().getString(Constants.KEY_RECEIVER_ID);
-                    chatMessage.message = documentChange.getDocument().getString(Constants.KEY_MESSAGE);
-                    chatMessage.dateTime = getReadableDateTime(documentChange.getDocument().getDate(Constants.KEY_TIMESTAMP));
-                    chatMessage.dateObject = documentChange.getDocument().getDate(Constants.KEY_TIMESTAMP);
-                    chatMessages.add(chatMessage);
+        chatRepository.migrateLegacyMessages(preferenceManager.getString(Constants.KEY_USER_ID), receiverUser.id,
+                new Callback<Void>() {
+                    @Override
+                    public void onSuccess(Void result) {
+                        preferenceManager.putBoolean(migratedKey, true);
+                    }
+
+                    @Override
+                    public void onFailure(Exception e) {
+                        Log.w("Migration", "Unable to migrate " + conversationId, e);
+                    }
+                });
+    }
+
+    /**
+     * Listener to handle changes in the conversation's messages.
+     * Merges new messages into the ordered list and submits a snapshot to the
+     * adapter, which diffs it in the background and inserts only the new rows.
+     * Every change is written through to the local store, and confirmed snapshots
+     * advance the conversation's sync watermark to the newest server commit time they hold.
+     * Messages from the other participant are acknowledged as delivered.
+     * The time from delivery of the snapshot until the adapter holds the new list is
+     * recorded as {@code chat.snapshot_to_ui}.
+     */
+    private final ChatRepository.MessageListener messageEventListener = new ChatRepository.MessageListener() {
+        @Override
+        public void onMessages(List<Change<ChatMessage>> changes, boolean confirmedSnapshot) {
+            long receivedAt = System.nanoTime();
+            SNAPSHOTS.increment();
+            boolean firstBatch = chatMessages.isEmpty();
+            List<ChatMessage> batch = new ArrayList<>();
+            List<ChatMessage> changed = new ArrayList<>();
+            for (Change<ChatMessage> change : changes) {
+                if (change.type == Change.Type.REMOVED) {
+                    continue;
+                }
+                changed.add(change.value);
+                if (change.type == Change.Type.ADDED) {
+                    batch.add(change.value);
+                    liveMessageIds.add(change.value.id);
+                }
+            }
+            if (!batch.isEmpty()) {
+                historyPager.setAnchor(Collections.min(batch, SortedMessageList.ORDER));
+            }
+            if (receiptTracker != null) {
+                long receivedUpTo = 0;
+                for (ChatMessage chatMessage : batch) {
+                    if (receiverUser.id.equals(chatMessage.senderId)) {
+                        receivedUpTo = Math.max(receivedUpTo, chatMessage.timestamp);
+                    }
                 }
+                receiptTracker.markDelivered(receivedUpTo);
             }
-            Collections.sort(chatMessages, (obj1, obj2) -> obj1.dateObject.compareTo(obj2.dateObject));
-            if (count == 0) {
-                chatAdapter.notifyDataSetChanged();
-            } else {
-                chatAdapter.notifyItemRangeInserted(count, chatMessages.size() - count);
-                binding.chatRecyclerView.smoothScrollToPosition(chatMessages.size() - 1);
+            long newestCommit = 0;
+            if (confirmedSnapshot && watermarkMovable) {
+                for (ChatMessage chatMessage : changed) {
+                    newestCommit = Math.max(newestCommit, chatMessage.committedAt);
+                }
+                watermarkMovable = newestCommit == 0 || !pageListener;
+            }
+            final long syncedUpTo = newestCommit;
+            messageStore.getExecutor().execute(() -> {
+                messageStore.put(conversationId, changed);
+                if (syncedUpTo > 0) {
+                    messageStore.setSyncedUpTo(conversationId, syncedUpTo);
+                }
+            });
+            if (chatMessages.merge(batch)) {
+                int size = chatMessages.size();
+                chatAdapter.submitList(chatMessages.snapshot(), () -> {
+                    SNAPSHOT_TO_UI.recordSince(receivedAt);
+                    if (!firstBatch && !historyPager.hasGapToLive()) {
+                        binding.chatRecyclerView.smoothScrollToPosition(size - 1);
+                    }
+                });
             }
             binding.chatRecyclerView.setVisibility(chatMessages.isEmpty() ? View.GONE : View.VISIBLE);
+            if (!batch.isEmpty()) {
+                runPendingJump();
+            }
         }
-    });
-
-    /**
-     * Decodes a Base64-encoded string to a Bitmap image.
-     *
-     * @param encodedImage The Base64 string to decode.
-     * @return The decoded Bitmap image.
-     */
 
-    private Bitmap getBitmapFromEncodedString(String encodedImage) {
-        byte[] bytes = Base64.decode(encodedImage, Base64.DEFAULT);
-        return BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+        @Override
+        public void onError(Exception e) {
+        }
+    };
 
-    }
     /**
-     * Loads the receiver's details from the intent and displays their name.
+     * Loads the receiver's details, or the group, from the intent and displays their name.
      */
 
     private void loadReceiverDetails() {
+        group = (Group) getIntent().getSerializableExtra(Constants.KEY_GROUP);
+        if (group != null) {
+            binding.inputFirstName.setText(group.name);
+            binding.textPresence.setText(getResources().getQuantityString(R.plurals.members,
+                    group.members.size(), group.members.size()));
+            return;
+        }
         receiverUser = (User) getIntent().getSerializableExtra(Constants.KEY_USER);
         binding.inputFirstName.setText(receiverUser.firstName);
 
@@ -192,15 +619,124 @@ public class ChatActivity extends AppCompatActivity {
     private void setListener() {
         binding.imageBack.setOnClickListener(view -> onBackPressed());
         binding.layoutSend.setOnClickListener(v -> sendMessages());
+        binding.imageAttach.setOnClickListener(v -> {
+            Intent intent = new Intent(Intent.ACTION_PICK, MediaStore.Images.Media.EXTERNAL_CONTENT_URI);
+            intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+            pickImage.launch(intent);
+        });
+        binding.inputMessage.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                if (group != null) {
+                    // Nobody watches typing in a group.
+                    return;
+                }
+                if (s.length() > 0) {
+                    presence.onTyping(conversationId);
+                } else {
+                    presence.stopTyping();
+                }
+            }
+        });
+        binding.imageSearch.setOnClickListener(v -> setSearchVisible(
+                binding.layoutSearch.getVisibility() != View.VISIBLE));
+        binding.inputSearch.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                binding.inputSearch.removeCallbacks(searchRunnable);
+                binding.inputSearch.postDelayed(searchRunnable, SEARCH_DELAY_MS);
+            }
+        });
+    }
+
+    /**
+     * Shows whether the other participant is typing, online, or when they were last seen.
+     */
+    private void showPresence(boolean online, long lastSeen, boolean typing) {
+        if (typing) {
+            binding.textPresence.setText(R.string.typing);
+        } else if (online) {
+            binding.textPresence.setText(R.string.online);
+        } else if (lastSeen > 0) {
+            binding.textPresence.setText(getString(R.string.last_seen,
+                    MessageFormatter.getReadableDateTime(lastSeen)));
+        } else {
+            binding.textPresence.setText(null);
+        }
+    }
+
+    private void setSearchVisible(boolean visible) {
+        binding.layoutSearch.setVisibility(visible ? View.VISIBLE : View.GONE);
+        if (visible) {
+            binding.inputSearch.requestFocus();
+        }
     }
+
+    private final Runnable searchRunnable = this::searchMessages;
+
     /**
-     * Formats a Date object into a readable date-time string.
+     * Searches the conversation's stored messages on the store thread. Results of a
+     * search overtaken by a newer one are dropped.
+     */
+    private void searchMessages() {
+        String query = binding.inputSearch.getText().toString();
+        int requestGeneration = ++searchGeneration;
+        messageStore.getExecutor().execute(() -> {
+            List<ChatMessage> hits = messageStore.search(conversationId, query, SEARCH_LIMIT);
+            runOnUiThread(() -> {
+                if (requestGeneration == searchGeneration && !isDestroyed()) {
+                    searchResultsAdapter.submitList(hits);
+                }
+            });
+        });
+    }
+
+    /**
+     * Closes the search and scrolls to the clicked message, first loading the history
+     * around it if it is not in the list.
      *
-     * @param date The Date object to format.
-     * @return A formatted string representation of the date and time.
+     * @param chatMessage The message that was clicked.
      */
-    private String getReadableDateTime(Date date) {
-        return  new SimpleDateFormat("MMM dd, yyyy - hh:mm a",
-                Locale.getDefault()).format(date);
+    @Override
+    public void onSearchResultClicked(ChatMessage chatMessage) {
+        setSearchVisible(false);
+        if (chatMessages.indexOf(chatMessage) >= 0) {
+            scrollToMessage(chatMessage);
+        } else {
+            historyPager.jumpTo(chatMessage, () -> scrollToMessage(chatMessage));
+        }
+    }
+
+    private void runPendingJump() {
+        if (pendingJump != null) {
+            ChatMessage target = pendingJump;
+            pendingJump = null;
+            onSearchResultClicked(target);
+        }
+    }
+
+    private void scrollToMessage(ChatMessage chatMessage) {
+        chatAdapter.submitList(chatMessages.snapshot(), () -> {
+            int index = chatMessages.indexOf(chatMessage);
+            if (index >= 0) {
+                binding.chatRecyclerView.scrollToPosition(index);
+            }
+        });
     }
 }
\ No newline at end of file
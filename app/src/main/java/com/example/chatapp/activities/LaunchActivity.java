@@ -0,0 +1,42 @@
+package com.example.chatapp.activities;
+
+import android.app.Activity;
+import android.content.Intent;
+import android.os.Bundle;
+
+import com.example.chatapp.utilities.Constants;
+import com.example.chatapp.utilities.MetricsOverlay;
+import com.example.chatapp.utilities.PreferenceManager;
+import com.example.chatapp.utilities.StartupTrace;
+
+/**
+ * LaunchActivity is the launcher entry point. It has no UI: it reads the session
+ * from the local preferences and forwards signed-in users straight to the inbox,
+ * everyone else to the sign-in screen, then finishes. The switch of the
+ * {@link MetricsOverlay} is passed on.
+ */
+public class LaunchActivity extends Activity {
+
+    /**
+     * Routes the launch and finishes without drawing anything.
+     *
+     * @param savedInstanceState Unused; the activity never stays alive.
+     */
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        StartupTrace.begin();
+        boolean signedIn = new PreferenceManager(getApplicationContext()).getBoolean(Constants.KEY_IS_SIGNED_IN);
+        StartupTrace.mark("read_session");
+        if (!signedIn) {
+            StartupTrace.abandon();
+        }
+        Intent intent = new Intent(getApplicationContext(), signedIn ? MainActivity.class : SignInActivity.class);
+        if (getIntent().hasExtra(MetricsOverlay.EXTRA_ENABLED)) {
+            intent.putExtra(MetricsOverlay.EXTRA_ENABLED, getIntent().getBooleanExtra(MetricsOverlay.EXTRA_ENABLED, false));
+        }
+        startActivity(intent);
+        finish();
+        overridePendingTransition(0, 0);
+    }
+}
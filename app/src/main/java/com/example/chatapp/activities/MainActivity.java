@@ -1,11 +1,11 @@
 package com.example.chatapp.activities;
 
 import android.content.Intent;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Bundle;
-import android.util.Base64;
-import android.util.Log;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.view.View;
+import android.view.ViewTreeObserver;
 import android.widget.Toast;
 
 import androidx.activity.EdgeToEdge;
@@ -15,27 +15,75 @@ import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowInsetsCompat;
 
 import com.example.chatapp.R;
+import com.example.chatapp.adapters.RecentConversationsAdapter;
+import com.example.chatapp.adapters.SearchResultsAdapter;
+import com.example.chatapp.database.MessageStore;
+import com.example.chatapp.database.UserStore;
 import com.example.chatapp.databinding.ActivityMainBinding;
+import com.example.chatapp.firebase.Presence;
+import com.example.chatapp.listeners.ConversationListener;
+import com.example.chatapp.listeners.SearchResultListener;
+import com.example.chatapp.models.ChatMessage;
+import com.example.chatapp.models.ConversationSummary;
+import com.example.chatapp.models.User;
+import com.example.chatapp.repository.Callback;
+import com.example.chatapp.repository.ChatRepository;
+import com.example.chatapp.repository.Registration;
+import com.example.chatapp.repository.Repositories;
+import com.example.chatapp.utilities.AttachmentLoader;
+import com.example.chatapp.utilities.AvatarCache;
 import com.example.chatapp.utilities.Constants;
+import com.example.chatapp.utilities.Conversations;
+import com.example.chatapp.utilities.MetricsOverlay;
 import com.example.chatapp.utilities.PreferenceManager;
-import com.google.firebase.firestore.DocumentReference;
-import com.google.firebase.firestore.FieldValue;
-import com.google.firebase.firestore.FirebaseFirestore;
+import com.example.chatapp.utilities.StartupTrace;
 import com.google.firebase.messaging.FirebaseMessaging;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 /**
- * MainActivity is the primary activity that displays user details
- * and provides options to sign out or start a new chat.
+ * MainActivity is the primary activity that displays user details, the
+ * recent-conversations inbox and provides options to sign out or start a new chat.
  * It handles user authentication and Firebase token management.
+ * Its search covers the stored messages of every conversation; a result opens its
+ * conversation scrolled to the message.
  */
-public class MainActivity extends AppCompatActivity {
+public class MainActivity extends AppCompatActivity implements ConversationListener, SearchResultListener {
+
+    /**
+     * Number of conversations shown in the inbox.
+     */
+    private static final int RECENT_CONVERSATIONS_LIMIT = 50;
+
+    /**
+     * Maximum number of messages listed for a search.
+     */
+    private static final int SEARCH_LIMIT = 50;
+
+    /**
+     * Pause in typing after which the search box is queried.
+     */
+    private static final long SEARCH_DELAY_MS = 150;
 
     private ActivityMainBinding binding;
     private PreferenceManager preferenceManager;
+    private RecentConversationsAdapter conversationsAdapter;
+    private Registration conversationsListener;
+    private Registration groupsListener;
+    private List<ConversationSummary> directSummaries = Collections.emptyList();
+    private List<ConversationSummary> groupSummaries = Collections.emptyList();
+    private boolean firstFrameDrawn;
+    private boolean started;
+    private boolean presenceAcquired;
+    private MetricsOverlay metricsOverlay;
+    private SearchResultsAdapter searchResultsAdapter;
+    private int searchGeneration;
     /**
      * Called when the activity is starting. Initializes the activity's UI,
-     * loads user details, retrieves the FCM token, and sets event listeners.
+     * loads user details and sets event listeners. Firestore and FCM are first
+     * touched after the first frame, see {@link #onFirstFrame()}.
      *
      * @param savedInstanceState If the activity is being re-initialized after
      *                           previously being shut down, this Bundle contains
@@ -48,14 +96,98 @@ public class MainActivity extends AppCompatActivity {
         setContentView(binding.getRoot());
         preferenceManager = new PreferenceManager(getApplicationContext());
         loadUserDetails();
-        getToken();
         setListeners();
+        conversationsAdapter = new RecentConversationsAdapter(this);
+        binding.conversationsRecyclerView.setAdapter(conversationsAdapter);
+        searchResultsAdapter = new SearchResultsAdapter(this);
+        binding.searchRecyclerView.setAdapter(searchResultsAdapter);
+        StartupTrace.mark("main_create");
+        View root = binding.getRoot();
+        root.getViewTreeObserver().addOnDrawListener(new ViewTreeObserver.OnDrawListener() {
+            @Override
+            public void onDraw() {
+                // Listeners cannot be removed while the tree is dispatching them.
+                ViewTreeObserver.OnDrawListener listener = this;
+                root.post(() -> {
+                    root.getViewTreeObserver().removeOnDrawListener(listener);
+                    onFirstFrame();
+                });
+            }
+        });
+    }
+
+    /**
+     * Runs the work that is not needed to draw the inbox: creating the Firestore
+     * client for the inbox listener and presence, uploading the FCM token, and resuming
+     * the image uploads an earlier run left unfinished.
+     */
+    private void onFirstFrame() {
+        if (firstFrameDrawn || isDestroyed()) {
+            return;
+        }
+        firstFrameDrawn = true;
+        StartupTrace.finish(getApplicationContext());
+        listenConversations();
+        if (started) {
+            acquirePresence();
+        }
+        getToken();
+        AttachmentLoader.getInstance(getApplicationContext()).resumeUploads();
+    }
+
+    /**
+     * Marks the user online while the inbox is visible, once the first frame was drawn.
+     */
+    @Override
+    protected void onStart() {
+        super.onStart();
+        started = true;
+        if (firstFrameDrawn) {
+            acquirePresence();
+        }
+        metricsOverlay = MetricsOverlay.attach(this);
+    }
 
+    /**
+     * Lets presence lapse when the inbox is hidden.
+     */
+    @Override
+    protected void onStop() {
+        super.onStop();
+        started = false;
+        if (presenceAcquired) {
+            presenceAcquired = false;
+            Presence.getInstance(getApplicationContext()).release();
+        }
+        if (metricsOverlay != null) {
+            metricsOverlay.detach();
+            metricsOverlay = null;
+        }
+    }
+
+    private void acquirePresence() {
+        if (!presenceAcquired) {
+            presenceAcquired = true;
+            Presence.getInstance(getApplicationContext()).acquire();
+        }
+    }
 
+    /**
+     * Detaches the inbox listeners when the activity is destroyed.
+     */
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (conversationsListener != null) {
+            conversationsListener.remove();
+        }
+        if (groupsListener != null) {
+            groupsListener.remove();
+        }
     }
     /**
-     * Sets click listeners for UI elements including the sign-out button
-     * and the floating action button (FAB) for starting a new chat.
+     * Sets click listeners for UI elements including the sign-out button, the message
+     * search and the floating action button (FAB) for starting a new chat.
      */
     private void setListeners() {
 
@@ -63,21 +195,220 @@ public class MainActivity extends AppCompatActivity {
 
         binding.fabNewChat.setOnClickListener(v ->
                 startActivity(new Intent(getApplicationContext(), userActivity.class)));
+
+        binding.imageSearch.setOnClickListener(v -> setSearchVisible(
+                binding.layoutSearch.getVisibility() != View.VISIBLE));
+        binding.inputSearch.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                binding.inputSearch.removeCallbacks(searchRunnable);
+                binding.inputSearch.postDelayed(searchRunnable, SEARCH_DELAY_MS);
+            }
+        });
+    }
+
+    private void setSearchVisible(boolean visible) {
+        binding.layoutSearch.setVisibility(visible ? View.VISIBLE : View.GONE);
+        if (visible) {
+            binding.inputSearch.requestFocus();
+        }
+    }
+
+    private final Runnable searchRunnable = this::searchMessages;
+
+    /**
+     * Searches the stored messages of all conversations on the store thread. Results of
+     * a search overtaken by a newer one are dropped.
+     */
+    private void searchMessages() {
+        String query = binding.inputSearch.getText().toString();
+        int requestGeneration = ++searchGeneration;
+        MessageStore messageStore = MessageStore.getInstance(getApplicationContext());
+        messageStore.getExecutor().execute(() -> {
+            List<ChatMessage> hits = messageStore.search(null, query, SEARCH_LIMIT);
+            runOnUiThread(() -> {
+                if (requestGeneration == searchGeneration && !isDestroyed()) {
+                    searchResultsAdapter.submitList(hits);
+                }
+            });
+        });
+    }
+
+    /**
+     * Opens the conversation of the clicked message, scrolled to it. The conversation
+     * is looked up in the inbox; a direct conversation that fell out of it is opened with
+     * the other participant from the local user directory.
+     *
+     * @param chatMessage The message that was clicked.
+     */
+    @Override
+    public void onSearchResultClicked(ChatMessage chatMessage) {
+        String userId = preferenceManager.getString(Constants.KEY_USER_ID);
+        String otherId = Conversations.isGroup(chatMessage.receiverId) || !userId.equals(chatMessage.receiverId)
+                ? chatMessage.receiverId
+                : chatMessage.senderId;
+        for (List<ConversationSummary> summaries : Arrays.asList(directSummaries, groupSummaries)) {
+            for (ConversationSummary summary : summaries) {
+                if (otherId.equals(summary.otherId)) {
+                    Intent intent = new Intent(getApplicationContext(), ChatActivity.class);
+                    if (summary.isGroup()) {
+                        intent.putExtra(Constants.KEY_GROUP, summary.toGroup());
+                    } else {
+                        intent.putExtra(Constants.KEY_USER, summary.toUser());
+                    }
+                    openAt(intent, chatMessage);
+                    return;
+                }
+            }
+        }
+        if (Conversations.isGroup(otherId)) {
+            return;
+        }
+        UserStore userStore = UserStore.getInstance(getApplicationContext());
+        userStore.getExecutor().execute(() -> {
+            List<User> users = userStore.get(Collections.singletonList(otherId));
+            runOnUiThread(() -> {
+                if (!users.isEmpty() && !isDestroyed()) {
+                    Intent intent = new Intent(getApplicationContext(), ChatActivity.class);
+                    intent.putExtra(Constants.KEY_USER, users.get(0));
+                    openAt(intent, chatMessage);
+                }
+            });
+        });
+    }
+
+    private void openAt(Intent intent, ChatMessage chatMessage) {
+        setSearchVisible(false);
+        intent.putExtra(Constants.KEY_MESSAGE_ID, chatMessage.id);
+        startActivity(intent);
     }
     /**
      * Loads the user's details (name and profile image) from shared preferences
-     * and displays them on the UI.
+     * and displays them on the UI. Only users created before avatars were split out need
+     * their inline image; it is read in the background, and fetched and kept in the
+     * preferences on first use after signing in.
      */
 
     private void loadUserDetails() {
         binding.inputFirstName.setText(preferenceManager.getString(Constants.KEY_FIRST_NAME));
 
+        User currentUser = new User();
+        currentUser.id = preferenceManager.getString(Constants.KEY_USER_ID);
+        currentUser.imageVersion = preferenceManager.getString(Constants.KEY_IMAGE_VERSION);
+        if (currentUser.imageVersion != null) {
+            AvatarCache.getInstance(getApplicationContext()).load(binding.imageProfile, currentUser);
+            return;
+        }
+        preferenceManager.getStringAsync(Constants.KEY_IMAGE, image -> {
+            if (image != null) {
+                currentUser.image = image;
+                showAvatar(currentUser);
+                return;
+            }
+            Repositories.getUserRepository().getUser(currentUser.id, new Callback<User>() {
+                @Override
+                public void onSuccess(User user) {
+                    if (user == null || user.image == null) {
+                        return;
+                    }
+                    preferenceManager.putString(Constants.KEY_IMAGE, user.image);
+                    currentUser.image = user.image;
+                    showAvatar(currentUser);
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                }
+            });
+        });
+    }
+
+    private void showAvatar(User currentUser) {
+        if (!isDestroyed()) {
+            AvatarCache.getInstance(getApplicationContext()).load(binding.imageProfile, currentUser);
+        }
+    }
+
+
+    /**
+     * Listens to the signed-in user's conversation summaries and to the groups they are a
+     * member of, both newest first, and shows them together in the inbox. One small
+     * ordered query each replaces reading any messages.
+     */
+    private void listenConversations() {
+        String userId = preferenceManager.getString(Constants.KEY_USER_ID);
+        conversationsListener = Repositories.getChatRepository().listenInbox(userId,
+                RECENT_CONVERSATIONS_LIMIT, new ChatRepository.InboxListener() {
+                    @Override
+                    public void onConversations(List<ConversationSummary> conversations) {
+                        binding.progressBar.setVisibility(View.GONE);
+                        directSummaries = conversations;
+                        showConversations();
+                    }
+
+                    @Override
+                    public void onError(Exception e) {
+                        binding.progressBar.setVisibility(View.GONE);
+                    }
+                });
+        groupsListener = Repositories.getChatRepository().listenGroups(userId,
+                RECENT_CONVERSATIONS_LIMIT, new ChatRepository.InboxListener() {
+                    @Override
+                    public void onConversations(List<ConversationSummary> conversations) {
+                        groupSummaries = conversations;
+                        showConversations();
+                    }
 
-        byte [] bytes = Base64.decode(preferenceManager.getString(Constants.KEY_IMAGE), Base64.DEFAULT);
-        Bitmap bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
-        binding.imageProfile.setImageBitmap(bitmap);
+                    @Override
+                    public void onError(Exception e) {
+                    }
+                });
     }
 
+    /**
+     * Merges the two newest-first lists of conversations into the inbox.
+     */
+    private void showConversations() {
+        List<ConversationSummary> summaries = new ArrayList<>(directSummaries.size() + groupSummaries.size());
+        int direct = 0;
+        int groups = 0;
+        while (summaries.size() < RECENT_CONVERSATIONS_LIMIT
+                && (direct < directSummaries.size() || groups < groupSummaries.size())) {
+            if (groups == groupSummaries.size() || (direct < directSummaries.size()
+                    && directSummaries.get(direct).timestamp >= groupSummaries.get(groups).timestamp)) {
+                summaries.add(directSummaries.get(direct++));
+            } else {
+                summaries.add(groupSummaries.get(groups++));
+            }
+        }
+        conversationsAdapter.submitList(summaries, () ->
+                binding.conversationsRecyclerView.scrollToPosition(0));
+        binding.conversationsRecyclerView.setVisibility(summaries.isEmpty() ? View.GONE : View.VISIBLE);
+    }
+
+    /**
+     * Opens the chat with the other participant, or the group, of a conversation from the inbox.
+     *
+     * @param summary The summary of the clicked conversation.
+     */
+    @Override
+    public void onConversationClicked(ConversationSummary summary) {
+        Intent intent = new Intent(getApplicationContext(), ChatActivity.class);
+        if (summary.isGroup()) {
+            intent.putExtra(Constants.KEY_GROUP, summary.toGroup());
+        } else {
+            intent.putExtra(Constants.KEY_USER, summary.toUser());
+        }
+        startActivity(intent);
+    }
 
     /**
      * Displays a short Toast message on the screen.
@@ -90,7 +421,7 @@ public class MainActivity extends AppCompatActivity {
     }
     /**
      * Retrieves the Firebase Cloud Messaging (FCM) token for the device
-     * and updates it in the Firestore database.
+     * and stores it for the current user.
      */
     private void getToken() {
         FirebaseMessaging.getInstance().getToken().addOnSuccessListener(this::updateToken);
@@ -98,41 +429,61 @@ public class MainActivity extends AppCompatActivity {
 
 
     /**
-     * Updates the FCM token in the Firestore database for the current user.
+     * Updates the FCM token of the current user through the token repository.
      *
-     * @param token The FCM token to be updated in the database.
+     * @param token The FCM token to be stored.
      */
     private void updateToken(String token) {
-        FirebaseFirestore database = FirebaseFirestore.getInstance();
-        DocumentReference documentReference = database.collection(Constants.KEY_COLLECTION_USERS)
-                .document(preferenceManager.getString(Constants.KEY_USER_ID));
+        Repositories.getTokenRepository().updateToken(preferenceManager.getString(Constants.KEY_USER_ID), token,
+                new Callback<Void>() {
+                    @Override
+                    public void onSuccess(Void result) {
+                        showToast("Token updated successfully");
+                    }
 
-        documentReference.update(Constants.KEY_FCM_TOKEN, token)
-                .addOnSuccessListener(unused -> showToast("Token updated successfully"))
-                .addOnFailureListener(e -> showToast("Unable to update token"));
+                    @Override
+                    public void onFailure(Exception e) {
+                        showToast("Unable to update token");
+                    }
+                });
 
     }
     /**
-     * Signs the user out by deleting their FCM token from the Firestore database,
-     * clearing shared preferences, and redirecting to the SignInActivity.
+     * Signs the user out by deleting their FCM token through the token repository,
+     * clearing shared preferences and every local copy of the account's data, and
+     * redirecting to the SignInActivity.
      */
 
     private void SignOut() {
         showToast("Signing out ...");
-        FirebaseFirestore database = FirebaseFirestore.getInstance();
-        DocumentReference documentReference = database.collection(Constants.KEY_COLLECTION_USERS)
-                .document(preferenceManager.getString(Constants.KEY_USER_ID));
-        HashMap<String, Object> updates = new HashMap<>();
-        updates.put(Constants.KEY_FCM_TOKEN, FieldValue.delete());
-        documentReference.update(updates)
-                .addOnSuccessListener(unused -> {
-                    preferenceManager.clear();
-                    startActivity(new Intent(getApplicationContext(), SignInActivity.class));
-                    finish();
-                }).addOnFailureListener(e -> showToast("Unable to Sign Out"));
-
-    }
+        Repositories.getTokenRepository().deleteToken(preferenceManager.getString(Constants.KEY_USER_ID),
+                new Callback<Void>() {
+                    @Override
+                    public void onSuccess(Void result) {
+                        preferenceManager.clear();
+                        clearLocalData();
+                        startActivity(new Intent(getApplicationContext(), SignInActivity.class));
+                        finish();
+                    }
 
+                    @Override
+                    public void onFailure(Exception e) {
+                        showToast("Unable to Sign Out");
+                    }
+                });
 
+    }
 
-}
\ No newline at end of file
+    /**
+     * Wipes the stored messages, the user directory and the cached images, so that the
+     * next account to sign in on this device cannot see or search them.
+     */
+    private void clearLocalData() {
+        MessageStore messageStore = MessageStore.getInstance(getApplicationContext());
+        messageStore.getExecutor().execute(messageStore::clear);
+        UserStore userStore = UserStore.getInstance(getApplicationContext());
+        userStore.getExecutor().execute(userStore::clear);
+        AvatarCache.getInstance(getApplicationContext()).clear();
+        AttachmentLoader.getInstance(getApplicationContext()).clear();
+    }
+}
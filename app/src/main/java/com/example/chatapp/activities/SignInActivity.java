@@ -14,15 +14,15 @@ import androidx.core.view.WindowInsetsCompat;
 
 import com.example.chatapp.R;
 import com.example.chatapp.databinding.ActivitySignInBinding;
+import com.example.chatapp.models.User;
+import com.example.chatapp.repository.Callback;
+import com.example.chatapp.repository.Repositories;
 import com.example.chatapp.utilities.Constants;
 import com.example.chatapp.utilities.PreferenceManager;
-import com.google.firebase.firestore.DocumentSnapshot;
-import com.google.firebase.firestore.FirebaseFirestore;
 
-import java.util.HashMap;
 /**
  * SignInActivity handles the user sign-in process.
- * It validates user input, authenticates users against Firebase Firestore,
+ * It validates user input, authenticates users against the user repository,
  * and redirects them to the MainActivity upon successful login.
  */
 
@@ -73,37 +73,36 @@ public class SignInActivity extends AppCompatActivity {
     }
     /**
      * Authenticates the user by validating the provided email and password
-     * against the Firebase Firestore database. On success, it saves user details
+     * against the user repository. On success, it saves user details
      * in shared preferences and navigates to MainActivity.
      */
     private void SignIn(){
         loading(true);
-        FirebaseFirestore database = FirebaseFirestore.getInstance();
-
-        database.collection(Constants.KEY_COLLECTION_USERS)
-                .whereEqualTo(Constants.KEY_EMAIL,binding.inputEmail.getText().toString())
-                .whereEqualTo(Constants.KEY_PASSWORD,binding.inputPassowrd.getText().toString())
-                .get()
-                .addOnCompleteListener(task -> {
-                   if(task.isSuccessful() && task.getResult()!= null && task.getResult().getDocuments().size()>0) {
-                       DocumentSnapshot documentSnapshot = task.getResult().getDocuments().get(0);
-
-                       preferenceManager.putBoolean(Constants.KEY_IS_SIGNED_IN, true);
-                       preferenceManager.putString(Constants.KEY_USER_ID, documentSnapshot.getId());
-                       preferenceManager.putString(Constants.KEY_FIRST_NAME, documentSnapshot.getString(Constants.KEY_FIRST_NAME));
-                       preferenceManager.putString(Constants.KEY_IMAGE, documentSnapshot.getString(Constants.KEY_IMAGE));
-
-                       Intent intent = new Intent(getApplicationContext(), MainActivity.class);
-                       intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
-                       startActivity(intent);
-
-
-
-
-                   }else {
-                       loading(false);
-                       showToast("Unable to Sign in");
-                   }
+        Repositories.getUserRepository().findUser(binding.inputEmail.getText().toString(),
+                binding.inputPassowrd.getText().toString(), new Callback<User>() {
+                    @Override
+                    public void onSuccess(User user) {
+                        if (user == null) {
+                            loading(false);
+                            showToast("Unable to Sign in");
+                            return;
+                        }
+                        preferenceManager.edit(editor -> editor
+                                .putBoolean(Constants.KEY_IS_SIGNED_IN, true)
+                                .putString(Constants.KEY_USER_ID, user.id)
+                                .putString(Constants.KEY_FIRST_NAME, user.firstName)
+                                .putString(Constants.KEY_IMAGE_VERSION, user.imageVersion));
+
+                        Intent intent = new Intent(getApplicationContext(), MainActivity.class);
+                        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+                        startActivity(intent);
+                    }
+
+                    @Override
+                    public void onFailure(Exception e) {
+                        loading(false);
+                        showToast("Unable to Sign in");
+                    }
                 });
     }
 
@@ -2,11 +2,9 @@ package com.example.chatapp.activities;
 
 import android.content.Intent;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Bundle;
 import android.provider.MediaStore;
-import android.util.Base64;
 import android.util.Patterns;
 import android.view.View;
 import android.widget.Toast;
@@ -21,25 +19,32 @@ import androidx.core.view.WindowInsetsCompat;
 
 import com.example.chatapp.R;
 import com.example.chatapp.databinding.ActivitySignUpBinding;
+import com.example.chatapp.models.User;
+import com.example.chatapp.repository.Callback;
+import com.example.chatapp.repository.Repositories;
+import com.example.chatapp.utilities.Base64Codec;
 import com.example.chatapp.utilities.Constants;
+import com.example.chatapp.utilities.ImageEncoder;
 import com.example.chatapp.utilities.PreferenceManager;
-import com.google.firebase.firestore.FirebaseFirestore;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.FileNotFoundException;
-import java.io.InputStream;
 import java.util.HashMap;
+import java.util.Map;
 /**
  * SignUpActivity handles the user registration process.
  * It allows users to input their details, select a profile image,
- * and save their information to Firebase Firestore. Successful registration
+ * and register them through the user repository. Successful registration
  * redirects users to the MainActivity.
  */
 public class SignUpActivity extends AppCompatActivity {
+    /**
+     * Size budget of each stored avatar resolution before Base64, matching {@link Constants#AVATAR_SIZES}.
+     */
+    private static final int[] IMAGE_MAX_BYTES = {3 * 1024, 12 * 1024};
+
 private ActivitySignUpBinding binding;
 private PreferenceManager preferenceManager;
-private String encodeImage;
+private String[] encodedImages;
 
     /**
      * Called when the activity is starting. Initializes the activity's UI
@@ -90,81 +95,74 @@ private String encodeImage;
         Toast.makeText(getApplicationContext(), message, Toast.LENGTH_SHORT).show();
     }
     /**
-     * Handles the user registration process. Saves the user's details
-     * (including profile picture) to Firebase Firestore and navigates
-     * to MainActivity on success.
+     * Handles the user registration process. Registers the user through the user
+     * repository together with one avatar per stored resolution, then navigates to
+     * MainActivity on success. The user document itself only carries the avatar version.
      */
     private void SignUp() {
         //check loading
         loading(true);
-        //Post to Firebase
-        FirebaseFirestore database = FirebaseFirestore.getInstance();
-        HashMap<String,String> user = new HashMap<>();
-        user.put(Constants.KEY_FIRST_NAME,binding.inputFirstName.getText().toString());
-        user.put(Constants.KEY_LAST_NAME,binding.inputLastName.getText().toString());
-        user.put(Constants.KEY_EMAIL,binding.inputEmail.getText().toString());
-        user.put(Constants.KEY_PASSWORD,binding.inputPassowrd.getText().toString());
-        user.put(Constants.KEY_IMAGE, encodeImage);
-        database.collection(Constants.KEY_COLLECTION_USERS)
-                .add(user)
-                .addOnSuccessListener(documentReference -> {
-
-                    loading(false);
-                    preferenceManager.putBoolean(Constants.KEY_IS_SIGNED_IN, true);
-                    preferenceManager.putString(Constants.KEY_FIRST_NAME, binding.inputFirstName.getText().toString());
-
-                    preferenceManager.putString(Constants.KEY_IMAGE, encodeImage);
-
-                    Intent intent = new Intent(getApplicationContext(), MainActivity.class);
-                    intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
-                    startActivity(intent);
-
-                }).addOnFailureListener( exception -> {
-                    loading(false);
-                    showToast(exception.getMessage());
+        User user = new User();
+        user.firstName = binding.inputFirstName.getText().toString();
+        user.lastName = binding.inputLastName.getText().toString();
+        user.email = binding.inputEmail.getText().toString();
+        user.imageVersion = Integer.toHexString(encodedImages[encodedImages.length - 1].hashCode());
+        Map<Integer, String> avatars = new HashMap<>();
+        for (int i = 0; i < Constants.AVATAR_SIZES.length; i++) {
+            avatars.put(Constants.AVATAR_SIZES[i], encodedImages[i]);
+        }
+        Repositories.getUserRepository().createUser(user, binding.inputPassowrd.getText().toString(), avatars,
+                new Callback<User>() {
+                    @Override
+                    public void onSuccess(User created) {
+                        loading(false);
+                        preferenceManager.edit(editor -> editor
+                                .putBoolean(Constants.KEY_IS_SIGNED_IN, true)
+                                .putString(Constants.KEY_USER_ID, created.id)
+                                .putString(Constants.KEY_FIRST_NAME, created.firstName)
+                                .putString(Constants.KEY_IMAGE_VERSION, created.imageVersion));
+
+                        Intent intent = new Intent(getApplicationContext(), MainActivity.class);
+                        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+                        startActivity(intent);
+                    }
+
+                    @Override
+                    public void onFailure(Exception e) {
+                        loading(false);
+                        showToast(e.getMessage());
+                    }
                 });
 
     }
     /**
-     * Encodes a Bitmap image to a Base64 string for storage.
-     *
-     * @param bitmap The image to encode.
-     * @return The Base64 encoded string of the image.
+     * Handles the picked image. The photo is decoded near the largest avatar size, rotated
+     * according to its EXIF orientation and compressed at every stored avatar resolution,
+     * all in the background; the preview is shown once encoding finishes.
      */
-    private String encodeImage(Bitmap bitmap) {
-        int previewWidth = 150;
-        int previewHeight = bitmap.getHeight()*previewWidth / bitmap.getWidth();
-
-        Bitmap previewBitmap = Bitmap.createScaledBitmap(bitmap, previewWidth, previewHeight, false);
-
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-
-        previewBitmap.compress(Bitmap.CompressFormat.JPEG, 50, byteArrayOutputStream);
-
-        byte[] bytes = byteArrayOutputStream.toByteArray();
-        return Base64.encodeToString(bytes,Base64.DEFAULT);
-
-
-    }
-
     private final ActivityResultLauncher<Intent> pickImage = registerForActivityResult(
             new ActivityResultContracts.StartActivityForResult(),
             result ->{
-                if(result.getResultCode() == RESULT_OK) {
+                if(result.getResultCode() == RESULT_OK && result.getData() != null) {
                     Uri imageUri = result.getData().getData();
-                    try {
-                        InputStream inputStream = getContentResolver().openInputStream(imageUri);
-                        Bitmap bitmap = BitmapFactory.decodeStream(inputStream);
-                        binding.imageProfile.setImageBitmap(bitmap);
-                        binding.textAddImage.setVisibility(View.GONE);
-                        encodeImage = encodeImage(bitmap);
-
-
-
-
-                    }catch (FileNotFoundException e) {
-                        e.printStackTrace();
-                    }
+                    ImageEncoder.encodeAsync(getContentResolver(), imageUri, Constants.AVATAR_SIZES, IMAGE_MAX_BYTES,
+                            new ImageEncoder.Callback() {
+                                @Override
+                                public void onEncoded(Bitmap preview, byte[][] images) {
+                                    binding.imageProfile.setImageBitmap(preview);
+                                    binding.textAddImage.setVisibility(View.GONE);
+                                    // Avatars are a few kilobytes; encoding them here is cheap.
+                                    encodedImages = new String[images.length];
+                                    for (int i = 0; i < images.length; i++) {
+                                        encodedImages[i] = Base64Codec.encode(images[i]);
+                                    }
+                                }
+
+                                @Override
+                                public void onError() {
+                                    showToast("Unable to load image");
+                                }
+                            });
                 }
             }
     );
@@ -177,7 +175,7 @@ private String encodeImage;
      */
 
     private Boolean isValidateSignUpDetails() {
-        if (encodeImage == null) {
+        if (encodedImages == null) {
             showToast("Please select your image");
             return  false;
         }
@@ -2,30 +2,70 @@ package com.example.chatapp.activities;
 
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.TextUtils;
+import android.text.TextWatcher;
 import android.view.View;
 
 import androidx.appcompat.app.AppCompatActivity;
 
+import com.example.chatapp.R;
 import com.example.chatapp.adapters.UsersAdapter;
+import com.example.chatapp.database.UserStore;
 import com.example.chatapp.databinding.ActivityUserBinding;
+import com.example.chatapp.firebase.UserDirectory;
 import com.example.chatapp.listeners.UserListener;
+import com.example.chatapp.models.Group;
 import com.example.chatapp.models.User;
+import com.example.chatapp.repository.Callback;
+import com.example.chatapp.repository.Repositories;
 import com.example.chatapp.utilities.Constants;
+import com.example.chatapp.utilities.Metrics;
+import com.example.chatapp.utilities.MetricsOverlay;
 import com.example.chatapp.utilities.PreferenceManager;
-import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.example.chatapp.utilities.UserSearchIndex;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 /**
- * userActivity displays a list of available users retrieved from Firebase Firestore.
+ * userActivity displays a list of available users, kept in sync with Firebase Firestore
+ * by a {@link UserDirectory}, and filters it as the user types through an in-memory
+ * {@link UserSearchIndex}.
  * It allows the current user to select a user to initiate a chat, which redirects them
- * to the ChatActivity.
+ * to the ChatActivity. Long-clicking users selects them instead, to start a group with them.
  */
 public class  userActivity extends AppCompatActivity implements UserListener {
 
+    /**
+     * Maximum number of users shown for a search.
+     */
+    private static final int SEARCH_LIMIT = 50;
+
+    /**
+     * Pause in typing after which the server is asked while the local index is not ready.
+     */
+    private static final long SERVER_SEARCH_DELAY_MS = 300;
+
+    private static final Metrics.Histogram LOAD_TIME = Metrics.histogram("users.load");
+
     private ActivityUserBinding binding;
     private PreferenceManager preferenceManager;
+    private UsersAdapter usersAdapter;
+    private UserDirectory userDirectory;
+
+    private final UserSearchIndex searchIndex = new UserSearchIndex();
+    private final ExecutorService indexExecutor = Executors.newSingleThreadExecutor();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable serverSearch = this::searchServer;
+    private List<User> directoryUsers = Collections.emptyList();
+    private boolean indexScheduled;
+    private boolean indexReady;
+    private MetricsOverlay metricsOverlay;
     /**
      * Called when the activity is starting. Initializes the activity's UI,
      * sets up event listeners, and retrieves the list of users from Firestore.
@@ -44,58 +84,184 @@ public class  userActivity extends AppCompatActivity implements UserListener {
         getUser();
     }
 
+    /**
+     * Shows the metrics overlay if it was turned on.
+     */
+    @Override
+    protected void onStart() {
+        super.onStart();
+        metricsOverlay = MetricsOverlay.attach(this);
+    }
+
+    /**
+     * Removes the metrics overlay and dumps the metrics.
+     */
+    @Override
+    protected void onStop() {
+        super.onStop();
+        if (metricsOverlay != null) {
+            metricsOverlay.detach();
+            metricsOverlay = null;
+        }
+    }
+
+    /**
+     * Stops the directory listener and the index builder when the activity is destroyed.
+     */
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        userDirectory.stop();
+        handler.removeCallbacks(serverSearch);
+        indexExecutor.shutdownNow();
+    }
+
     /**
      * Sets up click listeners for UI elements such as the back button.
      */
 
     private void setListeners() {
         binding.imageBack.setOnClickListener(v -> onBackPressed());
+        binding.textCreateGroup.setOnClickListener(v -> createGroup());
+        binding.inputSearch.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                showUsers();
+            }
+        });
     }
 
     /**
-     * Retrieves the list of users from Firebase Firestore, excluding the current user.
-     * Displays the list in a RecyclerView using the `UsersAdapter`. Shows an error message
-     * if no users are available.
+     * Shows the users of the local directory cache, excluding the current user, then
+     * applies only the users added or changed since the cache was last updated.
+     * Shows an error message if no users are available. The time until the first list
+     * is shown is recorded as {@code users.load}.
      */
     private void getUser() {
     loading(true);
-        FirebaseFirestore database = FirebaseFirestore.getInstance();
-        database.collection(Constants.KEY_COLLECTION_USERS).get()
-                .addOnCompleteListener(task -> {
-                    loading(false);
-                    String currentUserId= preferenceManager.getString(Constants.KEY_USER_ID);
-                    if(task.isSuccessful() && task.getResult()!= null) {
-                        List<User> users = new ArrayList<>();
-                        for(QueryDocumentSnapshot queryDocumentSnapshot : task.getResult()) {
-                            if(currentUserId.equals(queryDocumentSnapshot.getId())) {
-                                continue;
-                            }
-                           User user = new User();
-                            user.firstName = queryDocumentSnapshot.getString(Constants.KEY_FIRST_NAME);
-                            user.email = queryDocumentSnapshot.getString(Constants.KEY_EMAIL);
-                            user.image = queryDocumentSnapshot.getString(Constants.KEY_IMAGE);
-                            user.token = queryDocumentSnapshot.getString(Constants.KEY_FCM_TOKEN);
-                            user.id = queryDocumentSnapshot.getId();
-                            users.add(user);
-
-
-
-
-                        }
-
-                        if(users.size() > 0) {
-                            UsersAdapter usersAdapter = new UsersAdapter(users, this);
-                            binding.userRecyclerView.setAdapter(usersAdapter);
-                            binding.userRecyclerView.setVisibility(View.VISIBLE);
-
-                        }else {
-                            showErrorMesssage();
-                        }
-                    }else {
-                        showErrorMesssage();
+        long start = System.nanoTime();
+        usersAdapter = new UsersAdapter(this);
+        binding.userRecyclerView.setAdapter(usersAdapter);
+        userDirectory = new UserDirectory(Repositories.getUserRepository(),
+                UserStore.getInstance(getApplicationContext()),
+                preferenceManager.getString(Constants.KEY_USER_ID));
+        userDirectory.start(new UserDirectory.Listener() {
+            private boolean loaded;
+
+            @Override
+            public void onDirectoryChanged(List<User> users, List<User> changed, List<String> removedIds) {
+                if (!loaded) {
+                    loaded = true;
+                    LOAD_TIME.recordSince(start);
+                }
+                loading(false);
+                directoryUsers = users;
+                indexUsers(users, changed, removedIds);
+                if (users.size() > 0) {
+                    showUsers();
+                    binding.textErrorMessage.setVisibility(View.GONE);
+                    binding.userRecyclerView.setVisibility(View.VISIBLE);
+                } else {
+                    showErrorMesssage();
+                }
+            }
+
+            @Override
+            public void onError() {
+                loading(false);
+                showErrorMesssage();
+            }
+        });
+    }
+    /**
+     * Builds the search index from the first directory load, then applies each change
+     * incrementally, all on the index thread. The current search is refreshed once the
+     * new index is in place.
+     *
+     * @param users      The full directory.
+     * @param changed    The users added or updated since the previous call.
+     * @param removedIds The ids of the users deleted since the previous call.
+     */
+    private void indexUsers(List<User> users, List<User> changed, List<String> removedIds) {
+        boolean rebuild = !indexScheduled;
+        indexScheduled = true;
+        indexExecutor.execute(() -> {
+            if (rebuild) {
+                searchIndex.rebuild(users);
+            } else {
+                searchIndex.update(changed, removedIds);
+            }
+            runOnUiThread(() -> {
+                indexReady = true;
+                if (!isDestroyed() && getQuery().length() > 0) {
+                    showUsers();
+                }
+            });
+        });
+    }
+
+    /**
+     * Shows the whole directory, or the users matching the search box. Searches are
+     * answered from the local index; only while it is still being built is the server
+     * asked, once typing pauses.
+     */
+    private void showUsers() {
+        handler.removeCallbacks(serverSearch);
+        String query = getQuery();
+        if (query.isEmpty()) {
+            usersAdapter.submitList(directoryUsers);
+        } else if (indexReady) {
+            usersAdapter.submitList(searchIndex.search(query, SEARCH_LIMIT));
+        } else {
+            handler.postDelayed(serverSearch, SERVER_SEARCH_DELAY_MS);
+        }
+    }
+
+    /**
+     * Runs a prefix query on the lowercased first name. Results are dropped if the
+     * search box changed or the local index became ready in the meantime.
+     */
+    private void searchServer() {
+        String query = getQuery();
+        String prefix = UserSearchIndex.normalize(query);
+        if (prefix.isEmpty()) {
+            return;
+        }
+        String currentUserId = preferenceManager.getString(Constants.KEY_USER_ID);
+        Repositories.getUserRepository().searchUsers(prefix, SEARCH_LIMIT, new Callback<List<User>>() {
+            @Override
+            public void onSuccess(List<User> result) {
+                if (indexReady || isDestroyed() || !query.equals(getQuery())) {
+                    return;
+                }
+                List<User> users = new ArrayList<>(result.size());
+                for (User user : result) {
+                    if (!currentUserId.equals(user.id)) {
+                        users.add(user);
                     }
-                });
+                }
+                usersAdapter.submitList(users);
+                binding.userRecyclerView.setVisibility(View.VISIBLE);
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+            }
+        });
     }
+
+    private String getQuery() {
+        return binding.inputSearch.getText().toString().trim();
+    }
+
     /**
      * Displays an error message on the screen when no users are available.
      */
@@ -126,9 +292,47 @@ public class  userActivity extends AppCompatActivity implements UserListener {
      */
     @Override
     public void onUserClicked(User user) {
+        if (!usersAdapter.getSelectedUsers().isEmpty()) {
+            onUserLongClicked(user);
+            return;
+        }
         Intent intent = new Intent(getApplicationContext(), ChatActivity.class);
         intent.putExtra(Constants.KEY_USER, user);
         startActivity(intent);
         finish();
     }
-}
\ No newline at end of file
+
+    /**
+     * Selects or deselects a user as a member of a new group. While any user is selected,
+     * a click also toggles selection, and the button to create the group is shown.
+     *
+     * @param user The User object representing the long-clicked user.
+     */
+    @Override
+    public void onUserLongClicked(User user) {
+        int selected = usersAdapter.toggleSelected(user);
+        binding.textCreateGroup.setVisibility(selected > 0 ? View.VISIBLE : View.GONE);
+        binding.textCreateGroup.setText(getString(R.string.create_group, selected));
+    }
+
+    /**
+     * Creates a group of the signed-in user and the selected users, named after its
+     * members, and opens it.
+     */
+    private void createGroup() {
+        List<User> selected = usersAdapter.getSelectedUsers();
+        List<String> members = new ArrayList<>(selected.size() + 1);
+        List<String> names = new ArrayList<>(selected.size() + 1);
+        members.add(preferenceManager.getString(Constants.KEY_USER_ID));
+        names.add(preferenceManager.getString(Constants.KEY_FIRST_NAME));
+        for (User user : selected) {
+            members.add(user.id);
+            names.add(user.firstName);
+        }
+        Group group = Repositories.getChatRepository().createGroup(TextUtils.join(", ", names), members);
+        Intent intent = new Intent(getApplicationContext(), ChatActivity.class);
+        intent.putExtra(Constants.KEY_GROUP, group);
+        startActivity(intent);
+        finish();
+    }
+}
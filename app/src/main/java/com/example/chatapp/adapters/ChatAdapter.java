@@ -1,49 +1,175 @@
 package com.example.chatapp.adapters;
 
-import android.graphics.Bitmap;
 import android.view.LayoutInflater;
+import android.view.View;
 import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
+import com.example.chatapp.R;
+import com.example.chatapp.databinding.ItemContainerReceivedImageBinding;
 import com.example.chatapp.databinding.ItemContainerReceivedMessageBinding;
+import com.example.chatapp.databinding.ItemContainerSentImageBinding;
 import com.example.chatapp.databinding.ItemContainerSentMessageBinding;
 import com.example.chatapp.models.ChatMessage;
+import com.example.chatapp.models.Group;
+import com.example.chatapp.models.User;
+import com.example.chatapp.utilities.AttachmentLoader;
+import com.example.chatapp.utilities.AvatarCache;
+import com.example.chatapp.utilities.Metrics;
+import com.example.chatapp.utilities.MessageFormatter;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 
 /**
- * ChatAdapter is a RecyclerView.Adapter that handles displaying chat messages.
- * It supports two types of views: sent messages and received messages.
+ * ChatAdapter is a ListAdapter that handles displaying chat messages.
+ * It supports four types of views: sent and received text messages, and sent and
+ * received image messages, which show the inline thumbnail until
+ * {@link AttachmentLoader} has the full image.
+ * Lists submitted through {@link #submitList} are diffed off the main thread,
+ * so only the rows that actually changed are inserted or rebound.
+ * Sent messages show whether they were delivered to or read by the receiver,
+ * derived from the receiver's high-water marks rather than stored per message.
+ * <p>
+ * Received messages show their sender's avatar, looked up by sender id, so one adapter
+ * serves both a conversation between two users and a group. Avatars come from the
+ * shared {@link AvatarCache}, which decodes each member's avatar once however many of
+ * their messages are on screen. In a group, received messages also show the sender's name.
  */
-public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+public class ChatAdapter extends ListAdapter<ChatMessage, RecyclerView.ViewHolder> {
 
-    private Bitmap receiverProfileImage;
-    private final List<ChatMessage> chatMessages;
-
-    private final String sendId;
+    private final Map<String, User> senders = new HashMap<>();
+    private final boolean group;
 
     public static final int  VIEW_TYPE_SENT = 1;
 
     public static final int     VIEW_TYPE_RECEIVED = 2;
 
+    public static final int VIEW_TYPE_SENT_IMAGE = 3;
+
+    public static final int VIEW_TYPE_RECEIVED_IMAGE = 4;
+
+    /**
+     * Bounds of an image bubble's height relative to its width, so that very tall or
+     * wide images neither take over the screen nor shrink to a strip.
+     */
+    private static final float MIN_IMAGE_ASPECT = 0.5f;
+    private static final float MAX_IMAGE_ASPECT = 4f / 3f;
+
+    /**
+     * Opacity of a sent message the server has not accepted yet.
+     */
+    private static final float PENDING_ALPHA = 0.6f;
+
+    /**
+     * Payload of a rebind that only updates the delivery state of a sent message.
+     */
+    private static final Object PAYLOAD_RECEIPTS = new Object();
+
+    private static final StatusFormat READ_STATUS = new StatusFormat(R.string.status_read);
+    private static final StatusFormat DELIVERED_STATUS = new StatusFormat(R.string.status_delivered);
+
+    /**
+     * Payload of a rebind that only updates the avatar and name of a received message.
+     */
+    private static final Object PAYLOAD_SENDER = new Object();
+
+    private static final Metrics.Histogram BIND_TIME = Metrics.histogram("chat.bind");
+
+    private long deliveredUpTo;
+    private long readUpTo;
+
+
+    private static final DiffUtil.ItemCallback<ChatMessage> DIFF_CALLBACK = new DiffUtil.ItemCallback<ChatMessage>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull ChatMessage oldItem, @NonNull ChatMessage newItem) {
+            return oldItem.id.equals(newItem.id);
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull ChatMessage oldItem, @NonNull ChatMessage newItem) {
+            return Objects.equals(oldItem.message, newItem.message)
+                    && Objects.equals(oldItem.blobId, newItem.blobId)
+                    && oldItem.timestamp == newItem.timestamp
+                    && oldItem.pending == newItem.pending
+                    && oldItem.failed == newItem.failed;
+        }
+    };
+
 
     /**
-     * Constructor to initialize the ChatAdapter with chat messages, receiver's profile image, and sender ID.
+     * Constructor to initialize the ChatAdapter with the receiver.
+     * Messages are supplied later through {@link #submitList}, already flagged as
+     * sent or received by {@link com.example.chatapp.utilities.SortedMessageList}.
      *
-     * @param chatMessages       List of chat messages.
-     * @param receiverProfileImage Bitmap of the receiver's profile image.
-     * @param sendId             The ID of the sender (current user).
+     * @param receiverUser The receiver, whose avatar is shown next to received messages.
      */
 
-    public ChatAdapter(List<ChatMessage>chatMessages,Bitmap receiverProfileImage, String sendId) {
-        this.chatMessages = chatMessages;
-        this.receiverProfileImage = receiverProfileImage;
-        this.sendId = sendId;
+    public ChatAdapter(User receiverUser) {
+        this(false);
+        senders.put(receiverUser.id, receiverUser);
     }
+
     /**
-     * Inflates the appropriate view based on the view type (sent or received).
+     * Constructor to initialize the ChatAdapter for a group. The members are supplied
+     * through {@link #setSenders} once they were read from the local user directory.
+     *
+     * @param group The group.
+     */
+    public ChatAdapter(Group group) {
+        this(true);
+    }
+
+    private ChatAdapter(boolean group) {
+        super(DIFF_CALLBACK);
+        this.group = group;
+        setHasStableIds(true);
+    }
+
+    /**
+     * Adds or updates the users whose messages are shown, and rebinds the avatar and
+     * name of the received messages they sent.
+     *
+     * @param users The senders.
+     */
+    public void setSenders(Collection<User> users) {
+        for (User user : users) {
+            senders.put(user.id, user);
+        }
+        List<ChatMessage> messages = getCurrentList();
+        for (int i = 0; i < messages.size(); i++) {
+            ChatMessage chatMessage = messages.get(i);
+            if (!chatMessage.sent) {
+                notifyItemChanged(i, PAYLOAD_SENDER);
+            }
+        }
+    }
+
+    /**
+     * Returns the sender of a received message, or a user without avatar or name if the
+     * sender is not known, for example a member missing from the local directory.
+     */
+    private User getSender(ChatMessage chatMessage) {
+        User sender = senders.get(chatMessage.senderId);
+        if (sender == null) {
+            sender = new User();
+            sender.id = chatMessage.senderId;
+        }
+        return sender;
+    }
+    /**
+     * Inflates the appropriate view based on the view type.
      *
      * @param parent   The parent ViewGroup into which the new view will be added.
      * @param viewType The type of the view to create.
@@ -55,6 +181,12 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
         if(viewType == VIEW_TYPE_SENT) {
             return new SentMessageViewHolder(ItemContainerSentMessageBinding
                     .inflate(LayoutInflater.from(parent.getContext()),parent,false));
+        } else if (viewType == VIEW_TYPE_SENT_IMAGE) {
+            return new SentImageViewHolder(ItemContainerSentImageBinding
+                    .inflate(LayoutInflater.from(parent.getContext()), parent, false));
+        } else if (viewType == VIEW_TYPE_RECEIVED_IMAGE) {
+            return new ReceivedImageViewHolder(ItemContainerReceivedImageBinding
+                    .inflate(LayoutInflater.from(parent.getContext()), parent, false));
         }else {
             return new ReceiverMessageViewHolder(ItemContainerReceivedMessageBinding
                     .inflate(LayoutInflater.from(parent.getContext()),parent, false));
@@ -69,36 +201,196 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
 
     @Override
     public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
-        if (getItemViewType(position) == VIEW_TYPE_SENT) {
-            ((SentMessageViewHolder)holder).setData(chatMessages.get(position));
+        long start = System.nanoTime();
+        int viewType = getItemViewType(position);
+        if (viewType == VIEW_TYPE_SENT) {
+            ((SentMessageViewHolder)holder).setData(getItem(position), deliveredUpTo, readUpTo);
+        } else if (viewType == VIEW_TYPE_SENT_IMAGE) {
+            ((SentImageViewHolder) holder).setData(getItem(position), deliveredUpTo, readUpTo);
+        } else if (viewType == VIEW_TYPE_RECEIVED_IMAGE) {
+            ReceivedImageViewHolder receivedImageViewHolder = (ReceivedImageViewHolder) holder;
+            receivedImageViewHolder.setData(getItem(position));
+            receivedImageViewHolder.setSender(getSender(getItem(position)), group);
         }else {
-            ((ReceiverMessageViewHolder)holder).setData(chatMessages.get(position), receiverProfileImage);
+            ReceiverMessageViewHolder receiverMessageViewHolder = (ReceiverMessageViewHolder) holder;
+            receiverMessageViewHolder.setData(getItem(position));
+            receiverMessageViewHolder.setSender(getSender(getItem(position)), group);
         }
+        BIND_TIME.recordSince(start);
     }
     /**
-     * Returns the total number of items in the data set held by the adapter.
+     * Binds only the delivery state, or only the sender, when that is all that changed.
      *
-     * @return The total number of items.
+     * @param holder   The ViewHolder to bind data to.
+     * @param position The position of the item within the adapter's data set.
+     * @param payloads Partial-bind payloads, or empty for a full bind.
      */
     @Override
-    public int getItemCount() {
-        return chatMessages.size();
+    public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position,
+                                 @NonNull List<Object> payloads) {
+        if (payloads.contains(PAYLOAD_RECEIPTS) && holder instanceof SentMessageViewHolder) {
+            ((SentMessageViewHolder) holder).setStatus(getItem(position), deliveredUpTo, readUpTo);
+        } else if (payloads.contains(PAYLOAD_RECEIPTS) && holder instanceof SentImageViewHolder) {
+            ((SentImageViewHolder) holder).setStatus(getItem(position), deliveredUpTo, readUpTo);
+        } else if (payloads.contains(PAYLOAD_SENDER) && holder instanceof ReceiverMessageViewHolder) {
+            ((ReceiverMessageViewHolder) holder).setSender(getSender(getItem(position)), group);
+        } else if (payloads.contains(PAYLOAD_SENDER) && holder instanceof ReceivedImageViewHolder) {
+            ((ReceivedImageViewHolder) holder).setSender(getSender(getItem(position)), group);
+        } else {
+            super.onBindViewHolder(holder, position, payloads);
+        }
+    }
+
+    /**
+     * Updates the receiver's delivery and read marks. Only the sent messages whose
+     * state changed are rebound: those newer than the lower of the old marks, found by
+     * walking back from the newest message.
+     *
+     * @param deliveredUpTo Messages up to this timestamp reached the receiver.
+     * @param readUpTo      Messages up to this timestamp were read by the receiver.
+     */
+    public void setReceipts(long deliveredUpTo, long readUpTo) {
+        long changedAfter = Math.min(Math.min(this.deliveredUpTo, deliveredUpTo), Math.min(this.readUpTo, readUpTo));
+        this.deliveredUpTo = deliveredUpTo;
+        this.readUpTo = readUpTo;
+        List<ChatMessage> messages = getCurrentList();
+        for (int i = messages.size() - 1; i >= 0 && messages.get(i).timestamp > changedAfter; i--) {
+            if (messages.get(i).sent) {
+                notifyItemChanged(i, PAYLOAD_RECEIPTS);
+            }
+        }
+    }
+
+    /**
+     * Cancels the pending avatar decode or image fetch of a recycled row.
+     *
+     * @param holder The ViewHolder being recycled.
+     */
+    @Override
+    public void onViewRecycled(@NonNull RecyclerView.ViewHolder holder) {
+        super.onViewRecycled(holder);
+        if (holder instanceof ReceiverMessageViewHolder) {
+            ((ReceiverMessageViewHolder) holder).cancelImage();
+        } else if (holder instanceof SentImageViewHolder) {
+            ((SentImageViewHolder) holder).cancelImage();
+        } else if (holder instanceof ReceivedImageViewHolder) {
+            ((ReceivedImageViewHolder) holder).cancelImage();
+        }
+    }
+    /**
+     * Returns the stable id of the message at the given position.
+     *
+     * @param position The position of the item.
+     * @return The stable id derived from the message's document id.
+     */
+    @Override
+    public long getItemId(int position) {
+        return getItem(position).getStableId();
     }
     /**
      * Determines the view type for a given position in the list.
      *
      * @param position The position of the item.
-     * @return The view type (VIEW_TYPE_SENT or VIEW_TYPE_RECEIVED).
+     * @return One of the VIEW_TYPE constants.
      */
     @Override
     public int getItemViewType(int position) {
-        if(chatMessages.get(position).senderId.equals(sendId)) {
+        ChatMessage chatMessage = getItem(position);
+        if (chatMessage.isImage()) {
+            return chatMessage.sent ? VIEW_TYPE_SENT_IMAGE : VIEW_TYPE_RECEIVED_IMAGE;
+        }
+        if(chatMessage.sent) {
             return VIEW_TYPE_SENT;
         }else {
             return VIEW_TYPE_RECEIVED;
         }
     }
 
+    /**
+     * Shows the time of a sent message with its delivery state: sending, not sent, sent,
+     * delivered or read.
+     */
+    static void bindStatus(TextView textDateTime, ChatMessage chatMessage, long deliveredUpTo, long readUpTo) {
+        if (chatMessage.pending) {
+            textDateTime.setText(R.string.sending);
+            return;
+        }
+        if (chatMessage.failed) {
+            textDateTime.setText(R.string.not_sent);
+            return;
+        }
+        String dateTime = MessageFormatter.getReadableDateTime(chatMessage.timestamp);
+        if (chatMessage.timestamp <= readUpTo) {
+            textDateTime.setText(READ_STATUS.format(textDateTime, dateTime));
+        } else if (chatMessage.timestamp <= deliveredUpTo) {
+            textDateTime.setText(DELIVERED_STATUS.format(textDateTime, dateTime));
+        } else {
+            textDateTime.setText(dateTime);
+        }
+    }
+
+    /**
+     * Caches a status string formatted around a date-time. {@link MessageFormatter} returns
+     * the same instance for every message of a minute, so the date-time is matched by
+     * identity and a rebind does not allocate. Main thread only, like the formatter.
+     */
+    private static final class StatusFormat {
+        private static final int CACHE_SIZE = 64;
+
+        private final int resId;
+        private final String[] dateTimes = new String[CACHE_SIZE];
+        private final String[] values = new String[CACHE_SIZE];
+        private Locale locale;
+
+        StatusFormat(int resId) {
+            this.resId = resId;
+        }
+
+        String format(TextView textView, String dateTime) {
+            Locale current = Locale.getDefault();
+            if (current != locale) {
+                locale = current;
+                Arrays.fill(dateTimes, null);
+            }
+            int slot = System.identityHashCode(dateTime) & (CACHE_SIZE - 1);
+            if (dateTimes[slot] != dateTime) {
+                dateTimes[slot] = dateTime;
+                values[slot] = textView.getContext().getString(resId, dateTime);
+            }
+            return values[slot];
+        }
+    }
+
+    /**
+     * Sizes an image bubble to the image's aspect ratio within bounds, so the row does not
+     * jump when the full image replaces the thumbnail, then starts loading the image.
+     */
+    static void bindImage(ImageView imageView, TextView caption, ChatMessage chatMessage) {
+        ViewGroup.LayoutParams layoutParams = imageView.getLayoutParams();
+        int width = layoutParams.width;
+        float aspect = chatMessage.imageWidth > 0 && chatMessage.imageHeight > 0
+                ? (float) chatMessage.imageHeight / chatMessage.imageWidth
+                : 1f;
+        int height = Math.round(width * Math.max(MIN_IMAGE_ASPECT, Math.min(MAX_IMAGE_ASPECT, aspect)));
+        if (layoutParams.height != height) {
+            layoutParams.height = height;
+            imageView.setLayoutParams(layoutParams);
+        }
+        AttachmentLoader.getInstance(imageView.getContext()).load(imageView, chatMessage, width);
+        boolean hasCaption = chatMessage.message != null && !chatMessage.message.isEmpty();
+        caption.setVisibility(hasCaption ? View.VISIBLE : View.GONE);
+        caption.setText(chatMessage.message);
+    }
+
+    /**
+     * Shows the avatar of a received message's sender and, in a group, their name.
+     */
+    static void bindSender(ImageView imageProfile, TextView textName, User sender, boolean group) {
+        AvatarCache.getInstance(imageProfile.getContext()).load(imageProfile, sender);
+        textName.setVisibility(group ? View.VISIBLE : View.GONE);
+        textName.setText(group ? sender.firstName : null);
+    }
+
     static class SentMessageViewHolder extends RecyclerView.ViewHolder {
 
         private final ItemContainerSentMessageBinding binding;
@@ -118,10 +410,14 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
          * @param chatMessage The ChatMessage object containing message details.
          */
 
-        void setData(ChatMessage chatMessage) {
+        void setData(ChatMessage chatMessage, long deliveredUpTo, long readUpTo) {
             binding.textMessage.setText(chatMessage.message);
-            binding.textDateTime.setText(chatMessage.dateTime);
+            binding.textMessage.setAlpha(chatMessage.pending ? PENDING_ALPHA : 1f);
+            setStatus(chatMessage, deliveredUpTo, readUpTo);
+        }
 
+        void setStatus(ChatMessage chatMessage, long deliveredUpTo, long readUpTo) {
+            bindStatus(binding.textDateTime, chatMessage, deliveredUpTo, readUpTo);
         }
 
 
@@ -138,11 +434,63 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
         }
 
 
-        void setData(ChatMessage chatMessage, Bitmap receiverProfileImage ) {
+        void setData(ChatMessage chatMessage) {
             binding.textMessage.setText(chatMessage.message);
-            binding.textDateTime.setText(chatMessage.dateTime);
+            binding.textDateTime.setText(MessageFormatter.getReadableDateTime(chatMessage.timestamp));
+        }
+
+        void setSender(User sender, boolean group) {
+            bindSender(binding.imageProfile, binding.textName, sender, group);
+        }
+
+        void cancelImage() {
+            AvatarCache.getInstance(binding.getRoot().getContext()).cancel(binding.imageProfile);
+        }
+    }
+
+    static class SentImageViewHolder extends RecyclerView.ViewHolder {
+        private final ItemContainerSentImageBinding binding;
+
+        SentImageViewHolder(ItemContainerSentImageBinding itemContainerSentImageBinding) {
+            super(itemContainerSentImageBinding.getRoot());
+            binding = itemContainerSentImageBinding;
+        }
+
+        void setData(ChatMessage chatMessage, long deliveredUpTo, long readUpTo) {
+            bindImage(binding.imageAttachment, binding.textMessage, chatMessage);
+            binding.imageAttachment.setAlpha(chatMessage.pending ? PENDING_ALPHA : 1f);
+            setStatus(chatMessage, deliveredUpTo, readUpTo);
+        }
+
+        void setStatus(ChatMessage chatMessage, long deliveredUpTo, long readUpTo) {
+            bindStatus(binding.textDateTime, chatMessage, deliveredUpTo, readUpTo);
+        }
+
+        void cancelImage() {
+            AttachmentLoader.getInstance(binding.getRoot().getContext()).cancel(binding.imageAttachment);
+        }
+    }
+
+    static class ReceivedImageViewHolder extends RecyclerView.ViewHolder {
+        private final ItemContainerReceivedImageBinding binding;
+
+        ReceivedImageViewHolder(ItemContainerReceivedImageBinding itemContainerReceivedImageBinding) {
+            super(itemContainerReceivedImageBinding.getRoot());
+            binding = itemContainerReceivedImageBinding;
+        }
+
+        void setData(ChatMessage chatMessage) {
+            bindImage(binding.imageAttachment, binding.textMessage, chatMessage);
+            binding.textDateTime.setText(MessageFormatter.getReadableDateTime(chatMessage.timestamp));
+        }
+
+        void setSender(User sender, boolean group) {
+            bindSender(binding.imageProfile, binding.textName, sender, group);
+        }
 
-            binding.imageProfile.setImageBitmap(receiverProfileImage);
+        void cancelImage() {
+            AvatarCache.getInstance(binding.getRoot().getContext()).cancel(binding.imageProfile);
+            AttachmentLoader.getInstance(binding.getRoot().getContext()).cancel(binding.imageAttachment);
         }
     }
 }
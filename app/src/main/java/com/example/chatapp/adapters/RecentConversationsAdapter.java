@@ -0,0 +1,100 @@
+package com.example.chatapp.adapters;
+
+import android.view.LayoutInflater;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.example.chatapp.databinding.ItemContainerRecentConversationBinding;
+import com.example.chatapp.listeners.ConversationListener;
+import com.example.chatapp.models.ConversationSummary;
+import com.example.chatapp.utilities.AvatarCache;
+
+import java.util.Objects;
+
+/**
+ * RecentConversationsAdapter is a ListAdapter that displays the recent-conversations
+ * inbox, one row per conversation with the other participant, or per group, and the
+ * last message. Rows are identified by the other participant or the group, so a new
+ * message moves and rebinds the existing row instead of adding one.
+ */
+public class RecentConversationsAdapter
+        extends ListAdapter<ConversationSummary, RecentConversationsAdapter.ConversationViewHolder> {
+
+    private static final DiffUtil.ItemCallback<ConversationSummary> DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<ConversationSummary>() {
+                @Override
+                public boolean areItemsTheSame(@NonNull ConversationSummary oldItem,
+                                               @NonNull ConversationSummary newItem) {
+                    return oldItem.otherId.equals(newItem.otherId);
+                }
+
+                @Override
+                public boolean areContentsTheSame(@NonNull ConversationSummary oldItem,
+                                                  @NonNull ConversationSummary newItem) {
+                    return oldItem.timestamp == newItem.timestamp
+                            && Objects.equals(oldItem.lastMessage, newItem.lastMessage)
+                            && Objects.equals(oldItem.otherName, newItem.otherName)
+                            && Objects.equals(oldItem.otherImageVersion, newItem.otherImageVersion)
+                            && Objects.equals(oldItem.members, newItem.members);
+                }
+            };
+
+    private final ConversationListener conversationListener;
+
+    /**
+     * Constructor to initialize the adapter with a listener for click events.
+     *
+     * @param conversationListener Listener to handle conversation click events.
+     */
+    public RecentConversationsAdapter(ConversationListener conversationListener) {
+        super(DIFF_CALLBACK);
+        this.conversationListener = conversationListener;
+    }
+
+    @NonNull
+    @Override
+    public ConversationViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        return new ConversationViewHolder(ItemContainerRecentConversationBinding
+                .inflate(LayoutInflater.from(parent.getContext()), parent, false));
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ConversationViewHolder holder, int position) {
+        holder.setData(getItem(position));
+    }
+
+    /**
+     * Cancels the pending avatar decode of a recycled row.
+     *
+     * @param holder The ConversationViewHolder being recycled.
+     */
+    @Override
+    public void onViewRecycled(@NonNull ConversationViewHolder holder) {
+        super.onViewRecycled(holder);
+        AvatarCache.getInstance(holder.binding.getRoot().getContext()).cancel(holder.binding.imageProfile);
+    }
+
+    /**
+     * ViewHolder class for displaying one conversation of the inbox.
+     */
+    class ConversationViewHolder extends RecyclerView.ViewHolder {
+        final ItemContainerRecentConversationBinding binding;
+
+        ConversationViewHolder(ItemContainerRecentConversationBinding binding) {
+            super(binding.getRoot());
+            this.binding = binding;
+        }
+
+        void setData(ConversationSummary summary) {
+            binding.textName.setText(summary.otherName);
+            binding.textRecentMessage.setText(summary.lastMessage);
+            AvatarCache.getInstance(binding.getRoot().getContext())
+                    .load(binding.imageProfile, summary.toUser());
+            binding.getRoot().setOnClickListener(v -> conversationListener.onConversationClicked(summary));
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.chatapp.adapters;
+
+import android.view.LayoutInflater;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.example.chatapp.databinding.ItemContainerSearchResultBinding;
+import com.example.chatapp.listeners.SearchResultListener;
+import com.example.chatapp.models.ChatMessage;
+import com.example.chatapp.utilities.MessageFormatter;
+
+import java.util.Objects;
+
+/**
+ * SearchResultsAdapter is a ListAdapter that displays the messages matching a search,
+ * newest first. Each keystroke submits a new result list, which is diffed off the main
+ * thread so results that stay in the list are not rebound.
+ */
+public class SearchResultsAdapter extends ListAdapter<ChatMessage, SearchResultsAdapter.SearchResultViewHolder> {
+
+    private static final DiffUtil.ItemCallback<ChatMessage> DIFF_CALLBACK = new DiffUtil.ItemCallback<ChatMessage>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull ChatMessage oldItem, @NonNull ChatMessage newItem) {
+            return oldItem.id.equals(newItem.id);
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull ChatMessage oldItem, @NonNull ChatMessage newItem) {
+            return Objects.equals(oldItem.message, newItem.message)
+                    && oldItem.timestamp == newItem.timestamp;
+        }
+    };
+
+    private final SearchResultListener searchResultListener;
+
+    /**
+     * Constructor to initialize the adapter with a listener for click events.
+     *
+     * @param searchResultListener Listener to handle result click events.
+     */
+    public SearchResultsAdapter(SearchResultListener searchResultListener) {
+        super(DIFF_CALLBACK);
+        this.searchResultListener = searchResultListener;
+    }
+
+    @NonNull
+    @Override
+    public SearchResultViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        return new SearchResultViewHolder(ItemContainerSearchResultBinding
+                .inflate(LayoutInflater.from(parent.getContext()), parent, false));
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull SearchResultViewHolder holder, int position) {
+        holder.setData(getItem(position));
+    }
+
+    /**
+     * ViewHolder class for displaying one search result.
+     */
+    class SearchResultViewHolder extends RecyclerView.ViewHolder {
+        private final ItemContainerSearchResultBinding binding;
+
+        SearchResultViewHolder(ItemContainerSearchResultBinding binding) {
+            super(binding.getRoot());
+            this.binding = binding;
+        }
+
+        void setData(ChatMessage chatMessage) {
+            binding.textMessage.setText(chatMessage.message);
+            binding.textDateTime.setText(MessageFormatter.getReadableDateTime(chatMessage.timestamp));
+            binding.getRoot().setOnClickListener(v -> searchResultListener.onSearchResultClicked(chatMessage));
+        }
+    }
+}
@@ -1,38 +1,87 @@
 package com.example.chatapp.adapters;
 
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.util.Base64;
 import android.view.LayoutInflater;
 import android.view.ViewGroup;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
+import com.example.chatapp.R;
 import com.example.chatapp.databinding.ItemContainerUserBinding;
 import com.example.chatapp.listeners.UserListener;
 import com.example.chatapp.models.User;
+import com.example.chatapp.utilities.AvatarCache;
+import com.example.chatapp.utilities.Metrics;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 /**
- * UsersAdapter is a RecyclerView.Adapter that displays a list of users.
+ * UsersAdapter is a ListAdapter that displays a list of users.
  * It uses a `UserListener` interface to handle click events when a user is selected.
+ * Lists submitted through {@link #submitList} are diffed off the main thread, so a
+ * directory update only rebinds the users that actually changed.
+ * Users selected as members of a new group are highlighted.
  */
-public class UsersAdapter extends RecyclerView.Adapter<UsersAdapter.UserViewHolder>{
+public class UsersAdapter extends ListAdapter<User, UsersAdapter.UserViewHolder> {
+
+    private static final Metrics.Histogram BIND_TIME = Metrics.histogram("users.bind");
+
+    private static final DiffUtil.ItemCallback<User> DIFF_CALLBACK = new DiffUtil.ItemCallback<User>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull User oldItem, @NonNull User newItem) {
+            return oldItem.id.equals(newItem.id);
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull User oldItem, @NonNull User newItem) {
+            return oldItem.updatedAt == newItem.updatedAt
+                    && Objects.equals(oldItem.firstName, newItem.firstName)
+                    && Objects.equals(oldItem.email, newItem.email)
+                    && Objects.equals(oldItem.imageVersion, newItem.imageVersion);
+        }
+    };
 
-    private final List<User> users;
     private final UserListener userListener;
+    private final Map<String, User> selectedUsers = new LinkedHashMap<>();
     /**
-     * Constructor to initialize the UsersAdapter with a list of users and a listener for click events.
+     * Constructor to initialize the UsersAdapter with a listener for click events.
      *
-     * @param users        List of User objects to display.
      * @param userListener Listener to handle user click events.
      */
-    public UsersAdapter (List<User> users, UserListener userListener) {
-        this.users = users;
+    public UsersAdapter (UserListener userListener) {
+        super(DIFF_CALLBACK);
         this.userListener = userListener;
     }
 
+    /**
+     * Selects a user as a member of a new group, or deselects them, and rebinds their row.
+     *
+     * @param user The user to select or deselect.
+     * @return The number of selected users.
+     */
+    public int toggleSelected(User user) {
+        if (selectedUsers.remove(user.id) == null) {
+            selectedUsers.put(user.id, user);
+        }
+        int position = getCurrentList().indexOf(user);
+        if (position >= 0) {
+            notifyItemChanged(position);
+        }
+        return selectedUsers.size();
+    }
+
+    /**
+     * @return The selected users, in the order they were selected.
+     */
+    public List<User> getSelectedUsers() {
+        return new ArrayList<>(selectedUsers.values());
+    }
+
     /**
      * Inflates the layout for a single user item and creates a UserViewHolder.
      *
@@ -58,18 +107,21 @@ public class UsersAdapter extends RecyclerView.Adapter<UsersAdapter.UserViewHold
      */
     @Override
     public void onBindViewHolder(@NonNull UserViewHolder holder, int position) {
-        holder.setUserData(users.get(position));
+        long start = System.nanoTime();
+        holder.setUserData(getItem(position));
+        BIND_TIME.recordSince(start);
     }
     /**
-     * Returns the total number of users in the adapter.
+     * Cancels the pending avatar decode of a recycled row so it does not
+     * compete with the rows that are actually on screen.
      *
-     * @return The total number of users.
+     * @param holder The UserViewHolder being recycled.
      */
     @Override
-    public int getItemCount() {
-        return users.size();
+    public void onViewRecycled(@NonNull UserViewHolder holder) {
+        super.onViewRecycled(holder);
+        AvatarCache.getInstance(holder.binding.getRoot().getContext()).cancel(holder.binding.imageProfile);
     }
-
     /**
      * ViewHolder class for displaying individual user items in the RecyclerView.
      */
@@ -94,20 +146,15 @@ public class UsersAdapter extends RecyclerView.Adapter<UsersAdapter.UserViewHold
         void setUserData(User user) {
             binding.inputFirstName.setText(user.firstName);
             binding.textEmail.setText(user.email);
-            binding.imageProfile.setImageBitmap(getUserImage(user.image));
+            AvatarCache.getInstance(binding.getRoot().getContext())
+                    .load(binding.imageProfile, user);
             binding.getRoot().setOnClickListener(v -> userListener.onUserClicked(user));
+            binding.getRoot().setOnLongClickListener(v -> {
+                userListener.onUserLongClicked(user);
+                return true;
+            });
+            binding.getRoot().setBackgroundResource(
+                    selectedUsers.containsKey(user.id) ? R.color.input_background : android.R.color.transparent);
         }
     }
-    /**
-     * Decodes a Base64-encoded string into a Bitmap image.
-     *
-     * @param encodedImage The Base64 string representing the encoded image.
-     * @return A Bitmap object representing the decoded image.
-     */
-    private Bitmap getUserImage(String encodedImage){
-        byte [] bytes = Base64.decode(encodedImage, Base64.DEFAULT);
-
-
-        return BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
-    }
-}
+}
\ No newline at end of file
@@ -0,0 +1,404 @@
+package com.example.chatapp.database;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.chatapp.models.ChatMessage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * MessageStore is the on-device copy of every message the app has seen, stored in SQLite
+ * and indexed by (conversationId, timestamp). ChatActivity renders from it immediately
+ * and writes incoming Firestore changes through to it, so the network only has to
+ * deliver what arrived since the conversation was last synced.
+ * <p>
+ * The text of every stored message is also indexed in an FTS4 table, updated in the
+ * same transaction as the message, so history can be searched without a table scan.
+ * Image messages keep their inline thumbnail here; the full image lives in the
+ * attachment disk cache.
+ * <p>
+ * All methods block; run them on {@link #getExecutor()}.
+ */
+public class MessageStore extends SQLiteOpenHelper {
+
+    private static final String DATABASE_NAME = "messages.db";
+    private static final int DATABASE_VERSION = 4;
+
+    private static final String TABLE_MESSAGES = "messages";
+    private static final String TABLE_MESSAGES_FTS = "messages_fts";
+    private static final String TABLE_SYNC = "conversation_sync";
+
+    private static final String COLUMN_ID = "id";
+    private static final String COLUMN_CONVERSATION_ID = "conversationId";
+    private static final String COLUMN_SENDER_ID = "senderId";
+    private static final String COLUMN_RECEIVER_ID = "receiverId";
+    private static final String COLUMN_MESSAGE = "message";
+    private static final String COLUMN_TIMESTAMP = "timestamp";
+    private static final String COLUMN_THUMBNAIL = "thumbnail";
+    private static final String COLUMN_BLOB_ID = "blobId";
+    private static final String COLUMN_IMAGE_WIDTH = "imageWidth";
+    private static final String COLUMN_IMAGE_HEIGHT = "imageHeight";
+    private static final String COLUMN_SYNCED_UP_TO = "syncedUpTo";
+
+    private static final String[] MESSAGE_COLUMNS = {
+            COLUMN_ID, COLUMN_SENDER_ID, COLUMN_RECEIVER_ID, COLUMN_MESSAGE, COLUMN_TIMESTAMP,
+            COLUMN_THUMBNAIL, COLUMN_BLOB_ID, COLUMN_IMAGE_WIDTH, COLUMN_IMAGE_HEIGHT
+    };
+
+    private static MessageStore instance;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    /**
+     * Returns the shared store, creating it on first use.
+     *
+     * @param context Any context; only the application context is retained.
+     * @return The shared MessageStore.
+     */
+    public static synchronized MessageStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new MessageStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private MessageStore(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_MESSAGES + " ("
+                + COLUMN_ID + " TEXT PRIMARY KEY, "
+                + COLUMN_CONVERSATION_ID + " TEXT NOT NULL, "
+                + COLUMN_SENDER_ID + " TEXT, "
+                + COLUMN_RECEIVER_ID + " TEXT, "
+                + COLUMN_MESSAGE + " TEXT, "
+                + COLUMN_TIMESTAMP + " INTEGER NOT NULL, "
+                + COLUMN_THUMBNAIL + " TEXT, "
+                + COLUMN_BLOB_ID + " TEXT, "
+                + COLUMN_IMAGE_WIDTH + " INTEGER NOT NULL DEFAULT 0, "
+                + COLUMN_IMAGE_HEIGHT + " INTEGER NOT NULL DEFAULT 0)");
+        db.execSQL("CREATE INDEX index_messages_conversation_timestamp ON " + TABLE_MESSAGES
+                + " (" + COLUMN_CONVERSATION_ID + ", " + COLUMN_TIMESTAMP + ", " + COLUMN_ID + ")");
+        db.execSQL("CREATE TABLE " + TABLE_SYNC + " ("
+                + COLUMN_CONVERSATION_ID + " TEXT PRIMARY KEY, "
+                + COLUMN_SYNCED_UP_TO + " INTEGER NOT NULL)");
+        createSearchIndex(db);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            createSearchIndex(db);
+            db.execSQL("INSERT INTO " + TABLE_MESSAGES_FTS + " (docid, " + COLUMN_MESSAGE + ") SELECT rowid, "
+                    + COLUMN_MESSAGE + " FROM " + TABLE_MESSAGES + " WHERE " + COLUMN_MESSAGE + " IS NOT NULL");
+        }
+        if (oldVersion < 3) {
+            db.execSQL("ALTER TABLE " + TABLE_MESSAGES + " ADD COLUMN " + COLUMN_THUMBNAIL + " TEXT");
+            db.execSQL("ALTER TABLE " + TABLE_MESSAGES + " ADD COLUMN " + COLUMN_BLOB_ID + " TEXT");
+            db.execSQL("ALTER TABLE " + TABLE_MESSAGES + " ADD COLUMN " + COLUMN_IMAGE_WIDTH
+                    + " INTEGER NOT NULL DEFAULT 0");
+            db.execSQL("ALTER TABLE " + TABLE_MESSAGES + " ADD COLUMN " + COLUMN_IMAGE_HEIGHT
+                    + " INTEGER NOT NULL DEFAULT 0");
+        }
+        if (oldVersion < 4) {
+            // Watermarks used to be message timestamps, which late commits can fall behind.
+            db.delete(TABLE_SYNC, null, null);
+        }
+    }
+
+    /**
+     * Creates the full-text index over message text. Its docid is the rowid of the
+     * message; prefix indexes keep typeahead queries from scanning the term list.
+     */
+    private static void createSearchIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE VIRTUAL TABLE " + TABLE_MESSAGES_FTS + " USING fts4("
+                + COLUMN_MESSAGE + ", tokenize=unicode61, prefix=\"2,3\")");
+    }
+
+    /**
+     * Returns the single background thread all store operations should run on.
+     *
+     * @return The store's executor.
+     */
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Inserts or replaces messages of a conversation in one transaction, keeping the
+     * full-text index in step.
+     *
+     * @param conversationId The conversation the messages belong to.
+     * @param messages       The messages to store.
+     */
+    public void put(String conversationId, List<ChatMessage> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        SQLiteDatabase db = getWritableDatabase();
+        SQLiteStatement unindex = db.compileStatement("DELETE FROM " + TABLE_MESSAGES_FTS
+                + " WHERE docid = (SELECT rowid FROM " + TABLE_MESSAGES + " WHERE " + COLUMN_ID + " = ?)");
+        SQLiteStatement statement = db.compileStatement("INSERT OR REPLACE INTO " + TABLE_MESSAGES + " ("
+                + COLUMN_ID + ", " + COLUMN_CONVERSATION_ID + ", " + COLUMN_SENDER_ID + ", "
+                + COLUMN_RECEIVER_ID + ", " + COLUMN_MESSAGE + ", " + COLUMN_TIMESTAMP + ", "
+                + COLUMN_THUMBNAIL + ", " + COLUMN_BLOB_ID + ", " + COLUMN_IMAGE_WIDTH + ", " + COLUMN_IMAGE_HEIGHT
+                + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+        SQLiteStatement index = db.compileStatement("INSERT INTO " + TABLE_MESSAGES_FTS
+                + " (docid, " + COLUMN_MESSAGE + ") VALUES (?, ?)");
+        db.beginTransaction();
+        try {
+            for (ChatMessage chatMessage : messages) {
+                unindex.bindString(1, chatMessage.id);
+                unindex.executeUpdateDelete();
+                statement.clearBindings();
+                statement.bindString(1, chatMessage.id);
+                statement.bindString(2, conversationId);
+                bindNullable(statement, 3, chatMessage.senderId);
+                bindNullable(statement, 4, chatMessage.receiverId);
+                bindNullable(statement, 5, chatMessage.message);
+                statement.bindLong(6, chatMessage.timestamp);
+                bindNullable(statement, 7, chatMessage.thumbnail);
+                bindNullable(statement, 8, chatMessage.blobId);
+                statement.bindLong(9, chatMessage.imageWidth);
+                statement.bindLong(10, chatMessage.imageHeight);
+                long rowId = statement.executeInsert();
+                if (chatMessage.message != null) {
+                    index.bindLong(1, rowId);
+                    index.bindString(2, chatMessage.message);
+                    index.executeInsert();
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            unindex.close();
+            statement.close();
+            index.close();
+        }
+    }
+
+    /**
+     * Returns the newest messages of a conversation, oldest first.
+     *
+     * @param conversationId The conversation to read.
+     * @param limit          Maximum number of messages.
+     * @return The messages, ordered by timestamp.
+     */
+    public List<ChatMessage> getLatest(String conversationId, int limit) {
+        List<ChatMessage> messages = query(COLUMN_CONVERSATION_ID + " = ?",
+                new String[]{conversationId}, "DESC", limit);
+        Collections.reverse(messages);
+        return messages;
+    }
+
+    /**
+     * Returns the messages right before a given message, oldest first.
+     *
+     * @param conversationId The conversation to read.
+     * @param before         The message to read backwards from (exclusive).
+     * @param limit          Maximum number of messages.
+     * @return The messages, ordered by timestamp.
+     */
+    public List<ChatMessage> getBefore(String conversationId, ChatMessage before, int limit) {
+        String timestamp = String.valueOf(before.timestamp);
+        List<ChatMessage> messages = query(COLUMN_CONVERSATION_ID + " = ? AND (" + COLUMN_TIMESTAMP + " < ? OR ("
+                        + COLUMN_TIMESTAMP + " = ? AND " + COLUMN_ID + " < ?))",
+                new String[]{conversationId, timestamp, timestamp, before.id}, "DESC", limit);
+        Collections.reverse(messages);
+        return messages;
+    }
+
+    /**
+     * Returns the messages right after a given message and strictly before another, oldest first.
+     *
+     * @param conversationId The conversation to read.
+     * @param after          The message to read forwards from (exclusive).
+     * @param before         The message to stop at (exclusive).
+     * @param limit          Maximum number of messages.
+     * @return The messages, ordered by timestamp.
+     */
+    public List<ChatMessage> getBetween(String conversationId, ChatMessage after, ChatMessage before, int limit) {
+        String afterTimestamp = String.valueOf(after.timestamp);
+        String beforeTimestamp = String.valueOf(before.timestamp);
+        return query(COLUMN_CONVERSATION_ID + " = ? AND ("
+                        + COLUMN_TIMESTAMP + " > ? OR (" + COLUMN_TIMESTAMP + " = ? AND " + COLUMN_ID + " > ?)) AND ("
+                        + COLUMN_TIMESTAMP + " < ? OR (" + COLUMN_TIMESTAMP + " = ? AND " + COLUMN_ID + " < ?))",
+                new String[]{conversationId, afterTimestamp, afterTimestamp, after.id,
+                        beforeTimestamp, beforeTimestamp, before.id}, "ASC", limit);
+    }
+
+    /**
+     * Returns one stored message.
+     *
+     * @param conversationId The conversation of the message.
+     * @param id             The id of the message.
+     * @return The message, or null if it is not stored.
+     */
+    public ChatMessage getMessage(String conversationId, String id) {
+        List<ChatMessage> messages = query(COLUMN_CONVERSATION_ID + " = ? AND " + COLUMN_ID + " = ?",
+                new String[]{conversationId, id}, "ASC", 1);
+        return messages.isEmpty() ? null : messages.get(0);
+    }
+
+    /**
+     * Searches the text of the messages of one conversation, or of every conversation
+     * the device has seen. Every word of the query must occur in a message; the last
+     * one may also be the start of a longer word.
+     *
+     * @param conversationId The conversation to search, or null to search all of them.
+     * @param query          The text typed by the user.
+     * @param limit          Maximum number of hits.
+     * @return The matching messages, newest first.
+     */
+    public List<ChatMessage> search(String conversationId, String query, int limit) {
+        String match = toMatchExpression(query);
+        if (match.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<ChatMessage> messages = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().rawQuery("SELECT m." + COLUMN_ID + ", m." + COLUMN_SENDER_ID
+                        + ", m." + COLUMN_RECEIVER_ID + ", m." + COLUMN_MESSAGE + ", m." + COLUMN_TIMESTAMP
+                        + ", m." + COLUMN_THUMBNAIL + ", m." + COLUMN_BLOB_ID
+                        + ", m." + COLUMN_IMAGE_WIDTH + ", m." + COLUMN_IMAGE_HEIGHT
+                        + " FROM " + TABLE_MESSAGES_FTS + " f JOIN " + TABLE_MESSAGES + " m ON m.rowid = f.docid"
+                        + " WHERE f." + COLUMN_MESSAGE + " MATCH ?"
+                        + (conversationId != null ? " AND m." + COLUMN_CONVERSATION_ID + " = ?" : "")
+                        + " ORDER BY m." + COLUMN_TIMESTAMP + " DESC LIMIT " + limit,
+                conversationId != null ? new String[]{match, conversationId} : new String[]{match})) {
+            while (cursor.moveToNext()) {
+                messages.add(readMessage(cursor));
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Turns free text into an FTS query: each run of letters and digits becomes a term,
+     * and the last term also matches longer words unless the user already typed past it.
+     * Quotes, operators and other syntax typed by the user are never interpreted.
+     *
+     * @param query The text typed by the user.
+     * @return The MATCH expression, or an empty string if the query has no terms.
+     */
+    static String toMatchExpression(String query) {
+        StringBuilder match = new StringBuilder();
+        int length = query.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && !Character.isLetterOrDigit(query.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < length && Character.isLetterOrDigit(query.charAt(i))) {
+                i++;
+            }
+            if (i > start) {
+                if (match.length() > 0) {
+                    match.append(' ');
+                }
+                // Lowercase so that AND, OR, NOT and NEAR are searched for, not applied.
+                match.append(query.substring(start, i).toLowerCase(Locale.ROOT));
+            }
+        }
+        if (match.length() == 0) {
+            return "";
+        }
+        return Character.isLetterOrDigit(query.charAt(length - 1)) ? match.append('*').toString() : match.toString();
+    }
+
+    /**
+     * Returns the server commit time up to which every message of the conversation has
+     * been written to the store, or 0 if it was never synced. Only commits at or after
+     * it need to be fetched; their timestamps can be anything.
+     *
+     * @param conversationId The conversation to look up.
+     * @return The sync watermark in epoch milliseconds of server time.
+     */
+    public long getSyncedUpTo(String conversationId) {
+        try (Cursor cursor = getReadableDatabase().query(TABLE_SYNC, new String[]{COLUMN_SYNCED_UP_TO},
+                COLUMN_CONVERSATION_ID + " = ?", new String[]{conversationId}, null, null, null)) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        }
+    }
+
+    /**
+     * Advances the sync watermark of a conversation. It must be a server commit time, taken
+     * from a confirmed snapshot of a listener whose result set held every commit up to it;
+     * message timestamps come from the senders' clocks and may not be used.
+     *
+     * @param conversationId The conversation to update.
+     * @param syncedUpTo     The new watermark in epoch milliseconds of server time; ignored if older than the current one.
+     */
+    public void setSyncedUpTo(String conversationId, long syncedUpTo) {
+        if (syncedUpTo <= getSyncedUpTo(conversationId)) {
+            return;
+        }
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_CONVERSATION_ID, conversationId);
+        values.put(COLUMN_SYNCED_UP_TO, syncedUpTo);
+        getWritableDatabase().insertWithOnConflict(TABLE_SYNC, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * Deletes every stored message and sync watermark, for example when the user signs out.
+     */
+    public void clear() {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.delete(TABLE_MESSAGES, null, null);
+            db.delete(TABLE_MESSAGES_FTS, null, null);
+            db.delete(TABLE_SYNC, null, null);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private List<ChatMessage> query(String selection, String[] selectionArgs, String direction, int limit) {
+        List<ChatMessage> messages = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().query(TABLE_MESSAGES, MESSAGE_COLUMNS, selection, selectionArgs,
+                null, null, COLUMN_TIMESTAMP + " " + direction + ", " + COLUMN_ID + " " + direction,
+                String.valueOf(limit))) {
+            while (cursor.moveToNext()) {
+                messages.add(readMessage(cursor));
+            }
+        }
+        return messages;
+    }
+
+    private static ChatMessage readMessage(Cursor cursor) {
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.id = cursor.getString(0);
+        chatMessage.senderId = cursor.getString(1);
+        chatMessage.receiverId = cursor.getString(2);
+        chatMessage.message = cursor.getString(3);
+        chatMessage.timestamp = cursor.getLong(4);
+        chatMessage.thumbnail = cursor.getString(5);
+        chatMessage.blobId = cursor.getString(6);
+        chatMessage.imageWidth = cursor.getInt(7);
+        chatMessage.imageHeight = cursor.getInt(8);
+        return chatMessage;
+    }
+
+    private static void bindNullable(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+}
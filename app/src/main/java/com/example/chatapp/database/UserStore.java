@@ -0,0 +1,239 @@
+package com.example.chatapp.database;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.chatapp.models.User;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * UserStore is the on-device copy of the user directory, stored in SQLite.
+ * Each row keeps the {@code updatedAt} time of the user document it came from; the
+ * newest of them is the watermark from which the directory listener asks for changes,
+ * so opening the directory only downloads users that changed since the last visit.
+ * <p>
+ * All methods block; run them on {@link #getExecutor()}.
+ */
+public class UserStore extends SQLiteOpenHelper {
+
+    private static final String DATABASE_NAME = "users.db";
+    private static final int DATABASE_VERSION = 1;
+
+    private static final String TABLE_USERS = "users";
+
+    private static final String COLUMN_ID = "id";
+    private static final String COLUMN_FIRST_NAME = "firstName";
+    private static final String COLUMN_LAST_NAME = "lastName";
+    private static final String COLUMN_EMAIL = "email";
+    private static final String COLUMN_IMAGE = "image";
+    private static final String COLUMN_IMAGE_VERSION = "imageVersion";
+    private static final String COLUMN_TOKEN = "token";
+    private static final String COLUMN_UPDATED_AT = "updatedAt";
+
+    private static final String[] USER_COLUMNS = {
+            COLUMN_ID, COLUMN_FIRST_NAME, COLUMN_LAST_NAME, COLUMN_EMAIL,
+            COLUMN_IMAGE, COLUMN_IMAGE_VERSION, COLUMN_TOKEN, COLUMN_UPDATED_AT
+    };
+
+    /**
+     * Ids bound per query by {@link #get}, well below SQLite's limit on host parameters.
+     */
+    private static final int MAX_QUERY_ARGUMENTS = 500;
+
+    private static UserStore instance;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    /**
+     * Returns the shared store, creating it on first use.
+     *
+     * @param context Any context; only the application context is retained.
+     * @return The shared UserStore.
+     */
+    public static synchronized UserStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new UserStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private UserStore(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_USERS + " ("
+                + COLUMN_ID + " TEXT PRIMARY KEY, "
+                + COLUMN_FIRST_NAME + " TEXT, "
+                + COLUMN_LAST_NAME + " TEXT, "
+                + COLUMN_EMAIL + " TEXT, "
+                + COLUMN_IMAGE + " TEXT, "
+                + COLUMN_IMAGE_VERSION + " TEXT, "
+                + COLUMN_TOKEN + " TEXT, "
+                + COLUMN_UPDATED_AT + " INTEGER NOT NULL)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+    }
+
+    /**
+     * Returns the single background thread all store operations should run on.
+     *
+     * @return The store's executor.
+     */
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Inserts or replaces users in one transaction.
+     *
+     * @param users The users to store.
+     */
+    public void put(List<User> users) {
+        if (users.isEmpty()) {
+            return;
+        }
+        SQLiteDatabase db = getWritableDatabase();
+        SQLiteStatement statement = db.compileStatement("INSERT OR REPLACE INTO " + TABLE_USERS + " ("
+                + COLUMN_ID + ", " + COLUMN_FIRST_NAME + ", " + COLUMN_LAST_NAME + ", " + COLUMN_EMAIL + ", "
+                + COLUMN_IMAGE + ", " + COLUMN_IMAGE_VERSION + ", " + COLUMN_TOKEN + ", " + COLUMN_UPDATED_AT
+                + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+        db.beginTransaction();
+        try {
+            for (User user : users) {
+                statement.clearBindings();
+                statement.bindString(1, user.id);
+                bindNullable(statement, 2, user.firstName);
+                bindNullable(statement, 3, user.lastName);
+                bindNullable(statement, 4, user.email);
+                bindNullable(statement, 5, user.image);
+                bindNullable(statement, 6, user.imageVersion);
+                bindNullable(statement, 7, user.token);
+                statement.bindLong(8, user.updatedAt);
+                statement.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            statement.close();
+        }
+    }
+
+    /**
+     * Deletes users in one transaction.
+     *
+     * @param ids The ids of the users to delete.
+     */
+    public void delete(Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (String id : ids) {
+                db.delete(TABLE_USERS, COLUMN_ID + " = ?", new String[]{id});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Deletes every stored user, which also resets the directory watermark, for example
+     * when the user signs out.
+     */
+    public void clear() {
+        getWritableDatabase().delete(TABLE_USERS, null, null);
+    }
+
+    /**
+     * Returns every stored user, ordered by first name.
+     *
+     * @return The stored users.
+     */
+    public List<User> getAll() {
+        List<User> users = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().query(TABLE_USERS, USER_COLUMNS, null, null,
+                null, null, COLUMN_FIRST_NAME + " COLLATE NOCASE, " + COLUMN_ID)) {
+            while (cursor.moveToNext()) {
+                users.add(readUser(cursor));
+            }
+        }
+        return users;
+    }
+
+    /**
+     * Returns the stored users among a set of ids, such as the members of a group.
+     * Ids without a stored user are left out.
+     *
+     * @param ids The ids of the users.
+     * @return The stored users, in no particular order.
+     */
+    public List<User> get(Collection<String> ids) {
+        List<User> users = new ArrayList<>(ids.size());
+        List<String> remaining = new ArrayList<>(ids);
+        while (!remaining.isEmpty()) {
+            List<String> batch = remaining.subList(0, Math.min(remaining.size(), MAX_QUERY_ARGUMENTS));
+            StringBuilder placeholders = new StringBuilder();
+            for (int i = 0; i < batch.size(); i++) {
+                placeholders.append(i == 0 ? "?" : ", ?");
+            }
+            try (Cursor cursor = getReadableDatabase().query(TABLE_USERS, USER_COLUMNS,
+                    COLUMN_ID + " IN (" + placeholders + ")", batch.toArray(new String[0]),
+                    null, null, null)) {
+                while (cursor.moveToNext()) {
+                    users.add(readUser(cursor));
+                }
+            }
+            batch.clear();
+        }
+        return users;
+    }
+
+    /**
+     * Returns the newest {@code updatedAt} of any stored user, or 0 if the store is empty.
+     *
+     * @return The directory watermark in epoch milliseconds.
+     */
+    public long getWatermark() {
+        try (Cursor cursor = getReadableDatabase().rawQuery(
+                "SELECT MAX(" + COLUMN_UPDATED_AT + ") FROM " + TABLE_USERS, null)) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        }
+    }
+
+    private static User readUser(Cursor cursor) {
+        User user = new User();
+        user.id = cursor.getString(0);
+        user.firstName = cursor.getString(1);
+        user.lastName = cursor.getString(2);
+        user.email = cursor.getString(3);
+        user.image = cursor.getString(4);
+        user.imageVersion = cursor.getString(5);
+        user.token = cursor.getString(6);
+        user.updatedAt = cursor.getLong(7);
+        return user;
+    }
+
+    private static void bindNullable(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.chatapp.firebase;
+
+import com.example.chatapp.models.ChatMessage;
+import com.example.chatapp.models.ConversationSummary;
+import com.example.chatapp.models.User;
+import com.example.chatapp.utilities.Constants;
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * ConversationSummaries reads and writes the per-user summary documents behind the
+ * recent-conversations inbox. Each participant has one document per conversation under
+ * {@code User/{userId}/conversations/{otherId}}, rewritten with every send unless it
+ * already shows a newer message. Groups have no per-member summaries, see
+ * {@link GroupConversations}.
+ */
+public class ConversationSummaries {
+
+    /**
+     * Shown as the last message of a conversation whose newest message is an image
+     * without a caption; a symbol, since summaries are written for every participant
+     * regardless of their language.
+     */
+    private static final String IMAGE_PREVIEW = "\uD83D\uDCF7";
+
+    private ConversationSummaries() {
+    }
+
+    /**
+     * Returns the summary collection of a user.
+     *
+     * @param database The Firestore instance.
+     * @param userId   The owner of the inbox.
+     * @return The user's summary collection.
+     */
+    public static CollectionReference getCollection(FirebaseFirestore database, String userId) {
+        return database.collection(Constants.KEY_COLLECTION_USERS)
+                .document(userId)
+                .collection(Constants.KEY_COLLECTION_CONVERSATION_SUMMARIES);
+    }
+
+    /**
+     * Updates the summaries after a batch of messages was committed: one document in the
+     * sender's inbox and one in the receiver's, each naming the other participant.
+     * Like {@link GroupConversations#update}, this runs in a transaction that leaves a
+     * summary alone if it already shows a message at least as new, so a batch queued
+     * offline and committed late never replaces a newer last message.
+     *
+     * @param database    The Firestore instance.
+     * @param sender      The signed-in user.
+     * @param receiver    The other participant.
+     * @param lastMessage The newest message of the batch.
+     * @return The task of the transaction.
+     */
+    public static Task<Void> update(FirebaseFirestore database, User sender, User receiver,
+                                    ChatMessage lastMessage) {
+        DocumentReference senderSummary = getCollection(database, sender.id).document(receiver.id);
+        DocumentReference receiverSummary = getCollection(database, receiver.id).document(sender.id);
+        return database.runTransaction(transaction -> {
+            // A transaction reads everything before it writes.
+            boolean senderCurrent = showsNewer(transaction.get(senderSummary), lastMessage);
+            boolean receiverCurrent = showsNewer(transaction.get(receiverSummary), lastMessage);
+            if (!senderCurrent) {
+                transaction.set(senderSummary, toData(receiver, lastMessage));
+            }
+            if (!receiverCurrent) {
+                transaction.set(receiverSummary, toData(sender, lastMessage));
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Reads a summary document.
+     *
+     * @param document The Firestore document of the summary.
+     * @return The parsed summary.
+     */
+    public static ConversationSummary toSummary(DocumentSnapshot document) {
+        ConversationSummary summary = new ConversationSummary();
+        summary.otherId = document.getId();
+        summary.otherName = document.getString(Constants.KEY_OTHER_NAME);
+        summary.otherImageVersion = document.getString(Constants.KEY_OTHER_IMAGE_VERSION);
+        summary.lastMessage = document.getString(Constants.KEY_LAST_MESSAGE);
+        Timestamp timestamp = document.getTimestamp(Constants.KEY_TIMESTAMP);
+        summary.timestamp = timestamp != null
+                ? timestamp.getSeconds() * 1000 + timestamp.getNanoseconds() / 1_000_000
+                : System.currentTimeMillis();
+        return summary;
+    }
+
+    /**
+     * Returns the text shown for a message in the inbox: the message itself, or a
+     * symbol for an image without a caption.
+     *
+     * @param chatMessage The message.
+     * @return The preview text.
+     */
+    static String getPreview(ChatMessage chatMessage) {
+        boolean uncaptionedImage = chatMessage.isImage()
+                && (chatMessage.message == null || chatMessage.message.isEmpty());
+        return uncaptionedImage ? IMAGE_PREVIEW : chatMessage.message;
+    }
+
+    private static boolean showsNewer(DocumentSnapshot summary, ChatMessage lastMessage) {
+        Long lastMessageAt = summary.getLong(Constants.KEY_LAST_MESSAGE_AT);
+        return lastMessageAt != null && lastMessageAt >= lastMessage.timestamp;
+    }
+
+    private static Map<String, Object> toData(User other, ChatMessage lastMessage) {
+        Map<String, Object> data = new HashMap<>();
+        data.put(Constants.KEY_OTHER_ID, other.id);
+        data.put(Constants.KEY_OTHER_NAME, other.firstName);
+        data.put(Constants.KEY_OTHER_IMAGE_VERSION, other.imageVersion);
+        data.put(Constants.KEY_LAST_MESSAGE, getPreview(lastMessage));
+        data.put(Constants.KEY_LAST_MESSAGE_AT, lastMessage.timestamp);
+        data.put(Constants.KEY_TIMESTAMP, new Date(lastMessage.timestamp));
+        return data;
+    }
+}
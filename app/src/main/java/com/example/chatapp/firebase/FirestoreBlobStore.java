@@ -0,0 +1,107 @@
+package com.example.chatapp.firebase;
+
+import com.example.chatapp.repository.BlobStore;
+import com.example.chatapp.utilities.Constants;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.Blob;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Source;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * FirestoreBlobStore keeps blobs in the {@link Constants#KEY_COLLECTION_BLOBS} collection:
+ * each chunk is a document of its own, well below Firestore's document size limit, and
+ * the blob document itself is the manifest written by {@link #complete}.
+ * Reads go to the server, since a chunk that is only in the local cache of another
+ * device is of no use.
+ */
+public class FirestoreBlobStore implements BlobStore {
+
+    /**
+     * Chunk size: a quarter of Firestore's 1 MiB document limit.
+     */
+    private static final int CHUNK_SIZE = 256 * 1024;
+
+    private final CollectionReference blobsReference;
+
+    /**
+     * Constructor to initialize the store.
+     *
+     * @param database The Firestore instance.
+     */
+    public FirestoreBlobStore(FirebaseFirestore database) {
+        this.blobsReference = database.collection(Constants.KEY_COLLECTION_BLOBS);
+    }
+
+    @Override
+    public int getChunkSize() {
+        return CHUNK_SIZE;
+    }
+
+    @Override
+    public int getStoredChunkCount(String blobId) throws IOException {
+        int count = 0;
+        while (await(getChunks(blobId).document(String.valueOf(count)).get(Source.SERVER)).exists()) {
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public void putChunk(String blobId, int index, byte[] data, int offset, int length) throws IOException {
+        Map<String, Object> chunk = new HashMap<>();
+        chunk.put(Constants.KEY_DATA, Blob.fromBytes(Arrays.copyOfRange(data, offset, offset + length)));
+        await(getChunks(blobId).document(String.valueOf(index)).set(chunk));
+    }
+
+    @Override
+    public void complete(String blobId, int chunkCount, long length) throws IOException {
+        Map<String, Object> manifest = new HashMap<>();
+        manifest.put(Constants.KEY_CHUNK_COUNT, chunkCount);
+        manifest.put(Constants.KEY_LENGTH, length);
+        await(blobsReference.document(blobId).set(manifest));
+    }
+
+    @Override
+    public long getLength(String blobId) throws IOException {
+        DocumentSnapshot manifest = await(blobsReference.document(blobId).get(Source.SERVER));
+        Long length = manifest.getLong(Constants.KEY_LENGTH);
+        return length != null ? length : -1;
+    }
+
+    @Override
+    public byte[] getChunk(String blobId, int index) throws IOException {
+        DocumentReference chunk = getChunks(blobId).document(String.valueOf(index));
+        Blob data = await(chunk.get(Source.SERVER)).getBlob(Constants.KEY_DATA);
+        if (data == null) {
+            throw new FileNotFoundException("Chunk " + index + " of blob " + blobId + " is missing");
+        }
+        return data.toBytes();
+    }
+
+    private CollectionReference getChunks(String blobId) {
+        return blobsReference.document(blobId).collection(Constants.KEY_COLLECTION_CHUNKS);
+    }
+
+    private static <T> T await(Task<T> task) throws IOException {
+        try {
+            return Tasks.await(task);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.example.chatapp.firebase;
+
+import com.example.chatapp.models.ChatMessage;
+import com.example.chatapp.models.ConversationSummary;
+import com.example.chatapp.models.Group;
+import com.example.chatapp.models.User;
+import com.example.chatapp.repository.Callback;
+import com.example.chatapp.repository.Change;
+import com.example.chatapp.repository.ChatRepository;
+import com.example.chatapp.repository.Registration;
+import com.example.chatapp.repository.RepositoryException;
+import com.example.chatapp.utilities.Constants;
+import com.example.chatapp.utilities.Metrics;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * FirestoreChatRepository keeps the messages of a conversation in the
+ * {@code chats/{conversationId}/messages} collection and writes the conversation
+ * summaries of both participants with every send; a group has one summary, its
+ * conversation document, whatever the number of members. The storage size of every message
+ * written is added to {@code chat.sent_bytes}.
+ */
+public class FirestoreChatRepository implements ChatRepository {
+
+    private static final Metrics.Counter SENT_BYTES = Metrics.counter("chat.sent_bytes");
+
+    private final FirebaseFirestore database;
+
+    /**
+     * Constructor to initialize the repository.
+     *
+     * @param database The Firestore instance.
+     */
+    public FirestoreChatRepository(FirebaseFirestore database) {
+        this.database = database;
+    }
+
+    /**
+     * Returns the message collection of a conversation.
+     *
+     * @param database       The Firestore instance.
+     * @param conversationId The conversation.
+     * @return The conversation's message collection.
+     */
+    public static CollectionReference getMessages(FirebaseFirestore database, String conversationId) {
+        return database.collection(Constants.KEY_COLLECTION_CONVERSATIONS)
+                .document(conversationId)
+                .collection(Constants.KEY_COLLECTION_MESSAGES);
+    }
+
+    @Override
+    public String newMessageId(String conversationId) {
+        return getMessages(database, conversationId).document().getId();
+    }
+
+    @Override
+    public Registration listenMessages(String conversationId, long since, int limit, MessageListener listener) {
+        Query query;
+        if (since > 0) {
+            // Pending writes carry no commit time yet and join the result set once committed.
+            query = getMessages(database, conversationId)
+                    .whereGreaterThanOrEqualTo(Constants.KEY_COMMITTED_AT, new Date(since))
+                    .orderBy(Constants.KEY_COMMITTED_AT);
+        } else {
+            query = getMessages(database, conversationId).orderBy(Constants.KEY_TIMESTAMP).limitToLast(limit);
+        }
+        ListenerRegistration registration = query.addSnapshotListener((value, error) -> {
+            if (error != null) {
+                listener.onError(error);
+                return;
+            }
+            if (value == null) {
+                return;
+            }
+            List<DocumentChange> documentChanges = value.getDocumentChanges();
+            List<Change<ChatMessage>> changes = new ArrayList<>(documentChanges.size());
+            for (int i = 0; i < documentChanges.size(); i++) {
+                DocumentChange documentChange = documentChanges.get(i);
+                changes.add(new Change<>(toType(documentChange.getType()),
+                        MessageDocuments.toChatMessage(documentChange.getDocument())));
+            }
+            listener.onMessages(changes,
+                    !value.getMetadata().isFromCache() && !value.getMetadata().hasPendingWrites());
+        });
+        return registration::remove;
+    }
+
+    @Override
+    public void getMessagesBefore(String conversationId, ChatMessage before, int limit,
+                                  Callback<List<ChatMessage>> callback) {
+        getMessages(database, conversationId)
+                .orderBy(Constants.KEY_TIMESTAMP, Query.Direction.DESCENDING)
+                .orderBy(FieldPath.documentId(), Query.Direction.DESCENDING)
+                .startAfter(new Date(before.timestamp), before.id)
+                .limit(limit)
+                .get()
+                .addOnSuccessListener(result -> callback.onSuccess(toMessages(result.getDocuments())))
+                .addOnFailureListener(callback::onFailure);
+    }
+
+    @Override
+    public void getMessagesBetween(String conversationId, ChatMessage after, ChatMessage before, int limit,
+                                   Callback<List<ChatMessage>> callback) {
+        getMessages(database, conversationId)
+                .orderBy(Constants.KEY_TIMESTAMP)
+                .orderBy(FieldPath.documentId())
+                .startAfter(new Date(after.timestamp), after.id)
+                .endBefore(new Date(before.timestamp), before.id)
+                .limit(limit)
+                .get()
+                .addOnSuccessListener(result -> callback.onSuccess(toMessages(result.getDocuments())))
+                .addOnFailureListener(callback::onFailure);
+    }
+
+    @Override
+    public void sendMessages(String conversationId, User sender, User receiver, List<ChatMessage> messages,
+                             Callback<Void> callback) {
+        CollectionReference messagesReference = getMessages(database, conversationId);
+        WriteBatch writeBatch = database.batch();
+        ChatMessage newest = messages.get(0);
+        for (ChatMessage chatMessage : messages) {
+            DocumentReference document = messagesReference.document(chatMessage.id);
+            Map<String, Object> data = MessageDocuments.toData(conversationId, chatMessage);
+            SENT_BYTES.add(MessageDocuments.getStorageSize(document.getPath(), data));
+            writeBatch.set(document, data);
+            if (chatMessage.timestamp > newest.timestamp) {
+                newest = chatMessage;
+            }
+        }
+        ChatMessage lastMessage = newest;
+        writeBatch.commit()
+                .addOnSuccessListener(result -> {
+                    if (receiver != null) {
+                        ConversationSummaries.update(database, sender, receiver, lastMessage);
+                    } else {
+                        GroupConversations.update(database, conversationId, sender, lastMessage);
+                    }
+                    callback.onSuccess(result);
+                })
+                .addOnFailureListener(e -> callback.onFailure(toRepositoryException(e)));
+    }
+
+    @Override
+    public Group createGroup(String name, List<String> members) {
+        return GroupConversations.create(database, name, members);
+    }
+
+    @Override
+    public Registration listenGroups(String userId, int limit, InboxListener listener) {
+        ListenerRegistration registration = GroupConversations.query(database, userId, limit)
+                .addSnapshotListener((value, error) -> {
+                    if (error != null) {
+                        listener.onError(error);
+                        return;
+                    }
+                    if (value == null) {
+                        return;
+                    }
+                    List<ConversationSummary> summaries = new ArrayList<>(value.size());
+                    for (DocumentSnapshot document : value.getDocuments()) {
+                        summaries.add(GroupConversations.toSummary(document));
+                    }
+                    listener.onConversations(summaries);
+                });
+        return registration::remove;
+    }
+
+    @Override
+    public Registration listenInbox(String userId, int limit, InboxListener listener) {
+        ListenerRegistration registration = ConversationSummaries.getCollection(database, userId)
+                .orderBy(Constants.KEY_TIMESTAMP, Query.Direction.DESCENDING)
+                .limit(limit)
+                .addSnapshotListener((value, error) -> {
+                    if (error != null) {
+                        listener.onError(error);
+                        return;
+                    }
+                    if (value == null) {
+                        return;
+                    }
+                    List<ConversationSummary> summaries = new ArrayList<>(value.size());
+                    for (DocumentSnapshot document : value.getDocuments()) {
+                        summaries.add(ConversationSummaries.toSummary(document));
+                    }
+                    listener.onConversations(summaries);
+                });
+        return registration::remove;
+    }
+
+    @Override
+    public void migrateLegacyMessages(String userId, String otherId, Callback<Void> callback) {
+        LegacyChatMigration.migrate(database, userId, otherId)
+                .addOnSuccessListener(callback::onSuccess)
+                .addOnFailureListener(callback::onFailure);
+    }
+
+    /**
+     * Wraps a failed write. Writes do not fail while offline, since Firestore holds them
+     * until it is connected, so only a write the server denied or rejected is permanent.
+     */
+    private static RepositoryException toRepositoryException(Exception e) {
+        boolean permanent = false;
+        if (e instanceof FirebaseFirestoreException) {
+            FirebaseFirestoreException.Code code = ((FirebaseFirestoreException) e).getCode();
+            permanent = code == FirebaseFirestoreException.Code.PERMISSION_DENIED
+                    || code == FirebaseFirestoreException.Code.INVALID_ARGUMENT;
+        }
+        return new RepositoryException(e.getMessage(), e, permanent);
+    }
+
+    private static List<ChatMessage> toMessages(List<DocumentSnapshot> documents) {
+        List<ChatMessage> messages = new ArrayList<>(documents.size());
+        for (int i = 0; i < documents.size(); i++) {
+            messages.add(MessageDocuments.toChatMessage(documents.get(i)));
+        }
+        return messages;
+    }
+
+    private static Change.Type toType(DocumentChange.Type type) {
+        switch (type) {
+            case ADDED:
+                return Change.Type.ADDED;
+            case MODIFIED:
+                return Change.Type.MODIFIED;
+            default:
+                return Change.Type.REMOVED;
+        }
+    }
+}
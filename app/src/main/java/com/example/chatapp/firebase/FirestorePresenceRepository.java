@@ -0,0 +1,148 @@
+package com.example.chatapp.firebase;
+
+import com.example.chatapp.repository.PresenceRepository;
+import com.example.chatapp.repository.Registration;
+import com.example.chatapp.utilities.Constants;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.MetadataChanges;
+import com.google.firebase.firestore.SetOptions;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * FirestorePresenceRepository keeps each user's presence in their document of the
+ * {@link Constants#KEY_COLLECTION_PRESENCE} collection, and the receipts of a
+ * conversation as maps from participant id to timestamp on the conversation document.
+ * Every write is a merge, so presence and receipts never overwrite other fields.
+ */
+public class FirestorePresenceRepository implements PresenceRepository {
+
+    private final FirebaseFirestore database;
+    private final CollectionReference presenceReference;
+
+    /**
+     * Constructor to initialize the repository.
+     *
+     * @param database The Firestore instance.
+     */
+    public FirestorePresenceRepository(FirebaseFirestore database) {
+        this.database = database;
+        this.presenceReference = database.collection(Constants.KEY_COLLECTION_PRESENCE);
+    }
+
+    /**
+     * Metadata changes are included, so that the switch from the cached copy to the
+     * server's is delivered even when both hold the same fields.
+     */
+    @Override
+    public Registration listenPresence(String userId, PresenceListener listener) {
+        ListenerRegistration registration = presenceReference.document(userId)
+                .addSnapshotListener(MetadataChanges.INCLUDE, (value, error) -> {
+                    if (error != null || value == null) {
+                        return;
+                    }
+                    Timestamp seen = value.getTimestamp(Constants.KEY_LAST_SEEN);
+                    long lastSeen = seen != null ? seen.getSeconds() * 1000 + seen.getNanoseconds() / 1_000_000 : 0;
+                    // A cached copy may be arbitrarily old; only a fresh one proves the user is around.
+                    boolean online = !value.getMetadata().isFromCache()
+                            && Boolean.TRUE.equals(value.getBoolean(Constants.KEY_ONLINE));
+                    listener.onPresence(online, lastSeen, value.getString(Constants.KEY_TYPING_IN));
+                });
+        return registration::remove;
+    }
+
+    @Override
+    public void writePresence(String userId, boolean online) {
+        writePresence(userId, new HashMap<>(), online);
+    }
+
+    @Override
+    public void writePresence(String userId, boolean online, String typingIn) {
+        Map<String, Object> data = new HashMap<>();
+        data.put(Constants.KEY_TYPING_IN, typingIn);
+        writePresence(userId, data, online);
+    }
+
+    @Override
+    public Registration listenReceipts(String conversationId, ReceiptListener listener) {
+        ListenerRegistration registration = getConversation(conversationId).addSnapshotListener((value, error) -> {
+            if (error != null || value == null) {
+                return;
+            }
+            listener.onReceipts(getMarks(value, Constants.KEY_DELIVERED_UP_TO),
+                    getMarks(value, Constants.KEY_READ_UP_TO));
+        });
+        return registration::remove;
+    }
+
+    @Override
+    public void writeReceipts(String conversationId, String userId, long deliveredUpTo, long readUpTo) {
+        Map<String, Object> data = new HashMap<>();
+        if (deliveredUpTo > 0) {
+            data.put(Constants.KEY_DELIVERED_UP_TO, singleton(userId, deliveredUpTo));
+        }
+        if (readUpTo > 0) {
+            data.put(Constants.KEY_READ_UP_TO, singleton(userId, readUpTo));
+        }
+        if (!data.isEmpty()) {
+            getConversation(conversationId).set(data, SetOptions.merge());
+        }
+    }
+
+    /**
+     * The mark is raised in a transaction, so it is compared with the stored one.
+     */
+    @Override
+    public void raiseDelivered(String conversationId, String userId, long timestamp) {
+        DocumentReference document = getConversation(conversationId);
+        database.runTransaction(transaction -> {
+            Long mark = getMarks(transaction.get(document), Constants.KEY_DELIVERED_UP_TO).get(userId);
+            if (mark == null || mark < timestamp) {
+                Map<String, Object> data = new HashMap<>();
+                data.put(Constants.KEY_DELIVERED_UP_TO, singleton(userId, timestamp));
+                transaction.set(document, data, SetOptions.merge());
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Merges a change into the presence document. Every write also refreshes the
+     * online flag and last-seen time.
+     */
+    private void writePresence(String userId, Map<String, Object> data, boolean online) {
+        data.put(Constants.KEY_ONLINE, online);
+        data.put(Constants.KEY_LAST_SEEN, FieldValue.serverTimestamp());
+        presenceReference.document(userId).set(data, SetOptions.merge());
+    }
+
+    private DocumentReference getConversation(String conversationId) {
+        return database.collection(Constants.KEY_COLLECTION_CONVERSATIONS).document(conversationId);
+    }
+
+    private static Map<String, Object> singleton(String userId, long timestamp) {
+        Map<String, Object> marks = new HashMap<>();
+        marks.put(userId, timestamp);
+        return marks;
+    }
+
+    private static Map<String, Long> getMarks(DocumentSnapshot document, String field) {
+        Map<String, Long> result = new HashMap<>();
+        Object marks = document.get(field);
+        if (marks instanceof Map) {
+            for (Map.Entry<?, ?> mark : ((Map<?, ?>) marks).entrySet()) {
+                if (mark.getValue() instanceof Number) {
+                    result.put(String.valueOf(mark.getKey()), ((Number) mark.getValue()).longValue());
+                }
+            }
+        }
+        return result;
+    }
+}
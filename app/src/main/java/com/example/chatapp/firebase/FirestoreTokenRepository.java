@@ -0,0 +1,44 @@
+package com.example.chatapp.firebase;
+
+import com.example.chatapp.repository.Callback;
+import com.example.chatapp.repository.TokenRepository;
+import com.example.chatapp.utilities.Constants;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+/**
+ * FirestoreTokenRepository stores the FCM token in the user's document. Every change
+ * also bumps {@code updatedAt}, so directory listeners pick it up.
+ */
+public class FirestoreTokenRepository implements TokenRepository {
+
+    private final FirebaseFirestore database;
+
+    /**
+     * Constructor to initialize the repository.
+     *
+     * @param database The Firestore instance.
+     */
+    public FirestoreTokenRepository(FirebaseFirestore database) {
+        this.database = database;
+    }
+
+    @Override
+    public void updateToken(String userId, String token, Callback<Void> callback) {
+        write(userId, token, callback);
+    }
+
+    @Override
+    public void deleteToken(String userId, Callback<Void> callback) {
+        write(userId, FieldValue.delete(), callback);
+    }
+
+    private void write(String userId, Object token, Callback<Void> callback) {
+        database.collection(Constants.KEY_COLLECTION_USERS)
+                .document(userId)
+                .update(Constants.KEY_FCM_TOKEN, token,
+                        Constants.KEY_UPDATED_AT, FieldValue.serverTimestamp())
+                .addOnSuccessListener(callback::onSuccess)
+                .addOnFailureListener(callback::onFailure);
+    }
+}
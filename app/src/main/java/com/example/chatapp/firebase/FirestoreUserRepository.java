@@ -0,0 +1,188 @@
+package com.example.chatapp.firebase;
+
+import com.example.chatapp.models.User;
+import com.example.chatapp.repository.Callback;
+import com.example.chatapp.repository.Change;
+import com.example.chatapp.repository.Registration;
+import com.example.chatapp.repository.UserRepository;
+import com.example.chatapp.utilities.Constants;
+import com.example.chatapp.utilities.UserSearchIndex;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * FirestoreUserRepository reads the user directory from the {@code User} collection,
+ * where sign-in also looks up users by their credentials. Each user document carries
+ * only the version of its avatar; every stored size is a document of its own in the
+ * user's {@link Constants#KEY_COLLECTION_AVATARS} collection.
+ * <p>
+ * Searching queries the lowercase first name, which documents written before it was
+ * stored lack. Whenever a full read or a sign-in comes across such a document, the
+ * field is backfilled; the write is idempotent, so clients racing on it do no harm,
+ * and it leaves {@code updatedAt} alone, so directory listeners are not woken up.
+ */
+public class FirestoreUserRepository implements UserRepository {
+
+    private final FirebaseFirestore database;
+    private final CollectionReference usersReference;
+
+    /**
+     * Constructor to initialize the repository.
+     *
+     * @param database The Firestore instance.
+     */
+    public FirestoreUserRepository(FirebaseFirestore database) {
+        this.database = database;
+        this.usersReference = database.collection(Constants.KEY_COLLECTION_USERS);
+    }
+
+    @Override
+    public void getUsers(Callback<List<User>> callback) {
+        usersReference.get()
+                .addOnSuccessListener(result -> {
+                    List<User> users = new ArrayList<>(result.size());
+                    for (DocumentSnapshot document : result.getDocuments()) {
+                        backfillSearchField(document);
+                        users.add(UserDirectory.toUser(document));
+                    }
+                    callback.onSuccess(users);
+                })
+                .addOnFailureListener(callback::onFailure);
+    }
+
+    @Override
+    public void getUser(String userId, Callback<User> callback) {
+        usersReference.document(userId).get()
+                .addOnSuccessListener(document ->
+                        callback.onSuccess(document.exists() ? UserDirectory.toUser(document) : null))
+                .addOnFailureListener(callback::onFailure);
+    }
+
+    @Override
+    public void findUser(String email, String password, Callback<User> callback) {
+        usersReference
+                .whereEqualTo(Constants.KEY_EMAIL, email)
+                .whereEqualTo(Constants.KEY_PASSWORD, password)
+                .limit(1)
+                .get()
+                .addOnSuccessListener(result -> {
+                    if (result.isEmpty()) {
+                        callback.onSuccess(null);
+                        return;
+                    }
+                    DocumentSnapshot document = result.getDocuments().get(0);
+                    backfillSearchField(document);
+                    callback.onSuccess(UserDirectory.toUser(document));
+                })
+                .addOnFailureListener(callback::onFailure);
+    }
+
+    @Override
+    public void createUser(User user, String password, Map<Integer, String> avatars, Callback<User> callback) {
+        Map<String, Object> data = new HashMap<>();
+        data.put(Constants.KEY_FIRST_NAME, user.firstName);
+        data.put(Constants.KEY_LAST_NAME, user.lastName);
+        data.put(Constants.KEY_FIRST_NAME_LOWER, UserSearchIndex.normalize(user.firstName));
+        data.put(Constants.KEY_EMAIL, user.email);
+        data.put(Constants.KEY_PASSWORD, password);
+        data.put(Constants.KEY_IMAGE_VERSION, user.imageVersion);
+        data.put(Constants.KEY_UPDATED_AT, FieldValue.serverTimestamp());
+        DocumentReference userReference = usersReference.document();
+        WriteBatch batch = database.batch();
+        batch.set(userReference, data);
+        for (Map.Entry<Integer, String> avatar : avatars.entrySet()) {
+            Map<String, Object> avatarData = new HashMap<>();
+            avatarData.put(Constants.KEY_IMAGE, avatar.getValue());
+            batch.set(userReference.collection(Constants.KEY_COLLECTION_AVATARS)
+                    .document(String.valueOf(avatar.getKey())), avatarData);
+        }
+        batch.commit()
+                .addOnSuccessListener(unused -> {
+                    user.id = userReference.getId();
+                    callback.onSuccess(user);
+                })
+                .addOnFailureListener(callback::onFailure);
+    }
+
+    @Override
+    public String getAvatar(String userId, int size) throws IOException {
+        try {
+            DocumentSnapshot document = Tasks.await(usersReference.document(userId)
+                    .collection(Constants.KEY_COLLECTION_AVATARS)
+                    .document(String.valueOf(size))
+                    .get());
+            return document.getString(Constants.KEY_IMAGE);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    @Override
+    public void searchUsers(String prefix, int limit, Callback<List<User>> callback) {
+        usersReference
+                .orderBy(Constants.KEY_FIRST_NAME_LOWER)
+                .startAt(prefix)
+                .endAt(prefix + "\uf8ff")
+                .limit(limit)
+                .get()
+                .addOnSuccessListener(result -> {
+                    List<User> users = new ArrayList<>(result.size());
+                    for (DocumentSnapshot document : result.getDocuments()) {
+                        users.add(UserDirectory.toUser(document));
+                    }
+                    callback.onSuccess(users);
+                })
+                .addOnFailureListener(callback::onFailure);
+    }
+
+    @Override
+    public Registration listenUsers(long updatedAfter, UserListener listener) {
+        ListenerRegistration registration = usersReference
+                .whereGreaterThan(Constants.KEY_UPDATED_AT, new Date(updatedAfter))
+                .addSnapshotListener((value, error) -> {
+                    if (error != null) {
+                        listener.onError(error);
+                        return;
+                    }
+                    if (value == null) {
+                        return;
+                    }
+                    List<Change<User>> changes = new ArrayList<>();
+                    for (DocumentChange documentChange : value.getDocumentChanges()) {
+                        Change.Type type = documentChange.getType() == DocumentChange.Type.ADDED ? Change.Type.ADDED
+                                : documentChange.getType() == DocumentChange.Type.MODIFIED ? Change.Type.MODIFIED
+                                : Change.Type.REMOVED;
+                        changes.add(new Change<>(type, UserDirectory.toUser(documentChange.getDocument())));
+                    }
+                    listener.onUsers(changes);
+                });
+        return registration::remove;
+    }
+
+    private static void backfillSearchField(DocumentSnapshot document) {
+        String firstName = document.getString(Constants.KEY_FIRST_NAME);
+        if (firstName != null && document.getString(Constants.KEY_FIRST_NAME_LOWER) == null) {
+            document.getReference().update(Constants.KEY_FIRST_NAME_LOWER, UserSearchIndex.normalize(firstName));
+        }
+    }
+}
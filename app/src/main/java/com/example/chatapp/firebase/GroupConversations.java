@@ -0,0 +1,141 @@
+package com.example.chatapp.firebase;
+
+import com.example.chatapp.models.ChatMessage;
+import com.example.chatapp.models.ConversationSummary;
+import com.example.chatapp.models.Group;
+import com.example.chatapp.models.User;
+import com.example.chatapp.utilities.Constants;
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.SetOptions;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * GroupConversations reads and writes the conversation documents of groups under
+ * {@code chats/{groupId}}. Each holds the member ids and doubles as the group's inbox
+ * summary: a send overwrites an older last message, and every member lists their groups with
+ * a single {@code array-contains} query on the members. Work is fanned out on read, so
+ * a message costs the same writes in a group of two hundred as in a group of three,
+ * where per-member summaries would cost one write per member.
+ */
+public class GroupConversations {
+
+    private GroupConversations() {
+    }
+
+    /**
+     * Creates a group. The id is generated on the client and the document written
+     * without waiting for the server, so the group can be opened right away.
+     *
+     * @param database The Firestore instance.
+     * @param name     The name of the group.
+     * @param members  The ids of all members, the creator included.
+     * @return The new group.
+     */
+    public static Group create(FirebaseFirestore database, String name, List<String> members) {
+        DocumentReference document = database.collection(Constants.KEY_COLLECTION_CONVERSATIONS).document();
+        Group group = new Group();
+        group.id = document.getId();
+        group.name = name;
+        group.members = new ArrayList<>(members);
+        Map<String, Object> data = new HashMap<>();
+        data.put(Constants.KEY_GROUP_NAME, name);
+        data.put(Constants.KEY_MEMBERS, group.members);
+        // Sorts the new, still empty group to the top of its members' inboxes.
+        data.put(Constants.KEY_TIMESTAMP, FieldValue.serverTimestamp());
+        document.set(data);
+        return group;
+    }
+
+    /**
+     * Builds the query for the groups of a user, most recently active first.
+     *
+     * @param database The Firestore instance.
+     * @param userId   The member.
+     * @param limit    Maximum number of groups.
+     * @return The query.
+     */
+    public static Query query(FirebaseFirestore database, String userId, int limit) {
+        return database.collection(Constants.KEY_COLLECTION_CONVERSATIONS)
+                .whereArrayContains(Constants.KEY_MEMBERS, userId)
+                .orderBy(Constants.KEY_TIMESTAMP, Query.Direction.DESCENDING)
+                .limit(limit);
+    }
+
+    /**
+     * Updates the group's summary after a batch of messages was committed, in a
+     * transaction that leaves it alone if it already holds a newer message: a batch
+     * queued offline commits after newer messages of other members. The summary is
+     * merged into the group's document, leaving the members and receipts alone, and
+     * sorted in the inbox by the server time of the update.
+     *
+     * @param database    The Firestore instance.
+     * @param groupId     The group.
+     * @param sender      The signed-in user.
+     * @param lastMessage The newest message of the batch.
+     * @return The task of the transaction.
+     */
+    public static Task<Void> update(FirebaseFirestore database, String groupId,
+                                    User sender, ChatMessage lastMessage) {
+        DocumentReference document = database.collection(Constants.KEY_COLLECTION_CONVERSATIONS).document(groupId);
+        return database.runTransaction(transaction -> {
+            Long lastMessageAt = transaction.get(document).getLong(Constants.KEY_LAST_MESSAGE_AT);
+            if (lastMessageAt != null && lastMessageAt >= lastMessage.timestamp) {
+                return null;
+            }
+            Map<String, Object> data = new HashMap<>();
+            data.put(Constants.KEY_LAST_SENDER_NAME, sender.firstName);
+            data.put(Constants.KEY_LAST_MESSAGE, ConversationSummaries.getPreview(lastMessage));
+            data.put(Constants.KEY_LAST_MESSAGE_AT, lastMessage.timestamp);
+            data.put(Constants.KEY_TIMESTAMP, FieldValue.serverTimestamp());
+            transaction.set(document, data, SetOptions.merge());
+            return null;
+        });
+    }
+
+    /**
+     * Reads a group's conversation document as an inbox row, with the last message
+     * prefixed by its sender's name.
+     *
+     * @param document The Firestore document of the group.
+     * @return The parsed summary.
+     */
+    public static ConversationSummary toSummary(DocumentSnapshot document) {
+        ConversationSummary summary = new ConversationSummary();
+        summary.otherId = document.getId();
+        summary.otherName = document.getString(Constants.KEY_GROUP_NAME);
+        summary.members = getMembers(document);
+        String lastMessage = document.getString(Constants.KEY_LAST_MESSAGE);
+        String lastSenderName = document.getString(Constants.KEY_LAST_SENDER_NAME);
+        summary.lastMessage = lastMessage != null && lastSenderName != null
+                ? lastSenderName + ": " + lastMessage
+                : lastMessage;
+        Timestamp timestamp = document.getTimestamp(Constants.KEY_TIMESTAMP);
+        summary.timestamp = timestamp != null
+                ? timestamp.getSeconds() * 1000 + timestamp.getNanoseconds() / 1_000_000
+                : System.currentTimeMillis();
+        return summary;
+    }
+
+    private static ArrayList<String> getMembers(DocumentSnapshot document) {
+        ArrayList<String> members = new ArrayList<>();
+        Object value = document.get(Constants.KEY_MEMBERS);
+        if (value instanceof List) {
+            for (Object member : (List<?>) value) {
+                if (member instanceof String) {
+                    members.add((String) member);
+                }
+            }
+        }
+        return members;
+    }
+}
@@ -0,0 +1,297 @@
+package com.example.chatapp.firebase;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.example.chatapp.database.MessageStore;
+import com.example.chatapp.models.ChatMessage;
+import com.example.chatapp.repository.ChatRepository;
+import com.example.chatapp.utilities.SortedMessageList;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * HistoryPager loads the history of a conversation in fixed-size pages, walking
+ * backwards from the oldest message shown when the conversation was opened.
+ * Pages are read from the local {@link MessageStore} first; only when the store runs
+ * short are they fetched from the {@link ChatRepository} with cursors and written
+ * through to the store.
+ * At most {@code windowPages} history pages are kept in memory: loading past the window
+ * drops the page farthest from the one just loaded, and a dropped newer page is loaded
+ * again when the user scrolls back down towards the live page.
+ */
+public class HistoryPager {
+
+    /**
+     * Receives pages as they are loaded or dropped.
+     */
+    public interface Callback {
+        /**
+         * Called when a page of messages was loaded and should be shown.
+         *
+         * @param messages The messages of the page.
+         */
+        void onPageLoaded(List<ChatMessage> messages);
+
+        /**
+         * Called when a page left the window and its messages should be released.
+         *
+         * @param messages The messages of the page.
+         */
+        void onPageDropped(List<ChatMessage> messages);
+    }
+
+    private final ChatRepository chatRepository;
+    private final MessageStore messageStore;
+    private final String conversationId;
+    private final int pageSize;
+    private final int windowPages;
+    private final Callback callback;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final ArrayDeque<List<ChatMessage>> pages = new ArrayDeque<>();
+    private ChatMessage anchor;
+    private boolean loading;
+    private boolean reachedStart;
+    private boolean gapToLive;
+    /**
+     * Incremented by {@link #jumpTo}, so that loads started before a jump are discarded.
+     */
+    private int generation;
+
+    /**
+     * Constructor to initialize the pager for one conversation.
+     *
+     * @param chatRepository The repository remote pages are read from.
+     * @param messageStore   The local message store.
+     * @param conversationId The id of the conversation.
+     * @param pageSize       Number of messages per page.
+     * @param windowPages    Maximum number of history pages kept in memory.
+     * @param callback       Receives loaded and dropped pages.
+     */
+    public HistoryPager(ChatRepository chatRepository, MessageStore messageStore, String conversationId,
+                        int pageSize, int windowPages, Callback callback) {
+        this.chatRepository = chatRepository;
+        this.messageStore = messageStore;
+        this.conversationId = conversationId;
+        this.pageSize = pageSize;
+        this.windowPages = windowPages;
+        this.callback = callback;
+    }
+
+    /**
+     * Anchors the pager on the oldest message shown when the conversation was opened.
+     * Only the first call has an effect; history is always read from before that message.
+     *
+     * @param oldest The oldest message of the initial page.
+     */
+    public void setAnchor(ChatMessage oldest) {
+        if (anchor == null) {
+            anchor = oldest;
+        }
+    }
+
+    /**
+     * @return True if newer history pages were dropped and must be reloaded before the live page.
+     */
+    public boolean hasGapToLive() {
+        return gapToLive;
+    }
+
+    /**
+     * @return The newest message still held in history, or null if no page is loaded.
+     */
+    public ChatMessage getNewestHistoryMessage() {
+        if (pages.isEmpty()) {
+            return null;
+        }
+        List<ChatMessage> newest = pages.peekLast();
+        return newest.get(newest.size() - 1);
+    }
+
+    /**
+     * Loads the page just before the oldest message currently held, if any.
+     */
+    public void loadOlder() {
+        if (loading || reachedStart || anchor == null) {
+            return;
+        }
+        ChatMessage cursor = pages.isEmpty() ? anchor : pages.peekFirst().get(0);
+        int requestGeneration = generation;
+        loading = true;
+        messageStore.getExecutor().execute(() -> {
+            List<ChatMessage> local = messageStore.getBefore(conversationId, cursor, pageSize);
+            mainHandler.post(() -> {
+                if (requestGeneration != generation) {
+                    return;
+                }
+                if (local.size() == pageSize) {
+                    onOlderPage(local, false);
+                    return;
+                }
+                ChatMessage remoteCursor = local.isEmpty() ? cursor : local.get(0);
+                chatRepository.getMessagesBefore(conversationId, remoteCursor, pageSize - local.size(),
+                        new com.example.chatapp.repository.Callback<List<ChatMessage>>() {
+                            @Override
+                            public void onSuccess(List<ChatMessage> result) {
+                                if (requestGeneration != generation) {
+                                    return;
+                                }
+                                List<ChatMessage> remote = store(result);
+                                boolean exhausted = remote.size() < pageSize - local.size();
+                                List<ChatMessage> page = new ArrayList<>(remote);
+                                page.addAll(local);
+                                onOlderPage(page, exhausted);
+                            }
+
+                            @Override
+                            public void onFailure(Exception e) {
+                                if (requestGeneration != generation) {
+                                    return;
+                                }
+                                loading = false;
+                                if (!local.isEmpty()) {
+                                    onOlderPage(local, false);
+                                }
+                            }
+                        });
+            });
+        });
+    }
+
+    /**
+     * Reloads the page right after the newest history page, closing the gap
+     * towards the live page that was left when newer pages were dropped.
+     */
+    public void loadNewer() {
+        if (loading || !gapToLive || pages.isEmpty()) {
+            return;
+        }
+        ChatMessage cursor = getNewestHistoryMessage();
+        int requestGeneration = generation;
+        loading = true;
+        messageStore.getExecutor().execute(() -> {
+            List<ChatMessage> local = messageStore.getBetween(conversationId, cursor, anchor, pageSize);
+            mainHandler.post(() -> {
+                if (requestGeneration != generation) {
+                    return;
+                }
+                if (local.size() == pageSize) {
+                    onNewerPage(local, false);
+                    return;
+                }
+                ChatMessage remoteCursor = local.isEmpty() ? cursor : local.get(local.size() - 1);
+                chatRepository.getMessagesBetween(conversationId, remoteCursor, anchor, pageSize - local.size(),
+                        new com.example.chatapp.repository.Callback<List<ChatMessage>>() {
+                            @Override
+                            public void onSuccess(List<ChatMessage> result) {
+                                if (requestGeneration != generation) {
+                                    return;
+                                }
+                                List<ChatMessage> remote = store(result);
+                                boolean closed = remote.size() < pageSize - local.size();
+                                List<ChatMessage> page = new ArrayList<>(local);
+                                page.addAll(remote);
+                                onNewerPage(page, closed);
+                            }
+
+                            @Override
+                            public void onFailure(Exception e) {
+                                if (requestGeneration != generation) {
+                                    return;
+                                }
+                                loading = false;
+                                if (!local.isEmpty()) {
+                                    onNewerPage(local, false);
+                                }
+                            }
+                        });
+            });
+        });
+    }
+
+    /**
+     * Replaces the loaded history with a page centred on a message, such as a search
+     * hit, read from the local store. Scrolling from there loads older pages as usual
+     * and closes the gap towards the live page with newer ones.
+     *
+     * @param target   The message to show; must be in the store.
+     * @param onLoaded Run on the main thread once the page was handed to the callback.
+     */
+    public void jumpTo(ChatMessage target, Runnable onLoaded) {
+        if (anchor == null || SortedMessageList.ORDER.compare(target, anchor) >= 0) {
+            mainHandler.post(onLoaded);
+            return;
+        }
+        int requestGeneration = ++generation;
+        loading = true;
+        int olderCount = pageSize / 2;
+        int newerCount = pageSize - olderCount - 1;
+        messageStore.getExecutor().execute(() -> {
+            List<ChatMessage> page = messageStore.getBefore(conversationId, target, olderCount);
+            List<ChatMessage> newer = messageStore.getBetween(conversationId, target, anchor, newerCount);
+            page.add(target);
+            page.addAll(newer);
+            mainHandler.post(() -> {
+                if (requestGeneration != generation) {
+                    return;
+                }
+                loading = false;
+                while (!pages.isEmpty()) {
+                    callback.onPageDropped(pages.removeFirst());
+                }
+                reachedStart = false;
+                gapToLive = newer.size() == newerCount;
+                pages.add(page);
+                callback.onPageLoaded(page);
+                onLoaded.run();
+            });
+        });
+    }
+
+    private void onOlderPage(List<ChatMessage> page, boolean exhausted) {
+        loading = false;
+        if (exhausted) {
+            reachedStart = true;
+        }
+        if (page.isEmpty()) {
+            return;
+        }
+        pages.addFirst(page);
+        callback.onPageLoaded(page);
+        if (pages.size() > windowPages) {
+            gapToLive = true;
+            callback.onPageDropped(pages.removeLast());
+        }
+    }
+
+    private void onNewerPage(List<ChatMessage> page, boolean closed) {
+        loading = false;
+        if (closed) {
+            gapToLive = false;
+        }
+        if (page.isEmpty()) {
+            return;
+        }
+        pages.addLast(page);
+        callback.onPageLoaded(page);
+        if (pages.size() > windowPages) {
+            reachedStart = false;
+            callback.onPageDropped(pages.removeFirst());
+        }
+    }
+
+    /**
+     * Orders fetched messages oldest first and writes them through to the store.
+     */
+    private List<ChatMessage> store(List<ChatMessage> fetched) {
+        List<ChatMessage> messages = new ArrayList<>(fetched);
+        Collections.sort(messages, SortedMessageList.ORDER);
+        List<ChatMessage> stored = new ArrayList<>(messages);
+        messageStore.getExecutor().execute(() -> messageStore.put(conversationId, stored));
+        return messages;
+    }
+}
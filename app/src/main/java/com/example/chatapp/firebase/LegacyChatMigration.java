@@ -0,0 +1,74 @@
+package com.example.chatapp.firebase;
+
+import com.example.chatapp.utilities.Constants;
+import com.example.chatapp.utilities.Conversations;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * LegacyChatMigration copies the messages of a conversation from the old flat
+ * {@link Constants#KEY_COLLECTION_CHAT} collection into the conversation's own
+ * {@link Constants#KEY_COLLECTION_MESSAGES} subcollection.
+ * Documents keep their ids and are rewritten in the current message schema, so
+ * running the migration twice (or from both devices) simply rewrites the same documents.
+ */
+public class LegacyChatMigration {
+
+    private static final int MAX_BATCH_SIZE = 500;
+
+    private LegacyChatMigration() {
+    }
+
+    /**
+     * Migrates the legacy messages exchanged between two users.
+     * Messages written to the new collection are delivered to the conversation's
+     * snapshot listener like any other message.
+     *
+     * @param database The Firestore instance.
+     * @param userId   The id of the signed-in user.
+     * @param otherId  The id of the other participant.
+     * @return The task that completes once every message was written.
+     */
+    public static Task<Void> migrate(FirebaseFirestore database, String userId, String otherId) {
+        String conversationId = Conversations.getConversationId(userId, otherId);
+        CollectionReference legacy = database.collection(Constants.KEY_COLLECTION_CHAT);
+        Task<QuerySnapshot> sent = legacy
+                .whereEqualTo(Constants.KEY_SENDER_ID, userId)
+                .whereEqualTo(Constants.KEY_RECEIVER_ID, otherId)
+                .get();
+        Task<QuerySnapshot> received = legacy
+                .whereEqualTo(Constants.KEY_SENDER_ID, otherId)
+                .whereEqualTo(Constants.KEY_RECEIVER_ID, userId)
+                .get();
+        return Tasks.whenAllSuccess(sent, received).onSuccessTask(results -> {
+            List<DocumentSnapshot> documents = new ArrayList<>();
+            for (Object result : results) {
+                documents.addAll(((QuerySnapshot) result).getDocuments());
+            }
+            CollectionReference messages = database.collection(Constants.KEY_COLLECTION_CONVERSATIONS)
+                    .document(conversationId)
+                    .collection(Constants.KEY_COLLECTION_MESSAGES);
+            List<Task<Void>> commits = new ArrayList<>();
+            for (int start = 0; start < documents.size(); start += MAX_BATCH_SIZE) {
+                WriteBatch batch = database.batch();
+                int end = Math.min(start + MAX_BATCH_SIZE, documents.size());
+                for (DocumentSnapshot document : documents.subList(start, end)) {
+                    if (document.exists()) {
+                        batch.set(messages.document(document.getId()),
+                                MessageDocuments.toData(conversationId, MessageDocuments.toChatMessage(document)));
+                    }
+                }
+                commits.add(batch.commit());
+            }
+            return Tasks.whenAll(commits);
+        });
+    }
+}
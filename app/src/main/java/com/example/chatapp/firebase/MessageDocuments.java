@@ -0,0 +1,213 @@
+package com.example.chatapp.firebase;
+
+import com.example.chatapp.models.ChatMessage;
+import com.example.chatapp.utilities.Constants;
+import com.example.chatapp.utilities.Conversations;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldValue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * MessageDocuments converts Firestore message documents and FCM data payloads to and
+ * from {@link ChatMessage} objects.
+ * <p>
+ * Messages are written in schema v2: short field names, and the sender stored as its
+ * index in the conversation id rather than as two full user ids. Documents without a
+ * version field are v1, with the long field names of {@link Constants#KEY_SENDER_ID}
+ * and friends; they are still read, so older history renders unchanged. Image
+ * messages only exist in v2.
+ * <p>
+ * Group messages, which also only exist in v2, store the sender's id instead of an
+ * index, and read back with the group as their receiver.
+ */
+public class MessageDocuments {
+
+    /**
+     * Version written by {@link #toData}.
+     */
+    public static final int SCHEMA_VERSION = 2;
+
+    /**
+     * Fixed per-document overhead of Firestore's storage size calculation.
+     */
+    private static final int DOCUMENT_OVERHEAD = 32;
+
+    private MessageDocuments() {
+    }
+
+    /**
+     * Reads a v1 or v2 message document into a ChatMessage.
+     *
+     * @param document The Firestore document of the message.
+     * @return The parsed ChatMessage.
+     */
+    public static ChatMessage toChatMessage(DocumentSnapshot document) {
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.id = document.getId();
+        Long version = document.getLong(Constants.KEY_SCHEMA_VERSION);
+        if (version != null && version >= 2) {
+            String conversationId = getConversationId(document.getReference());
+            if (Conversations.isGroup(conversationId)) {
+                chatMessage.senderId = document.getString(Constants.KEY_GROUP_SENDER);
+                chatMessage.receiverId = conversationId;
+            } else {
+                Long senderIndex = document.getLong(Constants.KEY_SENDER_INDEX);
+                int index = senderIndex != null ? senderIndex.intValue() : 0;
+                chatMessage.senderId = Conversations.getParticipant(conversationId, index);
+                chatMessage.receiverId = Conversations.getParticipant(conversationId, 1 - index);
+            }
+            chatMessage.message = document.getString(Constants.KEY_TEXT);
+            chatMessage.blobId = document.getString(Constants.KEY_BLOB_ID);
+            if (chatMessage.blobId != null) {
+                chatMessage.thumbnail = document.getString(Constants.KEY_THUMBNAIL);
+                chatMessage.imageWidth = getInt(document, Constants.KEY_IMAGE_WIDTH);
+                chatMessage.imageHeight = getInt(document, Constants.KEY_IMAGE_HEIGHT);
+            }
+        } else {
+            chatMessage.senderId = document.getString(Constants.KEY_SENDER_ID);
+            chatMessage.receiverId = document.getString(Constants.KEY_RECEIVER_ID);
+            chatMessage.message = document.getString(Constants.KEY_MESSAGE);
+        }
+        Timestamp timestamp = document.getTimestamp(Constants.KEY_TIMESTAMP);
+        chatMessage.timestamp = timestamp != null
+                ? toMillis(timestamp)
+                : System.currentTimeMillis();
+        // Null while the write is pending, and in documents written before the field existed.
+        Timestamp committedAt = document.getTimestamp(Constants.KEY_COMMITTED_AT);
+        chatMessage.committedAt = committedAt != null ? toMillis(committedAt) : 0;
+        return chatMessage;
+    }
+
+    /**
+     * Reads a message from an FCM data payload. The timestamp is sent as epoch
+     * milliseconds, since data payload values are strings.
+     *
+     * @param data The data payload of the FCM message.
+     * @return The parsed ChatMessage, or null if the payload does not carry a complete message.
+     */
+    public static ChatMessage fromData(Map<String, String> data) {
+        String id = data.get(Constants.KEY_MESSAGE_ID);
+        String senderId = data.get(Constants.KEY_SENDER_ID);
+        String receiverId = data.get(Constants.KEY_RECEIVER_ID);
+        String timestamp = data.get(Constants.KEY_TIMESTAMP);
+        if (id == null || senderId == null || receiverId == null || timestamp == null) {
+            return null;
+        }
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.id = id;
+        chatMessage.senderId = senderId;
+        chatMessage.receiverId = receiverId;
+        chatMessage.message = data.get(Constants.KEY_MESSAGE);
+        try {
+            chatMessage.timestamp = Long.parseLong(timestamp);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return chatMessage;
+    }
+
+    /**
+     * Builds the v2 document fields of a message. The id is not part of the fields;
+     * it is the id of the document the fields are written to. The commit time is left
+     * to the server.
+     *
+     * @param conversationId The conversation the message belongs to.
+     * @param chatMessage    The message to write; unless the conversation is a group, its
+     *                       sender must be a participant.
+     * @return The document fields.
+     */
+    public static Map<String, Object> toData(String conversationId, ChatMessage chatMessage) {
+        Map<String, Object> data = new HashMap<>();
+        data.put(Constants.KEY_SCHEMA_VERSION, SCHEMA_VERSION);
+        if (Conversations.isGroup(conversationId)) {
+            data.put(Constants.KEY_GROUP_SENDER, chatMessage.senderId);
+        } else {
+            int senderIndex = Conversations.getParticipantIndex(conversationId, chatMessage.senderId);
+            if (senderIndex < 0) {
+                throw new IllegalArgumentException(chatMessage.senderId + " is not in " + conversationId);
+            }
+            data.put(Constants.KEY_SENDER_INDEX, senderIndex);
+        }
+        data.put(Constants.KEY_TEXT, chatMessage.message);
+        data.put(Constants.KEY_TIMESTAMP, new Date(chatMessage.timestamp));
+        data.put(Constants.KEY_COMMITTED_AT, FieldValue.serverTimestamp());
+        if (chatMessage.isImage()) {
+            data.put(Constants.KEY_BLOB_ID, chatMessage.blobId);
+            data.put(Constants.KEY_THUMBNAIL, chatMessage.thumbnail);
+            data.put(Constants.KEY_IMAGE_WIDTH, chatMessage.imageWidth);
+            data.put(Constants.KEY_IMAGE_HEIGHT, chatMessage.imageHeight);
+        }
+        return data;
+    }
+
+    /**
+     * Builds the v1 document fields of a message, as written before schema v2.
+     *
+     * @param chatMessage The message.
+     * @return The document fields.
+     */
+    static Map<String, Object> toLegacyData(ChatMessage chatMessage) {
+        Map<String, Object> data = new HashMap<>();
+        data.put(Constants.KEY_SENDER_ID, chatMessage.senderId);
+        data.put(Constants.KEY_RECEIVER_ID, chatMessage.receiverId);
+        data.put(Constants.KEY_MESSAGE, chatMessage.message);
+        data.put(Constants.KEY_TIMESTAMP, new Date(chatMessage.timestamp));
+        return data;
+    }
+
+    /**
+     * Computes the size Firestore bills for storing a document, following its
+     * documented rules: the document name, every field name and value, and a fixed
+     * 32 bytes. Strings count their UTF-8 length plus one, numbers and timestamps
+     * 8 bytes, booleans and null 1.
+     *
+     * @param documentPath The path of the document, such as {@code chats/a_b/messages/id}.
+     * @param data         The document fields.
+     * @return The storage size in bytes.
+     */
+    public static int getStorageSize(String documentPath, Map<String, Object> data) {
+        // The name counts each path segment as a string, plus 16 bytes for the database.
+        int size = 16;
+        for (String segment : documentPath.split("/")) {
+            size += getStringSize(segment);
+        }
+        for (Map.Entry<String, Object> field : data.entrySet()) {
+            size += getStringSize(field.getKey());
+            Object value = field.getValue();
+            if (value == null || value instanceof Boolean) {
+                size += 1;
+            } else if (value instanceof String) {
+                size += getStringSize((String) value);
+            } else {
+                size += 8;
+            }
+        }
+        return size + DOCUMENT_OVERHEAD;
+    }
+
+    private static int getStringSize(String value) {
+        return value.getBytes(StandardCharsets.UTF_8).length + 1;
+    }
+
+    private static long toMillis(Timestamp timestamp) {
+        return timestamp.getSeconds() * 1000 + timestamp.getNanoseconds() / 1_000_000;
+    }
+
+    private static int getInt(DocumentSnapshot document, String field) {
+        Long value = document.getLong(field);
+        return value != null ? value.intValue() : 0;
+    }
+
+    /**
+     * Returns the id of the conversation a message document lives in.
+     */
+    private static String getConversationId(DocumentReference message) {
+        return message.getParent().getParent().getId();
+    }
+}
@@ -1,14 +1,29 @@
 package com.example.chatapp.firebase;
 
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 
+import com.example.chatapp.database.MessageStore;
+import com.example.chatapp.models.ChatMessage;
+import com.example.chatapp.repository.Repositories;
+import com.example.chatapp.utilities.Constants;
+import com.example.chatapp.utilities.Conversations;
+import com.example.chatapp.utilities.PreferenceManager;
 import com.google.firebase.messaging.FirebaseMessagingService;
 import com.google.firebase.messaging.RemoteMessage;
+
+import java.util.Collections;
 /**
  * MessagingService is a FirebaseMessagingService that handles Firebase Cloud Messaging (FCM) events.
  * It receives notifications and manages FCM token updates.
+ * Data messages carrying a full chat message are written straight into the local
+ * {@link MessageStore}, so opening the conversation shows them without a round-trip.
+ * Only conversations synced before are written to: their listener fetches every commit
+ * since the watermark on the next open, which fills the gaps around pushed messages.
+ * A pushed direct message also raises the user's delivered mark in its conversation.
  */
 
 
@@ -29,6 +44,10 @@ public class MessagingService extends FirebaseMessagingService {
     /**
      * Called when an FCM message is received while the app is in the foreground or background.
      * This method handles both data messages and notification messages.
+     * A chat message in the data payload is stored for the signed-in user on the store's
+     * thread. It does not advance the conversation's sync watermark: a pushed message
+     * says nothing about the messages before it, which the conversation's listener
+     * still confirms and backfills.
      *
      * @param message The RemoteMessage object containing the FCM message data.
      */
@@ -36,6 +55,43 @@ public class MessagingService extends FirebaseMessagingService {
     @Override
     public void onMessageReceived(@NonNull RemoteMessage message) {
         super.onMessageReceived(message);
-        Log.d("FCM","460 Message: " + message.getNotification().getBody());
+        if (message.getNotification() != null) {
+            Log.d("FCM", "Notification: " + message.getNotification().getBody());
+        }
+        if (message.getData().isEmpty()) {
+            return;
+        }
+        ChatMessage chatMessage = MessageDocuments.fromData(message.getData());
+        if (chatMessage == null) {
+            Log.w("FCM", "Ignoring data message without a complete chat message");
+            return;
+        }
+        PreferenceManager preferenceManager = new PreferenceManager(getApplicationContext());
+        String userId = preferenceManager.getString(Constants.KEY_USER_ID);
+        if (userId == null) {
+            return;
+        }
+        String conversationId;
+        String groupId = message.getData().get(Constants.KEY_GROUP);
+        if (groupId != null) {
+            // Group messages are pushed to every member; the payload names the group.
+            conversationId = groupId;
+            chatMessage.receiverId = groupId;
+        } else if (userId.equals(chatMessage.receiverId)) {
+            conversationId = Conversations.getConversationId(chatMessage.senderId, chatMessage.receiverId);
+            // The push reached this device, so the sender sees Delivered before the chat is opened.
+            // Messages arrive on a background thread; repositories are used from the main one.
+            new Handler(Looper.getMainLooper()).post(() -> Repositories.getPresenceRepository()
+                    .raiseDelivered(conversationId, userId, chatMessage.timestamp));
+        } else {
+            return;
+        }
+        MessageStore messageStore = MessageStore.getInstance(getApplicationContext());
+        messageStore.getExecutor().execute(() -> {
+            // In a conversation never synced, a lone message would pass for contiguous history.
+            if (messageStore.getSyncedUpTo(conversationId) > 0) {
+                messageStore.put(conversationId, Collections.singletonList(chatMessage));
+            }
+        });
     }
 }
@@ -0,0 +1,220 @@
+package com.example.chatapp.firebase;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.chatapp.models.ChatMessage;
+import com.example.chatapp.models.User;
+import com.example.chatapp.repository.Callback;
+import com.example.chatapp.repository.ChatRepository;
+import com.example.chatapp.repository.RepositoryException;
+import com.example.chatapp.utilities.Metrics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * OutboundMessageQueue sends the messages of one conversation without blocking the UI.
+ * Every message gets its document id on the client, so it can be shown right away as
+ * pending and written with {@code set()}: a retried write lands on the same document
+ * and the listener's echo of it is recognised by id. Sends arriving within
+ * {@link #COALESCE_DELAY_MS} of each other are committed together in one
+ * {@link ChatRepository#sendMessages} call, which also updates the conversation summaries.
+ * <p>
+ * The messages of a failed batch are reported as failed right away if the repository
+ * reports the failure as permanent, see {@link RepositoryException}. Other failures are
+ * queued again and retried with exponential backoff, up to {@link #MAX_ATTEMPTS} times
+ * per message.
+ * <p>
+ * All methods must be called on the main thread.
+ */
+public class OutboundMessageQueue {
+
+    /**
+     * Receives messages once the server has accepted them.
+     */
+    public interface Listener {
+        /**
+         * Called on the main thread when a batch of messages was committed.
+         *
+         * @param messages The committed messages.
+         */
+        void onSent(List<ChatMessage> messages);
+
+        /**
+         * Called on the main thread when messages are given up on and will not be sent.
+         *
+         * @param messages The failed messages.
+         */
+        void onFailed(List<ChatMessage> messages);
+    }
+
+    private static final long COALESCE_DELAY_MS = 150;
+    private static final long INITIAL_BACKOFF_MS = 1000;
+    private static final long MAX_BACKOFF_MS = 60_000;
+    private static final int MAX_ATTEMPTS = 5;
+    /**
+     * Firestore allows 500 writes per batch; up to two of them are the conversation summaries.
+     */
+    private static final int MAX_BATCH_SIZE = 498;
+
+    private static final Metrics.Histogram SEND_TO_ACK = Metrics.histogram("chat.send_to_ack");
+    private static final Metrics.Counter SEND_FAILURES = Metrics.counter("chat.send_failures");
+
+    private final ChatRepository chatRepository;
+    private final String conversationId;
+    private final User sender;
+    private final User receiver;
+    private final Listener listener;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable flushRunnable = this::flush;
+
+    private final List<ChatMessage> queued = new ArrayList<>();
+    private final Map<String, Integer> attempts = new HashMap<>();
+    private long backoff = INITIAL_BACKOFF_MS;
+    private boolean flushScheduled;
+    private boolean closed;
+
+    /**
+     * Constructor to initialize the queue for one conversation.
+     *
+     * @param chatRepository The repository the messages are written to.
+     * @param conversationId The conversation.
+     * @param sender         The signed-in user.
+     * @param receiver       The other participant, or null if the conversation is a group.
+     * @param listener       Receives committed messages.
+     */
+    public OutboundMessageQueue(ChatRepository chatRepository, String conversationId, User sender, User receiver,
+                                Listener listener) {
+        this.chatRepository = chatRepository;
+        this.conversationId = conversationId;
+        this.sender = sender;
+        this.receiver = receiver;
+        this.listener = listener;
+    }
+
+    /**
+     * Creates a pending message with a client-generated id and queues it for sending.
+     *
+     * @param text The message text.
+     * @return The pending message, to be shown immediately.
+     */
+    public ChatMessage enqueue(String text) {
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.id = chatRepository.newMessageId(conversationId);
+        chatMessage.senderId = sender.id;
+        chatMessage.receiverId = receiver != null ? receiver.id : conversationId;
+        chatMessage.message = text;
+        chatMessage.timestamp = System.currentTimeMillis();
+        chatMessage.pending = true;
+        queued.add(chatMessage);
+        scheduleFlush(COALESCE_DELAY_MS);
+        return chatMessage;
+    }
+
+    /**
+     * Queues an image message. Its full image is uploaded separately under the
+     * message id, which doubles as the blob id.
+     *
+     * @param caption   The caption, possibly empty.
+     * @param thumbnail The Base64 encoded inline thumbnail.
+     * @param width     The width of the full image, in pixels.
+     * @param height    The height of the full image, in pixels.
+     * @return The pending message, to be shown right away.
+     */
+    public ChatMessage enqueueImage(String caption, String thumbnail, int width, int height) {
+        ChatMessage chatMessage = enqueue(caption);
+        chatMessage.blobId = chatMessage.id;
+        chatMessage.thumbnail = thumbnail;
+        chatMessage.imageWidth = width;
+        chatMessage.imageHeight = height;
+        return chatMessage;
+    }
+
+    /**
+     * Hands every queued message to Firestore right away and stops reporting results.
+     * Firestore keeps the writes in its local cache and completes them on its own.
+     */
+    public void close() {
+        handler.removeCallbacks(flushRunnable);
+        flush();
+        closed = true;
+    }
+
+    private void scheduleFlush(long delay) {
+        if (flushScheduled || closed) {
+            return;
+        }
+        flushScheduled = true;
+        handler.postDelayed(flushRunnable, delay);
+    }
+
+    /**
+     * Commits everything queued so far, in batches of at most {@link #MAX_BATCH_SIZE}
+     * messages plus two summary writes. Batches are not serialised behind each other: while offline, Firestore
+     * holds several of them in its local cache and sends them in order once connected.
+     */
+    private void flush() {
+        flushScheduled = false;
+        while (!queued.isEmpty()) {
+            int size = Math.min(queued.size(), MAX_BATCH_SIZE);
+            List<ChatMessage> batch = new ArrayList<>(queued.subList(0, size));
+            queued.subList(0, size).clear();
+            commit(batch);
+        }
+    }
+
+    private void commit(List<ChatMessage> batch) {
+        chatRepository.sendMessages(conversationId, sender, receiver, batch, new Callback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+                backoff = INITIAL_BACKOFF_MS;
+                for (int i = 0; i < batch.size(); i++) {
+                    attempts.remove(batch.get(i).id);
+                }
+                long now = System.currentTimeMillis();
+                for (int i = 0; i < batch.size(); i++) {
+                    SEND_TO_ACK.record((now - batch.get(i).timestamp) * 1_000_000);
+                }
+                if (!closed) {
+                    listener.onSent(batch);
+                }
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                SEND_FAILURES.increment();
+                if (closed) {
+                    return;
+                }
+                boolean permanent = e instanceof RepositoryException && ((RepositoryException) e).isPermanent();
+                List<ChatMessage> retried = new ArrayList<>(batch.size());
+                List<ChatMessage> failed = new ArrayList<>();
+                for (ChatMessage chatMessage : batch) {
+                    Integer count = attempts.get(chatMessage.id);
+                    int attempt = count != null ? count + 1 : 1;
+                    if (permanent || attempt >= MAX_ATTEMPTS) {
+                        attempts.remove(chatMessage.id);
+                        failed.add(chatMessage);
+                    } else {
+                        attempts.put(chatMessage.id, attempt);
+                        retried.add(chatMessage);
+                    }
+                }
+                if (!failed.isEmpty()) {
+                    Log.w("OutboundMessageQueue", "Giving up on " + failed.size() + " messages", e);
+                    listener.onFailed(failed);
+                }
+                if (!retried.isEmpty()) {
+                    Log.w("OutboundMessageQueue", "Send failed, retrying in " + backoff + " ms", e);
+                    queued.addAll(0, retried);
+                    scheduleFlush(backoff);
+                    backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.chatapp.firebase;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.example.chatapp.repository.PresenceRepository;
+import com.example.chatapp.repository.Registration;
+
+/**
+ * PeerPresence watches the presence of the other participant of a conversation with
+ * a single listener. Online and typing states expire on their own when the peer
+ * stops refreshing them (for example because their app was killed);
+ * expiry is measured from when a snapshot arrived, so clock differences between
+ * devices do not matter.
+ */
+public class PeerPresence {
+
+    /**
+     * Receives the peer's state whenever it changes.
+     */
+    public interface Listener {
+        /**
+         * Called on the main thread with the peer's current state.
+         *
+         * @param online   True if the peer is in the app.
+         * @param lastSeen When the peer was last seen, in epoch milliseconds, or 0 if unknown.
+         * @param typing   True if the peer is typing in this conversation.
+         */
+        void onPresenceChanged(boolean online, long lastSeen, boolean typing);
+    }
+
+    private static final long ONLINE_TIMEOUT_MS = Presence.HEARTBEAT_MS * 5 / 2;
+    private static final long TYPING_TIMEOUT_MS = Presence.TYPING_REFRESH_MS * 3 / 2;
+
+    private final PresenceRepository presenceRepository;
+    private final String peerId;
+    private final String conversationId;
+    private final Listener listener;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable expireOnline = () -> {
+        online = false;
+        typing = false;
+        notifyListener();
+    };
+    private final Runnable expireTyping = () -> {
+        typing = false;
+        notifyListener();
+    };
+
+    private Registration registration;
+    private boolean online;
+    private boolean typing;
+    private long lastSeen;
+
+    /**
+     * Constructor to initialize the watcher for one conversation.
+     *
+     * @param presenceRepository The repository the peer's presence is read from.
+     * @param peerId             The other participant.
+     * @param conversationId     The conversation typing is reported for.
+     * @param listener           Receives the peer's state.
+     */
+    public PeerPresence(PresenceRepository presenceRepository, String peerId, String conversationId,
+                        Listener listener) {
+        this.presenceRepository = presenceRepository;
+        this.peerId = peerId;
+        this.conversationId = conversationId;
+        this.listener = listener;
+    }
+
+    /**
+     * Starts listening to the peer's presence.
+     */
+    public void start() {
+        registration = presenceRepository.listenPresence(peerId, (online, lastSeen, typingIn) -> {
+            this.lastSeen = lastSeen;
+            this.online = online;
+            typing = online && conversationId.equals(typingIn);
+            handler.removeCallbacks(expireOnline);
+            handler.removeCallbacks(expireTyping);
+            if (online) {
+                handler.postDelayed(expireOnline, ONLINE_TIMEOUT_MS);
+            }
+            if (typing) {
+                handler.postDelayed(expireTyping, TYPING_TIMEOUT_MS);
+            }
+            notifyListener();
+        });
+    }
+
+    /**
+     * Stops listening and cancels pending expiries.
+     */
+    public void stop() {
+        if (registration != null) {
+            registration.remove();
+        }
+        handler.removeCallbacks(expireOnline);
+        handler.removeCallbacks(expireTyping);
+    }
+
+    private void notifyListener() {
+        listener.onPresenceChanged(online, lastSeen, typing);
+    }
+}
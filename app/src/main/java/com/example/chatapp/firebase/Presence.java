@@ -0,0 +1,158 @@
+package com.example.chatapp.firebase;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.example.chatapp.repository.Repositories;
+import com.example.chatapp.utilities.Constants;
+import com.example.chatapp.utilities.PreferenceManager;
+
+/**
+ * Presence publishes the signed-in user's online and typing state through the
+ * presence repository, with every write throttled:
+ * <ul>
+ * <li>While any screen holds presence, a heartbeat marks the user online every
+ * {@link #HEARTBEAT_MS}, skipped if another write already did so in the meantime.
+ * The user is marked offline {@link #OFFLINE_GRACE_MS} after the last screen lets go,
+ * so moving between screens does not flap.</li>
+ * <li>Typing is written on the first keystroke, refreshed at most every
+ * {@link #TYPING_REFRESH_MS} while typing goes on, and cleared after
+ * {@link #TYPING_IDLE_MS} without a keystroke.</li>
+ * </ul>
+ * Continuous typing therefore costs at most one write per refresh interval.
+ * All methods must be called on the main thread.
+ */
+public class Presence {
+
+    /**
+     * Interval between heartbeats. Peers consider a user offline when no write
+     * arrived for a few of these.
+     */
+    public static final long HEARTBEAT_MS = 60_000;
+
+    /**
+     * Minimum interval between two typing writes for the same conversation. Peers
+     * drop the typing state when it was not refreshed for a little longer than this.
+     */
+    public static final long TYPING_REFRESH_MS = 10_000;
+
+    private static final long TYPING_IDLE_MS = 4_000;
+    private static final long OFFLINE_GRACE_MS = 5_000;
+
+    private static Presence instance;
+
+    private final Context context;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable heartbeat = this::onHeartbeat;
+    private final Runnable goOffline = this::onGoOffline;
+    private final Runnable typingIdle = this::stopTyping;
+
+    private int holders;
+    private boolean online;
+    private long lastWriteAt;
+    private String typingIn;
+    private long typingWrittenAt;
+
+    /**
+     * Returns the shared instance, creating it on first use.
+     *
+     * @param context Any context; only the application context is retained.
+     * @return The shared Presence.
+     */
+    public static synchronized Presence getInstance(Context context) {
+        if (instance == null) {
+            instance = new Presence(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private Presence(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Marks the user online for as long as the caller holds presence. Call from
+     * {@code onStart} and pair with {@link #release()} in {@code onStop}.
+     */
+    public void acquire() {
+        holders++;
+        handler.removeCallbacks(goOffline);
+        if (!online) {
+            online = true;
+            write(false, null);
+            handler.postDelayed(heartbeat, HEARTBEAT_MS);
+        }
+    }
+
+    /**
+     * Releases presence; the user goes offline shortly after the last holder released it.
+     */
+    public void release() {
+        if (holders > 0 && --holders == 0) {
+            handler.postDelayed(goOffline, OFFLINE_GRACE_MS);
+        }
+    }
+
+    /**
+     * Records a keystroke in a conversation.
+     *
+     * @param conversationId The conversation being typed in.
+     */
+    public void onTyping(String conversationId) {
+        long now = SystemClock.elapsedRealtime();
+        if (!conversationId.equals(typingIn) || now - typingWrittenAt >= TYPING_REFRESH_MS) {
+            typingIn = conversationId;
+            typingWrittenAt = now;
+            write(true, conversationId);
+        }
+        handler.removeCallbacks(typingIdle);
+        handler.postDelayed(typingIdle, TYPING_IDLE_MS);
+    }
+
+    /**
+     * Clears the typing state right away, for example when the message was sent.
+     */
+    public void stopTyping() {
+        handler.removeCallbacks(typingIdle);
+        if (typingIn == null) {
+            return;
+        }
+        typingIn = null;
+        write(true, null);
+    }
+
+    private void onHeartbeat() {
+        if (SystemClock.elapsedRealtime() - lastWriteAt >= HEARTBEAT_MS) {
+            write(false, null);
+        }
+        handler.postDelayed(heartbeat, HEARTBEAT_MS);
+    }
+
+    private void onGoOffline() {
+        handler.removeCallbacks(heartbeat);
+        handler.removeCallbacks(typingIdle);
+        online = false;
+        typingIn = null;
+        write(true, null);
+    }
+
+    /**
+     * Writes the online flag, and the typing state if asked to. Every write also
+     * refreshes the last-seen time, which is what lets typing writes stand in for
+     * heartbeats.
+     */
+    private void write(boolean withTyping, String conversationId) {
+        String userId = new PreferenceManager(context).getString(Constants.KEY_USER_ID);
+        if (userId == null) {
+            return;
+        }
+        lastWriteAt = SystemClock.elapsedRealtime();
+        if (withTyping) {
+            Repositories.getPresenceRepository().writePresence(userId, online, conversationId);
+        } else {
+            Repositories.getPresenceRepository().writePresence(userId, online);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.chatapp.firebase;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.example.chatapp.repository.PresenceRepository;
+import com.example.chatapp.repository.Registration;
+
+import java.util.Map;
+
+/**
+ * ReceiptTracker keeps delivery and read receipts of one conversation as high-water
+ * marks in the presence repository: each participant has a "delivered up to" and a
+ * "read up to" timestamp instead of a state per message. Marks only move forward, and
+ * every mark raised within {@link #FLUSH_DELAY_MS} is coalesced into one write, so
+ * reading any number of messages costs a single write.
+ * <p>
+ * The other participant's marks are reported through a single listener. All methods
+ * must be called on the main thread. While no tracker is open, a received message
+ * raises the delivered mark through {@link PresenceRepository#raiseDelivered} instead.
+ */
+public class ReceiptTracker {
+
+    /**
+     * Receives the other participant's receipts.
+     */
+    public interface Listener {
+        /**
+         * Called on the main thread when the other participant's marks moved.
+         *
+         * @param deliveredUpTo Messages up to this timestamp reached the other participant.
+         * @param readUpTo      Messages up to this timestamp were read by the other participant.
+         */
+        void onPeerReceipts(long deliveredUpTo, long readUpTo);
+    }
+
+    private static final long FLUSH_DELAY_MS = 1000;
+
+    private final PresenceRepository presenceRepository;
+    private final String conversationId;
+    private final String userId;
+    private final String peerId;
+    private final Listener listener;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable flushRunnable = this::flush;
+
+    private Registration registration;
+    private long deliveredUpTo;
+    private long readUpTo;
+    private long writtenDeliveredUpTo;
+    private long writtenReadUpTo;
+    private long peerDeliveredUpTo;
+    private long peerReadUpTo;
+
+    /**
+     * Constructor to initialize the tracker for one conversation.
+     *
+     * @param presenceRepository The repository the marks are kept in.
+     * @param conversationId     The conversation.
+     * @param userId             The signed-in user, whose marks are written.
+     * @param peerId             The other participant, whose marks are reported.
+     * @param listener           Receives the other participant's marks.
+     */
+    public ReceiptTracker(PresenceRepository presenceRepository, String conversationId, String userId,
+                          String peerId, Listener listener) {
+        this.presenceRepository = presenceRepository;
+        this.conversationId = conversationId;
+        this.userId = userId;
+        this.peerId = peerId;
+        this.listener = listener;
+    }
+
+    /**
+     * Starts listening to the conversation's receipts.
+     */
+    public void start() {
+        registration = presenceRepository.listenReceipts(conversationId, (deliveredMarks, readMarks) -> {
+            // Marks written from another device of this user must not be written back lower.
+            writtenDeliveredUpTo = Math.max(writtenDeliveredUpTo, getMark(deliveredMarks, userId));
+            writtenReadUpTo = Math.max(writtenReadUpTo, getMark(readMarks, userId));
+            long delivered = getMark(deliveredMarks, peerId);
+            long read = getMark(readMarks, peerId);
+            if (delivered != peerDeliveredUpTo || read != peerReadUpTo) {
+                peerDeliveredUpTo = delivered;
+                peerReadUpTo = read;
+                listener.onPeerReceipts(delivered, read);
+            }
+        });
+    }
+
+    /**
+     * Writes any pending marks right away and stops listening.
+     */
+    public void stop() {
+        handler.removeCallbacks(flushRunnable);
+        flush();
+        if (registration != null) {
+            registration.remove();
+        }
+    }
+
+    /**
+     * Records that messages up to a timestamp were received on this device.
+     *
+     * @param timestamp The newest received message's timestamp.
+     */
+    public void markDelivered(long timestamp) {
+        if (timestamp > deliveredUpTo) {
+            deliveredUpTo = timestamp;
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Records that messages up to a timestamp were shown to the user. Read implies delivered.
+     *
+     * @param timestamp The newest visible message's timestamp.
+     */
+    public void markRead(long timestamp) {
+        if (timestamp > readUpTo) {
+            readUpTo = timestamp;
+            markDelivered(timestamp);
+            scheduleFlush();
+        }
+    }
+
+    private void scheduleFlush() {
+        handler.removeCallbacks(flushRunnable);
+        handler.postDelayed(flushRunnable, FLUSH_DELAY_MS);
+    }
+
+    private void flush() {
+        long delivered = deliveredUpTo > writtenDeliveredUpTo ? deliveredUpTo : 0;
+        long read = readUpTo > writtenReadUpTo ? readUpTo : 0;
+        if (delivered > 0 || read > 0) {
+            writtenDeliveredUpTo = Math.max(writtenDeliveredUpTo, delivered);
+            writtenReadUpTo = Math.max(writtenReadUpTo, read);
+            presenceRepository.writeReceipts(conversationId, userId, delivered, read);
+        }
+    }
+
+    private static long getMark(Map<String, Long> marks, String participantId) {
+        Long mark = marks.get(participantId);
+        return mark != null ? mark : 0;
+    }
+}
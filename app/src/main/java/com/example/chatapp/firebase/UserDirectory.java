@@ -0,0 +1,212 @@
+package com.example.chatapp.firebase;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.example.chatapp.database.UserStore;
+import com.example.chatapp.models.User;
+import com.example.chatapp.repository.Callback;
+import com.example.chatapp.repository.Change;
+import com.example.chatapp.repository.Registration;
+import com.example.chatapp.repository.UserRepository;
+import com.example.chatapp.utilities.Constants;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.DocumentSnapshot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * UserDirectory keeps the list of users in sync with the {@link UserRepository} incrementally.
+ * It renders from the local {@link UserStore} first, then listens only for user
+ * documents whose {@code updatedAt} is newer than the store's watermark. A cold
+ * store is filled once with a full read, which also picks up documents written
+ * before {@code updatedAt} was tracked. Users whose documents are deleted while they
+ * are listened to are removed from the store and the directory.
+ * <p>
+ * All methods must be called on the main thread.
+ */
+public class UserDirectory {
+
+    /**
+     * Receives the directory whenever it changes.
+     */
+    public interface Listener {
+        /**
+         * Called on the main thread with the full directory and the users that changed.
+         *
+         * @param users      Every user except the signed-in one, ordered by first name.
+         * @param changed    The users added or updated by this change.
+         * @param removedIds The ids of the users deleted by this change.
+         */
+        void onDirectoryChanged(List<User> users, List<User> changed, List<String> removedIds);
+
+        /**
+         * Called on the main thread when the cache is empty and the directory could not be read.
+         */
+        void onError();
+    }
+
+    /**
+     * Orders users by first name, ignoring case, then by id.
+     */
+    public static final Comparator<User> ORDER = (obj1, obj2) -> {
+        String name1 = obj1.firstName != null ? obj1.firstName : "";
+        String name2 = obj2.firstName != null ? obj2.firstName : "";
+        int result = String.CASE_INSENSITIVE_ORDER.compare(name1, name2);
+        return result != 0 ? result : obj1.id.compareTo(obj2.id);
+    };
+
+    private final UserRepository userRepository;
+    private final UserStore userStore;
+    private final String currentUserId;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final Map<String, User> usersById = new HashMap<>();
+    private Listener listener;
+    private Registration registration;
+    private boolean stopped;
+
+    /**
+     * Constructor to initialize the directory for the signed-in user.
+     *
+     * @param userRepository The repository users are read from.
+     * @param userStore      The local user store.
+     * @param currentUserId  The id of the signed-in user, who is left out of the directory.
+     */
+    public UserDirectory(UserRepository userRepository, UserStore userStore, String currentUserId) {
+        this.userRepository = userRepository;
+        this.userStore = userStore;
+        this.currentUserId = currentUserId;
+    }
+
+    /**
+     * Loads the cached directory, then starts listening for changes.
+     *
+     * @param listener Receives the directory.
+     */
+    public void start(Listener listener) {
+        this.listener = listener;
+        userStore.getExecutor().execute(() -> {
+            List<User> cached = userStore.getAll();
+            long watermark = userStore.getWatermark();
+            mainHandler.post(() -> {
+                if (stopped) {
+                    return;
+                }
+                if (cached.isEmpty()) {
+                    fetchAll();
+                } else {
+                    apply(cached, Collections.<String>emptyList());
+                    listen(watermark);
+                }
+            });
+        });
+    }
+
+    /**
+     * Stops listening for changes.
+     */
+    public void stop() {
+        stopped = true;
+        if (registration != null) {
+            registration.remove();
+        }
+    }
+
+    private void fetchAll() {
+        userRepository.getUsers(new Callback<List<User>>() {
+            @Override
+            public void onSuccess(List<User> users) {
+                if (stopped) {
+                    return;
+                }
+                long watermark = 0;
+                for (User user : users) {
+                    watermark = Math.max(watermark, user.updatedAt);
+                }
+                userStore.getExecutor().execute(() -> userStore.put(users));
+                apply(users, Collections.<String>emptyList());
+                listen(watermark);
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                if (!stopped) {
+                    listener.onError();
+                }
+            }
+        });
+    }
+
+    private void listen(long watermark) {
+        registration = userRepository.listenUsers(watermark, new UserRepository.UserListener() {
+            @Override
+            public void onUsers(List<Change<User>> changes) {
+                List<User> changed = new ArrayList<>();
+                List<String> removedIds = new ArrayList<>();
+                for (Change<User> change : changes) {
+                    if (change.type == Change.Type.REMOVED) {
+                        removedIds.add(change.value.id);
+                    } else {
+                        changed.add(change.value);
+                    }
+                }
+                if (changed.isEmpty() && removedIds.isEmpty()) {
+                    return;
+                }
+                userStore.getExecutor().execute(() -> {
+                    userStore.put(changed);
+                    userStore.delete(removedIds);
+                });
+                apply(changed, removedIds);
+            }
+
+            @Override
+            public void onError(Exception e) {
+            }
+        });
+    }
+
+    private void apply(List<User> changed, List<String> removedIds) {
+        for (String id : removedIds) {
+            usersById.remove(id);
+        }
+        List<User> visible = new ArrayList<>(changed.size());
+        for (User user : changed) {
+            if (!user.id.equals(currentUserId)) {
+                usersById.put(user.id, user);
+                visible.add(user);
+            }
+        }
+        List<User> users = new ArrayList<>(usersById.values());
+        Collections.sort(users, ORDER);
+        listener.onDirectoryChanged(users, visible, removedIds);
+    }
+
+    /**
+     * Reads a user document into a User.
+     *
+     * @param document The Firestore document of the user.
+     * @return The parsed User.
+     */
+    public static User toUser(DocumentSnapshot document) {
+        User user = new User();
+        user.id = document.getId();
+        user.firstName = document.getString(Constants.KEY_FIRST_NAME);
+        user.lastName = document.getString(Constants.KEY_LAST_NAME);
+        user.email = document.getString(Constants.KEY_EMAIL);
+        user.image = document.getString(Constants.KEY_IMAGE);
+        user.imageVersion = document.getString(Constants.KEY_IMAGE_VERSION);
+        user.token = document.getString(Constants.KEY_FCM_TOKEN);
+        Timestamp updatedAt = document.getTimestamp(Constants.KEY_UPDATED_AT);
+        user.updatedAt = updatedAt != null
+                ? updatedAt.getSeconds() * 1000 + updatedAt.getNanoseconds() / 1_000_000
+                : 0;
+        return user;
+    }
+}
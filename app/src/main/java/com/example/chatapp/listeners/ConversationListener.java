@@ -0,0 +1,15 @@
+package com.example.chatapp.listeners;
+
+import com.example.chatapp.models.ConversationSummary;
+/**
+ * ConversationListener is an interface that defines a callback for selecting a
+ * conversation from the recent-conversations inbox.
+ */
+public interface ConversationListener {
+    /**
+     * Called when a conversation is clicked.
+     *
+     * @param summary The summary of the clicked conversation.
+     */
+    void onConversationClicked(ConversationSummary summary);
+}
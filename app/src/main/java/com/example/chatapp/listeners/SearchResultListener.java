@@ -0,0 +1,15 @@
+package com.example.chatapp.listeners;
+
+import com.example.chatapp.models.ChatMessage;
+/**
+ * SearchResultListener is an interface that defines a callback for selecting a
+ * message from the results of a message search.
+ */
+public interface SearchResultListener {
+    /**
+     * Called when a search result is clicked.
+     *
+     * @param chatMessage The message that was clicked.
+     */
+    void onSearchResultClicked(ChatMessage chatMessage);
+}
@@ -12,4 +12,11 @@ public interface UserListener {
      * @param user The User object representing the clicked user.
      */
     void onUserClicked(User user);
+
+    /**
+     * Called when a user is long-clicked, to select them as a member of a new group.
+     *
+     * @param user The User object representing the long-clicked user.
+     */
+    void onUserLongClicked(User user);
 }
@@ -1,14 +0,0 @@
-package com.example.chatapp.models;
-
-import java.util.Date;
-/**
- * ChatMessage represents a single message exchanged between two users in the chat.
- * It contains information about the sender, receiver, message content, and timestamp.
- */
-public class ChatMessage {
-    public String senderId, receiverId, message, dateTime;
-    public Date dateObject;
-
-
-
-}
@@ -1,8 +0,0 @@
-package com.example.chatapp.models;
-
-import java.io.Serializable;
-
-public class User implements Serializable {
-    public String firstName, image, email, token, id;
-
-}
@@ -0,0 +1,104 @@
+package com.example.chatapp.repository;
+
+import com.example.chatapp.firebase.FirestoreBlobStore;
+import com.example.chatapp.firebase.FirestoreChatRepository;
+import com.example.chatapp.firebase.FirestorePresenceRepository;
+import com.example.chatapp.firebase.FirestoreTokenRepository;
+import com.example.chatapp.firebase.FirestoreUserRepository;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+/**
+ * Repositories hands out the repositories the activities talk to. They are backed by
+ * Firestore unless other implementations, such as an {@link InMemoryBackend}, were
+ * installed, which tests and load runs do before starting an activity.
+ * <p>
+ * All methods must be called on the main thread, except the blob store methods,
+ * which are called from the threads that load attachments, and the user repository
+ * methods, since avatars are read from the threads that decode them.
+ */
+public class Repositories {
+
+    private static ChatRepository chatRepository;
+    private static UserRepository userRepository;
+    private static TokenRepository tokenRepository;
+    private static PresenceRepository presenceRepository;
+    private static BlobStore blobStore;
+
+    private Repositories() {
+    }
+
+    /**
+     * Replaces the repositories for the rest of the process, or until the next call.
+     *
+     * @param chat     The chat repository.
+     * @param users    The user repository.
+     * @param tokens   The token repository.
+     * @param presence The presence repository.
+     */
+    public static synchronized void install(ChatRepository chat, UserRepository users, TokenRepository tokens,
+                               PresenceRepository presence) {
+        chatRepository = chat;
+        userRepository = users;
+        tokenRepository = tokens;
+        presenceRepository = presence;
+    }
+
+    /**
+     * Replaces the blob store for the rest of the process, for example with a {@link FileBlobStore}.
+     *
+     * @param blobs The blob store, or null to go back to Firestore.
+     */
+    public static synchronized void installBlobStore(BlobStore blobs) {
+        blobStore = blobs;
+    }
+
+    /**
+     * @return The installed chat repository, or the Firestore one.
+     */
+    public static ChatRepository getChatRepository() {
+        if (chatRepository == null) {
+            chatRepository = new FirestoreChatRepository(FirebaseFirestore.getInstance());
+        }
+        return chatRepository;
+    }
+
+    /**
+     * @return The installed user repository, or the Firestore one.
+     */
+    public static synchronized UserRepository getUserRepository() {
+        if (userRepository == null) {
+            userRepository = new FirestoreUserRepository(FirebaseFirestore.getInstance());
+        }
+        return userRepository;
+    }
+
+    /**
+     * @return The installed token repository, or the Firestore one.
+     */
+    public static TokenRepository getTokenRepository() {
+        if (tokenRepository == null) {
+            tokenRepository = new FirestoreTokenRepository(FirebaseFirestore.getInstance());
+        }
+        return tokenRepository;
+    }
+
+    /**
+     * @return The installed presence repository, or the Firestore one.
+     */
+    public static PresenceRepository getPresenceRepository() {
+        if (presenceRepository == null) {
+            presenceRepository = new FirestorePresenceRepository(FirebaseFirestore.getInstance());
+        }
+        return presenceRepository;
+    }
+
+    /**
+     * @return The installed blob store, or the Firestore one.
+     */
+    public static synchronized BlobStore getBlobStore() {
+        if (blobStore == null) {
+            blobStore = new FirestoreBlobStore(FirebaseFirestore.getInstance());
+        }
+        return blobStore;
+    }
+}
@@ -0,0 +1,434 @@
+package com.example.chatapp.utilities;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import androidx.annotation.NonNull;
+
+import com.example.chatapp.R;
+import com.example.chatapp.models.ChatMessage;
+import com.example.chatapp.repository.Blobs;
+import com.example.chatapp.repository.Repositories;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AttachmentLoader shows the images of image messages progressively: the inline
+ * thumbnail carried by the message is decoded and shown right away, then the full
+ * image is fetched from the blob store in the background and decoded at the size of
+ * the bubble. Full images are kept in a disk cache bounded by a byte budget, trimmed
+ * least recently used first, and decoded bitmaps in a memory cache.
+ * <p>
+ * Fetches run on a small executor, newest request first; rows that are recycled take
+ * theirs off the queue. Uploads run on their own thread and resume with the chunks still
+ * missing after a failure. Until it is stored, a full image is also kept in a directory
+ * of pending uploads outside the cache, so an upload that keeps failing, or is cut short
+ * by the process dying, is picked up again when the network returns or the app starts.
+ */
+public class AttachmentLoader {
+
+    private static final String DISK_CACHE_DIRECTORY = "attachments";
+
+    private static final String PENDING_UPLOAD_DIRECTORY = "pending_uploads";
+
+    private static final long DISK_CACHE_BYTES = 64L * 1024 * 1024;
+
+    private static final int FETCH_THREADS = 2;
+
+    /**
+     * Number of thumbnails kept decoded; each is only a few kilobytes.
+     */
+    private static final int THUMBNAIL_CACHE_ENTRIES = 64;
+
+    /**
+     * Attempts per upload before it waits for the network to return or the next start.
+     */
+    private static final int MAX_UPLOAD_ATTEMPTS = 5;
+
+    private static final long FIRST_RETRY_DELAY_MS = 2_000;
+
+    /**
+     * How often a shown image is fetched again while its upload has not completed.
+     */
+    private static final int MAX_FETCH_ATTEMPTS = 4;
+
+    private static final long FETCH_RETRY_DELAY_MS = 3_000;
+
+    private static final Metrics.Histogram DECODE_TIME = Metrics.histogram("bitmap.decode");
+    private static final Metrics.Histogram FETCH_TIME = Metrics.histogram("attachment.fetch");
+    private static final Metrics.Counter UPLOAD_FAILURES = Metrics.counter("attachment.upload_failures");
+
+    private static AttachmentLoader instance;
+
+    private final LruCache<String, Bitmap> memoryCache;
+    private final LruCache<String, Bitmap> thumbnailCache = new LruCache<>(THUMBNAIL_CACHE_ENTRIES);
+    private final File diskCacheDirectory;
+    private final File pendingUploadDirectory;
+    private final ThreadPoolExecutor fetchExecutor;
+    private final ScheduledExecutorService uploadExecutor = Executors.newSingleThreadScheduledExecutor();
+    /**
+     * Blob ids being uploaded or waiting for a retry; only used on the upload thread.
+     */
+    private final Set<String> uploading = new HashSet<>();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Returns the shared loader, creating it on first use.
+     *
+     * @param context Any context; only the application context is retained.
+     * @return The shared AttachmentLoader.
+     */
+    public static synchronized AttachmentLoader getInstance(Context context) {
+        if (instance == null) {
+            instance = new AttachmentLoader(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private AttachmentLoader(Context context) {
+        int budget = (int) Math.min(Runtime.getRuntime().maxMemory() / 8, Integer.MAX_VALUE);
+        memoryCache = new LruCache<String, Bitmap>(budget) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getAllocationByteCount();
+            }
+        };
+        diskCacheDirectory = new File(context.getCacheDir(), DISK_CACHE_DIRECTORY);
+        if (!diskCacheDirectory.exists() && !diskCacheDirectory.mkdirs()) {
+            Log.w("AttachmentLoader", "Unable to create " + diskCacheDirectory);
+        }
+        pendingUploadDirectory = new File(context.getFilesDir(), PENDING_UPLOAD_DIRECTORY);
+        if (!pendingUploadDirectory.exists() && !pendingUploadDirectory.mkdirs()) {
+            Log.w("AttachmentLoader", "Unable to create " + pendingUploadDirectory);
+        }
+        // Requests are never dropped: recycled rows remove theirs through cancel().
+        fetchExecutor = new ThreadPoolExecutor(FETCH_THREADS, FETCH_THREADS, 30, TimeUnit.SECONDS,
+                new LifoBlockingDeque<>());
+        fetchExecutor.allowCoreThreadTimeOut(true);
+        context.registerComponentCallbacks(new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                AvatarCache.trimMemory(memoryCache, level);
+                AvatarCache.trimMemory(thumbnailCache, level);
+            }
+
+            @Override
+            public void onConfigurationChanged(@NonNull Configuration newConfig) {
+            }
+
+            @Override
+            public void onLowMemory() {
+                clearMemory();
+            }
+        });
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        connectivityManager.registerDefaultNetworkCallback(new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onAvailable(@NonNull Network network) {
+                resumeUploads();
+            }
+        });
+    }
+
+    /**
+     * Shows the image of a message in an ImageView. A decoded full image is applied
+     * immediately; otherwise the thumbnail is shown and the full image is fetched and
+     * decoded in the background. Any previous request for the same ImageView is cancelled.
+     * If the full image cannot be fetched yet, for example because its upload is still
+     * running, the thumbnail stays and the fetch is retried a few times while the view
+     * still shows the message.
+     *
+     * @param imageView   The view to show the image in.
+     * @param chatMessage The image message.
+     * @param targetWidth The width, in pixels, the image is displayed at.
+     */
+    public void load(ImageView imageView, ChatMessage chatMessage, int targetWidth) {
+        cancel(imageView);
+        String blobId = chatMessage.blobId;
+        String key = blobId + "@" + targetWidth;
+        Bitmap cached = memoryCache.get(key);
+        if (cached != null) {
+            imageView.setImageBitmap(cached);
+            return;
+        }
+        imageView.setImageBitmap(getThumbnail(chatMessage));
+        imageView.setTag(R.id.attachment_request_key, key);
+        fetch(imageView, blobId, targetWidth, key, 1);
+    }
+
+    private void fetch(ImageView imageView, String blobId, int targetWidth, String key, int attempt) {
+        Future<?> request = fetchExecutor.submit(() -> {
+            Bitmap bitmap = get(blobId, targetWidth);
+            mainHandler.post(() -> {
+                if (!key.equals(imageView.getTag(R.id.attachment_request_key))) {
+                    return;
+                }
+                if (bitmap != null) {
+                    imageView.setTag(R.id.attachment_request_key, null);
+                    imageView.setTag(R.id.attachment_request, null);
+                    imageView.setImageBitmap(bitmap);
+                } else if (attempt < MAX_FETCH_ATTEMPTS) {
+                    mainHandler.postDelayed(() -> {
+                        if (key.equals(imageView.getTag(R.id.attachment_request_key))) {
+                            fetch(imageView, blobId, targetWidth, key, attempt + 1);
+                        }
+                    }, FETCH_RETRY_DELAY_MS * attempt);
+                }
+            });
+        });
+        imageView.setTag(R.id.attachment_request, request);
+    }
+
+    /**
+     * Cancels the pending request of an ImageView, typically when its ViewHolder is recycled.
+     *
+     * @param imageView The view whose request should be cancelled.
+     */
+    public void cancel(ImageView imageView) {
+        Object request = imageView.getTag(R.id.attachment_request);
+        if (request instanceof Future) {
+            ((Future<?>) request).cancel(false);
+            fetchExecutor.remove((Runnable) request);
+        }
+        imageView.setTag(R.id.attachment_request, null);
+        imageView.setTag(R.id.attachment_request_key, null);
+    }
+
+    /**
+     * Stores the full image of a message being sent. It is written to the disk cache
+     * first, so the sender sees it without a round trip, and to the pending uploads, then
+     * uploaded in the background. A failed upload is retried with exponential backoff,
+     * each attempt skipping the chunks already stored, and after the last attempt waits
+     * for {@link #resumeUploads()}.
+     *
+     * @param blobId The blob id of the image message.
+     * @param data   The encoded full image.
+     */
+    public void upload(String blobId, byte[] data) {
+        uploadExecutor.execute(() -> {
+            if (write(pendingUploadDirectory, blobId, data)) {
+                uploading.add(blobId);
+            }
+            writeToDisk(blobId, data);
+            upload(blobId, data, 1);
+        });
+    }
+
+    /**
+     * Starts the pending uploads that are not running, such as those left by an earlier
+     * process or given up while offline. Called when the network becomes available, and
+     * should be called once the signed-in user's app starts.
+     */
+    public void resumeUploads() {
+        uploadExecutor.execute(() -> {
+            File[] files = pendingUploadDirectory.listFiles();
+            if (files == null) {
+                return;
+            }
+            for (File file : files) {
+                String blobId = file.getName();
+                if (blobId.endsWith(".tmp") || !uploading.add(blobId)) {
+                    continue;
+                }
+                byte[] data = new byte[(int) file.length()];
+                try (FileInputStream inputStream = new FileInputStream(file)) {
+                    int read = 0;
+                    while (read < data.length) {
+                        int count = inputStream.read(data, read, data.length - read);
+                        if (count < 0) {
+                            throw new IOException("Unexpected end of " + file);
+                        }
+                        read += count;
+                    }
+                } catch (IOException e) {
+                    Log.w("AttachmentLoader", "Unable to read " + file, e);
+                    uploading.remove(blobId);
+                    continue;
+                }
+                upload(blobId, data, 1);
+            }
+        });
+    }
+
+    private void upload(String blobId, byte[] data, int attempt) {
+        try {
+            Blobs.upload(Repositories.getBlobStore(), blobId, data);
+        } catch (IOException e) {
+            UPLOAD_FAILURES.increment();
+            if (attempt >= MAX_UPLOAD_ATTEMPTS) {
+                Log.w("AttachmentLoader", "Postponing the upload of " + blobId, e);
+                uploading.remove(blobId);
+                return;
+            }
+            uploadExecutor.schedule(() -> upload(blobId, data, attempt + 1),
+                    FIRST_RETRY_DELAY_MS << (attempt - 1), TimeUnit.MILLISECONDS);
+            return;
+        }
+        uploading.remove(blobId);
+        File pending = new File(pendingUploadDirectory, blobId);
+        if (pending.exists() && !pending.delete()) {
+            Log.w("AttachmentLoader", "Unable to delete " + pending);
+        }
+    }
+
+    /**
+     * Drops every decoded image from memory, for example when the system is low on memory.
+     */
+    public void clearMemory() {
+        memoryCache.evictAll();
+        thumbnailCache.evictAll();
+    }
+
+    /**
+     * Drops every cached image from memory and disk, for example when the user signs out.
+     * Pending uploads are kept, since their messages were already sent.
+     */
+    public void clear() {
+        clearMemory();
+        fetchExecutor.execute(this::clearDiskCache);
+    }
+
+    private Bitmap getThumbnail(ChatMessage chatMessage) {
+        if (chatMessage.thumbnail == null) {
+            return null;
+        }
+        Bitmap thumbnail = thumbnailCache.get(chatMessage.blobId);
+        if (thumbnail == null) {
+            long start = System.nanoTime();
+            try {
+                byte[] bytes = Base64Codec.decode(chatMessage.thumbnail);
+                thumbnail = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+            DECODE_TIME.recordSince(start);
+            if (thumbnail != null) {
+                thumbnailCache.put(chatMessage.blobId, thumbnail);
+            }
+        }
+        return thumbnail;
+    }
+
+    /**
+     * Returns the full image at a width, reading through the disk cache and only
+     * fetching it from the blob store when the cache does not have it. Blocks.
+     */
+    private Bitmap get(String blobId, int targetWidth) {
+        File file = new File(diskCacheDirectory, blobId);
+        if (file.exists()) {
+            // Marks the image as recently used for trimming.
+            file.setLastModified(System.currentTimeMillis());
+        } else {
+            long start = System.nanoTime();
+            try {
+                writeToDisk(blobId, Blobs.read(Repositories.getBlobStore(), blobId));
+            } catch (IOException e) {
+                Log.w("AttachmentLoader", "Unable to fetch " + blobId, e);
+                return null;
+            }
+            FETCH_TIME.recordSince(start);
+        }
+        long start = System.nanoTime();
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        options.inJustDecodeBounds = false;
+        // Only the width matters: the bubble's height follows the image's aspect ratio.
+        options.inSampleSize = AvatarCache.calculateInSampleSize(options.outWidth, options.outWidth, targetWidth);
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        Bitmap bitmap = BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+        DECODE_TIME.recordSince(start);
+        if (bitmap != null) {
+            memoryCache.put(blobId + "@" + targetWidth, bitmap);
+        }
+        return bitmap;
+    }
+
+    private synchronized void writeToDisk(String blobId, byte[] data) {
+        if (write(diskCacheDirectory, blobId, data)) {
+            trimDiskCache();
+        }
+    }
+
+    /**
+     * Writes a file through a temporary one, so that a crash never leaves it truncated.
+     *
+     * @return True if the file was written.
+     */
+    private static boolean write(File directory, String blobId, byte[] data) {
+        File file = new File(directory, blobId);
+        File temporary = new File(directory, blobId + ".tmp");
+        try (FileOutputStream outputStream = new FileOutputStream(temporary)) {
+            outputStream.write(data);
+        } catch (IOException e) {
+            Log.w("AttachmentLoader", "Unable to write " + file, e);
+            return false;
+        }
+        if (!temporary.renameTo(file)) {
+            Log.w("AttachmentLoader", "Unable to commit " + file);
+            return false;
+        }
+        return true;
+    }
+
+    private synchronized void clearDiskCache() {
+        File[] files = diskCacheDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (!file.delete()) {
+                Log.w("AttachmentLoader", "Unable to delete " + file);
+            }
+        }
+    }
+
+    /**
+     * Deletes the least recently used images until the disk cache fits its budget.
+     */
+    private void trimDiskCache() {
+        File[] files = diskCacheDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= DISK_CACHE_BYTES) {
+            return;
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (int i = 0; i < files.length && total > DISK_CACHE_BYTES; i++) {
+            long length = files[i].length();
+            if (files[i].delete()) {
+                total -= length;
+            }
+        }
+    }
+}
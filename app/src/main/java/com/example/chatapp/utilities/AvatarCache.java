@@ -0,0 +1,408 @@
+package com.example.chatapp.utilities;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import androidx.annotation.NonNull;
+
+import com.example.chatapp.R;
+import com.example.chatapp.models.User;
+import com.example.chatapp.repository.Repositories;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AvatarCache is the single place where profile images are turned into Bitmaps.
+ * Decoded avatars are kept in a memory cache bounded by a byte budget and in a disk
+ * cache of already decoded and resized images, so the same avatar is never decoded
+ * from Base64 twice. The disk cache has a byte budget too and drops the least recently
+ * used images first.
+ * Entries are keyed by user id plus the avatar version, so a changed profile
+ * picture never hits a stale entry.
+ * <p>
+ * Decoding happens on a small executor, newest request first, downsampled to the size
+ * of the target ImageView in RGB_565. Evicted bitmaps are not reused for decoding, since
+ * an ImageView may still be showing them. The memory cache is trimmed when the system
+ * asks the app to release memory.
+ */
+public class AvatarCache {
+
+    /**
+     * Largest edge, in pixels, of legacy inline avatars stored in the disk cache.
+     */
+    private static final int AVATAR_SIZE = 150;
+
+    private static final String DISK_CACHE_DIRECTORY = "avatars";
+
+    private static final long DISK_CACHE_BYTES = 16L * 1024 * 1024;
+
+    private static final int DECODE_THREADS = 2;
+
+    private static final Metrics.Histogram DECODE_TIME = Metrics.histogram("bitmap.decode");
+
+    private static AvatarCache instance;
+
+    private final LruCache<String, Bitmap> memoryCache;
+    private final File diskCacheDirectory;
+    private final ThreadPoolExecutor executor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Returns the shared cache, creating it on first use.
+     *
+     * @param context Any context; only the application context is retained.
+     * @return The shared AvatarCache.
+     */
+    public static synchronized AvatarCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new AvatarCache(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private AvatarCache(Context context) {
+        int budget = (int) Math.min(Runtime.getRuntime().maxMemory() / 8, Integer.MAX_VALUE);
+        memoryCache = new LruCache<String, Bitmap>(budget) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getAllocationByteCount();
+            }
+
+        };
+        diskCacheDirectory = new File(context.getCacheDir(), DISK_CACHE_DIRECTORY);
+        if (!diskCacheDirectory.exists() && !diskCacheDirectory.mkdirs()) {
+            Log.w("AvatarCache", "Unable to create " + diskCacheDirectory);
+        }
+        // Requests are never dropped: recycled rows remove theirs through cancel().
+        executor = new ThreadPoolExecutor(DECODE_THREADS, DECODE_THREADS, 30, TimeUnit.SECONDS,
+                new LifoBlockingDeque<>());
+        executor.allowCoreThreadTimeOut(true);
+        context.registerComponentCallbacks(new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                trimMemory(memoryCache, level);
+            }
+
+            @Override
+            public void onConfigurationChanged(@NonNull Configuration newConfig) {
+            }
+
+            @Override
+            public void onLowMemory() {
+                clearMemory();
+            }
+        });
+    }
+
+    /**
+     * Shrinks a bitmap cache in response to {@link ComponentCallbacks2#onTrimMemory}: emptied
+     * once the app is in the background or memory is critical, halved while memory runs low.
+     *
+     * @param cache The cache to trim.
+     * @param level The trim level passed by the system.
+     */
+    static void trimMemory(LruCache<String, Bitmap> cache, int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            cache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            cache.trimToSize(cache.maxSize() / 2);
+        }
+    }
+
+    /**
+     * Returns the version of a user's avatar: the stored image version for users whose
+     * avatars live in {@link Constants#KEY_COLLECTION_AVATARS}, or a hash of the inline
+     * Base64 image for users created before avatars were split out.
+     *
+     * @param user The user owning the avatar.
+     * @return The avatar version, or null if the user has no avatar.
+     */
+    public static String getVersion(User user) {
+        if (user.imageVersion != null) {
+            return user.imageVersion;
+        }
+        return user.image != null ? Integer.toHexString(user.image.hashCode()) : null;
+    }
+
+    /**
+     * Picks the smallest stored resolution that is at least the target size.
+     *
+     * @param targetSize The size, in pixels, the avatar will be displayed at.
+     * @return One of {@link Constants#AVATAR_SIZES}.
+     */
+    public static int getStoredSize(int targetSize) {
+        for (int size : Constants.AVATAR_SIZES) {
+            if (size >= targetSize) {
+                return size;
+            }
+        }
+        return Constants.AVATAR_SIZES[Constants.AVATAR_SIZES.length - 1];
+    }
+
+    /**
+     * Shows the avatar of a user in an ImageView. A memory hit is applied immediately;
+     * otherwise the ImageView is cleared and the avatar is fetched and decoded in the
+     * background. Any previous request for the same ImageView is cancelled.
+     *
+     * @param imageView The view to show the avatar in.
+     * @param user      The user owning the avatar.
+     */
+    public void load(ImageView imageView, User user) {
+        cancel(imageView);
+        String version = getVersion(user);
+        if (version == null) {
+            imageView.setImageBitmap(null);
+            return;
+        }
+        String userId = user.id;
+        String imageVersion = user.imageVersion;
+        String encodedImage = user.image;
+        int targetSize = getTargetSize(imageView);
+        String key = getDiskKey(userId, version, getStoredSize(targetSize)) + "@" + targetSize;
+        Bitmap cached = memoryCache.get(key);
+        if (cached != null) {
+            imageView.setImageBitmap(cached);
+            return;
+        }
+        imageView.setImageBitmap(null);
+        imageView.setTag(R.id.avatar_request_key, key);
+        Future<?> request = executor.submit(() -> {
+            Bitmap bitmap = get(userId, imageVersion, encodedImage, targetSize);
+            mainHandler.post(() -> {
+                if (key.equals(imageView.getTag(R.id.avatar_request_key))) {
+                    imageView.setTag(R.id.avatar_request_key, null);
+                    imageView.setTag(R.id.avatar_request, null);
+                    imageView.setImageBitmap(bitmap);
+                }
+            });
+        });
+        imageView.setTag(R.id.avatar_request, request);
+    }
+
+    /**
+     * Cancels the pending request of an ImageView, typically when its ViewHolder is recycled,
+     * and takes it off the queue.
+     *
+     * @param imageView The view whose request should be cancelled.
+     */
+    public void cancel(ImageView imageView) {
+        Object request = imageView.getTag(R.id.avatar_request);
+        if (request instanceof Future) {
+            ((Future<?>) request).cancel(false);
+            executor.remove((Runnable) request);
+        }
+        imageView.setTag(R.id.avatar_request, null);
+        imageView.setTag(R.id.avatar_request_key, null);
+    }
+
+    /**
+     * Returns the avatar of a user at a given size, reading through the memory cache,
+     * then the disk cache, and only fetching and decoding the image when neither has it.
+     * Versioned avatars are fetched at the smallest stored resolution that covers the
+     * target size; legacy users fall back to their inline Base64 image.
+     * This method blocks and must not be called on the main thread.
+     *
+     * @param userId       The id of the user owning the avatar.
+     * @param imageVersion The stored avatar version, or null for legacy users.
+     * @param encodedImage The inline Base64 image of legacy users, or null.
+     * @param targetSize   The size, in pixels, the avatar will be displayed at.
+     * @return The decoded avatar, or null if the image cannot be fetched or decoded.
+     */
+    public Bitmap get(String userId, String imageVersion, String encodedImage, int targetSize) {
+        String version = imageVersion != null ? imageVersion
+                : encodedImage != null ? Integer.toHexString(encodedImage.hashCode()) : null;
+        if (version == null) {
+            return null;
+        }
+        int storedSize = imageVersion != null ? getStoredSize(targetSize) : AVATAR_SIZE;
+        String diskKey = getDiskKey(userId, version, storedSize);
+        String sizedKey = diskKey + "@" + targetSize;
+        Bitmap bitmap = memoryCache.get(sizedKey);
+        if (bitmap != null) {
+            return bitmap;
+        }
+        File file = new File(diskCacheDirectory, diskKey + ".png");
+        if (file.exists()) {
+            // Marks the avatar as recently used for trimming.
+            file.setLastModified(System.currentTimeMillis());
+        } else {
+            String source = imageVersion != null ? fetchEncodedImage(userId, storedSize) : encodedImage;
+            if (source == null) {
+                return null;
+            }
+            long start = System.nanoTime();
+            Bitmap resized = decodeAndResize(source, storedSize);
+            DECODE_TIME.recordSince(start);
+            if (resized == null) {
+                return null;
+            }
+            writeToDisk(file, resized);
+            resized.recycle();
+        }
+        long start = System.nanoTime();
+        bitmap = decodeFile(file, targetSize);
+        DECODE_TIME.recordSince(start);
+        if (bitmap != null) {
+            memoryCache.put(sizedKey, bitmap);
+        }
+        return bitmap;
+    }
+
+    private static String getDiskKey(String userId, String version, int storedSize) {
+        return userId + "_" + version + "_" + storedSize;
+    }
+
+    private String fetchEncodedImage(String userId, int storedSize) {
+        try {
+            return Repositories.getUserRepository().getAvatar(userId, storedSize);
+        } catch (IOException e) {
+            Log.w("AvatarCache", "Unable to fetch avatar of " + userId, e);
+            return null;
+        }
+    }
+
+    /**
+     * Drops every cached avatar from memory, for example when the system is low on memory.
+     */
+    public void clearMemory() {
+        memoryCache.evictAll();
+    }
+
+    /**
+     * Drops every cached avatar from memory and disk, for example when the user signs out.
+     */
+    public void clear() {
+        clearMemory();
+        executor.execute(() -> {
+            File[] files = diskCacheDirectory.listFiles();
+            if (files == null) {
+                return;
+            }
+            for (File file : files) {
+                if (!file.delete()) {
+                    Log.w("AvatarCache", "Unable to delete " + file);
+                }
+            }
+        });
+    }
+
+    private Bitmap decodeFile(File file, int targetSize) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, targetSize);
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        return BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+    }
+
+    private Bitmap decodeAndResize(String encodedImage, int size) {
+        byte[] bytes = Base64Codec.decode(encodedImage);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, size);
+        Bitmap bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        if (bitmap == null) {
+            return null;
+        }
+        int largestEdge = Math.max(bitmap.getWidth(), bitmap.getHeight());
+        if (largestEdge <= size) {
+            return bitmap;
+        }
+        Bitmap resized = Bitmap.createScaledBitmap(bitmap,
+                bitmap.getWidth() * size / largestEdge,
+                bitmap.getHeight() * size / largestEdge,
+                true);
+        bitmap.recycle();
+        return resized;
+    }
+
+    /**
+     * Picks the largest power of two that keeps the smaller edge at or above the target size.
+     */
+    static int calculateInSampleSize(int width, int height, int targetSize) {
+        int inSampleSize = 1;
+        int smallerEdge = Math.min(width, height);
+        while (smallerEdge / (inSampleSize * 2) >= targetSize) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    private int getTargetSize(ImageView imageView) {
+        int width = imageView.getWidth();
+        int height = imageView.getHeight();
+        if (width <= 0 || height <= 0) {
+            width = imageView.getLayoutParams() != null ? imageView.getLayoutParams().width : 0;
+            height = imageView.getLayoutParams() != null ? imageView.getLayoutParams().height : 0;
+        }
+        int size = Math.max(width, height);
+        return size > 0 ? Math.min(size, AVATAR_SIZE) : AVATAR_SIZE;
+    }
+
+    /**
+     * Writes an avatar through a temporary file, then trims the cache. Synchronized, so
+     * that trimming never deletes a file another thread is still writing.
+     */
+    private synchronized void writeToDisk(File file, Bitmap bitmap) {
+        File temporary = new File(file.getPath() + ".tmp");
+        try (FileOutputStream outputStream = new FileOutputStream(temporary)) {
+            bitmap.compress(Bitmap.CompressFormat.PNG, 100, outputStream);
+        } catch (IOException e) {
+            Log.w("AvatarCache", "Unable to write " + file, e);
+            return;
+        }
+        if (!temporary.renameTo(file)) {
+            Log.w("AvatarCache", "Unable to commit " + file);
+            return;
+        }
+        trimDiskCache();
+    }
+
+    /**
+     * Deletes the least recently used avatars until the disk cache fits its budget.
+     */
+    private void trimDiskCache() {
+        File[] files = diskCacheDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= DISK_CACHE_BYTES) {
+            return;
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (int i = 0; i < files.length && total > DISK_CACHE_BYTES; i++) {
+            long length = files[i].length();
+            if (files[i].delete()) {
+                total -= length;
+            }
+        }
+    }
+}
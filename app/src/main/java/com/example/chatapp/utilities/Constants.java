@@ -9,6 +9,11 @@ public class Constants {
    // public static final String KEY_NAME = "name";
     public static final String KEY_FIRST_NAME = "firstName";
     public static final String KEY_LAST_NAME = "lastName";
+    /**
+     * First name as normalized by {@link UserSearchIndex#normalize(String)}, for
+     * server-side prefix queries.
+     */
+    public static final String KEY_FIRST_NAME_LOWER = "firstNameLower";
 
     public static final String KEY_EMAIL = "email";
     public static final String KEY_PASSWORD = "password";
@@ -16,19 +21,114 @@ public class Constants {
     public static final String KEY_IS_SIGNED_IN = "isSignedIn";
     public static final String KEY_PREFERENCE_NAME = "chatAppPreference";
     public static final String KEY_FCM_TOKEN = "fcmToken";
+    /**
+     * Server time of the last change to a user document; set on every write to it.
+     */
+    public static final String KEY_UPDATED_AT = "updatedAt";
 
     public static final String KEY_IMAGE = "image";
+    public static final String KEY_IMAGE_VERSION = "imageVersion";
+    public static final String KEY_COLLECTION_AVATARS = "avatars";
+    /**
+     * Resolutions, in pixels and in ascending order, at which every avatar is stored.
+     */
+    public static final int[] AVATAR_SIZES = {48, 150};
 
     public static final String KEY_USER = "user";
     public static final String KEY_COLLECTION_CHAT = "chat";
+    public static final String KEY_COLLECTION_CONVERSATIONS = "chats";
+    public static final String KEY_COLLECTION_MESSAGES = "messages";
+    public static final String KEY_LEGACY_MIGRATED_PREFIX = "legacyMigrated_";
+    /**
+     * Per-user subcollection of {@link #KEY_COLLECTION_USERS} holding one summary
+     * document per conversation, keyed by the other participant's id.
+     */
+    public static final String KEY_COLLECTION_CONVERSATION_SUMMARIES = "conversations";
+    public static final String KEY_OTHER_ID = "otherId";
+    public static final String KEY_OTHER_NAME = "otherName";
+    public static final String KEY_OTHER_IMAGE_VERSION = "otherImageVersion";
+    public static final String KEY_LAST_MESSAGE = "lastMessage";
+
+    /**
+     * One small document per user holding only presence and typing state, so that
+     * watching a peer never downloads their user document.
+     */
+    public static final String KEY_COLLECTION_PRESENCE = "presence";
+    public static final String KEY_ONLINE = "online";
+    public static final String KEY_LAST_SEEN = "lastSeen";
+    public static final String KEY_TYPING_IN = "typingIn";
+
+    /**
+     * Fields of a conversation document mapping each participant's id to the timestamp,
+     * in epoch milliseconds, up to which they received and read the conversation.
+     */
+    public static final String KEY_DELIVERED_UP_TO = "deliveredUpTo";
+    public static final String KEY_READ_UP_TO = "readUpTo";
+
+    /**
+     * Intent extra carrying the {@link com.example.chatapp.models.Group} to open, and the
+     * key of the group id in the FCM data payload of a group message.
+     */
+    public static final String KEY_GROUP = "group";
+    /**
+     * Fields of a group's conversation document: the ids of all members, queried with
+     * array-contains to list a user's groups, the group's name, and its newest message
+     * with the sender's name and client timestamp, overwritten by any newer send.
+     */
+    public static final String KEY_MEMBERS = "members";
+    public static final String KEY_GROUP_NAME = "name";
+    public static final String KEY_LAST_SENDER_NAME = "lastSenderName";
+    public static final String KEY_LAST_MESSAGE_AT = "lastMessageAt";
 
     public static final String KEY_SENDER_ID = "senderId";
 
     public static final String KEY_RECEIVER_ID = "receiverId";
 
     public static final String KEY_MESSAGE = "message";
+    /**
+     * Id of the message document, carried in FCM data payloads and as the intent extra
+     * that opens a conversation at a search result.
+     */
+    public static final String KEY_MESSAGE_ID = "messageId";
     public static final String KEY_TIMESTAMP = "timestamp";
 
+    /**
+     * Short field names of v2 message documents. The sender is stored as its index in
+     * the conversation id, see {@link Conversations#getParticipantIndex}; the receiver is
+     * the other participant. {@link #KEY_TIMESTAMP} keeps its name, since queries order by it.
+     */
+    public static final String KEY_SCHEMA_VERSION = "v";
+    public static final String KEY_SENDER_INDEX = "s";
+    public static final String KEY_TEXT = "m";
+    /**
+     * Sender of a v2 group message, stored by id: members join and leave, so a group
+     * has no fixed positions to index.
+     */
+    public static final String KEY_GROUP_SENDER = "u";
+    /**
+     * Server timestamp of the commit of a v2 message. Unlike {@link #KEY_TIMESTAMP}, it
+     * only grows, so conversations are synced on it.
+     */
+    public static final String KEY_COMMITTED_AT = "ct";
+    /**
+     * Fields of v2 image messages: the inline Base64 thumbnail, the id of the full image
+     * in the blob store, and the image's size in pixels.
+     */
+    public static final String KEY_THUMBNAIL = "th";
+    public static final String KEY_BLOB_ID = "b";
+    public static final String KEY_IMAGE_WIDTH = "w";
+    public static final String KEY_IMAGE_HEIGHT = "h";
+
+    /**
+     * Blob store in Firestore: one manifest document per blob, written once every
+     * chunk is stored, and a subcollection of chunk documents keyed by index.
+     */
+    public static final String KEY_COLLECTION_BLOBS = "blobs";
+    public static final String KEY_COLLECTION_CHUNKS = "chunks";
+    public static final String KEY_CHUNK_COUNT = "chunkCount";
+    public static final String KEY_LENGTH = "length";
+    public static final String KEY_DATA = "data";
+
 
 
 
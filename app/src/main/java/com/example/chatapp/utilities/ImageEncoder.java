@@ -0,0 +1,208 @@
+package com.example.chatapp.utilities;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * ImageEncoder turns a picked photo into small JPEGs without ever holding the
+ * full-resolution image in memory. The photo is decoded close to the
+ * largest target size, rotated according to its EXIF orientation, scaled down to
+ * each requested width and compressed with the highest quality that fits that
+ * width's byte budget. All of it runs off the main thread.
+ */
+public class ImageEncoder {
+
+    /**
+     * Receives the result of an encode.
+     */
+    public interface Callback {
+        /**
+         * Called on the main thread when the image was encoded.
+         *
+         * @param preview The bitmap at the largest requested width, suitable for a preview.
+         * @param images  The JPEG bytes, in the order of the requested widths; Base64 encode
+         *                only the small ones that are stored inline.
+         */
+        void onEncoded(Bitmap preview, byte[][] images);
+
+        /**
+         * Called on the main thread when the image could not be read or decoded.
+         */
+        void onError();
+    }
+
+    private static final int MIN_QUALITY = 20;
+    private static final int MAX_QUALITY = 90;
+
+    private static final Metrics.Histogram DECODE_TIME = Metrics.histogram("bitmap.decode");
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private ImageEncoder() {
+    }
+
+    /**
+     * Encodes an image at several widths in the background and reports the result
+     * on the main thread.
+     *
+     * @param contentResolver Used to open the image.
+     * @param imageUri        The image to encode.
+     * @param widths          The widths, in pixels and in ascending order, of the encoded images.
+     * @param maxBytes        Upper bound for the size of each compressed JPEG, per width.
+     * @param callback        Receives the result.
+     */
+    public static void encodeAsync(ContentResolver contentResolver, Uri imageUri,
+                                   int[] widths, int[] maxBytes, Callback callback) {
+        executor.execute(() -> {
+            Bitmap bitmap = null;
+            byte[][] images = null;
+            try {
+                long start = System.nanoTime();
+                bitmap = decodeScaled(contentResolver, imageUri, widths[widths.length - 1]);
+                DECODE_TIME.recordSince(start);
+                if (bitmap != null) {
+                    images = new byte[widths.length][];
+                    for (int i = 0; i < widths.length; i++) {
+                        Bitmap scaled = scaleToWidth(bitmap, widths[i]);
+                        images[i] = compress(scaled, maxBytes[i]);
+                        if (scaled != bitmap) {
+                            scaled.recycle();
+                        }
+                    }
+                }
+            } catch (IOException | SecurityException e) {
+                Log.w("ImageEncoder", "Unable to encode " + imageUri, e);
+            }
+            Bitmap preview = bitmap;
+            byte[][] result = images;
+            mainHandler.post(() -> {
+                if (result != null) {
+                    callback.onEncoded(preview, result);
+                } else {
+                    callback.onError();
+                }
+            });
+        });
+    }
+
+    /**
+     * Decodes an image at roughly the target width, then scales and rotates it exactly.
+     * Blocks; must not be called on the main thread.
+     *
+     * @param contentResolver Used to open the image.
+     * @param imageUri        The image to decode.
+     * @param targetWidth     The width, in pixels, of the returned bitmap.
+     * @return The decoded bitmap, or null if the image cannot be decoded.
+     * @throws IOException If the image cannot be read.
+     */
+    public static Bitmap decodeScaled(ContentResolver contentResolver, Uri imageUri, int targetWidth)
+            throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream inputStream = contentResolver.openInputStream(imageUri)) {
+            BitmapFactory.decodeStream(inputStream, null, options);
+        }
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        int orientation;
+        try (InputStream inputStream = contentResolver.openInputStream(imageUri)) {
+            orientation = inputStream == null ? ExifInterface.ORIENTATION_NORMAL
+                    : new ExifInterface(inputStream).getAttributeInt(
+                            ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+        }
+        int rotation = getRotation(orientation);
+        // After a quarter turn the displayed width is the stored height.
+        int displayedWidth = rotation % 180 == 0 ? options.outWidth : options.outHeight;
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = 1;
+        while (displayedWidth / (options.inSampleSize * 2) >= targetWidth) {
+            options.inSampleSize *= 2;
+        }
+        Bitmap sampled;
+        try (InputStream inputStream = contentResolver.openInputStream(imageUri)) {
+            sampled = BitmapFactory.decodeStream(inputStream, null, options);
+        }
+        if (sampled == null) {
+            return null;
+        }
+        int sampledWidth = rotation % 180 == 0 ? sampled.getWidth() : sampled.getHeight();
+        float scale = Math.min(1f, (float) targetWidth / sampledWidth);
+        Matrix matrix = new Matrix();
+        matrix.postScale(scale, scale);
+        matrix.postRotate(rotation);
+        Bitmap result = Bitmap.createBitmap(sampled, 0, 0, sampled.getWidth(), sampled.getHeight(), matrix, true);
+        if (result != sampled) {
+            sampled.recycle();
+        }
+        return result;
+    }
+
+    /**
+     * Compresses a bitmap to JPEG, searching for the highest quality whose output
+     * fits the byte budget. Falls back to the lowest quality if none does.
+     *
+     * @param bitmap   The bitmap to compress.
+     * @param maxBytes Upper bound for the size of the output.
+     * @return The JPEG bytes.
+     */
+    public static byte[] compress(Bitmap bitmap, int maxBytes) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(maxBytes);
+        byte[] best = null;
+        int low = MIN_QUALITY;
+        int high = MAX_QUALITY;
+        while (low <= high) {
+            int quality = (low + high) / 2;
+            outputStream.reset();
+            bitmap.compress(Bitmap.CompressFormat.JPEG, quality, outputStream);
+            if (outputStream.size() <= maxBytes) {
+                best = outputStream.toByteArray();
+                low = quality + 1;
+            } else {
+                high = quality - 1;
+            }
+        }
+        if (best == null) {
+            outputStream.reset();
+            bitmap.compress(Bitmap.CompressFormat.JPEG, MIN_QUALITY, outputStream);
+            best = outputStream.toByteArray();
+        }
+        return best;
+    }
+
+    private static Bitmap scaleToWidth(Bitmap bitmap, int width) {
+        if (bitmap.getWidth() <= width) {
+            return bitmap;
+        }
+        int height = Math.max(1, bitmap.getHeight() * width / bitmap.getWidth());
+        return Bitmap.createScaledBitmap(bitmap, width, height, true);
+    }
+
+    private static int getRotation(int orientation) {
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                return 90;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                return 180;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                return 270;
+            default:
+                return 0;
+        }
+    }
+}
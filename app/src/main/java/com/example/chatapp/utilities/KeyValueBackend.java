@@ -0,0 +1,30 @@
+package com.example.chatapp.utilities;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * KeyValueBackend is the persistence behind a {@link KeyValueStore}. Values are
+ * Strings or Booleans; a null value in a commit removes the key.
+ * Implementations are only called from the store's background thread, after
+ * {@link #readAll()} was called once.
+ */
+public interface KeyValueBackend {
+
+    /**
+     * Reads every persisted value.
+     *
+     * @return The persisted key-value pairs.
+     * @throws IOException If the values cannot be read.
+     */
+    Map<String, Object> readAll() throws IOException;
+
+    /**
+     * Durably applies one transaction.
+     *
+     * @param changes The values to set; a null value removes the key.
+     * @param clear   True if every existing value is removed before the changes are applied.
+     * @throws IOException If the transaction cannot be persisted.
+     */
+    void commit(Map<String, Object> changes, boolean clear) throws IOException;
+}
@@ -0,0 +1,117 @@
+package com.example.chatapp.utilities;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * KeyValueStore serves key-value pairs from memory and persists changes through a
+ * {@link KeyValueBackend}. The backend is read once, on first access; after that reads
+ * never touch the disk. Each {@link #apply} updates memory immediately and hands the
+ * transaction to the executor, so that a batch of changes costs one backend commit
+ * off the calling thread. Changes that would not alter any value are not committed.
+ */
+public class KeyValueStore {
+
+    private final KeyValueBackend backend;
+    private final Executor executor;
+    private Map<String, Object> values;
+
+    /**
+     * Constructor to initialize a store. Nothing is read until the first access.
+     *
+     * @param backend  Persists the values.
+     * @param executor Runs the commits, in order; must be single-threaded.
+     */
+    public KeyValueStore(KeyValueBackend backend, Executor executor) {
+        this.backend = backend;
+        this.executor = executor;
+    }
+
+    /**
+     * @param key The key to look up.
+     * @return The value of the key, or null if it is not set.
+     */
+    public synchronized Object get(String key) {
+        ensureLoaded();
+        return values.get(key);
+    }
+
+    /**
+     * @return True if the store holds no value.
+     */
+    public synchronized boolean isEmpty() {
+        ensureLoaded();
+        return values.isEmpty();
+    }
+
+    /**
+     * Applies a transaction in memory and persists it in the background.
+     *
+     * @param changes The values to set; a null value removes the key.
+     * @param clear   True if every value is removed before the changes are applied.
+     */
+    public void apply(Map<String, Object> changes, boolean clear) {
+        apply(changes, clear, null);
+    }
+
+    /**
+     * Applies a transaction in memory and persists it in the background, then reports
+     * that it is on disk.
+     *
+     * @param changes     The values to set; a null value removes the key.
+     * @param clear       True if every value is removed before the changes are applied.
+     * @param onCommitted Run on the executor once the transaction is persisted, or right
+     *                    away there if nothing had to be written; not run if the commit fails.
+     */
+    public synchronized void apply(Map<String, Object> changes, boolean clear, Runnable onCommitted) {
+        ensureLoaded();
+        if (clear && values.isEmpty()) {
+            clear = false;
+        }
+        Map<String, Object> effective = new HashMap<>();
+        if (clear) {
+            values.clear();
+        }
+        for (Map.Entry<String, Object> entry : changes.entrySet()) {
+            Object value = entry.getValue();
+            Object previous = value == null ? values.remove(entry.getKey()) : values.put(entry.getKey(), value);
+            if (value == null ? previous != null : !value.equals(previous)) {
+                effective.put(entry.getKey(), value);
+            }
+        }
+        if (!clear && effective.isEmpty()) {
+            if (onCommitted != null) {
+                executor.execute(onCommitted);
+            }
+            return;
+        }
+        boolean committedClear = clear;
+        executor.execute(() -> {
+            try {
+                backend.commit(effective, committedClear);
+            } catch (IOException e) {
+                Log.w("KeyValueStore", "Unable to persist preferences", e);
+                return;
+            }
+            if (onCommitted != null) {
+                onCommitted.run();
+            }
+        });
+    }
+
+    private void ensureLoaded() {
+        if (values != null) {
+            return;
+        }
+        try {
+            values = new HashMap<>(backend.readAll());
+        } catch (IOException e) {
+            Log.w("KeyValueStore", "Unable to read preferences", e);
+            values = new HashMap<>();
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.chatapp.utilities;
+
+import java.util.concurrent.LinkedBlockingDeque;
+
+/**
+ * LifoBlockingDeque is an unbounded work queue that hands out the newest task first.
+ * Image loaders use it so that the rows that just scrolled onto the screen are decoded
+ * before the ones requested earlier; rows that scroll away cancel and remove their
+ * tasks, which keeps the queue as long as the rows actually waiting for an image.
+ */
+class LifoBlockingDeque<E> extends LinkedBlockingDeque<E> {
+
+    @Override
+    public boolean offer(E element) {
+        return offerFirst(element);
+    }
+
+    @Override
+    public boolean add(E element) {
+        addFirst(element);
+        return true;
+    }
+
+    @Override
+    public void put(E element) throws InterruptedException {
+        putFirst(element);
+    }
+}
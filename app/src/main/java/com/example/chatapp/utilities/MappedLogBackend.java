@@ -0,0 +1,239 @@
+package com.example.chatapp.utilities;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * MappedLogBackend stores key-value pairs in an append-only log file. Every commit
+ * appends one checksummed frame and forces it to disk, so a transaction costs a single
+ * fsync no matter how many keys it changes. The file is memory-mapped to read it back,
+ * and a frame torn by a crash is detected by its length or checksum and cut off.
+ * Once the log grows to several times the size of its live values, it is compacted by
+ * writing a single snapshot frame to a new file and renaming it over the old one.
+ * <p>
+ * Frame layout: payload length (int), CRC32 of the payload (int), payload. The payload
+ * holds a clear flag (byte), an entry count (int), then per entry the key (int length,
+ * UTF-8 bytes), a type tag (byte) and the value.
+ */
+public class MappedLogBackend implements KeyValueBackend {
+
+    private static final int HEADER_BYTES = 8;
+    private static final long MIN_COMPACTION_BYTES = 16 * 1024;
+    private static final int COMPACTION_FACTOR = 4;
+
+    private static final byte TYPE_REMOVED = 0;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_BOOLEAN = 2;
+
+    private final File file;
+    private final Map<String, Object> live = new HashMap<>();
+    private RandomAccessFile randomAccessFile;
+    private FileChannel channel;
+    private long compactedSize;
+
+    /**
+     * Constructor to initialize the backend on a file, which is created on first commit.
+     *
+     * @param file The log file.
+     */
+    public MappedLogBackend(File file) {
+        this.file = file;
+    }
+
+    @Override
+    public Map<String, Object> readAll() throws IOException {
+        open();
+        live.clear();
+        long size = channel.size();
+        long valid = 0;
+        if (size > 0) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            while (buffer.remaining() >= HEADER_BYTES) {
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length < 0 || length > buffer.remaining()) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                buffer.get(payload);
+                if (checksum != checksum(payload) || !applyFrame(ByteBuffer.wrap(payload), live)) {
+                    break;
+                }
+                valid = buffer.position();
+            }
+        }
+        if (valid < size) {
+            channel.truncate(valid);
+        }
+        compactedSize = valid;
+        return new HashMap<>(live);
+    }
+
+    @Override
+    public void commit(Map<String, Object> changes, boolean clear) throws IOException {
+        if (channel == null) {
+            open();
+        }
+        append(channel, encode(changes, clear));
+        if (clear) {
+            live.clear();
+        }
+        applyChanges(changes, live);
+        long size = channel.size();
+        if (size > MIN_COMPACTION_BYTES && size > COMPACTION_FACTOR * compactedSize) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrites the log as a single snapshot frame of the live values.
+     *
+     * @throws IOException If the snapshot cannot be written.
+     */
+    void compact() throws IOException {
+        File compacted = new File(file.getPath() + ".compact");
+        try (RandomAccessFile output = new RandomAccessFile(compacted, "rw")) {
+            output.setLength(0);
+            append(output.getChannel(), encode(live, true));
+        }
+        close();
+        if (!compacted.renameTo(file)) {
+            throw new IOException("Unable to replace " + file);
+        }
+        open();
+        compactedSize = channel.size();
+    }
+
+    /**
+     * Closes the log file. A later commit reopens it.
+     *
+     * @throws IOException If the file cannot be closed.
+     */
+    public void close() throws IOException {
+        if (randomAccessFile != null) {
+            randomAccessFile.close();
+            randomAccessFile = null;
+            channel = null;
+        }
+    }
+
+    private void open() throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create " + parent);
+        }
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        channel = randomAccessFile.getChannel();
+    }
+
+    private static void append(FileChannel channel, byte[] payload) throws IOException {
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+        frame.putInt(payload.length);
+        frame.putInt(checksum(payload));
+        frame.put(payload);
+        frame.flip();
+        channel.position(channel.size());
+        while (frame.hasRemaining()) {
+            channel.write(frame);
+        }
+        channel.force(false);
+    }
+
+    private static byte[] encode(Map<String, Object> changes, boolean clear) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeBoolean(clear);
+        output.writeInt(changes.size());
+        for (Map.Entry<String, Object> entry : changes.entrySet()) {
+            writeString(output, entry.getKey());
+            Object value = entry.getValue();
+            if (value == null) {
+                output.writeByte(TYPE_REMOVED);
+            } else if (value instanceof Boolean) {
+                output.writeByte(TYPE_BOOLEAN);
+                output.writeBoolean((Boolean) value);
+            } else {
+                output.writeByte(TYPE_STRING);
+                writeString(output, value.toString());
+            }
+        }
+        output.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Applies a decoded frame to the values read so far.
+     *
+     * @return False if the frame is malformed.
+     */
+    private static boolean applyFrame(ByteBuffer payload, Map<String, Object> values) {
+        try {
+            boolean clear = payload.get() != 0;
+            int count = payload.getInt();
+            Map<String, Object> changes = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                String key = readString(payload);
+                byte type = payload.get();
+                if (type == TYPE_REMOVED) {
+                    changes.put(key, null);
+                } else if (type == TYPE_BOOLEAN) {
+                    changes.put(key, payload.get() != 0);
+                } else if (type == TYPE_STRING) {
+                    changes.put(key, readString(payload));
+                } else {
+                    return false;
+                }
+            }
+            if (clear) {
+                values.clear();
+            }
+            applyChanges(changes, values);
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    private static void applyChanges(Map<String, Object> changes, Map<String, Object> values) {
+        for (Map.Entry<String, Object> entry : changes.entrySet()) {
+            if (entry.getValue() == null) {
+                values.remove(entry.getKey());
+            } else {
+                values.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Bad string length " + length);
+        }
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private static int checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+}
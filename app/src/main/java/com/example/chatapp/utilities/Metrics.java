@@ -0,0 +1,238 @@
+package com.example.chatapp.utilities;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Metrics is a process-wide registry of counters and latency histograms for the hot
+ * paths of the app. Metrics are created once, typically as static fields of the class
+ * they measure; recording only updates atomic longs and never allocates, so it stays
+ * enabled in release builds. {@link #dump()} formats every metric for the debug overlay
+ * and for the file pulled by CI.
+ */
+public final class Metrics {
+
+    private static final Map<String, Counter> counters = new LinkedHashMap<>();
+    private static final Map<String, Histogram> histograms = new LinkedHashMap<>();
+
+    private Metrics() {
+    }
+
+    /**
+     * Counts events.
+     */
+    public static final class Counter {
+        private final String name;
+        private final AtomicLong value = new AtomicLong();
+
+        private Counter(String name) {
+            this.name = name;
+        }
+
+        public void increment() {
+            value.incrementAndGet();
+        }
+
+        public void add(long delta) {
+            value.addAndGet(delta);
+        }
+
+        public long get() {
+            return value.get();
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    /**
+     * Records durations in nanoseconds into fixed log-linear buckets: every power of two
+     * is split into {@link #SUB_BUCKETS} equal buckets, so any recorded value is known to
+     * within 25% over the whole range of a long, in a fixed array of counts.
+     */
+    public static final class Histogram {
+        private static final int SUB_BUCKET_BITS = 2;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+        private final String name;
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        private Histogram(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Records one duration.
+         *
+         * @param nanos The duration in nanoseconds; negative values count as zero.
+         */
+        public void record(long nanos) {
+            long value = Math.max(0, nanos);
+            counts.incrementAndGet(bucketOf(value));
+            count.incrementAndGet();
+            sum.addAndGet(value);
+            long current = max.get();
+            while (value > current && !max.compareAndSet(current, value)) {
+                current = max.get();
+            }
+        }
+
+        /**
+         * Records the time elapsed since a {@link System#nanoTime()} reading.
+         *
+         * @param startNanos The reading taken when the measured work began.
+         */
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getMax() {
+            return max.get();
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return The mean of the recorded values, in nanoseconds.
+         */
+        public long getMean() {
+            long recorded = count.get();
+            return recorded == 0 ? 0 : sum.get() / recorded;
+        }
+
+        /**
+         * Estimates a percentile from the buckets.
+         *
+         * @param percentile The percentile, between 0 and 100.
+         * @return The upper bound of the bucket holding that percentile, in nanoseconds,
+         * never more than the largest recorded value; 0 if nothing was recorded.
+         */
+        public long getPercentile(double percentile) {
+            long recorded = count.get();
+            if (recorded == 0) {
+                return 0;
+            }
+            long target = Math.max(1, (long) Math.ceil(recorded * percentile / 100));
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += counts.get(i);
+                if (seen >= target) {
+                    long upper = i + 1 < BUCKET_COUNT ? lowerBound(i + 1) - 1 : Long.MAX_VALUE;
+                    return Math.min(upper, max.get());
+                }
+            }
+            return max.get();
+        }
+
+        static int bucketOf(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int mantissa = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + mantissa;
+        }
+
+        static long lowerBound(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+            long mantissa = bucket % SUB_BUCKETS;
+            return (SUB_BUCKETS + mantissa) << (exponent - SUB_BUCKET_BITS);
+        }
+    }
+
+    /**
+     * Returns the counter with a name, creating it on first use.
+     *
+     * @param name The name of the counter.
+     * @return The counter.
+     */
+    public static synchronized Counter counter(String name) {
+        Counter counter = counters.get(name);
+        if (counter == null) {
+            counter = new Counter(name);
+            counters.put(name, counter);
+        }
+        return counter;
+    }
+
+    /**
+     * Returns the histogram with a name, creating it on first use.
+     *
+     * @param name The name of the histogram.
+     * @return The histogram.
+     */
+    public static synchronized Histogram histogram(String name) {
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            histogram = new Histogram(name);
+            histograms.put(name, histogram);
+        }
+        return histogram;
+    }
+
+    /**
+     * Formats every metric, one per line, with durations in milliseconds.
+     *
+     * @return The formatted metrics.
+     */
+    public static String dump() {
+        List<Counter> counterList;
+        List<Histogram> histogramList;
+        synchronized (Metrics.class) {
+            counterList = new ArrayList<>(counters.values());
+            histogramList = new ArrayList<>(histograms.values());
+        }
+        StringBuilder builder = new StringBuilder();
+        for (Histogram histogram : histogramList) {
+            builder.append(String.format(Locale.US, "%s n=%d p50=%.2f p90=%.2f p99=%.2f max=%.2f mean=%.2f%n",
+                    histogram.getName(), histogram.getCount(), toMillis(histogram.getPercentile(50)),
+                    toMillis(histogram.getPercentile(90)), toMillis(histogram.getPercentile(99)),
+                    toMillis(histogram.getMax()), toMillis(histogram.getMean())));
+        }
+        for (Counter counter : counterList) {
+            builder.append(counter.getName()).append(' ').append(counter.get()).append('\n');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Writes {@link #dump()} to a file, replacing it.
+     *
+     * @param file The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void dumpTo(File file) throws IOException {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writer.write(dump());
+        }
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1e6;
+    }
+}
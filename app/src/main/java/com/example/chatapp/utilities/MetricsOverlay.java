@@ -0,0 +1,117 @@
+package com.example.chatapp.utilities;
+
+import android.app.Activity;
+import android.content.Intent;
+import android.content.pm.ApplicationInfo;
+import android.graphics.Color;
+import android.graphics.Typeface;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.Gravity;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * MetricsOverlay shows {@link Metrics#dump()} over the middle of an activity, clear of
+ * the toolbars at the top and the input and buttons at the bottom, refreshed every
+ * second. It is off unless a debuggable build is launched with {@link #EXTRA_ENABLED},
+ * e.g. {@code adb shell am start -n com.example.chatapp/.activities.LaunchActivity --ez metricsOverlay true};
+ * the choice holds for the rest of the process. The overlay does not take touches and
+ * has a fixed size, so a refresh only redraws it instead of laying out the activity.
+ * When it is detached, the metrics are also written to {@code metrics.txt} in the
+ * app's external files directory, where CI pulls them with adb.
+ */
+public final class MetricsOverlay {
+
+    /**
+     * Boolean intent extra that turns the overlay on or off.
+     */
+    public static final String EXTRA_ENABLED = "metricsOverlay";
+
+    private static final long REFRESH_MS = 1000;
+    private static final int HEIGHT_DP = 160;
+    private static final String FILE_NAME = "metrics.txt";
+
+    private static boolean enabled;
+
+    private final TextView textView;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable refresh = new Runnable() {
+        @Override
+        public void run() {
+            String dump = Metrics.dump();
+            if (!dump.contentEquals(textView.getText())) {
+                textView.setText(dump);
+            }
+            handler.postDelayed(this, REFRESH_MS);
+        }
+    };
+
+    private MetricsOverlay(TextView textView) {
+        this.textView = textView;
+    }
+
+    /**
+     * Shows the overlay on an activity, if the app is debuggable and the overlay was
+     * turned on by this or an earlier activity's intent.
+     *
+     * @param activity The activity to cover; its content view must be set.
+     * @return The overlay, or null if it is off.
+     */
+    public static MetricsOverlay attach(Activity activity) {
+        if ((activity.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) == 0) {
+            return null;
+        }
+        Intent intent = activity.getIntent();
+        if (intent != null && intent.hasExtra(EXTRA_ENABLED)) {
+            enabled = intent.getBooleanExtra(EXTRA_ENABLED, false);
+        }
+        if (!enabled) {
+            return null;
+        }
+        TextView textView = new TextView(activity);
+        textView.setTypeface(Typeface.MONOSPACE);
+        textView.setTextSize(9);
+        textView.setTextColor(Color.WHITE);
+        textView.setBackgroundColor(0x99000000);
+        textView.setClickable(false);
+        textView.setFocusable(false);
+        // A fixed height keeps setText from requesting a layout of the whole activity.
+        int height = Math.round(HEIGHT_DP * activity.getResources().getDisplayMetrics().density);
+        FrameLayout.LayoutParams params = new FrameLayout.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, height, Gravity.CENTER_VERTICAL);
+        ViewGroup content = activity.findViewById(android.R.id.content);
+        content.addView(textView, params);
+        MetricsOverlay overlay = new MetricsOverlay(textView);
+        overlay.refresh.run();
+        return overlay;
+    }
+
+    /**
+     * Removes the overlay and writes the metrics to the dump file in the background.
+     */
+    public void detach() {
+        handler.removeCallbacks(refresh);
+        ViewGroup parent = (ViewGroup) textView.getParent();
+        if (parent != null) {
+            parent.removeView(textView);
+        }
+        File directory = textView.getContext().getExternalFilesDir(null);
+        if (directory == null) {
+            return;
+        }
+        File file = new File(directory, FILE_NAME);
+        new Thread(() -> {
+            try {
+                Metrics.dumpTo(file);
+            } catch (IOException e) {
+                Log.w("MetricsOverlay", "Unable to write " + file, e);
+            }
+        }, "MetricsOverlay").start();
+    }
+}
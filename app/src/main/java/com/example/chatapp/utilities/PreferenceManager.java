@@ -2,22 +2,145 @@ package com.example.chatapp.utilities;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 
 /**
  * PreferenceManager is a utility class for managing shared preferences in the application.
  * It provides methods to save, retrieve, and clear key-value pairs in a consistent way.
+ * <p>
+ * Values are held in memory, shared by every instance, and persisted in the background
+ * to an append-only log through {@link MappedLogBackend}. Several changes made in one
+ * {@link #edit} are persisted together with a single fsync. Large values, such as the
+ * legacy Base64 avatar, live in a second file that is only read when one of them is
+ * first accessed, so they never slow down reading the small values needed at startup;
+ * read them with {@link #getStringAsync} to keep that file off the main thread.
  */
 public class PreferenceManager {
-    private final SharedPreferences sharedPreferences;
+
+    private static final String MAIN_FILE = "preferences.kv";
+    private static final String LARGE_FILE = "preferences_large.kv";
+    private static final Set<String> LARGE_KEYS = Collections.singleton(Constants.KEY_IMAGE);
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private static KeyValueStore mainStore;
+    private static KeyValueStore largeStore;
+
+    private final KeyValueStore main;
+    private final KeyValueStore large;
+
     /**
-     * Constructor to initialize the PreferenceManager with a context.
+     * Collects the changes of one {@link #edit} call.
+     */
+    public static class Editor {
+        private final Map<String, Object> changes = new HashMap<>();
+        private boolean cleared;
+
+        private Editor() {
+        }
+
+        /**
+         * Saves a string value; a null value removes the key.
+         *
+         * @param key   The key to identify the value.
+         * @param value The string value to save.
+         * @return This editor.
+         */
+        public Editor putString(String key, String value) {
+            changes.put(key, value);
+            return this;
+        }
+
+        /**
+         * Saves a boolean value; a null value removes the key.
+         *
+         * @param key   The key to identify the value.
+         * @param value The boolean value to save.
+         * @return This editor.
+         */
+        public Editor putBoolean(String key, Boolean value) {
+            changes.put(key, value);
+            return this;
+        }
+
+        /**
+         * Removes a value.
+         *
+         * @param key The key to remove.
+         * @return This editor.
+         */
+        public Editor remove(String key) {
+            changes.put(key, null);
+            return this;
+        }
+
+        /**
+         * Removes every value, including the changes made earlier in this edit.
+         *
+         * @return This editor.
+         */
+        public Editor clear() {
+            changes.clear();
+            cleared = true;
+            return this;
+        }
+    }
+
+    /**
+     * Constructor to initialize the PreferenceManager with a context. Cheap: the
+     * preferences are read only once per process, on first use.
      *
      * @param context The application context used to access shared preferences.
      */
     public PreferenceManager (Context context) {
-       sharedPreferences = context.getSharedPreferences(Constants.KEY_PREFERENCE_NAME, Context.MODE_PRIVATE);
+        synchronized (PreferenceManager.class) {
+            if (mainStore == null) {
+                Context appContext = context.getApplicationContext();
+                File mainFile = new File(appContext.getFilesDir(), MAIN_FILE);
+                boolean migrate = !mainFile.exists();
+                mainStore = new KeyValueStore(new MappedLogBackend(mainFile), executor);
+                largeStore = new KeyValueStore(
+                        new MappedLogBackend(new File(appContext.getFilesDir(), LARGE_FILE)), executor);
+                if (migrate) {
+                    migrateSharedPreferences(appContext);
+                }
+            }
+            main = mainStore;
+            large = largeStore;
+        }
     }
+
+    /**
+     * Applies several changes as one transaction.
+     *
+     * @param batch Makes the changes on the given editor.
+     */
+    public void edit(Consumer<Editor> batch) {
+        Editor editor = new Editor();
+        batch.accept(editor);
+        Map<String, Object> mainChanges = new HashMap<>();
+        Map<String, Object> largeChanges = new HashMap<>();
+        for (Map.Entry<String, Object> entry : editor.changes.entrySet()) {
+            (LARGE_KEYS.contains(entry.getKey()) ? largeChanges : mainChanges).put(entry.getKey(), entry.getValue());
+        }
+        main.apply(mainChanges, editor.cleared);
+        if (editor.cleared || !largeChanges.isEmpty()) {
+            large.apply(largeChanges, editor.cleared);
+        }
+    }
+
     /**
      * Saves a boolean value in shared preferences.
      *
@@ -26,9 +149,7 @@ public class PreferenceManager {
      */
 
     public void putBoolean(String key, Boolean value) {
-        SharedPreferences.Editor editor = sharedPreferences.edit();
-        editor.putBoolean(key,value);
-        editor.apply();
+        edit(editor -> editor.putBoolean(key, value));
     }
     /**
      * Retrieves a boolean value from shared preferences.
@@ -38,7 +159,8 @@ public class PreferenceManager {
      */
 
    public Boolean getBoolean(String key) {
-        return sharedPreferences.getBoolean(key, false);
+        Object value = storeFor(key).get(key);
+        return value instanceof Boolean ? (Boolean) value : false;
 
    }
 
@@ -50,9 +172,7 @@ public class PreferenceManager {
      */
 
     public void putString(String key, String value) {
-        SharedPreferences.Editor editor = sharedPreferences.edit();
-        editor.putString(key, value);
-        editor.apply();
+        edit(editor -> editor.putString(key, value));
    }
     /**
      * Retrieves a string value from shared preferences.
@@ -61,14 +181,58 @@ public class PreferenceManager {
      * @return The string value associated with the key, or null if not found.
      */
    public String getString(String key) {
-        return sharedPreferences.getString(key, null);
+        Object value = storeFor(key).get(key);
+        return value instanceof String ? (String) value : null;
    }
 
+    /**
+     * Reads a string value in the background, for large values whose file may not have
+     * been read yet.
+     *
+     * @param key      The key to identify the value.
+     * @param callback Receives the value, or null if not found, on the main thread.
+     */
+    public void getStringAsync(String key, Consumer<String> callback) {
+        executor.execute(() -> {
+            String value = getString(key);
+            mainHandler.post(() -> callback.accept(value));
+        });
+    }
+
    public void clear() {
-        SharedPreferences.Editor editor = sharedPreferences.edit();
-        editor.clear();
-        editor.apply();
+        edit(Editor::clear);
    }
 
+    private KeyValueStore storeFor(String key) {
+        return LARGE_KEYS.contains(key) ? large : main;
+    }
 
+    /**
+     * Moves the values of the SharedPreferences file used by earlier versions into the
+     * stores, and empties it once both stores have committed them. Runs once, when the
+     * main store's file does not exist yet.
+     */
+    private static void migrateSharedPreferences(Context context) {
+        SharedPreferences legacy = context.getSharedPreferences(Constants.KEY_PREFERENCE_NAME, Context.MODE_PRIVATE);
+        Map<String, Object> values = new SharedPreferencesBackend(legacy).readAll();
+        if (values.isEmpty()) {
+            return;
+        }
+        Map<String, Object> mainValues = new HashMap<>();
+        Map<String, Object> largeValues = new HashMap<>();
+        for (Map.Entry<String, ?> entry : values.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof String || value instanceof Boolean) {
+                (LARGE_KEYS.contains(entry.getKey()) ? largeValues : mainValues).put(entry.getKey(), value);
+            }
+        }
+        AtomicInteger pendingCommits = new AtomicInteger(2);
+        Runnable clearLegacy = () -> {
+            if (pendingCommits.decrementAndGet() == 0) {
+                legacy.edit().clear().apply();
+            }
+        };
+        mainStore.apply(mainValues, false, clearLegacy);
+        largeStore.apply(largeValues, false, clearLegacy);
+    }
 }
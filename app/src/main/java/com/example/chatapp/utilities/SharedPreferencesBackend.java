@@ -0,0 +1,48 @@
+package com.example.chatapp.utilities;
+
+import android.content.SharedPreferences;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * SharedPreferencesBackend keeps the values of a {@link KeyValueStore} in a
+ * {@link SharedPreferences} file. A commit is one editor transaction.
+ */
+public class SharedPreferencesBackend implements KeyValueBackend {
+
+    private final SharedPreferences sharedPreferences;
+
+    /**
+     * Constructor to initialize the backend on a preferences file.
+     *
+     * @param sharedPreferences The preferences holding the values.
+     */
+    public SharedPreferencesBackend(SharedPreferences sharedPreferences) {
+        this.sharedPreferences = sharedPreferences;
+    }
+
+    @Override
+    public Map<String, Object> readAll() {
+        return new HashMap<>(sharedPreferences.getAll());
+    }
+
+    @Override
+    public void commit(Map<String, Object> changes, boolean clear) {
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        if (clear) {
+            editor.clear();
+        }
+        for (Map.Entry<String, Object> entry : changes.entrySet()) {
+            Object value = entry.getValue();
+            if (value == null) {
+                editor.remove(entry.getKey());
+            } else if (value instanceof Boolean) {
+                editor.putBoolean(entry.getKey(), (Boolean) value);
+            } else {
+                editor.putString(entry.getKey(), value.toString());
+            }
+        }
+        editor.commit();
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.chatapp.utilities;
+
+import android.content.Context;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * StartupTrace records how long a cold start takes, from the moment the process was
+ * forked to the first frame of the inbox. Each {@link #mark} closes a phase that began
+ * at the previous mark. When the inbox has drawn, the phases are logged and exported
+ * to {@code startup_trace.json} in the Chrome trace event format, which Perfetto and
+ * chrome://tracing open directly. Starts that do not end in the inbox, such as a
+ * launch into the sign-in screen, are abandoned and not recorded.
+ */
+public final class StartupTrace {
+
+    private static final String TAG = "StartupTrace";
+    private static final String FILE_NAME = "startup_trace.json";
+    /**
+     * A launcher activity created later than this after the fork joined a process that
+     * was already running, for example one started to receive a push message.
+     */
+    private static final long COLD_START_LIMIT_MS = 10000;
+
+    private static final List<String> phases = new ArrayList<>();
+    private static final List<Long> times = new ArrayList<>();
+    private static boolean closed;
+
+    private StartupTrace() {
+    }
+
+    /**
+     * Ends the first phase, from the fork to the launcher activity. The trace is
+     * abandoned if the process was not started for this launch.
+     */
+    public static synchronized void begin() {
+        if (SystemClock.uptimeMillis() - Process.getStartUptimeMillis() > COLD_START_LIMIT_MS) {
+            closed = true;
+        }
+        mark("process_to_launch");
+    }
+
+    /**
+     * Ends a startup phase now.
+     *
+     * @param phase The name of the phase that just ended.
+     */
+    public static synchronized void mark(String phase) {
+        if (closed) {
+            return;
+        }
+        phases.add(phase);
+        times.add(SystemClock.uptimeMillis());
+    }
+
+    /**
+     * Stops recording, for a start that does not lead to the inbox.
+     */
+    public static synchronized void abandon() {
+        closed = true;
+    }
+
+    /**
+     * Ends the last phase at the first frame of the inbox, then logs and exports the trace.
+     * Only the first call of a process has an effect.
+     *
+     * @param context Used to locate the files directory.
+     */
+    public static void finish(Context context) {
+        String json;
+        synchronized (StartupTrace.class) {
+            if (closed) {
+                return;
+            }
+            mark("first_frame");
+            closed = true;
+            long start = Process.getStartUptimeMillis();
+            StringBuilder summary = new StringBuilder("Time to inbox ")
+                    .append(times.get(times.size() - 1) - start).append(" ms:");
+            long previous = start;
+            for (int i = 0; i < phases.size(); i++) {
+                summary.append(' ').append(phases.get(i)).append('=').append(times.get(i) - previous);
+                previous = times.get(i);
+            }
+            Log.i(TAG, summary.toString());
+            json = toJson(start);
+        }
+        File file = new File(context.getFilesDir(), FILE_NAME);
+        new Thread(() -> {
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+                writer.write(json);
+            } catch (IOException e) {
+                Log.w(TAG, "Unable to export " + file, e);
+            }
+        }, TAG).start();
+    }
+
+    /**
+     * Formats the phases as complete events, in microseconds since process start.
+     */
+    private static String toJson(long start) {
+        StringBuilder json = new StringBuilder("{\"traceEvents\":[");
+        int pid = Process.myPid();
+        long previous = start;
+        for (int i = 0; i < phases.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"name\":\"").append(phases.get(i))
+                    .append("\",\"ph\":\"X\",\"pid\":").append(pid)
+                    .append(",\"tid\":").append(pid)
+                    .append(",\"ts\":").append((previous - start) * 1000)
+                    .append(",\"dur\":").append((times.get(i) - previous) * 1000)
+                    .append('}');
+            previous = times.get(i);
+        }
+        return json.append("],\"displayTimeUnit\":\"ms\"}").toString();
+    }
+}
@@ -0,0 +1,258 @@
+package com.example.chatapp.utilities;
+
+import com.example.chatapp.models.User;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * UserSearchIndex answers typeahead queries over the user directory with a sorted
+ * array of normalized terms (the words of each user's first name, last name and email)
+ * and a binary search for the first term starting with the query. A keystroke costs
+ * one binary search plus a scan over the matches it returns.
+ * <p>
+ * The arrays are never modified once published: {@link #rebuild} and {@link #update}
+ * build new ones and swap them in, so {@link #search} can run on the main thread while
+ * an update is built on a background thread. Updates must not run concurrently.
+ */
+public class UserSearchIndex {
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("\\s+");
+
+    /**
+     * An immutable, term-ordered snapshot of the index. {@code keys[i]} holds every
+     * term of {@code users[i]}, each preceded by a space, for matching further query words.
+     */
+    private static final class Entries {
+        final String[] terms;
+        final String[] keys;
+        final User[] users;
+
+        Entries(String[] terms, String[] keys, User[] users) {
+            this.terms = terms;
+            this.keys = keys;
+            this.users = users;
+        }
+    }
+
+    private volatile Entries entries = new Entries(new String[0], new String[0], new User[0]);
+
+    /**
+     * Lowercases a string and strips its diacritics, the form in which both terms
+     * and queries are compared.
+     *
+     * @param value The string to normalize; may be null.
+     * @return The normalized string, or an empty string for null.
+     */
+    public static String normalize(String value) {
+        if (value == null) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(value, Normalizer.Form.NFD);
+        return DIACRITICS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT).trim();
+    }
+
+    /**
+     * Replaces the whole index. Blocks; run it off the main thread.
+     *
+     * @param users Every user to index.
+     */
+    public synchronized void rebuild(Collection<User> users) {
+        entries = toEntries(collect(users));
+    }
+
+    /**
+     * Re-indexes users that were added or changed, replacing any terms they had before.
+     * Blocks; run it off the main thread.
+     *
+     * @param changed The added or changed users.
+     */
+    public void update(Collection<User> changed) {
+        update(changed, Collections.<String>emptyList());
+    }
+
+    /**
+     * Re-indexes users that were added or changed, replacing any terms they had before,
+     * and drops the terms of users that were deleted. Blocks; run it off the main thread.
+     *
+     * @param changed    The added or changed users.
+     * @param removedIds The ids of the deleted users.
+     */
+    public synchronized void update(Collection<User> changed, Collection<String> removedIds) {
+        if (changed.isEmpty() && removedIds.isEmpty()) {
+            return;
+        }
+        Set<String> changedIds = new HashSet<>(removedIds);
+        for (User user : changed) {
+            changedIds.add(user.id);
+        }
+        List<Entry> fresh = collect(changed);
+        Entries current = entries;
+        int kept = 0;
+        for (User user : current.users) {
+            if (!changedIds.contains(user.id)) {
+                kept++;
+            }
+        }
+        int size = kept + fresh.size();
+        String[] terms = new String[size];
+        String[] keys = new String[size];
+        User[] users = new User[size];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (k < size) {
+            while (i < current.users.length && changedIds.contains(current.users[i].id)) {
+                i++;
+            }
+            boolean takeCurrent = i < current.users.length
+                    && (j == fresh.size() || current.terms[i].compareTo(fresh.get(j).term) <= 0);
+            if (takeCurrent) {
+                terms[k] = current.terms[i];
+                keys[k] = current.keys[i];
+                users[k] = current.users[i];
+                i++;
+            } else {
+                Entry entry = fresh.get(j++);
+                terms[k] = entry.term;
+                keys[k] = entry.key;
+                users[k] = entry.user;
+            }
+            k++;
+        }
+        entries = new Entries(terms, keys, users);
+    }
+
+    /**
+     * Finds users with a term starting with each word of the query. Safe to call from
+     * any thread while an update is being built.
+     *
+     * @param query The text typed so far.
+     * @param limit Maximum number of users returned.
+     * @return The matching users, ordered by the term they matched on.
+     */
+    public List<User> search(String query, int limit) {
+        String normalized = normalize(query);
+        if (normalized.isEmpty()) {
+            return Collections.emptyList();
+        }
+        String[] words = SEPARATORS.split(normalized);
+        Entries current = entries;
+        String first = words[0];
+        List<User> results = new ArrayList<>(Math.min(limit, 16));
+        Set<String> seen = new HashSet<>();
+        for (int i = lowerBound(current.terms, first);
+             i < current.terms.length && current.terms[i].startsWith(first) && results.size() < limit; i++) {
+            User user = current.users[i];
+            if (matchesRest(current.keys[i], words) && seen.add(user.id)) {
+                results.add(user);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * @return The number of terms in the index.
+     */
+    public int size() {
+        return entries.terms.length;
+    }
+
+    private static boolean matchesRest(String key, String[] words) {
+        for (int w = 1; w < words.length; w++) {
+            if (!key.contains(" " + words[w])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int lowerBound(String[] terms, String prefix) {
+        int low = 0;
+        int high = terms.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (terms[mid].compareTo(prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+        final String term;
+        final String key;
+        final User user;
+
+        Entry(String term, String key, User user) {
+            this.term = term;
+            this.key = key;
+            this.user = user;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            return term.compareTo(other.term);
+        }
+    }
+
+    /**
+     * Splits each user into its normalized terms and returns them in term order.
+     */
+    private static List<Entry> collect(Collection<User> users) {
+        List<Entry> collected = new ArrayList<>(users.size() * 3);
+        List<String> userTerms = new ArrayList<>();
+        StringBuilder key = new StringBuilder();
+        for (User user : users) {
+            userTerms.clear();
+            addWords(userTerms, user.firstName);
+            addWords(userTerms, user.lastName);
+            addWords(userTerms, user.email);
+            key.setLength(0);
+            for (String term : userTerms) {
+                key.append(' ').append(term);
+            }
+            String userKey = key.toString();
+            for (String term : userTerms) {
+                collected.add(new Entry(term, userKey, user));
+            }
+        }
+        Collections.sort(collected);
+        return collected;
+    }
+
+    private static void addWords(List<String> terms, String value) {
+        String normalized = normalize(value);
+        if (normalized.isEmpty()) {
+            return;
+        }
+        for (String word : SEPARATORS.split(normalized)) {
+            if (!terms.contains(word)) {
+                terms.add(word);
+            }
+        }
+    }
+
+    private static Entries toEntries(List<Entry> collected) {
+        String[] terms = new String[collected.size()];
+        String[] keys = new String[collected.size()];
+        User[] users = new User[collected.size()];
+        for (int i = 0; i < collected.size(); i++) {
+            Entry entry = collected.get(i);
+            terms[i] = entry.term;
+            keys[i] = entry.key;
+            users[i] = entry.user;
+        }
+        return new Entries(terms, keys, users);
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.chatapp.activities;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.example.chatapp.R;
+import com.example.chatapp.models.Group;
+import com.example.chatapp.repository.ChatLoadGenerator;
+import com.example.chatapp.repository.InMemoryBackend;
+import com.example.chatapp.repository.Repositories;
+import com.example.chatapp.utilities.Constants;
+import com.example.chatapp.utilities.Metrics;
+import com.example.chatapp.utilities.PreferenceManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Opens a group conversation backed by the in-memory backend and feeds it from a
+ * number of simulated members, bounding the UI-thread CPU time per message and the heap growth.
+ * Every repository is the in-memory backend, so no Firebase app is needed.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class ChatActivityLoadTest {
+
+    private static final String CURRENT_USER_ID = "me";
+    private static final int SENDERS = 10;
+    private static final double MESSAGES_PER_SECOND = 5;
+    private static final long DURATION_MILLIS = 30_000;
+    private static final long STEP_MILLIS = 16;
+    // Generous bounds: they catch a regression by an order of magnitude, not jitter.
+    private static final long MAX_UI_MICROS_PER_MESSAGE = 2000;
+    private static final long MAX_HEAP_GROWTH_BYTES = 32L * 1024 * 1024;
+
+    private InMemoryBackend backend;
+    private InMemoryBackend.Scheduler scheduler;
+    private ActivityController<ChatActivity> controller;
+
+    @Before
+    public void setUp() {
+        Context context = RuntimeEnvironment.getApplication();
+        Handler mainHandler = new Handler(Looper.getMainLooper());
+        scheduler = (task, delayMillis) -> mainHandler.postDelayed(task, delayMillis);
+        backend = new InMemoryBackend(scheduler);
+        backend.setLatency(50);
+        Repositories.install(backend, backend, backend, backend);
+        new PreferenceManager(context).edit(editor -> editor
+                .putBoolean(Constants.KEY_IS_SIGNED_IN, true)
+                .putString(Constants.KEY_USER_ID, CURRENT_USER_ID)
+                .putString(Constants.KEY_FIRST_NAME, "Me"));
+    }
+
+    @After
+    public void tearDown() {
+        if (controller != null) {
+            controller.pause().stop().destroy();
+        }
+        Repositories.install(null, null, null, null);
+    }
+
+    @Test
+    public void chatActivity_keepsUpWithSyntheticLoad() throws InterruptedException {
+        List<String> senderIds = new ArrayList<>();
+        for (int i = 0; i < SENDERS; i++) {
+            senderIds.add("sender" + i);
+        }
+        List<String> members = new ArrayList<>(senderIds);
+        members.add(CURRENT_USER_ID);
+        Group group = backend.createGroup("Load", members);
+        Intent intent = new Intent(RuntimeEnvironment.getApplication(), ChatActivity.class);
+        intent.putExtra(Constants.KEY_GROUP, group);
+        Metrics.Counter snapshots = Metrics.counter("chat.snapshots");
+        long snapshotsBefore = snapshots.get();
+        controller = Robolectric.buildActivity(ChatActivity.class, intent).setup();
+        // The listener is attached after the local store was read on its own thread.
+        for (int i = 0; i < 500 && snapshots.get() == snapshotsBefore; i++) {
+            ShadowLooper.idleMainLooper(STEP_MILLIS, TimeUnit.MILLISECONDS);
+            Thread.sleep(5);
+        }
+        assertTrue("message listener never delivered", snapshots.get() > snapshotsBefore);
+
+        ChatLoadGenerator generator = new ChatLoadGenerator(backend, scheduler, group.id,
+                senderIds, MESSAGES_PER_SECOND);
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+        long cpuBefore = threads.getCurrentThreadCpuTime();
+        generator.start();
+        for (long elapsed = 0; elapsed < DURATION_MILLIS; elapsed += STEP_MILLIS) {
+            ShadowLooper.idleMainLooper(STEP_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        generator.stop();
+        long cpuNanos = threads.getCurrentThreadCpuTime() - cpuBefore;
+
+        // Lists are diffed on a background thread; wait for the last one to be applied.
+        RecyclerView recyclerView = controller.get().findViewById(R.id.chatRecyclerView);
+        int sent = generator.getSentCount();
+        for (int i = 0; i < 500 && recyclerView.getAdapter().getItemCount() < sent; i++) {
+            ShadowLooper.idleMainLooper(STEP_MILLIS, TimeUnit.MILLISECONDS);
+            Thread.sleep(5);
+        }
+        System.gc();
+        long heapGrowth = runtime.totalMemory() - runtime.freeMemory() - heapBefore;
+
+        assertTrue(sent >= SENDERS * MESSAGES_PER_SECOND * DURATION_MILLIS / 1000 * 0.9);
+        assertEquals(sent, backend.getMessageCount(group.id));
+        assertEquals(sent, recyclerView.getAdapter().getItemCount());
+        assertTrue("UI thread used " + cpuNanos / 1000 / sent + " us per message",
+                cpuNanos / 1000 / sent < MAX_UI_MICROS_PER_MESSAGE);
+        assertTrue("heap grew by " + heapGrowth / 1024 + " KB", heapGrowth < MAX_HEAP_GROWTH_BYTES);
+    }
+}
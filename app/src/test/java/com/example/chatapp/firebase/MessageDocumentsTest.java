@@ -0,0 +1,87 @@
+package com.example.chatapp.firebase;
+
+import com.example.chatapp.models.ChatMessage;
+import com.example.chatapp.utilities.Constants;
+import com.example.chatapp.utilities.Conversations;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Verifies the v2 message schema, for two users and for groups, and compares its
+ * storage size with v1.
+ */
+public class MessageDocumentsTest {
+
+    // Firestore auto ids, as used for user documents.
+    private static final String ALICE = "0dZ5vJ3kQeTq9hLmN2xW";
+    private static final String BOB = "kP8rYc1sUa7fGb4nHo6i";
+
+    @Test
+    public void toData_storesSenderAsParticipantIndex() {
+        String conversationId = Conversations.getConversationId(BOB, ALICE);
+        Map<String, Object> fromAlice = MessageDocuments.toData(conversationId, message(ALICE, BOB, "hi"));
+        Map<String, Object> fromBob = MessageDocuments.toData(conversationId, message(BOB, ALICE, "hi"));
+
+        assertEquals(MessageDocuments.SCHEMA_VERSION, fromAlice.get(Constants.KEY_SCHEMA_VERSION));
+        assertEquals(ALICE, Conversations.getParticipant(conversationId,
+                (Integer) fromAlice.get(Constants.KEY_SENDER_INDEX)));
+        assertEquals(BOB, Conversations.getParticipant(conversationId,
+                (Integer) fromBob.get(Constants.KEY_SENDER_INDEX)));
+        assertEquals("hi", fromAlice.get(Constants.KEY_TEXT));
+        assertFalse(fromAlice.containsKey(Constants.KEY_SENDER_ID));
+        assertFalse(fromAlice.containsKey(Constants.KEY_RECEIVER_ID));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void toData_rejectsSenderOutsideConversation() {
+        MessageDocuments.toData(Conversations.getConversationId(ALICE, BOB), message("eve", BOB, "hi"));
+    }
+
+    @Test
+    public void toData_storesGroupSenderById() {
+        String groupId = "Gr7uP2kLm9QaZ4xWv1Ns";
+        assertTrue(Conversations.isGroup(groupId));
+        assertFalse(Conversations.isGroup(Conversations.getConversationId(ALICE, BOB)));
+
+        Map<String, Object> data = MessageDocuments.toData(groupId, message(ALICE, groupId, "hi all"));
+
+        assertEquals(ALICE, data.get(Constants.KEY_GROUP_SENDER));
+        assertFalse(data.containsKey(Constants.KEY_SENDER_INDEX));
+        assertFalse(data.containsKey(Constants.KEY_RECEIVER_ID));
+        assertEquals(-1, Conversations.getParticipantIndex(groupId, ALICE));
+    }
+
+    @Test
+    public void getStorageSize_v2IsMuchSmallerThanV1() {
+        String conversationId = Conversations.getConversationId(ALICE, BOB);
+        String path = Constants.KEY_COLLECTION_CONVERSATIONS + "/" + conversationId + "/"
+                + Constants.KEY_COLLECTION_MESSAGES + "/Xq3LmP0aR7tB9cVe2WsK";
+        ChatMessage chatMessage = message(ALICE, BOB, "See you at eight?");
+
+        Map<String, Object> v2Data = MessageDocuments.toData(conversationId, chatMessage);
+        // The commit time has no v1 counterpart; compare the fields both versions store.
+        v2Data.remove(Constants.KEY_COMMITTED_AT);
+        int v1 = MessageDocuments.getStorageSize(path, MessageDocuments.toLegacyData(chatMessage));
+        int v2 = MessageDocuments.getStorageSize(path, v2Data);
+        int v1Fields = v1 - MessageDocuments.getStorageSize(path, new HashMap<>());
+        int v2Fields = v2 - MessageDocuments.getStorageSize(path, new HashMap<>());
+        assertTrue("v2 fields take " + v2Fields + " bytes, v1 fields " + v1Fields,
+                v2Fields * 10 < v1Fields * 6);
+        assertTrue("v2 takes " + v2 + " bytes, v1 " + v1, v2 < v1 - 40);
+    }
+
+    private static ChatMessage message(String senderId, String receiverId, String text) {
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.id = "Xq3LmP0aR7tB9cVe2WsK";
+        chatMessage.senderId = senderId;
+        chatMessage.receiverId = receiverId;
+        chatMessage.message = text;
+        chatMessage.timestamp = 1_700_000_000_000L;
+        return chatMessage;
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.chatapp.firebase;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.example.chatapp.models.ChatMessage;
+import com.example.chatapp.models.User;
+import com.example.chatapp.repository.InMemoryBackend;
+import com.example.chatapp.repository.RepositoryException;
+import com.example.chatapp.utilities.Conversations;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives the queue against the in-memory backend with failing writes, checking when it
+ * retries and when it gives up on messages.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class OutboundMessageQueueTest {
+
+    private final List<ChatMessage> sent = new ArrayList<>();
+    private final List<ChatMessage> failed = new ArrayList<>();
+    private InMemoryBackend backend;
+    private OutboundMessageQueue queue;
+
+    @Before
+    public void setUp() {
+        Handler mainHandler = new Handler(Looper.getMainLooper());
+        backend = new InMemoryBackend((task, delayMillis) -> mainHandler.postDelayed(task, delayMillis));
+        queue = new OutboundMessageQueue(backend, Conversations.getConversationId("me", "peer"),
+                user("me"), user("peer"), new OutboundMessageQueue.Listener() {
+                    @Override
+                    public void onSent(List<ChatMessage> messages) {
+                        sent.addAll(messages);
+                    }
+
+                    @Override
+                    public void onFailed(List<ChatMessage> messages) {
+                        failed.addAll(messages);
+                    }
+                });
+    }
+
+    @Test
+    public void permanentFailure_failsMessagesWithoutRetrying() {
+        backend.setWriteFailure(new RepositoryException("denied", null, true));
+        queue.enqueue("hi");
+        ShadowLooper.idleMainLooper(1, TimeUnit.SECONDS);
+        assertEquals(1, failed.size());
+
+        backend.setWriteFailure(null);
+        ShadowLooper.idleMainLooper(2, TimeUnit.MINUTES);
+        assertTrue(sent.isEmpty());
+    }
+
+    @Test
+    public void retryableFailure_givesUpAfterMaxAttempts() {
+        backend.setWriteFailure(new RepositoryException("unavailable", null, false));
+        queue.enqueue("hi");
+        // Attempts after 0.15, 1.15, 3.15 and 7.15 seconds; the fifth and last one after 15.15.
+        ShadowLooper.idleMainLooper(10, TimeUnit.SECONDS);
+        assertTrue(failed.isEmpty());
+
+        ShadowLooper.idleMainLooper(10, TimeUnit.SECONDS);
+        assertEquals(1, failed.size());
+        assertEquals("hi", failed.get(0).message);
+        assertTrue(sent.isEmpty());
+    }
+
+    private static User user(String id) {
+        User user = new User();
+        user.id = id;
+        user.firstName = id;
+        return user;
+    }
+}
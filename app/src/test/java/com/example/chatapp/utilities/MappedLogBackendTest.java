@@ -0,0 +1,85 @@
+package com.example.chatapp.utilities;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Verifies that the append-only preference log replays, recovers from a torn write
+ * and keeps its values across compaction.
+ */
+public class MappedLogBackendTest {
+
+    @Test
+    public void readAll_replaysCommittedTransactions() throws IOException {
+        File file = createFile();
+        MappedLogBackend backend = new MappedLogBackend(file);
+        assertTrue(backend.readAll().isEmpty());
+        Map<String, Object> changes = new HashMap<>();
+        changes.put("signedIn", true);
+        changes.put("userId", "u1");
+        changes.put("name", "Zo\u00eb");
+        backend.commit(changes, false);
+        backend.commit(Collections.singletonMap("name", null), false);
+        backend.close();
+
+        Map<String, Object> values = new MappedLogBackend(file).readAll();
+        assertEquals(2, values.size());
+        assertEquals(Boolean.TRUE, values.get("signedIn"));
+        assertEquals("u1", values.get("userId"));
+    }
+
+    @Test
+    public void readAll_dropsTornTail() throws IOException {
+        File file = createFile();
+        MappedLogBackend backend = new MappedLogBackend(file);
+        backend.readAll();
+        backend.commit(Collections.singletonMap("userId", "u1"), false);
+        long committed = file.length();
+        backend.commit(Collections.singletonMap("userId", "u2"), true);
+        backend.close();
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            output.setLength(file.length() - 3);
+        }
+
+        MappedLogBackend reopened = new MappedLogBackend(file);
+        assertEquals(Collections.singletonMap("userId", "u1"), reopened.readAll());
+        assertEquals(committed, file.length());
+        reopened.commit(Collections.singletonMap("userId", "u3"), false);
+        reopened.close();
+        assertEquals(Collections.singletonMap("userId", "u3"), new MappedLogBackend(file).readAll());
+    }
+
+    @Test
+    public void commit_compactsLogAndKeepsValues() throws IOException {
+        File file = createFile();
+        MappedLogBackend backend = new MappedLogBackend(file);
+        backend.readAll();
+        backend.commit(Collections.singletonMap("signedIn", true), false);
+        for (int i = 0; i < 2000; i++) {
+            backend.commit(Collections.singletonMap("counter", String.valueOf(i)), false);
+        }
+        backend.close();
+
+        assertTrue(file.length() < 16 * 1024);
+        Map<String, Object> values = new MappedLogBackend(file).readAll();
+        assertEquals(Boolean.TRUE, values.get("signedIn"));
+        assertEquals("1999", values.get("counter"));
+    }
+
+    private static File createFile() throws IOException {
+        File directory = Files.createTempDirectory("preferences").toFile();
+        directory.deleteOnExit();
+        File file = new File(directory, "preferences.kv");
+        file.deleteOnExit();
+        return file;
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.chatapp.utilities;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Verifies the bucket layout and percentile estimates of the metrics histogram.
+ */
+public class MetricsTest {
+
+    @Test
+    public void bucketOf_coversEveryValueWithContiguousBuckets() {
+        assertEquals(0, Metrics.Histogram.bucketOf(0));
+        assertEquals(Metrics.Histogram.BUCKET_COUNT - 1, Metrics.Histogram.bucketOf(Long.MAX_VALUE));
+        for (int bucket = 1; bucket < Metrics.Histogram.BUCKET_COUNT; bucket++) {
+            long lowerBound = Metrics.Histogram.lowerBound(bucket);
+            assertEquals(bucket, Metrics.Histogram.bucketOf(lowerBound));
+            assertEquals(bucket - 1, Metrics.Histogram.bucketOf(lowerBound - 1));
+        }
+    }
+
+    @Test
+    public void getPercentile_isWithinBucketPrecision() {
+        Metrics.Histogram histogram = Metrics.histogram("test.percentile");
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1_000_000L);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1_000_000_000L, histogram.getMax());
+        assertEquals(500_500_000L, histogram.getMean());
+        long p50 = histogram.getPercentile(50);
+        assertTrue(p50 >= 500_000_000L && p50 <= 625_000_000L);
+        long p99 = histogram.getPercentile(99);
+        assertTrue(p99 >= 990_000_000L && p99 <= 1_000_000_000L);
+        assertEquals(1_000_000_000L, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void registry_returnsSameMetricForName() {
+        Metrics.Counter counter = Metrics.counter("test.counter");
+        counter.increment();
+        Metrics.counter("test.counter").add(2);
+
+        assertSame(counter, Metrics.counter("test.counter"));
+        assertEquals(3, counter.get());
+        assertTrue(Metrics.dump().contains("test.counter 3"));
+        assertEquals(0, Metrics.histogram("test.empty").getPercentile(50));
+    }
+}
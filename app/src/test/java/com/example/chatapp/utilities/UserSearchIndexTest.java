@@ -0,0 +1,106 @@
+package com.example.chatapp.utilities;
+
+import com.example.chatapp.models.User;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Verifies prefix matching, normalization and incremental updates and removals of the user search index.
+ */
+public class UserSearchIndexTest {
+
+    @Test
+    public void search_matchesPrefixOfAnyField() {
+        UserSearchIndex index = new UserSearchIndex();
+        index.rebuild(Arrays.asList(
+                createUser("1", "Alice", "Martin", "alice@example.com"),
+                createUser("2", "Bob", "Allen", "bob@example.com"),
+                createUser("3", "Carol", "Smith", "carol@example.com")));
+
+        assertEquals(Arrays.asList("1", "2"), ids(index.search("al", 10)));
+        assertEquals(Collections.singletonList("3"), ids(index.search("SMI", 10)));
+        assertEquals(Collections.singletonList("2"), ids(index.search("bob@", 10)));
+        assertTrue(index.search("z", 10).isEmpty());
+        assertTrue(index.search("  ", 10).isEmpty());
+    }
+
+    @Test
+    public void search_ignoresDiacriticsAndRequiresEveryWord() {
+        UserSearchIndex index = new UserSearchIndex();
+        index.rebuild(Arrays.asList(
+                createUser("1", "Zo\u00eb", "M\u00fcller", null),
+                createUser("2", "Zoe", "Smith", null)));
+
+        assertEquals(Arrays.asList("1", "2"), ids(index.search("zoe", 10)));
+        assertEquals(Collections.singletonList("1"), ids(index.search("Zoe Mul", 10)));
+        assertEquals(Collections.singletonList("1"), ids(index.search("zoe", 1)));
+    }
+
+    @Test
+    public void update_replacesTermsOfChangedUsers() {
+        UserSearchIndex index = new UserSearchIndex();
+        index.rebuild(Arrays.asList(
+                createUser("1", "Alice", null, null),
+                createUser("2", "Bob", null, null)));
+
+        index.update(Arrays.asList(
+                createUser("1", "Alicia", null, null),
+                createUser("3", "Albert", null, null)));
+
+        assertEquals(Arrays.asList("3", "1"), ids(index.search("al", 10)));
+        assertTrue(index.search("alice", 10).isEmpty());
+        assertEquals(Collections.singletonList("2"), ids(index.search("b", 10)));
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    public void update_dropsRemovedUsers() {
+        UserSearchIndex index = new UserSearchIndex();
+        index.rebuild(Arrays.asList(
+                createUser("1", "Alice", null, null),
+                createUser("2", "Albert", null, null)));
+
+        index.update(Collections.<User>emptyList(), Collections.singletonList("1"));
+
+        assertEquals(Collections.singletonList("2"), ids(index.search("al", 10)));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void search_fiftyThousandUsers_findsPrefixMatches() {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 50_000; i++) {
+            users.add(createUser(String.valueOf(i), "First" + i, "Last" + i, "user" + i + "@example.com"));
+        }
+        UserSearchIndex index = new UserSearchIndex();
+        index.rebuild(users);
+
+        assertEquals(20, index.search("f", 20).size());
+        assertEquals(Collections.singletonList("4999"), ids(index.search("user4999@", 20)));
+        assertEquals(Collections.singletonList("12345"), ids(index.search("first12345 last1", 20)));
+    }
+
+    private static List<String> ids(List<User> users) {
+        List<String> ids = new ArrayList<>();
+        for (User user : users) {
+            ids.add(user.id);
+        }
+        return ids;
+    }
+
+    private static User createUser(String id, String firstName, String lastName, String email) {
+        User user = new User();
+        user.id = id;
+        user.firstName = firstName;
+        user.lastName = lastName;
+        user.email = email;
+        return user;
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.chatapp.benchmarks;
+
+import com.example.chatapp.utilities.Base64Codec;
+import com.example.chatapp.utilities.MessageFormatter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of timestamp formatting, for a burst of messages sent within
+ * a minute and for messages spread over months, and of Base64 handling of an avatar.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FormatterBenchmark {
+
+    private static final int TIMESTAMP_COUNT = 4096;
+    private static final int AVATAR_BYTES = 20 * 1024;
+
+    private final long[] burstTimestamps = new long[TIMESTAMP_COUNT];
+    private final long[] spreadTimestamps = new long[TIMESTAMP_COUNT];
+    private byte[] avatar;
+    private String encodedAvatar;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(4);
+        long start = 1_700_000_000_000L;
+        for (int i = 0; i < TIMESTAMP_COUNT; i++) {
+            burstTimestamps[i] = start + random.nextInt(60_000);
+            spreadTimestamps[i] = start + (long) random.nextInt(180 * 24 * 60) * 60_000L;
+        }
+        avatar = new byte[AVATAR_BYTES];
+        random.nextBytes(avatar);
+        encodedAvatar = Base64Codec.encode(avatar);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TIMESTAMP_COUNT)
+    public void formatBurst(Blackhole blackhole) {
+        for (long timestamp : burstTimestamps) {
+            blackhole.consume(MessageFormatter.getReadableDateTime(timestamp));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TIMESTAMP_COUNT)
+    public void formatSpread(Blackhole blackhole) {
+        for (long timestamp : spreadTimestamps) {
+            blackhole.consume(MessageFormatter.getReadableDateTime(timestamp));
+        }
+    }
+
+    @Benchmark
+    public String encodeAvatar() {
+        return Base64Codec.encode(avatar);
+    }
+
+    @Benchmark
+    public byte[] decodeAvatar() {
+        return Base64Codec.decode(encodedAvatar);
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.chatapp.benchmarks;
+
+import com.example.chatapp.models.ChatMessage;
+import com.example.chatapp.utilities.SortedMessageList;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building a conversation in {@link SortedMessageList}, either from one
+ * snapshot in arbitrary order, as when a conversation is opened, or from a stream of
+ * small snapshot batches, as delivered by a live listener.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class IngestionBenchmark {
+
+    private static final int LIVE_BATCH_SIZE = 20;
+
+    @Param({"10000", "100000", "1000000"})
+    public int messageCount;
+
+    private List<ChatMessage> snapshot;
+    private List<List<ChatMessage>> liveBatches;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<ChatMessage> messages = Messages.generate(messageCount, 1);
+        snapshot = new ArrayList<>(messages);
+        Collections.shuffle(snapshot, new Random(2));
+        liveBatches = new ArrayList<>();
+        for (int i = 0; i < messages.size(); i += LIVE_BATCH_SIZE) {
+            List<ChatMessage> batch = new ArrayList<>(messages.subList(i, Math.min(i + LIVE_BATCH_SIZE, messages.size())));
+            // Listener batches are not ordered by timestamp.
+            Collections.reverse(batch);
+            liveBatches.add(batch);
+        }
+    }
+
+    @Benchmark
+    public SortedMessageList initialSnapshot() {
+        SortedMessageList list = new SortedMessageList(Messages.SENDER_ID);
+        list.merge(snapshot);
+        return list;
+    }
+
+    @Benchmark
+    public SortedMessageList liveBatches() {
+        SortedMessageList list = new SortedMessageList(Messages.SENDER_ID);
+        for (List<ChatMessage> batch : liveBatches) {
+            list.merge(batch);
+        }
+        return list;
+    }
+}
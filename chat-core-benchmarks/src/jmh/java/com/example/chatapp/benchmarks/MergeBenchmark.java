@@ -0,0 +1,49 @@
+package com.example.chatapp.benchmarks;
+
+import com.example.chatapp.models.ChatMessage;
+import com.example.chatapp.utilities.SortedMessageList;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link SortedMessageList#mergeSorted} on two sorted streams, such as a
+ * history page and the live page, that interleave over the whole conversation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MergeBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int messageCount;
+
+    private List<ChatMessage> left;
+    private List<ChatMessage> right;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<ChatMessage> messages = Messages.generate(messageCount, 3);
+        left = new ArrayList<>(messageCount / 2 + 1);
+        right = new ArrayList<>(messageCount / 2 + 1);
+        for (int i = 0; i < messages.size(); i++) {
+            (i % 2 == 0 ? left : right).add(messages.get(i));
+        }
+    }
+
+    @Benchmark
+    public List<ChatMessage> mergeSorted() {
+        return SortedMessageList.mergeSorted(left, right);
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.chatapp.benchmarks;
+
+import com.example.chatapp.models.ChatMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Messages builds deterministic conversations for the benchmarks.
+ */
+final class Messages {
+
+    static final String SENDER_ID = "sender";
+    static final String RECEIVER_ID = "receiver";
+
+    private static final long START_MILLIS = 1_700_000_000_000L;
+
+    private Messages() {
+    }
+
+    /**
+     * Generates a conversation in timestamp order. Messages are a few seconds apart,
+     * alternate between both participants at random and have unique ids.
+     *
+     * @param count Number of messages.
+     * @param seed  Seed of the generator.
+     * @return The messages, oldest first.
+     */
+    static List<ChatMessage> generate(int count, long seed) {
+        Random random = new Random(seed);
+        List<ChatMessage> messages = new ArrayList<>(count);
+        long timestamp = START_MILLIS;
+        for (int i = 0; i < count; i++) {
+            timestamp += 1 + random.nextInt(5000);
+            ChatMessage chatMessage = new ChatMessage();
+            chatMessage.id = Long.toString(seed, 36) + "-" + Integer.toString(i, 36);
+            boolean sent = random.nextBoolean();
+            chatMessage.senderId = sent ? SENDER_ID : RECEIVER_ID;
+            chatMessage.receiverId = sent ? RECEIVER_ID : SENDER_ID;
+            chatMessage.message = "Message " + i;
+            chatMessage.timestamp = timestamp;
+            messages.add(chatMessage);
+        }
+        return messages;
+    }
+}
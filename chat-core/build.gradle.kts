@@ -0,0 +1,14 @@
+// Plain Java library with the app's models and message handling, so they can be
+// unit-tested and benchmarked on any JVM.
+plugins {
+    `java-library`
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+dependencies {
+    testImplementation(libs.junit)
+}
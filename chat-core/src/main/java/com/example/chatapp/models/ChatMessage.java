@@ -0,0 +1,54 @@
+package com.example.chatapp.models;
+
+/**
+ * ChatMessage represents a single message exchanged between two users in the chat.
+ * It contains information about the sender, receiver, message content, and timestamp.
+ * The timestamp is kept as epoch milliseconds and only formatted when the message is
+ * bound; {@code sent} is set once when the message enters the conversation list so
+ * that binding never compares ids. {@code pending} marks a message sent from this
+ * device that the server has not accepted yet, and {@code failed} one it refused or that
+ * ran out of retries, which is no longer sent. In a group conversation, {@code receiverId}
+ * holds the id of the group.
+ * <p>
+ * {@code timestamp} is stamped by the sender's clock when the message is written, so it
+ * orders the conversation but says nothing about when the message reached the server:
+ * a send queued offline commits long after it was stamped. {@code committedAt} is the
+ * server's time of the commit, and 0 until it is known.
+ * <p>
+ * An image message has a {@code blobId} naming the full image in the blob store, the
+ * image's pixel size, and a tiny inline JPEG {@code thumbnail} in Base64 that is shown
+ * until the full image is loaded. {@code message} then holds an optional caption.
+ */
+public class ChatMessage {
+    public String id, senderId, receiverId, message;
+    public String thumbnail, blobId;
+    public int imageWidth, imageHeight;
+    public long timestamp;
+    public long committedAt;
+    public boolean sent;
+    public boolean pending;
+    public boolean failed;
+
+    /**
+     * @return True if this message carries an image.
+     */
+    public boolean isImage() {
+        return blobId != null;
+    }
+
+    /**
+     * Returns a 64-bit FNV-1a hash of the document id, used as the RecyclerView
+     * stable id so that rows keep their identity across list updates.
+     *
+     * @return The stable id for this message.
+     */
+    public long getStableId() {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < id.length(); i++) {
+            hash ^= id.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+}
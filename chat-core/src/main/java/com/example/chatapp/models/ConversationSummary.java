@@ -0,0 +1,52 @@
+package com.example.chatapp.models;
+
+import java.util.ArrayList;
+
+/**
+ * ConversationSummary is one row of the recent-conversations inbox: the other
+ * participant and the last message exchanged with them. It is denormalized into
+ * each participant's {@code conversations} subcollection whenever a message is sent,
+ * so the inbox never has to read the messages themselves.
+ * <p>
+ * The summary of a group is read from the group's own conversation document instead,
+ * which every member finds by membership; {@code otherId} and {@code otherName} then
+ * hold the group's id and name, and {@code members} its member ids.
+ */
+public class ConversationSummary {
+    public String otherId, otherName, otherImageVersion, lastMessage;
+    public ArrayList<String> members;
+    public long timestamp;
+
+    /**
+     * @return True if this summarizes a group conversation.
+     */
+    public boolean isGroup() {
+        return members != null;
+    }
+
+    /**
+     * Builds the user to open a chat with from this summary.
+     *
+     * @return The other participant.
+     */
+    public User toUser() {
+        User user = new User();
+        user.id = otherId;
+        user.firstName = otherName;
+        user.imageVersion = otherImageVersion;
+        return user;
+    }
+
+    /**
+     * Builds the group to open from the summary of a group conversation.
+     *
+     * @return The group.
+     */
+    public Group toGroup() {
+        Group group = new Group();
+        group.id = otherId;
+        group.name = otherName;
+        group.members = members;
+        return group;
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.chatapp.models;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/**
+ * Group is a conversation between any number of users. Its document in the
+ * conversations collection lists the ids of all members, the signed-in user included,
+ * and its messages live in that document's message collection like those of any
+ * conversation, written once no matter how many members read them.
+ */
+public class Group implements Serializable {
+    public String id, name;
+    public ArrayList<String> members;
+
+}
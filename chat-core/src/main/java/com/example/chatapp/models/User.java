@@ -0,0 +1,16 @@
+package com.example.chatapp.models;
+
+import java.io.Serializable;
+
+/**
+ * User represents a registered user as listed in the user directory.
+ * Avatars are stored separately; {@code imageVersion} identifies the current one.
+ * {@code image} only holds the inline Base64 avatar of users created before that split.
+ * {@code updatedAt} is the server time of the last change to the user document, in
+ * epoch milliseconds, or 0 for documents written before it was tracked.
+ */
+public class User implements Serializable {
+    public String firstName, lastName, image, imageVersion, email, token, id;
+    public long updatedAt;
+
+}
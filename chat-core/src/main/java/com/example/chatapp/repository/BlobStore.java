@@ -0,0 +1,70 @@
+package com.example.chatapp.repository;
+
+import java.io.IOException;
+
+/**
+ * BlobStore keeps large binary objects, such as the full images of image messages, as
+ * numbered chunks of at most {@link #getChunkSize()} bytes. A blob becomes readable once
+ * {@link #complete} recorded its chunk count and length; until then the chunks already
+ * stored are kept, so an interrupted upload resumes where it stopped.
+ * See {@link Blobs} for uploading and reading whole blobs.
+ * <p>
+ * All methods block and must not be called on the main thread.
+ */
+public interface BlobStore {
+
+    /**
+     * @return The maximum size of a chunk, in bytes.
+     */
+    int getChunkSize();
+
+    /**
+     * Counts the chunks of a blob that are stored without a gap from the first one.
+     *
+     * @param blobId The blob.
+     * @return The number of chunks an upload can skip.
+     * @throws IOException If the store cannot be read.
+     */
+    int getStoredChunkCount(String blobId) throws IOException;
+
+    /**
+     * Stores one chunk of a blob, replacing any chunk with the same index.
+     *
+     * @param blobId The blob.
+     * @param index  The index of the chunk, starting at 0.
+     * @param data   Holds the bytes of the chunk.
+     * @param offset Offset of the chunk in {@code data}.
+     * @param length Length of the chunk; at most {@link #getChunkSize()}.
+     * @throws IOException If the chunk cannot be written.
+     */
+    void putChunk(String blobId, int index, byte[] data, int offset, int length) throws IOException;
+
+    /**
+     * Marks a blob as complete once all of its chunks are stored.
+     *
+     * @param blobId     The blob.
+     * @param chunkCount The number of chunks.
+     * @param length     The total length in bytes.
+     * @throws IOException If the blob cannot be marked.
+     */
+    void complete(String blobId, int chunkCount, long length) throws IOException;
+
+    /**
+     * Returns the length of a complete blob.
+     *
+     * @param blobId The blob.
+     * @return The length in bytes, or -1 if the blob does not exist or is not complete yet.
+     * @throws IOException If the store cannot be read.
+     */
+    long getLength(String blobId) throws IOException;
+
+    /**
+     * Reads one chunk of a complete blob.
+     *
+     * @param blobId The blob.
+     * @param index  The index of the chunk.
+     * @return The bytes of the chunk.
+     * @throws IOException If the chunk is missing or cannot be read.
+     */
+    byte[] getChunk(String blobId, int index) throws IOException;
+}
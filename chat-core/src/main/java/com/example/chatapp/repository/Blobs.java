@@ -0,0 +1,66 @@
+package com.example.chatapp.repository;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+/**
+ * Blobs uploads and reads whole blobs through any {@link BlobStore}.
+ */
+public class Blobs {
+
+    private Blobs() {
+    }
+
+    /**
+     * Uploads a blob, skipping the chunks a previous, interrupted upload already stored,
+     * and marks it complete. Calling it again after a failure resumes the upload.
+     * Blocks; must not be called on the main thread.
+     *
+     * @param store  The store to upload to.
+     * @param blobId The blob.
+     * @param data   The content of the blob.
+     * @return The number of chunks written by this call.
+     * @throws IOException If a chunk cannot be written.
+     */
+    public static int upload(BlobStore store, String blobId, byte[] data) throws IOException {
+        int chunkSize = store.getChunkSize();
+        int chunkCount = Math.max(1, (data.length + chunkSize - 1) / chunkSize);
+        int stored = Math.min(store.getStoredChunkCount(blobId), chunkCount);
+        for (int index = stored; index < chunkCount; index++) {
+            int offset = index * chunkSize;
+            store.putChunk(blobId, index, data, offset, Math.min(chunkSize, data.length - offset));
+        }
+        store.complete(blobId, chunkCount, data.length);
+        return chunkCount - stored;
+    }
+
+    /**
+     * Reads a complete blob. Blocks; must not be called on the main thread.
+     *
+     * @param store  The store to read from.
+     * @param blobId The blob.
+     * @return The content of the blob.
+     * @throws FileNotFoundException If the blob does not exist or is not complete yet.
+     * @throws IOException           If a chunk is missing or cannot be read.
+     */
+    public static byte[] read(BlobStore store, String blobId) throws IOException {
+        long length = store.getLength(blobId);
+        if (length < 0) {
+            throw new FileNotFoundException("Blob " + blobId + " is not complete");
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Blob " + blobId + " is too large: " + length);
+        }
+        byte[] data = new byte[(int) length];
+        int offset = 0;
+        for (int index = 0; offset < data.length; index++) {
+            byte[] chunk = store.getChunk(blobId, index);
+            if (chunk.length == 0 || chunk.length > data.length - offset) {
+                throw new IOException("Chunk " + index + " of blob " + blobId + " has a bad length");
+            }
+            System.arraycopy(chunk, 0, data, offset, chunk.length);
+            offset += chunk.length;
+        }
+        return data;
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.chatapp.repository;
+
+/**
+ * Callback receives the result of a one-time repository operation, on the main thread.
+ *
+ * @param <T> The type of the result; {@link Void} for writes.
+ */
+public interface Callback<T> {
+
+    /**
+     * Called when the operation succeeded.
+     *
+     * @param result The result, or null for writes.
+     */
+    void onSuccess(T result);
+
+    /**
+     * Called when the operation failed.
+     *
+     * @param e The cause of the failure.
+     */
+    void onFailure(Exception e);
+}
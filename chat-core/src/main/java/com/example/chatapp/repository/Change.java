@@ -0,0 +1,32 @@
+package com.example.chatapp.repository;
+
+/**
+ * Change is one entry of a snapshot delivered to a repository listener, with the
+ * semantics of a Firestore document change: a value entered, changed within, or left
+ * the result set of the listened query.
+ *
+ * @param <T> The type of the changed value.
+ */
+public class Change<T> {
+
+    /**
+     * The kind of change.
+     */
+    public enum Type {
+        ADDED, MODIFIED, REMOVED
+    }
+
+    public final Type type;
+    public final T value;
+
+    /**
+     * Constructor to initialize a change.
+     *
+     * @param type  The kind of change.
+     * @param value The value after the change, or before it for {@link Type#REMOVED}.
+     */
+    public Change(Type type, T value) {
+        this.type = type;
+        this.value = value;
+    }
+}
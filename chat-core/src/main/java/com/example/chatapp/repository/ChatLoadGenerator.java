@@ -0,0 +1,92 @@
+package com.example.chatapp.repository;
+
+import com.example.chatapp.models.ChatMessage;
+import com.example.chatapp.utilities.Conversations;
+
+import java.util.List;
+
+/**
+ * ChatLoadGenerator simulates other users writing into a conversation of an
+ * {@link InMemoryBackend}: each of the given senders writes a message at a fixed rate,
+ * so the conversation receives {@code senders * messagesPerSecond} messages per second.
+ * Messages are written on the backend's scheduler, like snapshots are delivered.
+ * <p>
+ * The backend only accepts a conversation's own participants as senders: the two
+ * users of a direct conversation, or any members of a group.
+ */
+public class ChatLoadGenerator {
+
+    private final InMemoryBackend backend;
+    private final InMemoryBackend.Scheduler scheduler;
+    private final String conversationId;
+    private final List<String> senderIds;
+    private final long intervalMillis;
+    private boolean running;
+    private long lastTimestamp;
+    private int sentCount;
+
+    /**
+     * Constructor to initialize a generator; nothing is written before {@link #start()}.
+     *
+     * @param backend           The backend to write to.
+     * @param scheduler         Runs the writes; normally the backend's scheduler.
+     * @param conversationId    The conversation to write into.
+     * @param senderIds         The simulated senders, participants of the conversation.
+     * @param messagesPerSecond The rate of each sender, at most 1000.
+     */
+    public ChatLoadGenerator(InMemoryBackend backend, InMemoryBackend.Scheduler scheduler, String conversationId,
+                             List<String> senderIds, double messagesPerSecond) {
+        this.backend = backend;
+        this.scheduler = scheduler;
+        this.conversationId = conversationId;
+        this.senderIds = senderIds;
+        this.intervalMillis = Math.max(1, Math.round(1000 / messagesPerSecond));
+    }
+
+    /**
+     * Starts writing. The senders are spread evenly over one interval.
+     */
+    public void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        for (int i = 0; i < senderIds.size(); i++) {
+            String senderId = senderIds.get(i);
+            scheduler.schedule(() -> write(senderId), intervalMillis * i / senderIds.size());
+        }
+    }
+
+    /**
+     * Stops writing; writes already scheduled are dropped.
+     */
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * @return The number of messages written so far.
+     */
+    public int getSentCount() {
+        return sentCount;
+    }
+
+    private void write(String senderId) {
+        if (!running) {
+            return;
+        }
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.id = backend.newMessageId(conversationId);
+        chatMessage.senderId = senderId;
+        chatMessage.receiverId = Conversations.isGroup(conversationId)
+                ? conversationId
+                : Conversations.getParticipant(conversationId,
+                        1 - Conversations.getParticipantIndex(conversationId, senderId));
+        chatMessage.message = "Message " + sentCount + " from " + senderId;
+        lastTimestamp = Math.max(System.currentTimeMillis(), lastTimestamp + 1);
+        chatMessage.timestamp = lastTimestamp;
+        backend.putMessage(conversationId, chatMessage);
+        sentCount++;
+        scheduler.schedule(() -> write(senderId), intervalMillis);
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.chatapp.repository;
+
+import com.example.chatapp.models.ChatMessage;
+import com.example.chatapp.models.ConversationSummary;
+import com.example.chatapp.models.Group;
+import com.example.chatapp.models.User;
+
+import java.util.List;
+
+/**
+ * ChatRepository reads and writes the messages of conversations, and lists them in the
+ * inbox. Callbacks and listeners are called on the main thread.
+ */
+public interface ChatRepository {
+
+    /**
+     * Receives the snapshots of a message listener.
+     */
+    interface MessageListener {
+        /**
+         * Called with the changes of one snapshot.
+         *
+         * @param changes   The messages that entered, changed in or left the result set.
+         * @param confirmed True if the snapshot comes from the server and no local
+         *                  write is pending, so everything up to it is synced.
+         */
+        void onMessages(List<Change<ChatMessage>> changes, boolean confirmed);
+
+        /**
+         * Called once if the listener failed; no snapshot follows.
+         *
+         * @param e The cause of the failure.
+         */
+        void onError(Exception e);
+    }
+
+    /**
+     * Receives the snapshots of an inbox listener.
+     */
+    interface InboxListener {
+        /**
+         * Called with the whole result set of each snapshot.
+         *
+         * @param conversations The conversations, most recently active first.
+         */
+        void onConversations(List<ConversationSummary> conversations);
+
+        /**
+         * Called once if the listener failed; no snapshot follows.
+         *
+         * @param e The cause of the failure.
+         */
+        void onError(Exception e);
+    }
+
+    /**
+     * Generates a new, unique message id on the client.
+     *
+     * @param conversationId The conversation the message belongs to.
+     * @return The id.
+     */
+    String newMessageId(String conversationId);
+
+    /**
+     * Listens to the messages of a conversation. With a sync watermark, the result set is
+     * every message the server committed at or after the watermark, whatever its
+     * timestamp; without one, it is the {@code limit} messages with the newest timestamps.
+     * Messages written before commit times were recorded only appear in the latter.
+     *
+     * @param conversationId The conversation to listen to.
+     * @param since          Server time in epoch millis of the oldest commit to include, or 0 to use the limit.
+     * @param limit          Number of newest messages to include when {@code since} is 0.
+     * @param listener       Receives the snapshots.
+     * @return The handle to stop listening.
+     */
+    Registration listenMessages(String conversationId, long since, int limit, MessageListener listener);
+
+    /**
+     * Reads the messages right before a message.
+     *
+     * @param conversationId The conversation to read.
+     * @param before         The message to read before.
+     * @param limit          Maximum number of messages.
+     * @param callback       Receives the messages, newest first.
+     */
+    void getMessagesBefore(String conversationId, ChatMessage before, int limit,
+                           Callback<List<ChatMessage>> callback);
+
+    /**
+     * Reads the messages after a message and before another.
+     *
+     * @param conversationId The conversation to read.
+     * @param after          The message to read after.
+     * @param before         The message to stop before.
+     * @param limit          Maximum number of messages.
+     * @param callback       Receives the messages, oldest first.
+     */
+    void getMessagesBetween(String conversationId, ChatMessage after, ChatMessage before, int limit,
+                            Callback<List<ChatMessage>> callback);
+
+    /**
+     * Writes messages atomically. Once they are committed, the conversation summaries of
+     * both participants, or in a group the group's single summary, are updated unless
+     * they already hold a newer message.
+     *
+     * @param conversationId The conversation the messages belong to.
+     * @param sender         The signed-in user.
+     * @param receiver       The other participant, or null if the conversation is a group.
+     * @param messages       The messages, with client-generated ids.
+     * @param callback       Receives the result; a failure is a {@link RepositoryException}
+     *                       telling whether sending the messages again can succeed.
+     */
+    void sendMessages(String conversationId, User sender, User receiver, List<ChatMessage> messages,
+                      Callback<Void> callback);
+
+    /**
+     * Listens to the summaries of a user's direct conversations, as written by
+     * {@link #sendMessages}.
+     *
+     * @param userId   The owner of the inbox.
+     * @param limit    Maximum number of conversations.
+     * @param listener Receives the snapshots.
+     * @return The handle to stop listening.
+     */
+    Registration listenInbox(String userId, int limit, InboxListener listener);
+
+    /**
+     * Creates a group. The id is generated on the client and the group written without
+     * waiting for the server, so it can be opened right away.
+     *
+     * @param name    The name of the group.
+     * @param members The ids of all members, the creator included.
+     * @return The new group.
+     */
+    Group createGroup(String name, List<String> members);
+
+    /**
+     * Listens to the groups a user is a member of, each summarized by its newest message.
+     *
+     * @param userId   The member.
+     * @param limit    Maximum number of groups.
+     * @param listener Receives the snapshots.
+     * @return The handle to stop listening.
+     */
+    Registration listenGroups(String userId, int limit, InboxListener listener);
+
+    /**
+     * Copies the messages two users exchanged before conversations had their own
+     * collections into their conversation. Copies keep their ids, so migrating twice, or
+     * from both devices, rewrites the same messages; they reach the conversation's
+     * listeners like any other message.
+     *
+     * @param userId   The signed-in user.
+     * @param otherId  The other participant.
+     * @param callback Receives the result.
+     */
+    void migrateLegacyMessages(String userId, String otherId, Callback<Void> callback);
+}
@@ -0,0 +1,120 @@
+package com.example.chatapp.repository;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * FileBlobStore is a {@link BlobStore} on the local file system, standing in for the
+ * remote store in tests and load runs. Each blob is a directory holding one file per
+ * chunk and, once complete, a manifest with its chunk count and length. Files are
+ * written to a temporary name and renamed, so a crash never leaves a torn chunk behind.
+ */
+public class FileBlobStore implements BlobStore {
+
+    private static final String MANIFEST = "manifest";
+
+    private final File directory;
+    private final int chunkSize;
+
+    /**
+     * Constructor to initialize a store in a directory, which is created if needed.
+     *
+     * @param directory The directory blobs are stored in.
+     * @param chunkSize The maximum size of a chunk, in bytes.
+     */
+    public FileBlobStore(File directory, int chunkSize) {
+        this.directory = directory;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    @Override
+    public int getStoredChunkCount(String blobId) {
+        File blob = getBlobDirectory(blobId);
+        int count = 0;
+        while (new File(blob, String.valueOf(count)).isFile()) {
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public void putChunk(String blobId, int index, byte[] data, int offset, int length) throws IOException {
+        if (length > chunkSize) {
+            throw new IllegalArgumentException("Chunk of " + length + " bytes exceeds " + chunkSize);
+        }
+        File blob = getBlobDirectory(blobId);
+        if (!blob.isDirectory() && !blob.mkdirs()) {
+            throw new IOException("Unable to create " + blob);
+        }
+        File temporary = new File(blob, index + ".tmp");
+        try (FileOutputStream outputStream = new FileOutputStream(temporary)) {
+            outputStream.write(data, offset, length);
+        }
+        commit(temporary, new File(blob, String.valueOf(index)));
+    }
+
+    @Override
+    public void complete(String blobId, int chunkCount, long length) throws IOException {
+        File blob = getBlobDirectory(blobId);
+        if (getStoredChunkCount(blobId) < chunkCount) {
+            throw new IOException("Blob " + blobId + " is missing chunks");
+        }
+        File temporary = new File(blob, MANIFEST + ".tmp");
+        try (DataOutputStream outputStream = new DataOutputStream(new FileOutputStream(temporary))) {
+            outputStream.writeInt(chunkCount);
+            outputStream.writeLong(length);
+        }
+        commit(temporary, new File(blob, MANIFEST));
+    }
+
+    @Override
+    public long getLength(String blobId) throws IOException {
+        File manifest = new File(getBlobDirectory(blobId), MANIFEST);
+        if (!manifest.isFile()) {
+            return -1;
+        }
+        try (DataInputStream inputStream = new DataInputStream(new FileInputStream(manifest))) {
+            inputStream.readInt();
+            return inputStream.readLong();
+        }
+    }
+
+    @Override
+    public byte[] getChunk(String blobId, int index) throws IOException {
+        File chunk = new File(getBlobDirectory(blobId), String.valueOf(index));
+        if (!chunk.isFile()) {
+            throw new FileNotFoundException("Chunk " + index + " of blob " + blobId + " is missing");
+        }
+        byte[] data = new byte[(int) chunk.length()];
+        try (DataInputStream inputStream = new DataInputStream(new FileInputStream(chunk))) {
+            inputStream.readFully(data);
+        }
+        return data;
+    }
+
+    private File getBlobDirectory(String blobId) {
+        if (blobId.isEmpty() || blobId.contains("/") || blobId.contains("\\") || blobId.startsWith(".")) {
+            throw new IllegalArgumentException("Invalid blob id: " + blobId);
+        }
+        return new File(directory, blobId);
+    }
+
+    private static void commit(File temporary, File target) throws IOException {
+        if (target.exists() && !target.delete()) {
+            throw new IOException("Unable to replace " + target);
+        }
+        if (!temporary.renameTo(target)) {
+            throw new IOException("Unable to commit " + target);
+        }
+    }
+}
@@ -0,0 +1,892 @@
+package com.example.chatapp.repository;
+
+import com.example.chatapp.models.ChatMessage;
+import com.example.chatapp.models.ConversationSummary;
+import com.example.chatapp.models.Group;
+import com.example.chatapp.models.User;
+import com.example.chatapp.utilities.Conversations;
+import com.example.chatapp.utilities.SortedMessageList;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * InMemoryBackend is a fake of the Firestore backend that keeps conversations, inboxes,
+ * users, tokens, presence and receipts in memory. Listeners get snapshot semantics: the first snapshot adds the whole
+ * result set of the query, later ones carry only the messages or users that were
+ * {@link Change.Type#ADDED added to}, {@link Change.Type#MODIFIED modified in} or
+ * {@link Change.Type#REMOVED removed from} it, including messages pushed out of a limited
+ * query by newer ones. Every snapshot and callback is delivered through the
+ * {@link Scheduler} after the configured latency. Values are copied on the way in and
+ * out, so callers never share objects with the store. Every write is given a commit time
+ * from a clock that only moves forward, like a server timestamp.
+ * <p>
+ * Not thread-safe: use it from the thread the scheduler runs tasks on, normally the main
+ * thread. Only {@link #getAvatar}, which blocks by contract, may be called from any thread.
+ */
+public class InMemoryBackend implements ChatRepository, UserRepository, TokenRepository, PresenceRepository {
+
+    /**
+     * Runs delivered snapshots and callbacks, for example by posting them to the main looper.
+     */
+    public interface Scheduler {
+        /**
+         * Runs a task after a delay. Tasks with the same delay run in the order they were scheduled.
+         *
+         * @param task        The task to run.
+         * @param delayMillis The delay in milliseconds.
+         */
+        void schedule(Runnable task, long delayMillis);
+    }
+
+    private final Scheduler scheduler;
+    private final Map<String, TreeSet<ChatMessage>> conversations = new HashMap<>();
+    private final Map<String, Map<String, ChatMessage>> messagesById = new HashMap<>();
+    private final List<MessageQuery> messageQueries = new ArrayList<>();
+    private final Map<String, User> users = new HashMap<>();
+    private final List<UserQuery> userQueries = new ArrayList<>();
+    private final Map<String, String> passwords = new HashMap<>();
+    private final Map<String, Map<String, ConversationSummary>> inboxes = new HashMap<>();
+    private final Map<String, ConversationSummary> groups = new HashMap<>();
+    private final Map<String, Long> groupLastMessageAt = new HashMap<>();
+    private final List<InboxQuery> inboxQueries = new ArrayList<>();
+    private final Map<String, String> tokens = new HashMap<>();
+    private final Map<String, String> avatars = new ConcurrentHashMap<>();
+    private final Map<String, PresenceState> presence = new HashMap<>();
+    private final List<PresenceQuery> presenceQueries = new ArrayList<>();
+    private final Map<String, Map<String, Long>> deliveredMarks = new HashMap<>();
+    private final Map<String, Map<String, Long>> readMarks = new HashMap<>();
+    private final List<ReceiptQuery> receiptQueries = new ArrayList<>();
+    private long latencyMillis;
+    private Exception writeFailure;
+    private long nextId;
+    private long lastCommittedAt;
+
+    /**
+     * Constructor to initialize an empty backend.
+     *
+     * @param scheduler Runs snapshots and callbacks.
+     */
+    public InMemoryBackend(Scheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Sets the delay of every later snapshot and callback, simulating the network.
+     *
+     * @param latencyMillis The delay in milliseconds.
+     */
+    public void setLatency(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * Makes every later write fail, or succeed again.
+     *
+     * @param writeFailure The failure reported to write callbacks, such as a {@link RepositoryException},
+     *                     or null to accept writes.
+     */
+    public void setWriteFailure(Exception writeFailure) {
+        this.writeFailure = writeFailure;
+    }
+
+    @Override
+    public String newMessageId(String conversationId) {
+        return "m" + Long.toString(nextId++, 36);
+    }
+
+    @Override
+    public Registration listenMessages(String conversationId, long since, int limit, MessageListener listener) {
+        MessageQuery query = new MessageQuery(conversationId, since, limit, listener);
+        messageQueries.add(query);
+        List<Change<ChatMessage>> changes = new ArrayList<>();
+        if (since > 0) {
+            for (ChatMessage chatMessage : getConversation(conversationId)) {
+                if (chatMessage.committedAt >= since) {
+                    query.window.add(chatMessage);
+                    changes.add(new Change<>(Change.Type.ADDED, chatMessage));
+                }
+            }
+        } else {
+            query.refreshWindow(changes);
+        }
+        query.deliver(changes);
+        return query;
+    }
+
+    @Override
+    public void getMessagesBefore(String conversationId, ChatMessage before, int limit,
+                                  Callback<List<ChatMessage>> callback) {
+        List<ChatMessage> messages = new ArrayList<>(limit);
+        Iterator<ChatMessage> iterator = getConversation(conversationId).headSet(before, false).descendingIterator();
+        while (iterator.hasNext() && messages.size() < limit) {
+            messages.add(copy(iterator.next()));
+        }
+        scheduler.schedule(() -> callback.onSuccess(messages), latencyMillis);
+    }
+
+    @Override
+    public void getMessagesBetween(String conversationId, ChatMessage after, ChatMessage before, int limit,
+                                   Callback<List<ChatMessage>> callback) {
+        List<ChatMessage> messages = new ArrayList<>(limit);
+        for (ChatMessage chatMessage : getConversation(conversationId).subSet(after, false, before, false)) {
+            if (messages.size() == limit) {
+                break;
+            }
+            messages.add(copy(chatMessage));
+        }
+        scheduler.schedule(() -> callback.onSuccess(messages), latencyMillis);
+    }
+
+    @Override
+    public void sendMessages(String conversationId, User sender, User receiver, List<ChatMessage> messages,
+                             Callback<Void> callback) {
+        Exception failure = writeFailure;
+        if (failure != null) {
+            scheduler.schedule(() -> callback.onFailure(failure), latencyMillis);
+            return;
+        }
+        for (ChatMessage chatMessage : messages) {
+            checkSender(conversationId, chatMessage);
+        }
+        ChatMessage newest = messages.get(0);
+        for (ChatMessage chatMessage : messages) {
+            commit(conversationId, chatMessage, nextCommitTime());
+            if (chatMessage.timestamp > newest.timestamp) {
+                newest = chatMessage;
+            }
+        }
+        if (receiver != null) {
+            putSummary(sender.id, receiver, newest);
+            putSummary(receiver.id, sender, newest);
+        } else if (groups.containsKey(conversationId)) {
+            updateGroup(conversationId, sender, newest);
+        }
+        scheduler.schedule(() -> callback.onSuccess(null), latencyMillis);
+    }
+
+    @Override
+    public Registration listenInbox(String userId, int limit, InboxListener listener) {
+        InboxQuery query = new InboxQuery(userId, false, limit, listener);
+        inboxQueries.add(query);
+        query.deliver();
+        return query;
+    }
+
+    @Override
+    public Group createGroup(String name, List<String> members) {
+        Group group = new Group();
+        group.id = "g" + Long.toString(nextId++, 36);
+        group.name = name;
+        group.members = new ArrayList<>(members);
+        ConversationSummary summary = new ConversationSummary();
+        summary.otherId = group.id;
+        summary.otherName = name;
+        summary.members = new ArrayList<>(members);
+        summary.timestamp = nextCommitTime();
+        lastCommittedAt = summary.timestamp;
+        groups.put(group.id, summary);
+        deliverGroups(group.id);
+        return group;
+    }
+
+    /**
+     * There is no legacy collection in memory, so there is nothing to migrate.
+     */
+    @Override
+    public void migrateLegacyMessages(String userId, String otherId, Callback<Void> callback) {
+        scheduler.schedule(() -> callback.onSuccess(null), latencyMillis);
+    }
+
+    @Override
+    public Registration listenGroups(String userId, int limit, InboxListener listener) {
+        InboxQuery query = new InboxQuery(userId, true, limit, listener);
+        inboxQueries.add(query);
+        query.deliver();
+        return query;
+    }
+
+    /**
+     * Overwrites the summary of a group unless it holds a newer message, and sorts the
+     * group by the commit time of the update, as the Firestore transaction does.
+     */
+    private void updateGroup(String groupId, User sender, ChatMessage lastMessage) {
+        Long lastMessageAt = groupLastMessageAt.get(groupId);
+        if (lastMessageAt != null && lastMessageAt >= lastMessage.timestamp) {
+            return;
+        }
+        groupLastMessageAt.put(groupId, lastMessage.timestamp);
+        ConversationSummary summary = groups.get(groupId);
+        summary.lastMessage = sender.firstName + ": " + lastMessage.message;
+        summary.timestamp = nextCommitTime();
+        lastCommittedAt = summary.timestamp;
+        deliverGroups(groupId);
+    }
+
+    private void deliverGroups(String groupId) {
+        List<String> members = groups.get(groupId).members;
+        for (InboxQuery query : new ArrayList<>(inboxQueries)) {
+            if (query.groups && members.contains(query.userId)) {
+                query.deliver();
+            }
+        }
+    }
+
+    /**
+     * Overwrites the summary of one conversation in a user's inbox, as a send does.
+     */
+    /**
+     * Writes one participant's summary, unless it already shows a message at least as
+     * new, like the guarded write of the Firestore backend.
+     */
+    private void putSummary(String ownerId, User other, ChatMessage lastMessage) {
+        Map<String, ConversationSummary> inbox = inboxes.get(ownerId);
+        ConversationSummary current = inbox != null ? inbox.get(other.id) : null;
+        if (current != null && current.timestamp >= lastMessage.timestamp) {
+            return;
+        }
+        ConversationSummary summary = new ConversationSummary();
+        summary.otherId = other.id;
+        summary.otherName = other.firstName;
+        summary.otherImageVersion = other.imageVersion;
+        summary.lastMessage = lastMessage.message;
+        summary.timestamp = lastMessage.timestamp;
+        if (inbox == null) {
+            inbox = new HashMap<>();
+            inboxes.put(ownerId, inbox);
+        }
+        inbox.put(other.id, summary);
+        for (InboxQuery query : new ArrayList<>(inboxQueries)) {
+            if (!query.groups && query.userId.equals(ownerId)) {
+                query.deliver();
+            }
+        }
+    }
+
+    /**
+     * Writes a message as the server would, for example one sent by another user.
+     * Listeners of the conversation receive it as added, or as modified if a message
+     * with the same id exists. A commit time set on the message is kept, so that tests
+     * can replay a history; otherwise the message is committed now.
+     *
+     * @param conversationId The conversation of the message.
+     * @param chatMessage    The message.
+     * @throws IllegalArgumentException If the sender is not in the direct conversation.
+     */
+    public void putMessage(String conversationId, ChatMessage chatMessage) {
+        checkSender(conversationId, chatMessage);
+        commit(conversationId, chatMessage,
+                chatMessage.committedAt > 0 ? chatMessage.committedAt : nextCommitTime());
+    }
+
+    /**
+     * Refuses a sender outside a direct conversation, like the Firestore mapping of
+     * messages does, which can only store the sender as a participant index.
+     */
+    private static void checkSender(String conversationId, ChatMessage chatMessage) {
+        if (!Conversations.isGroup(conversationId)
+                && Conversations.getParticipantIndex(conversationId, chatMessage.senderId) < 0) {
+            throw new IllegalArgumentException(chatMessage.senderId + " is not in " + conversationId);
+        }
+    }
+
+    private void commit(String conversationId, ChatMessage chatMessage, long committedAt) {
+        ChatMessage stored = copy(chatMessage);
+        stored.committedAt = committedAt;
+        lastCommittedAt = Math.max(lastCommittedAt, committedAt);
+        ChatMessage previous = getMessagesById(conversationId).put(stored.id, stored);
+        TreeSet<ChatMessage> conversation = getConversation(conversationId);
+        if (previous != null) {
+            conversation.remove(previous);
+        }
+        conversation.add(stored);
+        for (MessageQuery query : new ArrayList<>(messageQueries)) {
+            if (query.conversationId.equals(conversationId)) {
+                query.onWrite(previous, stored);
+            }
+        }
+    }
+
+    /**
+     * Deletes a message. Listeners that held it receive it as removed.
+     *
+     * @param conversationId The conversation of the message.
+     * @param messageId      The id of the message.
+     */
+    public void deleteMessage(String conversationId, String messageId) {
+        ChatMessage previous = getMessagesById(conversationId).remove(messageId);
+        if (previous == null) {
+            return;
+        }
+        getConversation(conversationId).remove(previous);
+        for (MessageQuery query : new ArrayList<>(messageQueries)) {
+            if (query.conversationId.equals(conversationId)) {
+                query.onWrite(previous, null);
+            }
+        }
+    }
+
+    /**
+     * @param conversationId The conversation.
+     * @return The number of messages stored in the conversation.
+     */
+    public int getMessageCount(String conversationId) {
+        return getMessagesById(conversationId).size();
+    }
+
+    @Override
+    public void getUsers(Callback<List<User>> callback) {
+        List<User> result = new ArrayList<>(users.size());
+        for (User user : users.values()) {
+            result.add(copy(user));
+        }
+        scheduler.schedule(() -> callback.onSuccess(result), latencyMillis);
+    }
+
+    @Override
+    public void getUser(String userId, Callback<User> callback) {
+        User user = users.get(userId);
+        User result = user != null ? copy(user) : null;
+        scheduler.schedule(() -> callback.onSuccess(result), latencyMillis);
+    }
+
+    @Override
+    public void findUser(String email, String password, Callback<User> callback) {
+        User found = null;
+        for (User user : users.values()) {
+            if (user.email != null && user.email.equals(email) && password.equals(passwords.get(user.id))) {
+                found = copy(user);
+                break;
+            }
+        }
+        User result = found;
+        scheduler.schedule(() -> callback.onSuccess(result), latencyMillis);
+    }
+
+    @Override
+    public void createUser(User user, String password, Map<Integer, String> avatars, Callback<User> callback) {
+        Exception failure = writeFailure;
+        if (failure != null) {
+            scheduler.schedule(() -> callback.onFailure(failure), latencyMillis);
+            return;
+        }
+        User created = copy(user);
+        created.id = "u" + Long.toString(nextId++, 36);
+        created.updatedAt = nextCommitTime();
+        lastCommittedAt = created.updatedAt;
+        for (Map.Entry<Integer, String> avatar : avatars.entrySet()) {
+            this.avatars.put(getAvatarKey(created.id, avatar.getKey()), avatar.getValue());
+        }
+        passwords.put(created.id, password);
+        putUser(created);
+        User result = copy(created);
+        scheduler.schedule(() -> callback.onSuccess(result), latencyMillis);
+    }
+
+    /**
+     * Returns right away, without the configured latency; may be called from any thread.
+     */
+    @Override
+    public String getAvatar(String userId, int size) {
+        return avatars.get(getAvatarKey(userId, size));
+    }
+
+    private static String getAvatarKey(String userId, int size) {
+        return userId + "/" + size;
+    }
+
+    @Override
+    public void searchUsers(String prefix, int limit, Callback<List<User>> callback) {
+        List<User> result = new ArrayList<>();
+        for (User user : users.values()) {
+            if (user.firstName != null && user.firstName.toLowerCase(Locale.ROOT).startsWith(prefix)) {
+                result.add(copy(user));
+            }
+        }
+        Collections.sort(result, (a, b) -> a.firstName.toLowerCase(Locale.ROOT)
+                .compareTo(b.firstName.toLowerCase(Locale.ROOT)));
+        List<User> limited = new ArrayList<>(result.subList(0, Math.min(limit, result.size())));
+        scheduler.schedule(() -> callback.onSuccess(limited), latencyMillis);
+    }
+
+    /**
+     * Sets the password a user signs in with.
+     *
+     * @param userId   The user.
+     * @param password The password.
+     */
+    public void setPassword(String userId, String password) {
+        passwords.put(userId, password);
+    }
+
+    @Override
+    public Registration listenUsers(long updatedAfter, UserListener listener) {
+        UserQuery query = new UserQuery(updatedAfter, listener);
+        userQueries.add(query);
+        List<Change<User>> changes = new ArrayList<>();
+        for (User user : users.values()) {
+            if (user.updatedAt > updatedAfter) {
+                changes.add(new Change<>(Change.Type.ADDED, user));
+            }
+        }
+        query.deliver(changes);
+        return query;
+    }
+
+    /**
+     * Writes a user document. Listeners whose result set it enters or changes in are notified.
+     *
+     * @param user The user.
+     */
+    public void putUser(User user) {
+        User stored = copy(user);
+        User previous = users.put(stored.id, stored);
+        for (UserQuery query : new ArrayList<>(userQueries)) {
+            boolean wasIn = previous != null && previous.updatedAt > query.updatedAfter;
+            boolean isIn = stored.updatedAt > query.updatedAfter;
+            if (isIn) {
+                query.deliver(Collections.singletonList(
+                        new Change<>(wasIn ? Change.Type.MODIFIED : Change.Type.ADDED, stored)));
+            } else if (wasIn) {
+                query.deliver(Collections.singletonList(new Change<>(Change.Type.REMOVED, previous)));
+            }
+        }
+    }
+
+    @Override
+    public void updateToken(String userId, String token, Callback<Void> callback) {
+        writeToken(userId, token, callback);
+    }
+
+    @Override
+    public void deleteToken(String userId, Callback<Void> callback) {
+        writeToken(userId, null, callback);
+    }
+
+    /**
+     * @param userId The user.
+     * @return The stored push messaging token of the user, or null.
+     */
+    public String getToken(String userId) {
+        return tokens.get(userId);
+    }
+
+    private void writeToken(String userId, String token, Callback<Void> callback) {
+        Exception failure = writeFailure;
+        if (failure != null) {
+            scheduler.schedule(() -> callback.onFailure(failure), latencyMillis);
+            return;
+        }
+        if (token != null) {
+            tokens.put(userId, token);
+        } else {
+            tokens.remove(userId);
+        }
+        User user = users.get(userId);
+        if (user != null) {
+            User updated = copy(user);
+            updated.token = token;
+            updated.updatedAt = Math.max(System.currentTimeMillis(), user.updatedAt + 1);
+            putUser(updated);
+        }
+        scheduler.schedule(() -> callback.onSuccess(null), latencyMillis);
+    }
+
+    @Override
+    public Registration listenPresence(String userId, PresenceListener listener) {
+        PresenceQuery query = new PresenceQuery(userId, listener);
+        presenceQueries.add(query);
+        query.deliver();
+        return query;
+    }
+
+    @Override
+    public void writePresence(String userId, boolean online) {
+        PresenceState state = presence.get(userId);
+        writePresence(userId, online, state != null ? state.typingIn : null);
+    }
+
+    /**
+     * A write is dropped while writes fail, like a lost one would be.
+     */
+    @Override
+    public void writePresence(String userId, boolean online, String typingIn) {
+        if (writeFailure != null) {
+            return;
+        }
+        PresenceState state = new PresenceState();
+        state.online = online;
+        state.typingIn = typingIn;
+        state.lastSeen = nextCommitTime();
+        lastCommittedAt = state.lastSeen;
+        presence.put(userId, state);
+        for (PresenceQuery query : new ArrayList<>(presenceQueries)) {
+            if (query.userId.equals(userId)) {
+                query.deliver();
+            }
+        }
+    }
+
+    @Override
+    public Registration listenReceipts(String conversationId, ReceiptListener listener) {
+        ReceiptQuery query = new ReceiptQuery(conversationId, listener);
+        receiptQueries.add(query);
+        query.deliver();
+        return query;
+    }
+
+    /**
+     * A write is dropped while writes fail, like a lost one would be.
+     */
+    @Override
+    public void writeReceipts(String conversationId, String userId, long deliveredUpTo, long readUpTo) {
+        if (writeFailure != null || deliveredUpTo <= 0 && readUpTo <= 0) {
+            return;
+        }
+        if (deliveredUpTo > 0) {
+            getMarks(deliveredMarks, conversationId).put(userId, deliveredUpTo);
+        }
+        if (readUpTo > 0) {
+            getMarks(readMarks, conversationId).put(userId, readUpTo);
+        }
+        deliverReceipts(conversationId);
+    }
+
+    @Override
+    public void raiseDelivered(String conversationId, String userId, long timestamp) {
+        if (writeFailure != null) {
+            return;
+        }
+        Map<String, Long> marks = getMarks(deliveredMarks, conversationId);
+        Long mark = marks.get(userId);
+        if (mark == null || mark < timestamp) {
+            marks.put(userId, timestamp);
+            deliverReceipts(conversationId);
+        }
+    }
+
+    private void deliverReceipts(String conversationId) {
+        for (ReceiptQuery query : new ArrayList<>(receiptQueries)) {
+            if (query.conversationId.equals(conversationId)) {
+                query.deliver();
+            }
+        }
+    }
+
+    private static Map<String, Long> getMarks(Map<String, Map<String, Long>> marksByConversation,
+                                              String conversationId) {
+        Map<String, Long> marks = marksByConversation.get(conversationId);
+        if (marks == null) {
+            marks = new HashMap<>();
+            marksByConversation.put(conversationId, marks);
+        }
+        return marks;
+    }
+
+    private TreeSet<ChatMessage> getConversation(String conversationId) {
+        TreeSet<ChatMessage> conversation = conversations.get(conversationId);
+        if (conversation == null) {
+            conversation = new TreeSet<>(SortedMessageList.ORDER);
+            conversations.put(conversationId, conversation);
+        }
+        return conversation;
+    }
+
+    private Map<String, ChatMessage> getMessagesById(String conversationId) {
+        Map<String, ChatMessage> messages = messagesById.get(conversationId);
+        if (messages == null) {
+            messages = new HashMap<>();
+            messagesById.put(conversationId, messages);
+        }
+        return messages;
+    }
+
+    private long nextCommitTime() {
+        return Math.max(System.currentTimeMillis(), lastCommittedAt + 1);
+    }
+
+    private static ChatMessage copy(ChatMessage chatMessage) {
+        ChatMessage copy = new ChatMessage();
+        copy.id = chatMessage.id;
+        copy.senderId = chatMessage.senderId;
+        copy.receiverId = chatMessage.receiverId;
+        copy.message = chatMessage.message;
+        copy.thumbnail = chatMessage.thumbnail;
+        copy.blobId = chatMessage.blobId;
+        copy.imageWidth = chatMessage.imageWidth;
+        copy.imageHeight = chatMessage.imageHeight;
+        copy.timestamp = chatMessage.timestamp;
+        copy.committedAt = chatMessage.committedAt;
+        return copy;
+    }
+
+    private static ConversationSummary copy(ConversationSummary summary) {
+        ConversationSummary copy = new ConversationSummary();
+        copy.otherId = summary.otherId;
+        copy.otherName = summary.otherName;
+        copy.otherImageVersion = summary.otherImageVersion;
+        copy.lastMessage = summary.lastMessage;
+        copy.members = summary.members != null ? new ArrayList<>(summary.members) : null;
+        copy.timestamp = summary.timestamp;
+        return copy;
+    }
+
+    private static User copy(User user) {
+        User copy = new User();
+        copy.id = user.id;
+        copy.firstName = user.firstName;
+        copy.lastName = user.lastName;
+        copy.email = user.email;
+        copy.image = user.image;
+        copy.imageVersion = user.imageVersion;
+        copy.token = user.token;
+        copy.updatedAt = user.updatedAt;
+        return copy;
+    }
+
+    /**
+     * An active message listener and the result set it currently holds.
+     */
+    private final class MessageQuery implements Registration {
+        final String conversationId;
+        final long since;
+        final int limit;
+        final MessageListener listener;
+        final TreeSet<ChatMessage> window = new TreeSet<>(SortedMessageList.ORDER);
+        boolean removed;
+        boolean started;
+
+        MessageQuery(String conversationId, long since, int limit, MessageListener listener) {
+            this.conversationId = conversationId;
+            this.since = since;
+            this.limit = limit;
+            this.listener = listener;
+        }
+
+        /**
+         * Updates the result set after a message was written or, if {@code current} is null, deleted.
+         */
+        void onWrite(ChatMessage previous, ChatMessage current) {
+            List<Change<ChatMessage>> changes = new ArrayList<>(2);
+            if (since > 0) {
+                boolean wasIn = previous != null && window.remove(previous);
+                boolean isIn = current != null && current.committedAt >= since;
+                if (isIn) {
+                    window.add(current);
+                    changes.add(new Change<>(wasIn ? Change.Type.MODIFIED : Change.Type.ADDED, current));
+                } else if (wasIn) {
+                    changes.add(new Change<>(Change.Type.REMOVED, previous));
+                }
+            } else {
+                refreshWindow(changes);
+            }
+            deliver(changes);
+        }
+
+        /**
+         * Recomputes the newest {@code limit} messages and records how they differ from the current set.
+         */
+        void refreshWindow(List<Change<ChatMessage>> changes) {
+            Map<String, ChatMessage> old = new HashMap<>();
+            for (ChatMessage chatMessage : window) {
+                old.put(chatMessage.id, chatMessage);
+            }
+            window.clear();
+            Iterator<ChatMessage> iterator = getConversation(conversationId).descendingIterator();
+            while (iterator.hasNext() && window.size() < limit) {
+                window.add(iterator.next());
+            }
+            for (ChatMessage chatMessage : window) {
+                ChatMessage before = old.remove(chatMessage.id);
+                if (before == null) {
+                    changes.add(new Change<>(Change.Type.ADDED, chatMessage));
+                } else if (before != chatMessage) {
+                    changes.add(new Change<>(Change.Type.MODIFIED, chatMessage));
+                }
+            }
+            for (ChatMessage chatMessage : old.values()) {
+                changes.add(new Change<>(Change.Type.REMOVED, chatMessage));
+            }
+        }
+
+        void deliver(List<Change<ChatMessage>> changes) {
+            // Like Firestore, the first snapshot is delivered even when it is empty.
+            if (changes.isEmpty() && started) {
+                return;
+            }
+            started = true;
+            List<Change<ChatMessage>> delivered = new ArrayList<>(changes.size());
+            for (Change<ChatMessage> change : changes) {
+                delivered.add(new Change<>(change.type, copy(change.value)));
+            }
+            scheduler.schedule(() -> {
+                if (!removed) {
+                    listener.onMessages(delivered, true);
+                }
+            }, latencyMillis);
+        }
+
+        @Override
+        public void remove() {
+            removed = true;
+            messageQueries.remove(this);
+        }
+    }
+
+    /**
+     * An active inbox listener, of either direct conversations or groups. Every snapshot
+     * carries the whole, newest-first result set.
+     */
+    private final class InboxQuery implements Registration {
+        final String userId;
+        final boolean groups;
+        final int limit;
+        final InboxListener listener;
+        boolean removed;
+
+        InboxQuery(String userId, boolean groups, int limit, InboxListener listener) {
+            this.userId = userId;
+            this.groups = groups;
+            this.limit = limit;
+            this.listener = listener;
+        }
+
+        void deliver() {
+            List<ConversationSummary> summaries = new ArrayList<>();
+            Collection<ConversationSummary> source = groups
+                    ? InMemoryBackend.this.groups.values()
+                    : inboxes.containsKey(userId) ? inboxes.get(userId).values()
+                    : Collections.<ConversationSummary>emptyList();
+            for (ConversationSummary summary : source) {
+                if (!groups || summary.members.contains(userId)) {
+                    summaries.add(copy(summary));
+                }
+            }
+            Collections.sort(summaries, (a, b) -> Long.compare(b.timestamp, a.timestamp));
+            List<ConversationSummary> delivered = new ArrayList<>(
+                    summaries.subList(0, Math.min(limit, summaries.size())));
+            scheduler.schedule(() -> {
+                if (!removed) {
+                    listener.onConversations(delivered);
+                }
+            }, latencyMillis);
+        }
+
+        @Override
+        public void remove() {
+            removed = true;
+            inboxQueries.remove(this);
+        }
+    }
+
+    /**
+     * An active user listener.
+     */
+    private final class UserQuery implements Registration {
+        final long updatedAfter;
+        final UserListener listener;
+        boolean removed;
+
+        UserQuery(long updatedAfter, UserListener listener) {
+            this.updatedAfter = updatedAfter;
+            this.listener = listener;
+        }
+
+        void deliver(List<Change<User>> changes) {
+            List<Change<User>> delivered = new ArrayList<>(changes.size());
+            for (Change<User> change : changes) {
+                delivered.add(new Change<>(change.type, copy(change.value)));
+            }
+            scheduler.schedule(() -> {
+                if (!removed) {
+                    listener.onUsers(delivered);
+                }
+            }, latencyMillis);
+        }
+
+        @Override
+        public void remove() {
+            removed = true;
+            userQueries.remove(this);
+        }
+    }
+
+    /**
+     * The stored presence of one user.
+     */
+    private static final class PresenceState {
+        boolean online;
+        long lastSeen;
+        String typingIn;
+    }
+
+    /**
+     * An active presence listener.
+     */
+    private final class PresenceQuery implements Registration {
+        final String userId;
+        final PresenceListener listener;
+        boolean removed;
+
+        PresenceQuery(String userId, PresenceListener listener) {
+            this.userId = userId;
+            this.listener = listener;
+        }
+
+        void deliver() {
+            PresenceState state = presence.get(userId);
+            boolean online = state != null && state.online;
+            long lastSeen = state != null ? state.lastSeen : 0;
+            String typingIn = state != null ? state.typingIn : null;
+            scheduler.schedule(() -> {
+                if (!removed) {
+                    listener.onPresence(online, lastSeen, typingIn);
+                }
+            }, latencyMillis);
+        }
+
+        @Override
+        public void remove() {
+            removed = true;
+            presenceQueries.remove(this);
+        }
+    }
+
+    /**
+     * An active receipt listener.
+     */
+    private final class ReceiptQuery implements Registration {
+        final String conversationId;
+        final ReceiptListener listener;
+        boolean removed;
+
+        ReceiptQuery(String conversationId, ReceiptListener listener) {
+            this.conversationId = conversationId;
+            this.listener = listener;
+        }
+
+        void deliver() {
+            Map<String, Long> delivered = new HashMap<>(getMarks(deliveredMarks, conversationId));
+            Map<String, Long> read = new HashMap<>(getMarks(readMarks, conversationId));
+            scheduler.schedule(() -> {
+                if (!removed) {
+                    listener.onReceipts(delivered, read);
+                }
+            }, latencyMillis);
+        }
+
+        @Override
+        public void remove() {
+            removed = true;
+            receiptQueries.remove(this);
+        }
+    }
+}
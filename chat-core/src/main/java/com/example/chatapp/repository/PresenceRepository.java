@@ -0,0 +1,97 @@
+package com.example.chatapp.repository;
+
+import java.util.Map;
+
+/**
+ * PresenceRepository publishes whether users are online and typing, and keeps the
+ * delivery and read receipts of conversations as one "up to" timestamp per participant.
+ * Writes are not confirmed: a lost presence write is replaced by the next heartbeat,
+ * and a lost receipt by the next mark. Listeners are called on the main thread, and
+ * all methods must be called on it.
+ */
+public interface PresenceRepository {
+
+    /**
+     * Receives the presence of one user.
+     */
+    interface PresenceListener {
+        /**
+         * Called whenever the user's presence changed.
+         *
+         * @param online   True if the server confirmed the user as online; a cached state never counts.
+         * @param lastSeen When the user's presence was last written, in epoch milliseconds, or 0 if unknown.
+         * @param typingIn The conversation the user is typing in, or null.
+         */
+        void onPresence(boolean online, long lastSeen, String typingIn);
+    }
+
+    /**
+     * Receives the receipts of one conversation.
+     */
+    interface ReceiptListener {
+        /**
+         * Called whenever a mark of the conversation changed.
+         *
+         * @param deliveredUpTo Per participant id, the timestamp up to which messages reached them.
+         * @param readUpTo      Per participant id, the timestamp up to which they read messages.
+         */
+        void onReceipts(Map<String, Long> deliveredUpTo, Map<String, Long> readUpTo);
+    }
+
+    /**
+     * Listens to the presence of a user.
+     *
+     * @param userId   The user.
+     * @param listener Receives the user's presence.
+     * @return The handle to stop listening.
+     */
+    Registration listenPresence(String userId, PresenceListener listener);
+
+    /**
+     * Writes the online state of a user and refreshes their last-seen time, leaving
+     * the typing state as it is.
+     *
+     * @param userId The user.
+     * @param online True if the user is in the app.
+     */
+    void writePresence(String userId, boolean online);
+
+    /**
+     * Writes the online and typing state of a user and refreshes their last-seen time.
+     *
+     * @param userId   The user.
+     * @param online   True if the user is in the app.
+     * @param typingIn The conversation the user is typing in, or null to clear it.
+     */
+    void writePresence(String userId, boolean online, String typingIn);
+
+    /**
+     * Listens to the receipts of a conversation.
+     *
+     * @param conversationId The conversation.
+     * @param listener       Receives the marks of every participant.
+     * @return The handle to stop listening.
+     */
+    Registration listenReceipts(String conversationId, ReceiptListener listener);
+
+    /**
+     * Writes the marks of a participant, replacing the stored ones.
+     *
+     * @param conversationId The conversation.
+     * @param userId         The participant.
+     * @param deliveredUpTo  The new delivered mark, or 0 to leave it as it is.
+     * @param readUpTo       The new read mark, or 0 to leave it as it is.
+     */
+    void writeReceipts(String conversationId, String userId, long deliveredUpTo, long readUpTo);
+
+    /**
+     * Raises the delivered mark of a participant, for a message received while the
+     * conversation is not open. Unlike {@link #writeReceipts}, the mark never moves back
+     * below one written by an open conversation or another device.
+     *
+     * @param conversationId The conversation.
+     * @param userId         The participant.
+     * @param timestamp      The received message's timestamp.
+     */
+    void raiseDelivered(String conversationId, String userId, long timestamp);
+}
@@ -0,0 +1,12 @@
+package com.example.chatapp.repository;
+
+/**
+ * Registration is a handle to an active listener of a repository.
+ */
+public interface Registration {
+
+    /**
+     * Stops the listener. No callback is made after this returns.
+     */
+    void remove();
+}
@@ -0,0 +1,30 @@
+package com.example.chatapp.repository;
+
+/**
+ * RepositoryException is reported by repositories when a write failed, telling a
+ * write the backend refused for good, such as one denied by its security rules, from
+ * one that may succeed when retried.
+ */
+public class RepositoryException extends Exception {
+
+    private final boolean permanent;
+
+    /**
+     * Constructor to initialize the exception.
+     *
+     * @param message   The detail message.
+     * @param cause     The failure reported by the backend, or null.
+     * @param permanent True if retrying the write cannot succeed.
+     */
+    public RepositoryException(String message, Throwable cause, boolean permanent) {
+        super(message, cause);
+        this.permanent = permanent;
+    }
+
+    /**
+     * @return True if retrying the write cannot succeed.
+     */
+    public boolean isPermanent() {
+        return permanent;
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.chatapp.repository;
+
+/**
+ * TokenRepository stores the push messaging tokens of users. Callbacks are called on the main thread.
+ */
+public interface TokenRepository {
+
+    /**
+     * Stores the token of a user's device.
+     *
+     * @param userId   The user.
+     * @param token    The push messaging token.
+     * @param callback Receives the result.
+     */
+    void updateToken(String userId, String token, Callback<Void> callback);
+
+    /**
+     * Deletes the token of a user, so that no more push messages are sent to the device.
+     *
+     * @param userId   The user.
+     * @param callback Receives the result.
+     */
+    void deleteToken(String userId, Callback<Void> callback);
+}
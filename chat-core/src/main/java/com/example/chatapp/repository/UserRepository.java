@@ -0,0 +1,97 @@
+package com.example.chatapp.repository;
+
+import com.example.chatapp.models.User;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * UserRepository reads the user directory, registers and looks up users signing in, and
+ * reads stored avatars. Callbacks and listeners are called on the main thread.
+ */
+public interface UserRepository {
+
+    /**
+     * Receives the snapshots of a user listener.
+     */
+    interface UserListener {
+        /**
+         * Called with the changes of one snapshot.
+         *
+         * @param changes The users that entered, changed in or left the result set.
+         */
+        void onUsers(List<Change<User>> changes);
+
+        /**
+         * Called once if the listener failed; no snapshot follows.
+         *
+         * @param e The cause of the failure.
+         */
+        void onError(Exception e);
+    }
+
+    /**
+     * Reads every user.
+     *
+     * @param callback Receives the users, in no particular order.
+     */
+    void getUsers(Callback<List<User>> callback);
+
+    /**
+     * Reads one user.
+     *
+     * @param userId   The id of the user.
+     * @param callback Receives the user, or null if there is no such user.
+     */
+    void getUser(String userId, Callback<User> callback);
+
+    /**
+     * Looks up the user signing in with an email address and password.
+     *
+     * @param email    The email address entered.
+     * @param password The password entered.
+     * @param callback Receives the user, or null if no user has these credentials.
+     */
+    void findUser(String email, String password, Callback<User> callback);
+
+    /**
+     * Registers a new user together with their avatars, in one write.
+     *
+     * @param user     The user's details, with {@code imageVersion} naming the avatars; the id is assigned.
+     * @param password The password the user signs in with.
+     * @param avatars  The Base64 encoded avatar per stored size, in pixels.
+     * @param callback Receives the user, with their new id.
+     */
+    void createUser(User user, String password, Map<Integer, String> avatars, Callback<User> callback);
+
+    /**
+     * Reads one stored size of a user's avatar. Unlike the other methods, it blocks and
+     * must not be called on the main thread.
+     *
+     * @param userId The user.
+     * @param size   The stored size, in pixels.
+     * @return The Base64 encoded avatar, or null if there is none of this size.
+     * @throws IOException If the avatar cannot be read.
+     */
+    String getAvatar(String userId, int size) throws IOException;
+
+    /**
+     * Finds the users whose first name starts with a prefix, for searching before the
+     * local directory is ready.
+     *
+     * @param prefix   The prefix, normalized like the stored lowercase first names.
+     * @param limit    Maximum number of users.
+     * @param callback Receives the users, ordered by first name.
+     */
+    void searchUsers(String prefix, int limit, Callback<List<User>> callback);
+
+    /**
+     * Listens to the users updated after a point in time.
+     *
+     * @param updatedAfter Epoch millis; only users with a newer {@code updatedAt} are included.
+     * @param listener     Receives the snapshots.
+     * @return The handle to stop listening.
+     */
+    Registration listenUsers(long updatedAfter, UserListener listener);
+}
@@ -0,0 +1,113 @@
+package com.example.chatapp.utilities;
+
+/**
+ * Base64Codec encodes and decodes the standard Base64 alphabet without depending on
+ * Android, so that images can be handled in plain JVM code. Encoding produces a single
+ * padded line. Decoding skips whitespace and accepts missing padding, so it also reads
+ * the line-wrapped output of {@code android.util.Base64.DEFAULT} stored by earlier
+ * versions of the app.
+ */
+public final class Base64Codec {
+
+    private static final char[] ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    private static final int WHITESPACE = -2;
+    private static final int INVALID = -1;
+    private static final int[] VALUES = new int[128];
+
+    static {
+        for (int i = 0; i < VALUES.length; i++) {
+            VALUES[i] = INVALID;
+        }
+        for (int i = 0; i < ALPHABET.length; i++) {
+            VALUES[ALPHABET[i]] = i;
+        }
+        VALUES[' '] = WHITESPACE;
+        VALUES['\t'] = WHITESPACE;
+        VALUES['\r'] = WHITESPACE;
+        VALUES['\n'] = WHITESPACE;
+    }
+
+    private Base64Codec() {
+    }
+
+    /**
+     * Encodes bytes as one line of padded Base64.
+     *
+     * @param bytes The bytes to encode.
+     * @return The encoded text.
+     */
+    public static String encode(byte[] bytes) {
+        char[] output = new char[(bytes.length + 2) / 3 * 4];
+        int in = 0;
+        int out = 0;
+        int whole = bytes.length - bytes.length % 3;
+        while (in < whole) {
+            int bits = (bytes[in++] & 0xff) << 16 | (bytes[in++] & 0xff) << 8 | (bytes[in++] & 0xff);
+            output[out++] = ALPHABET[bits >>> 18];
+            output[out++] = ALPHABET[(bits >>> 12) & 0x3f];
+            output[out++] = ALPHABET[(bits >>> 6) & 0x3f];
+            output[out++] = ALPHABET[bits & 0x3f];
+        }
+        int remaining = bytes.length - whole;
+        if (remaining > 0) {
+            int bits = (bytes[in] & 0xff) << 16 | (remaining == 2 ? (bytes[in + 1] & 0xff) << 8 : 0);
+            output[out++] = ALPHABET[bits >>> 18];
+            output[out++] = ALPHABET[(bits >>> 12) & 0x3f];
+            output[out++] = remaining == 2 ? ALPHABET[(bits >>> 6) & 0x3f] : '=';
+            output[out] = '=';
+        }
+        return new String(output);
+    }
+
+    /**
+     * Decodes Base64 text.
+     *
+     * @param text The encoded text, optionally wrapped and padded.
+     * @return The decoded bytes.
+     * @throws IllegalArgumentException If the text is not valid Base64.
+     */
+    public static byte[] decode(String text) {
+        byte[] output = new byte[text.length() / 4 * 3 + 3];
+        int out = 0;
+        int bits = 0;
+        int count = 0;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '=') {
+                break;
+            }
+            int value = c < VALUES.length ? VALUES[c] : INVALID;
+            if (value == WHITESPACE) {
+                continue;
+            }
+            if (value == INVALID) {
+                throw new IllegalArgumentException("Invalid Base64 character at " + i);
+            }
+            bits = bits << 6 | value;
+            if (++count == 4) {
+                output[out++] = (byte) (bits >> 16);
+                output[out++] = (byte) (bits >> 8);
+                output[out++] = (byte) bits;
+                bits = 0;
+                count = 0;
+            }
+        }
+        if (count == 1) {
+            throw new IllegalArgumentException("Truncated Base64 input");
+        } else if (count == 2) {
+            output[out++] = (byte) (bits >> 4);
+        } else if (count == 3) {
+            output[out++] = (byte) (bits >> 10);
+            output[out++] = (byte) (bits >> 2);
+        }
+        if (out == output.length) {
+            return output;
+        }
+        byte[] result = new byte[out];
+        System.arraycopy(output, 0, result, 0, out);
+        return result;
+    }
+}
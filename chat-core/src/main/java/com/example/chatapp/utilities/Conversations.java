@@ -0,0 +1,74 @@
+package com.example.chatapp.utilities;
+
+/**
+ * Conversations holds helpers for addressing the per-conversation message collections
+ * stored under {@link Constants#KEY_COLLECTION_CONVERSATIONS}.
+ * <p>
+ * A conversation between two users has a deterministic id joining both user ids with
+ * an underscore. A group conversation has a generated document id, which never
+ * contains one, and lists its members in the conversation document instead.
+ */
+public class Conversations {
+
+    private Conversations() {
+    }
+
+    /**
+     * Builds the deterministic id of the conversation between two users.
+     * Both participants compute the same id regardless of who is the sender.
+     *
+     * @param userId  The id of one participant.
+     * @param otherId The id of the other participant.
+     * @return The conversation id.
+     */
+    public static String getConversationId(String userId, String otherId) {
+        if (userId.compareTo(otherId) < 0) {
+            return userId + "_" + otherId;
+        }
+        return otherId + "_" + userId;
+    }
+
+    /**
+     * Tells group conversations from conversations between two users.
+     *
+     * @param conversationId A conversation id.
+     * @return True if the conversation is a group.
+     */
+    public static boolean isGroup(String conversationId) {
+        return conversationId.indexOf('_') < 0;
+    }
+
+    /**
+     * Returns the position of a participant in a conversation id: 0 for the one
+     * ordered first, 1 for the other. Message documents store this instead of the id.
+     *
+     * @param conversationId The conversation id, as built by {@link #getConversationId}.
+     * @param userId         The id of a participant.
+     * @return 0 or 1, or -1 if the user is not a participant or the conversation is a group.
+     */
+    public static int getParticipantIndex(String conversationId, String userId) {
+        int separator = conversationId.indexOf('_');
+        if (separator < 0) {
+            return -1;
+        }
+        if (separator == userId.length() && conversationId.startsWith(userId)) {
+            return 0;
+        }
+        if (conversationId.length() - separator - 1 == userId.length() && conversationId.endsWith(userId)) {
+            return 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the id of the participant at a position in a conversation id.
+     *
+     * @param conversationId The conversation id, as built by {@link #getConversationId}.
+     * @param index          0 or 1, as returned by {@link #getParticipantIndex}.
+     * @return The id of the participant.
+     */
+    public static String getParticipant(String conversationId, int index) {
+        int separator = conversationId.indexOf('_');
+        return index == 0 ? conversationId.substring(0, separator) : conversationId.substring(separator + 1);
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.chatapp.utilities;
+
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * MessageFormatter formats message timestamps for display.
+ * Formatting happens lazily at bind time. Messages sent within the same minute share
+ * one formatted string, so rebinding a message, or binding a burst of messages, does
+ * not allocate. The formatter and the cache are rebuilt when the default locale changes.
+ * Not thread-safe; call it from the main thread only.
+ */
+public class MessageFormatter {
+
+    private static final String PATTERN = "MMM dd, yyyy - hh:mm a";
+
+    private static final long MINUTE_MILLIS = 60_000L;
+
+    /**
+     * Number of cached minutes; must be a power of two.
+     */
+    private static final int CACHE_SIZE = 256;
+
+    private static Locale locale;
+    private static SimpleDateFormat dateFormat;
+    private static final Date date = new Date();
+    private static final long[] cachedMinutes = new long[CACHE_SIZE];
+    private static final String[] cachedValues = new String[CACHE_SIZE];
+
+    private MessageFormatter() {
+    }
+
+    /**
+     * Formats an epoch-millisecond timestamp into a readable date-time string.
+     *
+     * @param timestamp The timestamp in epoch milliseconds.
+     * @return A formatted string representation of the date and time.
+     */
+    public static String getReadableDateTime(long timestamp) {
+        Locale current = Locale.getDefault();
+        if (current != locale) {
+            locale = current;
+            dateFormat = new SimpleDateFormat(PATTERN, current);
+            Arrays.fill(cachedValues, null);
+        }
+        long minute = Math.floorDiv(timestamp, MINUTE_MILLIS);
+        int slot = (int) (minute ^ (minute >>> 32)) & (CACHE_SIZE - 1);
+        String value = cachedValues[slot];
+        if (value != null && cachedMinutes[slot] == minute) {
+            return value;
+        }
+        date.setTime(minute * MINUTE_MILLIS);
+        value = dateFormat.format(date);
+        cachedMinutes[slot] = minute;
+        cachedValues[slot] = value;
+        return value;
+    }
+}
@@ -0,0 +1,232 @@
+package com.example.chatapp.utilities;
+
+import com.example.chatapp.models.ChatMessage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * SortedMessageList keeps the messages of a conversation ordered by timestamp.
+ * New snapshot batches are merged in incrementally instead of re-sorting the
+ * whole conversation, and messages already present (by document id) are skipped.
+ * Each new message is flagged as sent or received exactly once, on the way in.
+ */
+public class SortedMessageList {
+
+    /**
+     * Orders messages by timestamp, falling back to the document id so that
+     * two messages sent in the same millisecond keep a stable position.
+     */
+    public static final Comparator<ChatMessage> ORDER = (obj1, obj2) -> {
+        int result = Long.compare(obj1.timestamp, obj2.timestamp);
+        if (result != 0) {
+            return result;
+        }
+        return obj1.id.compareTo(obj2.id);
+    };
+
+    private final String currentUserId;
+    private ArrayList<ChatMessage> messages = new ArrayList<>();
+    private final Set<String> ids = new HashSet<>();
+
+    /**
+     * Constructor to initialize an empty list for the signed-in user.
+     *
+     * @param currentUserId The id of the signed-in user, used to flag sent messages.
+     */
+    public SortedMessageList(String currentUserId) {
+        this.currentUserId = currentUserId;
+    }
+
+    /**
+     * Merges a batch of messages into the list. Small batches are binary-inserted,
+     * large batches (such as the first snapshot) are sorted once and merged in a
+     * single linear pass.
+     *
+     * @param batch The messages delivered by one snapshot, in any order.
+     * @return True if at least one new message was added.
+     */
+    public boolean merge(List<ChatMessage> batch) {
+        if (batch.size() == 1) {
+            return add(batch.get(0));
+        }
+        List<ChatMessage> fresh = new ArrayList<>(batch.size());
+        for (ChatMessage chatMessage : batch) {
+            if (ids.add(chatMessage.id)) {
+                chatMessage.sent = chatMessage.senderId != null && chatMessage.senderId.equals(currentUserId);
+                fresh.add(chatMessage);
+            }
+        }
+        if (fresh.isEmpty()) {
+            return false;
+        }
+        Collections.sort(fresh, ORDER);
+        if (fresh.size() * log2(messages.size() + 1) < messages.size()) {
+            for (ChatMessage chatMessage : fresh) {
+                insert(chatMessage);
+            }
+        } else {
+            messages = mergeSorted(messages, fresh);
+        }
+        return true;
+    }
+
+    /**
+     * Adds a single message at its ordered position without allocating a batch.
+     *
+     * @param chatMessage The message to add.
+     * @return True if the message was not already in the list.
+     */
+    public boolean add(ChatMessage chatMessage) {
+        if (!ids.add(chatMessage.id)) {
+            return false;
+        }
+        chatMessage.sent = chatMessage.senderId != null && chatMessage.senderId.equals(currentUserId);
+        insert(chatMessage);
+        return true;
+    }
+
+    /**
+     * Removes a set of messages, for example a history page that scrolled out of the window.
+     *
+     * @param removed The messages to remove.
+     * @return True if at least one message was removed.
+     */
+    public boolean remove(List<ChatMessage> removed) {
+        Set<String> removedIds = new HashSet<>();
+        for (ChatMessage chatMessage : removed) {
+            if (ids.remove(chatMessage.id)) {
+                removedIds.add(chatMessage.id);
+            }
+        }
+        if (removedIds.isEmpty()) {
+            return false;
+        }
+        ArrayList<ChatMessage> kept = new ArrayList<>(messages.size() - removedIds.size());
+        for (ChatMessage chatMessage : messages) {
+            if (!removedIds.contains(chatMessage.id)) {
+                kept.add(chatMessage);
+            }
+        }
+        messages = kept;
+        return true;
+    }
+
+    /**
+     * Marks messages as accepted by the server. Each one is replaced by a copy that is
+     * no longer pending, so that the adapter's diff sees the change and rebinds the row.
+     *
+     * @param confirmed The messages that were committed.
+     * @return True if at least one message in the list changed.
+     */
+    public boolean confirm(List<ChatMessage> confirmed) {
+        return settle(confirmed, false);
+    }
+
+    /**
+     * Marks messages as given up on: each one is replaced by a copy that is failed
+     * instead of pending.
+     *
+     * @param failed The messages that will not be sent.
+     * @return True if at least one message in the list changed.
+     */
+    public boolean fail(List<ChatMessage> failed) {
+        return settle(failed, true);
+    }
+
+    private boolean settle(List<ChatMessage> settled, boolean failed) {
+        boolean changed = false;
+        for (ChatMessage chatMessage : settled) {
+            int index = Collections.binarySearch(messages, chatMessage, ORDER);
+            if (index < 0 || !messages.get(index).pending) {
+                continue;
+            }
+            ChatMessage current = messages.get(index);
+            ChatMessage copy = new ChatMessage();
+            copy.id = current.id;
+            copy.senderId = current.senderId;
+            copy.receiverId = current.receiverId;
+            copy.message = current.message;
+            copy.thumbnail = current.thumbnail;
+            copy.blobId = current.blobId;
+            copy.imageWidth = current.imageWidth;
+            copy.imageHeight = current.imageHeight;
+            copy.timestamp = current.timestamp;
+            copy.committedAt = chatMessage.committedAt;
+            copy.sent = current.sent;
+            copy.failed = failed;
+            messages.set(index, copy);
+            changed = true;
+        }
+        return changed;
+    }
+
+    /**
+     * Finds the position of a message in the ordered list.
+     *
+     * @param chatMessage The message to look up.
+     * @return Its position, or -1 if it is not in the list.
+     */
+    public int indexOf(ChatMessage chatMessage) {
+        int index = Collections.binarySearch(messages, chatMessage, ORDER);
+        return index < 0 ? -1 : index;
+    }
+
+    /**
+     * Returns an immutable-by-convention copy of the current list, suitable for
+     * handing to {@code ListAdapter.submitList}.
+     *
+     * @return A snapshot of the ordered messages.
+     */
+    public List<ChatMessage> snapshot() {
+        return new ArrayList<>(messages);
+    }
+
+    public int size() {
+        return messages.size();
+    }
+
+    public boolean isEmpty() {
+        return messages.isEmpty();
+    }
+
+    private void insert(ChatMessage chatMessage) {
+        int index = Collections.binarySearch(messages, chatMessage, ORDER);
+        messages.add(index < 0 ? -(index + 1) : index, chatMessage);
+    }
+
+    /**
+     * Merges two lists that are both already sorted by {@link #ORDER} in one linear pass.
+     *
+     * @param left  The first sorted list.
+     * @param right The second sorted list.
+     * @return A new list holding both, in order; on ties the message from {@code left} comes first.
+     */
+    public static ArrayList<ChatMessage> mergeSorted(List<ChatMessage> left, List<ChatMessage> right) {
+        ArrayList<ChatMessage> merged = new ArrayList<>(left.size() + right.size());
+        int i = 0;
+        int j = 0;
+        while (i < left.size() && j < right.size()) {
+            if (ORDER.compare(left.get(i), right.get(j)) <= 0) {
+                merged.add(left.get(i++));
+            } else {
+                merged.add(right.get(j++));
+            }
+        }
+        while (i < left.size()) {
+            merged.add(left.get(i++));
+        }
+        while (j < right.size()) {
+            merged.add(right.get(j++));
+        }
+        return merged;
+    }
+
+    private static int log2(int value) {
+        return 32 - Integer.numberOfLeadingZeros(value);
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.chatapp.repository;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Verifies chunked uploads, resumption and reads through the file-backed blob store.
+ */
+public class FileBlobStoreTest {
+
+    private static final int CHUNK_SIZE = 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Fails every write after a number of chunks, like a dropped connection.
+     */
+    private static class FailingStore extends FileBlobStore {
+        private int remainingChunks;
+
+        FailingStore(File directory, int remainingChunks) {
+            super(directory, CHUNK_SIZE);
+            this.remainingChunks = remainingChunks;
+        }
+
+        @Override
+        public void putChunk(String blobId, int index, byte[] data, int offset, int length) throws IOException {
+            if (remainingChunks-- <= 0) {
+                throw new IOException("connection lost");
+            }
+            super.putChunk(blobId, index, data, offset, length);
+        }
+    }
+
+    @Test
+    public void upload_thenRead_returnsSameBytes() throws IOException {
+        FileBlobStore store = new FileBlobStore(folder.newFolder("blobs"), CHUNK_SIZE);
+        byte[] data = randomBytes(CHUNK_SIZE * 3 + 17);
+
+        assertEquals(4, Blobs.upload(store, "image1", data));
+        assertEquals(data.length, store.getLength("image1"));
+        assertArrayEquals(data, Blobs.read(store, "image1"));
+    }
+
+    @Test
+    public void upload_afterFailure_resumesWithMissingChunks() throws IOException {
+        File directory = folder.newFolder("blobs");
+        byte[] data = randomBytes(CHUNK_SIZE * 5);
+        try {
+            Blobs.upload(new FailingStore(directory, 2), "image1", data);
+            fail();
+        } catch (IOException e) {
+            // Expected: the connection dropped after two chunks.
+        }
+        FileBlobStore store = new FileBlobStore(directory, CHUNK_SIZE);
+        assertEquals(-1, store.getLength("image1"));
+
+        assertEquals(3, Blobs.upload(store, "image1", data));
+        assertArrayEquals(data, Blobs.read(store, "image1"));
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void read_incompleteBlob_fails() throws IOException {
+        FileBlobStore store = new FileBlobStore(folder.newFolder("blobs"), CHUNK_SIZE);
+        byte[] data = randomBytes(CHUNK_SIZE);
+        store.putChunk("image1", 0, data, 0, data.length);
+
+        Blobs.read(store, "image1");
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,323 @@
+package com.example.chatapp.repository;
+
+import com.example.chatapp.models.ChatMessage;
+import com.example.chatapp.models.ConversationSummary;
+import com.example.chatapp.models.User;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import static org.junit.Assert.*;
+
+/**
+ * Verifies the snapshot semantics and simulated latency of the in-memory backend.
+ */
+public class InMemoryBackendTest {
+
+    /**
+     * Runs tasks only when the test advances its clock.
+     */
+    private static class ManualScheduler implements InMemoryBackend.Scheduler {
+        private final PriorityQueue<long[]> due = new PriorityQueue<>((a, b) ->
+                a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+        private final List<Runnable> tasks = new ArrayList<>();
+        private long now;
+
+        @Override
+        public void schedule(Runnable task, long delayMillis) {
+            due.add(new long[]{now + delayMillis, tasks.size()});
+            tasks.add(task);
+        }
+
+        void advance(long millis) {
+            now += millis;
+            while (!due.isEmpty() && due.peek()[0] <= now) {
+                tasks.get((int) due.poll()[1]).run();
+            }
+        }
+    }
+
+    private static class RecordingListener implements ChatRepository.MessageListener {
+        final List<List<Change<ChatMessage>>> snapshots = new ArrayList<>();
+
+        @Override
+        public void onMessages(List<Change<ChatMessage>> changes, boolean confirmed) {
+            snapshots.add(changes);
+        }
+
+        @Override
+        public void onError(Exception e) {
+            fail(e.toString());
+        }
+    }
+
+    private final ManualScheduler scheduler = new ManualScheduler();
+    private final InMemoryBackend backend = new InMemoryBackend(scheduler);
+
+    @Test
+    public void listenMessages_limitWindowAddsNewestAndRemovesEvicted() {
+        backend.putMessage("c", message("a", 1));
+        backend.putMessage("c", message("b", 2));
+        backend.putMessage("c", message("c", 3));
+        RecordingListener listener = new RecordingListener();
+        backend.listenMessages("c", 0, 2, listener);
+        scheduler.advance(0);
+
+        assertEquals(1, listener.snapshots.size());
+        assertEquals(2, listener.snapshots.get(0).size());
+        for (Change<ChatMessage> change : listener.snapshots.get(0)) {
+            assertEquals(Change.Type.ADDED, change.type);
+            assertNotEquals("a", change.value.id);
+        }
+
+        backend.putMessage("c", message("d", 4));
+        scheduler.advance(0);
+
+        List<Change<ChatMessage>> second = listener.snapshots.get(1);
+        assertEquals(2, second.size());
+        assertEquals(Change.Type.ADDED, second.get(0).type);
+        assertEquals("d", second.get(0).value.id);
+        assertEquals(Change.Type.REMOVED, second.get(1).type);
+        assertEquals("b", second.get(1).value.id);
+    }
+
+    @Test
+    public void listenMessages_sinceModeReportsRewritesAsModified() {
+        backend.putMessage("c", committed(message("old", 5), 5));
+        backend.putMessage("c", committed(message("new", 20), 20));
+        RecordingListener listener = new RecordingListener();
+        backend.listenMessages("c", 10, 1, listener);
+        scheduler.advance(0);
+
+        assertEquals(1, listener.snapshots.get(0).size());
+        assertEquals("new", listener.snapshots.get(0).get(0).value.id);
+
+        ChatMessage edited = committed(message("new", 20), 20);
+        edited.message = "edited";
+        backend.putMessage("c", edited);
+        backend.putMessage("c", committed(message("old", 5), 5));
+        scheduler.advance(0);
+
+        assertEquals(2, listener.snapshots.size());
+        Change<ChatMessage> change = listener.snapshots.get(1).get(0);
+        assertEquals(Change.Type.MODIFIED, change.type);
+        assertEquals("edited", change.value.message);
+    }
+
+    @Test
+    public void listenMessages_sinceModeFollowsCommitTimeNotTimestamp() {
+        backend.putMessage("c", committed(message("synced", 20), 20));
+        backend.putMessage("c", committed(message("late", 5), 30));
+        RecordingListener listener = new RecordingListener();
+        backend.listenMessages("c", 20, 1, listener);
+        scheduler.advance(0);
+
+        assertEquals(2, listener.snapshots.get(0).size());
+
+        List<ChatMessage> offline = new ArrayList<>();
+        offline.add(message("queued", 1));
+        backend.sendMessages("c", null, null, offline, new Callback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                fail(e.toString());
+            }
+        });
+        scheduler.advance(0);
+
+        Change<ChatMessage> change = listener.snapshots.get(1).get(0);
+        assertEquals(Change.Type.ADDED, change.type);
+        assertEquals("queued", change.value.id);
+        assertTrue(change.value.committedAt > 30);
+    }
+
+    @Test
+    public void latency_delaysSnapshotsAndRemovedListenersGetNothing() {
+        backend.setLatency(100);
+        RecordingListener listener = new RecordingListener();
+        Registration registration = backend.listenMessages("c", 0, 10, listener);
+        scheduler.advance(99);
+        assertTrue(listener.snapshots.isEmpty());
+        scheduler.advance(1);
+        assertEquals(1, listener.snapshots.size());
+        assertTrue(listener.snapshots.get(0).isEmpty());
+
+        backend.putMessage("c", message("a", 1));
+        registration.remove();
+        scheduler.advance(100);
+        assertEquals(1, listener.snapshots.size());
+    }
+
+    @Test
+    public void sendMessages_reportsConfiguredWriteFailure() {
+        List<Exception> failures = new ArrayList<>();
+        backend.setWriteFailure(new IllegalStateException("offline"));
+        List<ChatMessage> messages = new ArrayList<>();
+        messages.add(message("a", 1));
+        backend.sendMessages("c", null, null, messages, new Callback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+                fail();
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                failures.add(e);
+            }
+        });
+        scheduler.advance(0);
+
+        assertEquals(1, failures.size());
+        assertEquals(0, backend.getMessageCount("c"));
+    }
+
+    @Test
+    public void listenInbox_showsNewestConversationsFirstForBothParticipants() {
+        User me = user("me");
+        List<List<ConversationSummary>> inboxes = new ArrayList<>();
+        backend.listenInbox("me", 1, new ChatRepository.InboxListener() {
+            @Override
+            public void onConversations(List<ConversationSummary> conversations) {
+                inboxes.add(conversations);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                fail(e.toString());
+            }
+        });
+        backend.sendMessages("me_a", me, user("a"), single(sentBy(message("hi a", 1), "me")), ignored());
+        backend.sendMessages("me_b", user("b"), me, single(sentBy(message("hi me", 2), "b")), ignored());
+        scheduler.advance(0);
+
+        List<ConversationSummary> latest = inboxes.get(inboxes.size() - 1);
+        assertEquals(1, latest.size());
+        assertEquals("b", latest.get(0).otherId);
+        assertEquals("hi me", latest.get(0).lastMessage);
+    }
+
+    @Test
+    public void sendMessages_lateGroupBatchKeepsNewerLastMessage() {
+        User me = user("me");
+        List<String> members = new ArrayList<>();
+        members.add("me");
+        members.add("a");
+        String groupId = backend.createGroup("group", members).id;
+        List<List<ConversationSummary>> groups = new ArrayList<>();
+        backend.listenGroups("a", 10, new ChatRepository.InboxListener() {
+            @Override
+            public void onConversations(List<ConversationSummary> conversations) {
+                groups.add(conversations);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                fail(e.toString());
+            }
+        });
+        backend.sendMessages(groupId, me, null, single(message("new", 20)), ignored());
+        backend.sendMessages(groupId, me, null, single(message("queued offline", 10)), ignored());
+        scheduler.advance(0);
+
+        List<ConversationSummary> latest = groups.get(groups.size() - 1);
+        assertEquals(1, latest.size());
+        assertEquals("me: new", latest.get(0).lastMessage);
+    }
+
+    @Test
+    public void sendMessages_lateDirectBatchKeepsNewerSummary() {
+        User me = user("me");
+        List<List<ConversationSummary>> inboxes = new ArrayList<>();
+        backend.listenInbox("peer", 10, new ChatRepository.InboxListener() {
+            @Override
+            public void onConversations(List<ConversationSummary> conversations) {
+                inboxes.add(conversations);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                fail(e.toString());
+            }
+        });
+        backend.sendMessages("me_peer", me, user("peer"), single(sentBy(message("new", 20), "me")), ignored());
+        backend.sendMessages("me_peer", me, user("peer"),
+                single(sentBy(message("queued offline", 10), "me")), ignored());
+        scheduler.advance(0);
+
+        List<ConversationSummary> latest = inboxes.get(inboxes.size() - 1);
+        assertEquals(1, latest.size());
+        assertEquals("new", latest.get(0).lastMessage);
+    }
+
+    @Test
+    public void raiseDelivered_neverLowersWrittenMark() {
+        List<Map<String, Long>> delivered = new ArrayList<>();
+        backend.listenReceipts("me_peer", (deliveredUpTo, readUpTo) -> delivered.add(deliveredUpTo));
+        backend.writeReceipts("me_peer", "me", 20, 0);
+        backend.raiseDelivered("me_peer", "me", 10);
+        backend.raiseDelivered("me_peer", "peer", 5);
+        scheduler.advance(0);
+
+        Map<String, Long> latest = delivered.get(delivered.size() - 1);
+        assertEquals(Long.valueOf(20), latest.get("me"));
+        assertEquals(Long.valueOf(5), latest.get("peer"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void putMessage_rejectsSenderOutsideDirectConversation() {
+        backend.putMessage("me_peer", sentBy(message("spoofed", 1), "other"));
+    }
+
+    private static ChatMessage message(String id, long timestamp) {
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.id = id;
+        chatMessage.senderId = "s";
+        chatMessage.receiverId = "r";
+        chatMessage.message = id;
+        chatMessage.timestamp = timestamp;
+        return chatMessage;
+    }
+
+    private static List<ChatMessage> single(ChatMessage chatMessage) {
+        List<ChatMessage> messages = new ArrayList<>();
+        messages.add(chatMessage);
+        return messages;
+    }
+
+    private static Callback<Void> ignored() {
+        return new Callback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                fail(e.toString());
+            }
+        };
+    }
+
+    private static User user(String id) {
+        User user = new User();
+        user.id = id;
+        user.firstName = id;
+        return user;
+    }
+
+    private static ChatMessage sentBy(ChatMessage chatMessage, String senderId) {
+        chatMessage.senderId = senderId;
+        return chatMessage;
+    }
+
+    private static ChatMessage committed(ChatMessage chatMessage, long committedAt) {
+        chatMessage.committedAt = committedAt;
+        return chatMessage;
+    }
+}
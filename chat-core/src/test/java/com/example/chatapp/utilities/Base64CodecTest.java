@@ -0,0 +1,42 @@
+package com.example.chatapp.utilities;
+
+import org.junit.Test;
+
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Verifies that Base64Codec matches the JDK codec and reads wrapped, unpadded input.
+ */
+public class Base64CodecTest {
+
+    @Test
+    public void encodeAndDecode_matchJdkForEveryTailLength() {
+        Random random = new Random(42);
+        for (int length = 0; length < 64; length++) {
+            byte[] bytes = new byte[length];
+            random.nextBytes(bytes);
+            String expected = Base64.getEncoder().encodeToString(bytes);
+
+            assertEquals(expected, Base64Codec.encode(bytes));
+            assertArrayEquals(bytes, Base64Codec.decode(expected));
+        }
+    }
+
+    @Test
+    public void decode_skipsLineBreaksAndAcceptsMissingPadding() {
+        byte[] bytes = new byte[200];
+        new Random(7).nextBytes(bytes);
+        String wrapped = Base64.getMimeEncoder(76, "\n".getBytes()).encodeToString(bytes) + "\n";
+
+        assertArrayEquals(bytes, Base64Codec.decode(wrapped));
+        assertArrayEquals("ab".getBytes(), Base64Codec.decode("YWI"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_rejectsInvalidCharacters() {
+        Base64Codec.decode("YW*i");
+    }
+}
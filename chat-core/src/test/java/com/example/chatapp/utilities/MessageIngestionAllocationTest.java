@@ -0,0 +1,136 @@
+package com.example.chatapp.utilities;
+
+import com.example.chatapp.models.ChatMessage;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Verifies that ingesting and binding messages does not allocate beyond the messages themselves.
+ * Allocation is measured with the HotSpot per-thread allocation counter.
+ */
+public class MessageIngestionAllocationTest {
+
+    private static final String CURRENT_USER = "alice";
+    private static final long START = 1_700_000_000_000L;
+
+    @Test
+    public void formatting_sameMinute_doesNotAllocate() {
+        int calls = 100_000;
+        formatSameMinute(calls);
+
+        long before = allocatedBytes();
+        formatSameMinute(calls);
+        long allocated = allocatedBytes() - before;
+
+        // Leaves headroom for JIT bookkeeping; a single formatted string is already ~100 bytes.
+        assertTrue("allocated " + allocated + " bytes", allocated < 4096);
+    }
+
+    @Test
+    public void formatting_matchesPattern() {
+        String first = MessageFormatter.getReadableDateTime(START);
+        String sameMinute = MessageFormatter.getReadableDateTime(START + 1);
+        assertSame(first, sameMinute);
+        assertTrue(first.matches("\\w+ \\d{2}, \\d{4} - \\d{2}:\\d{2} \\w+"));
+    }
+
+    @Test
+    public void ingestion_singleMessages_allocatesOnlyIndexEntries() {
+        int count = 50_000;
+        List<ChatMessage> messages = createMessages(count);
+        SortedMessageList list = new SortedMessageList(CURRENT_USER);
+        list.add(createMessage("warmup", START - 1, CURRENT_USER));
+
+        long before = allocatedBytes();
+        for (int i = 0; i < count; i++) {
+            list.add(messages.get(i));
+        }
+        long perMessage = (allocatedBytes() - before) / count;
+
+        // One HashSet entry plus the amortized growth of the id table and the backing array.
+        assertTrue("allocated " + perMessage + " bytes per message", perMessage < 96);
+        assertEquals(count + 1, list.size());
+    }
+
+    @Test
+    public void ingestion_flagsSentMessagesOnce() {
+        SortedMessageList list = new SortedMessageList(CURRENT_USER);
+        List<ChatMessage> batch = new ArrayList<>();
+        batch.add(createMessage("b", START + 2, "bob"));
+        batch.add(createMessage("a", START + 1, CURRENT_USER));
+        list.merge(batch);
+
+        List<ChatMessage> snapshot = list.snapshot();
+        assertEquals("a", snapshot.get(0).id);
+        assertTrue(snapshot.get(0).sent);
+        assertFalse(snapshot.get(1).sent);
+    }
+
+    @Test
+    public void ingestion_outOfOrderBatches_stayOrdered() {
+        List<ChatMessage> messages = createMessages(1_000);
+        List<ChatMessage> shuffled = new ArrayList<>(messages);
+        Collections.shuffle(shuffled);
+        SortedMessageList list = new SortedMessageList(CURRENT_USER);
+        for (int start = 0; start < shuffled.size(); start += 7) {
+            list.merge(shuffled.subList(start, Math.min(start + 7, shuffled.size())));
+        }
+        list.merge(messages.subList(0, 10));
+
+        assertEquals(messages, list.snapshot());
+    }
+
+    @Test
+    public void ingestion_serverEchoOfPendingMessage_isDeduplicated() {
+        SortedMessageList list = new SortedMessageList(CURRENT_USER);
+        ChatMessage pending = createMessage("a", START, CURRENT_USER);
+        pending.pending = true;
+        list.add(pending);
+
+        assertFalse(list.add(createMessage("a", START, CURRENT_USER)));
+        assertTrue(list.confirm(Collections.singletonList(pending)));
+
+        List<ChatMessage> snapshot = list.snapshot();
+        assertEquals(1, snapshot.size());
+        assertFalse(snapshot.get(0).pending);
+        assertTrue(snapshot.get(0).sent);
+        assertTrue(pending.pending);
+    }
+
+    private static void formatSameMinute(int calls) {
+        for (int i = 0; i < calls; i++) {
+            MessageFormatter.getReadableDateTime(START + i % 60_000);
+        }
+    }
+
+    private static List<ChatMessage> createMessages(int count) {
+        List<ChatMessage> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            messages.add(createMessage(String.format("m%08d", i), START + i * 1000L,
+                    i % 2 == 0 ? CURRENT_USER : "bob"));
+        }
+        return messages;
+    }
+
+    private static ChatMessage createMessage(String id, long timestamp, String senderId) {
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.id = id;
+        chatMessage.senderId = senderId;
+        chatMessage.message = "hello";
+        chatMessage.timestamp = timestamp;
+        return chatMessage;
+    }
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -21,4 +21,6 @@ dependencyResolutionManagement {
 
 rootProject.name = "ChatAPP"
 include(":app")
+include(":chat-core")
+include(":chat-core-benchmarks")
  
\ No newline at end of file